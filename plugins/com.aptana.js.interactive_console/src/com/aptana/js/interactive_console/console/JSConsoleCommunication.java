@@ -66,6 +66,12 @@ public class JSConsoleCommunication implements IScriptConsoleCommunication, XmlR
      */
     private final ThreadStreamReader stdErrReader;
 
+    /**
+     * The maximum number of chars kept from the output of the process while it's not shown in the console (i.e.:
+     * output from other threads while no command is running -- only the last output is kept).
+     */
+    private static final int MAX_BUFFERED_OUTPUT = 2 * 1024 * 1024;
+
     /**
      * This is the server responsible for giving input to a raw_input() requested.
      */
@@ -80,8 +86,8 @@ public class JSConsoleCommunication implements IScriptConsoleCommunication, XmlR
      * @throws MalformedURLException
      */
     public JSConsoleCommunication(int port, Process process, int clientPort) throws Exception {
-        stdOutReader = new ThreadStreamReader(process.getInputStream());
-        stdErrReader = new ThreadStreamReader(process.getErrorStream());
+        stdOutReader = new ThreadStreamReader(process.getInputStream(), true, null, MAX_BUFFERED_OUTPUT);
+        stdErrReader = new ThreadStreamReader(process.getErrorStream(), true, null, MAX_BUFFERED_OUTPUT);
         stdOutReader.start();
         stdErrReader.start();
 
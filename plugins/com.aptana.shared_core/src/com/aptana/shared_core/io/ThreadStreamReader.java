@@ -10,21 +10,70 @@
 package com.aptana.shared_core.io;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import com.aptana.shared_core.string.FastStringBuffer;
+import com.aptana.shared_core.callbacks.ICallback;
 
+/**
+ * Reads the contents of a stream (usually the output of a process) in chunks.
+ *
+ * The contents read are kept in a buffer (to be gotten with getContents/getAndClearContents) or, if there are
+ * listeners, passed to the listeners as they're read.
+ *
+ * The buffer may be bounded: when the contents not consumed exceed the max, the oldest contents are discarded (so,
+ * a process printing lots of contents which is not consumed doesn't make the buffer grow without bounds).
+ *
+ * Note that the listeners are called in the thread reading the stream: a slow listener also makes the stream be
+ * read slower (so, the process writing to it is blocked until the listener consumes what was written).
+ */
 public final class ThreadStreamReader extends Thread {
 
+    /**
+     * Size of the chunks read (the chunk is passed on as soon as it's read, so, contents are seen as they're
+     * written even if the chunk is not full).
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
     /**
      * Input stream read.
      */
     private final InputStream is;
 
     /**
-     * Buffer with the contents gotten.
+     * Buffer with the contents gotten (used as a ring: the contents start at bufferStart and wrap at the end of
+     * the array).
+     */
+    private char[] buffer;
+
+    private int bufferStart;
+
+    private int bufferSize;
+
+    /**
+     * The maximum number of chars kept in the buffer.
+     */
+    private final int maxBufferSize;
+
+    /**
+     * The number of chars discarded because the buffer was full.
+     */
+    private long discarded;
+
+    /**
+     * Listeners which receive the contents read (when there are listeners, contents are not added to the buffer).
      */
-    private final FastStringBuffer contents;
+    private final List<ICallback<Object, String>> listeners = new CopyOnWriteArrayList<ICallback<Object, String>>();
 
     /**
      * Access to the buffer should be synchronized.
@@ -42,7 +91,7 @@ public final class ThreadStreamReader extends Thread {
     private static int next = 0;
 
     /**
-     * Get a unique identifier for this thread. 
+     * Get a unique identifier for this thread.
      */
     private static synchronized int next() {
         next++;
@@ -60,43 +109,143 @@ public final class ThreadStreamReader extends Thread {
     }
 
     public ThreadStreamReader(InputStream is, boolean synchronize, String encoding) {
+        this(is, synchronize, encoding, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBufferSize the maximum number of chars kept in the buffer (when more contents are read and not
+     * consumed, the oldest contents are discarded).
+     */
+    public ThreadStreamReader(InputStream is, boolean synchronize, String encoding, int maxBufferSize) {
         this.setName("ThreadStreamReader: " + next());
         this.setDaemon(true);
         this.encoding = encoding;
-        contents = new FastStringBuffer();
         this.is = is;
         this.synchronize = synchronize;
+        this.maxBufferSize = Math.max(1, maxBufferSize);
+        this.buffer = new char[Math.min(INITIAL_BUFFER_SIZE, this.maxBufferSize)];
+    }
+
+    /**
+     * Adds a listener which will receive the contents read from now on (the contents already in the buffer must
+     * still be gotten with getAndClearContents).
+     *
+     * The listener is called in the thread reading the stream.
+     */
+    public void addListener(ICallback<Object, String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ICallback<Object, String> listener) {
+        listeners.remove(listener);
     }
 
     public void run() {
         try {
-            InputStreamReader in;
-            if (encoding != null) {
-                in = new InputStreamReader(is, encoding);
+            Charset charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+            CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
-            } else {
-                in = new InputStreamReader(is);
+            ReadableByteChannel channel = Channels.newChannel(is);
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+            while (channel.read(bytes) != -1) {
+                bytes.flip();
+                decode(decoder, bytes, chars, false);
+                bytes.compact(); //keeps the bytes of an incomplete char for the next read
             }
-            int c;
+            bytes.flip();
+            decode(decoder, bytes, chars, true);
+            CoderResult result;
+            do {
+                result = decoder.flush(chars);
+                passOn(chars);
+            } while (result.isOverflow());
+        } catch (Exception e) {
+            //that's ok
+        }
+    }
 
-            //small buffer because we may want to see contents as it's being written.
-            //(still better than char by char).
-            char[] buf = new char[80];
+    private void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            passOn(chars);
+        } while (result.isOverflow());
+    }
 
-            if (synchronize) {
-                while ((c = in.read(buf)) != -1) {
-                    synchronized (lock) {
-                        contents.append(buf, 0, c);
-                    }
+    /**
+     * Passes the chars decoded to the listeners (or to the buffer) and clears the chars.
+     */
+    private void passOn(CharBuffer chars) {
+        chars.flip();
+        int len = chars.remaining();
+        if (len > 0) {
+            if (listeners.size() > 0) {
+                String contents = new String(chars.array(), chars.position(), len);
+                for (ICallback<Object, String> listener : listeners) {
+                    listener.call(contents);
                 }
-            } else {
-                while ((c = in.read(buf)) != -1) {
-                    contents.append(buf, 0, c);
+            } else if (synchronize) {
+                synchronized (lock) {
+                    append(chars.array(), chars.position(), len);
                 }
+            } else {
+                append(chars.array(), chars.position(), len);
             }
-        } catch (Exception e) {
-            //that's ok
         }
+        chars.clear();
+    }
+
+    /**
+     * Adds the chars to the buffer (discarding the oldest contents if it's full).
+     */
+    private void append(char[] chars, int offset, int len) {
+        if (len >= maxBufferSize) {
+            discarded += bufferSize + len - maxBufferSize;
+            offset += len - maxBufferSize;
+            len = maxBufferSize;
+            bufferStart = 0;
+            bufferSize = 0;
+        }
+
+        int required = bufferSize + len;
+        if (required > buffer.length && buffer.length < maxBufferSize) {
+            int newLength = (int) Math.min(maxBufferSize, Math.max(required, buffer.length * 2L));
+            char[] newBuffer = new char[newLength];
+            copyTo(newBuffer);
+            buffer = newBuffer;
+            bufferStart = 0;
+        }
+
+        int overflow = bufferSize + len - buffer.length;
+        if (overflow > 0) {
+            bufferStart = (bufferStart + overflow) % buffer.length;
+            bufferSize -= overflow;
+            discarded += overflow;
+        }
+
+        int end = (bufferStart + bufferSize) % buffer.length;
+        int firstPart = Math.min(len, buffer.length - end);
+        System.arraycopy(chars, offset, buffer, end, firstPart);
+        System.arraycopy(chars, offset + firstPart, buffer, 0, len - firstPart);
+        bufferSize += len;
+    }
+
+    /**
+     * Copies the contents of the buffer (in order) to the start of the passed array.
+     */
+    private void copyTo(char[] target) {
+        int firstPart = Math.min(bufferSize, buffer.length - bufferStart);
+        System.arraycopy(buffer, bufferStart, target, 0, firstPart);
+        System.arraycopy(buffer, 0, target, firstPart, bufferSize - firstPart);
+    }
+
+    private String bufferToString() {
+        char[] chars = new char[bufferSize];
+        copyTo(chars);
+        return new String(chars);
     }
 
     /**
@@ -105,15 +254,28 @@ public final class ThreadStreamReader extends Thread {
      */
     public String getAndClearContents() {
         synchronized (lock) {
-            String string = contents.toString();
-            contents.clear();
+            String string = bufferToString();
+            bufferStart = 0;
+            bufferSize = 0;
+            if (buffer.length > CHUNK_SIZE) {
+                buffer = new char[Math.min(INITIAL_BUFFER_SIZE, maxBufferSize)]; //don't keep the memory of a big output.
+            }
             return string;
         }
     }
 
     public String getContents() {
         synchronized (lock) {
-            return contents.toString();
+            return bufferToString();
+        }
+    }
+
+    /**
+     * @return the number of chars discarded because the buffer was full.
+     */
+    public long getDiscardedChars() {
+        synchronized (lock) {
+            return discarded;
         }
     }
 }
@@ -28,6 +28,7 @@ import org.python.pydev.editor.refactoring.PyRefactoringFindDefinition;
 import org.python.pydev.ui.UIConstants;
 
 import com.python.pydev.analysis.additionalinfo.IInfo;
+import com.python.pydev.analysis.builder.AnalysisResultsCache;
 
 /**
  * The main plugin class to be used in the desktop.
@@ -103,6 +104,7 @@ public class AnalysisPlugin extends AbstractUIPlugin {
      * This method is called when the plug-in is stopped
      */
     public void stop(BundleContext context) throws Exception {
+        AnalysisResultsCache.disposeAll();
         super.stop(context);
         plugin = null;
     }
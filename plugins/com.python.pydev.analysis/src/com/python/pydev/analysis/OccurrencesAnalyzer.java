@@ -25,6 +25,7 @@ import org.python.pydev.parser.jython.SimpleNode;
 
 import com.python.pydev.analysis.messages.IMessage;
 import com.python.pydev.analysis.tabnanny.TabNanny;
+import com.python.pydev.analysis.visitors.ImportChecker;
 import com.python.pydev.analysis.visitors.OccurrencesVisitor;
 
 /**
@@ -34,10 +35,16 @@ import com.python.pydev.analysis.visitors.OccurrencesVisitor;
  */
 public class OccurrencesAnalyzer {
 
+    /**
+     * The import checker used in the last analysis (has the dependencies of the module analyzed).
+     */
+    private ImportChecker importChecker;
+
     public IMessage[] analyzeDocument(IPythonNature nature, SourceModule module, IAnalysisPreferences prefs,
             IDocument document, IProgressMonitor monitor, IIndentPrefs indentPrefs) {
 
         OccurrencesVisitor visitor = new OccurrencesVisitor(nature, module.getName(), module, prefs, document, monitor);
+        importChecker = visitor.scope.importChecker;
         try {
             SimpleNode ast = module.getAst();
             if (ast != null) {
@@ -72,4 +79,11 @@ public class OccurrencesAnalyzer {
         return messages.toArray(new IMessage[messages.size()]);
     }
 
+    /**
+     * @return the import checker used in the last analysis (or null if no analysis was done).
+     */
+    public ImportChecker getImportChecker() {
+        return importChecker;
+    }
+
 }
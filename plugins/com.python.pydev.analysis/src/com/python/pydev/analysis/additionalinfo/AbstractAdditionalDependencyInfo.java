@@ -21,6 +21,16 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -36,6 +46,8 @@ import org.python.pydev.core.Tuple3;
 import org.python.pydev.core.cache.CompleteIndexKey;
 import org.python.pydev.core.cache.CompleteIndexValue;
 import org.python.pydev.core.cache.DiskCache;
+import org.python.pydev.core.cache.TokenToModulesIndex;
+import org.python.pydev.core.concurrency.WorkersPool;
 import org.python.pydev.core.docutils.PySelection;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
@@ -48,6 +60,8 @@ import com.aptana.shared_core.callbacks.ICallback;
 import com.aptana.shared_core.io.FileUtils;
 import com.aptana.shared_core.string.FastStringBuffer;
 import com.aptana.shared_core.structure.Tuple;
+import com.python.pydev.analysis.additionalinfo.dependencies.ExportedNames;
+import com.python.pydev.analysis.additionalinfo.dependencies.ModuleImportersGraph;
 
 /**
  * Adds dependency information to the interpreter information. This should be used only for
@@ -56,9 +70,9 @@ import com.aptana.shared_core.structure.Tuple;
  * (Basically, it will index all the names that are found in a module so that we can easily know all the
  * places where some name exists)
  * 
- * This index was removed for now... it wasn't working properly because the AST info could be only partial
- * when it arrived here, thus, it didn't really serve its purpose well (this will have to be redone properly
- * later on).
+ * It also keeps the dependencies among the modules (module -> modules that import it), which are gathered when
+ * a module is analyzed (as the imports are only really resolved at that point) and are used to know which modules
+ * have to be analyzed again when the names a module exports change.
  * 
  * @author Fabio
  */
@@ -68,6 +82,17 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
 
     public static final boolean DEBUG = false;
 
+    /**
+     * If true, the search for modules with a given token will be split among the available processors (when
+     * there are enough modules to be checked).
+     */
+    public static boolean SEARCH_IN_PARALLEL = true;
+
+    /**
+     * Below this number of modules to be checked, the search is done in the current thread.
+     */
+    /*default*/static int MIN_MODULES_TO_SEARCH_IN_PARALLEL = 200;
+
     /**
      * indexes all the names that are available
      * 
@@ -78,6 +103,27 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
      */
     public DiskCache completeIndex;
 
+    /**
+     * Inverted index for the completeIndex (token -> modules). It's kept up to date as the tokens of each module
+     * are computed and is persisted along with the completeIndex.
+     */
+    private TokenToModulesIndex tokenToModulesIndex = new TokenToModulesIndex();
+
+    /**
+     * Names of the modules in the completeIndex which are not in the tokenToModulesIndex (so, which have to be
+     * checked in every search until their tokens are computed). Kept up to date as modules are added, removed
+     * or indexed -- and computed once (null) when the info is restored or cleared.
+     *
+     * Note: a module changed in the disk is only rechecked if it's a candidate in a search or after the change is
+     * notified through addAstInfo (as done by the builder and when the interpreter info is updated).
+     */
+    private Set<String> notIndexedModules;
+
+    /**
+     * The modules imported by each module analyzed (and the inverse). Persisted along with the other info.
+     */
+    private ModuleImportersGraph importersGraph = new ModuleImportersGraph();
+
     /**
      * default constructor
      * @throws MisconfigurationException 
@@ -165,6 +211,79 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
             } catch (NullPointerException e) {
                 //that's ok... because it might be called before actually having any values
             }
+            tokenToModulesIndex.clear();
+            notIndexedModules = null;
+            //the importers graph is kept: the hashes of the names exported are used to know whether cached analysis
+            //results are still valid (see: retainModuleDependencies).
+        }
+    }
+
+    /**
+     * Removes the dependency information on modules which are not in the passed names (i.e.: modules removed
+     * while the info was not being tracked).
+     */
+    public void retainModuleDependencies(Set<String> moduleNames) {
+        synchronized (lock) {
+            importersGraph.retainModules(moduleNames);
+        }
+    }
+
+    /**
+     * Sets the modules imported by the given module (as found when the module was analyzed).
+     */
+    public void setModuleImports(String moduleName, Collection<String> imported, Collection<String> wildImported) {
+        synchronized (lock) {
+            importersGraph.setImports(moduleName, imported, wildImported);
+        }
+    }
+
+    /**
+     * Updates the names exported by the given module (see: ExportedNames).
+     *
+     * @param ast the ast of the module (may be null).
+     * @return true if the names exported changed since the last time this method was called for the module.
+     */
+    public boolean setModuleExports(String moduleName, List<IInfo> createdInfos, SimpleNode ast) {
+        List<String> exportedNames = ExportedNames.getExportedNames(createdInfos, ast);
+        synchronized (lock) {
+            return importersGraph.setExportedNames(moduleName, exportedNames);
+        }
+    }
+
+    /**
+     * Removes the dependency information for a module that no longer exists.
+     */
+    public void removeModuleDependencies(String moduleName) {
+        synchronized (lock) {
+            importersGraph.remove(moduleName);
+        }
+    }
+
+    /**
+     * @return the hash of the names exported by the given module (or null if not available).
+     */
+    public Long getModuleExportsHash(String moduleName) {
+        synchronized (lock) {
+            return importersGraph.getExportsHash(moduleName);
+        }
+    }
+
+    /**
+     * @return the modules whose exported names may change the analysis of the given module (or null if the
+     * imports of the module are not known).
+     */
+    public Set<String> getModulesAffectingAnalysis(String moduleName) {
+        synchronized (lock) {
+            return importersGraph.getModulesAffectingAnalysis(moduleName);
+        }
+    }
+
+    /**
+     * @return the modules which should be analyzed again when the names exported by the given module change.
+     */
+    public Set<String> getDependentModules(String moduleName) {
+        synchronized (lock) {
+            return importersGraph.getDependents(moduleName);
         }
     }
 
@@ -257,60 +376,196 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 throw new RuntimeException(com.aptana.shared_core.string.StringUtils.format("Token: %s is not a valid token to search for.", token));
             }
         }
+        List<CompleteIndexKey> candidates;
+        List<CompleteIndexKey> notIndexed;
         synchronized (lock) {
-            FastStringBuffer bufProgress = new FastStringBuffer();
-            //Note that this operation is not as fast as the others, as it relies on a cache that is optimized
-            //for space and not for speed (but still, should be faster than having to do a text-search to know the 
-            //tokens when the cache is available).
+            //Only the modules that had the token when they were indexed and the modules that still weren't
+            //indexed have to be checked (the tokens of a module are computed lazily on the first search after
+            //it changes, so, the first search after a full build is still slower than the ones that follow it).
+            candidates = tokenToModulesIndex.getModulesWithToken(token);
+            notIndexed = getNotIndexed();
+
+            if (!SEARCH_IN_PARALLEL || notIndexed.size() + candidates.size() < MIN_MODULES_TO_SEARCH_IN_PARALLEL) {
+                FastStringBuffer bufProgress = new FastStringBuffer();
+                long last = System.currentTimeMillis();
+                int worked = 0;
+                try {
+                    monitor.beginTask("Get modules with token", candidates.size() + notIndexed.size());
+                    for (int i = 0; i < 2; i++) {
+                        boolean areCandidates = i == 0;
+                        for (CompleteIndexKey indexKey : areCandidates ? candidates : notIndexed) {
+                            worked++;
+                            if (monitor.isCanceled()) {
+                                return ret;
+                            }
+                            long current = System.currentTimeMillis();
+                            if (last + 200 < current) {
+                                last = current;
+                                monitor.setTaskName(bufProgress.clear().append("Searching: ")
+                                        .append(indexKey.key.name).toString());
+                                monitor.worked(worked);
+                            }
+                            checkKey(indexKey, areCandidates, temp, token, ret);
+                        }
+                    }
+                } finally {
+                    monitor.done();
+                }
+                return ret;
+            }
+        }
 
-            Tuple<List<Tuple<CompleteIndexKey, CompleteIndexValue>>, Collection<CompleteIndexKey>> memoryInfo = completeIndex
-                    .getInMemoryInfo();
+        //Parallel mode: the lock is not held while the files are checked/re-tokenized (only when the index is
+        //actually changed), so, the builder is not stopped while a search is running.
+        return getModulesWithTokenInParallel(token, monitor, candidates, notIndexed);
+    }
 
-            long last = System.currentTimeMillis();
-            int worked = 0;
-            try {
-                monitor.beginTask("Get modules with token", memoryInfo.o1.size() + memoryInfo.o2.size());
-                for (Tuple<CompleteIndexKey, CompleteIndexValue> tup : memoryInfo.o1) {
-                    CompleteIndexKey indexKey = tup.o1;
-                    CompleteIndexValue obj = tup.o2;
+    /**
+     * @return the keys of the modules which still don't have their tokens in the tokenToModulesIndex (must be
+     * called with the lock held).
+     */
+    private List<CompleteIndexKey> getNotIndexed() {
+        if (notIndexedModules == null) {
+            notIndexedModules = new HashSet<String>();
+            for (CompleteIndexKey indexKey : completeIndex.keys().values()) {
+                if (!tokenToModulesIndex.isIndexed(indexKey.key.name)) {
+                    notIndexedModules.add(indexKey.key.name);
+                }
+            }
+        }
+        List<CompleteIndexKey> ret = new ArrayList<CompleteIndexKey>(notIndexedModules.size());
+        Iterator<String> it = notIndexedModules.iterator();
+        while (it.hasNext()) {
+            CompleteIndexKey indexKey = completeIndex.getKey(new CompleteIndexKey(it.next()));
+            if (indexKey == null) {
+                it.remove();
+            } else {
+                ret.add(indexKey);
+            }
+        }
+        return ret;
+    }
 
-                    worked++;
-                    if (monitor.isCanceled()) {
-                        return ret;
-                    }
-                    long current = System.currentTimeMillis();
-                    if (last + 200 < current) {
-                        last = current;
-                        monitor.setTaskName(bufProgress.clear().append("Searching: ").append(indexKey.key.name)
-                                .toString());
-                        monitor.worked(worked);
+    /**
+     * Marks the given module as not having its tokens in the tokenToModulesIndex (must be called with the lock held).
+     */
+    private void markNotIndexed(String moduleName) {
+        tokenToModulesIndex.remove(moduleName);
+        if (notIndexedModules != null) {
+            notIndexedModules.add(moduleName);
+        }
+    }
+
+    /**
+     * Splits the modules to be checked in chunks which are checked by the shared workers pool.
+     */
+    private List<ModulesKey> getModulesWithTokenInParallel(final String token, IProgressMonitor monitor,
+            List<CompleteIndexKey> candidates, List<CompleteIndexKey> notIndexed) {
+        ArrayList<ModulesKey> ret = new ArrayList<ModulesKey>();
+        final int total = candidates.size() + notIndexed.size();
+        final AtomicInteger worked = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        ExecutorService pool = WorkersPool.getSingleton();
+        //Use more chunks than workers so that a chunk with slower files doesn't delay the whole search.
+        int chunkSize = Math.max(50, total / (WorkersPool.getNumberOfWorkers() * 4));
+
+        List<Future<List<ModulesKey>>> futures = new ArrayList<Future<List<ModulesKey>>>();
+        for (int i = 0; i < 2; i++) {
+            final boolean areCandidates = i == 0;
+            List<CompleteIndexKey> keys = areCandidates ? candidates : notIndexed;
+            int size = keys.size();
+            for (int j = 0; j < size; j += chunkSize) {
+                final List<CompleteIndexKey> chunk = keys.subList(j, Math.min(size, j + chunkSize));
+                futures.add(pool.submit(new Callable<List<ModulesKey>>() {
+
+                    public List<ModulesKey> call() throws Exception {
+                        FastStringBuffer temp = new FastStringBuffer();
+                        ArrayList<ModulesKey> found = new ArrayList<ModulesKey>();
+                        for (CompleteIndexKey indexKey : chunk) {
+                            if (cancelled.get()) {
+                                break;
+                            }
+                            try {
+                                checkKey(indexKey, areCandidates, temp, token, found);
+                            } catch (Exception e) {
+                                Log.log(e);
+                            }
+                            worked.incrementAndGet();
+                        }
+                        return found;
                     }
-                    check(indexKey, obj, temp, token, ret);
-                }
+                }));
+            }
+        }
 
-                for (CompleteIndexKey indexKey : memoryInfo.o2) {
-                    worked++;
+        //The monitor is only accessed from the thread that requested the search.
+        try {
+            monitor.beginTask("Get modules with token", total);
+            int reported = 0;
+            for (Future<List<ModulesKey>> future : futures) {
+                while (true) {
                     if (monitor.isCanceled()) {
+                        cancelled.set(true);
                         return ret;
                     }
-                    long current = System.currentTimeMillis();
-                    if (last + 200 < current) {
-                        last = current;
-                        monitor.setTaskName(bufProgress.clear().append("Searching: ").append(indexKey.key.name)
-                                .toString());
-                        monitor.worked(worked);
+                    try {
+                        ret.addAll(future.get(200, TimeUnit.MILLISECONDS));
+                        break;
+                    } catch (TimeoutException e) {
+                        //Just keep on waiting (and updating the progress)
+                    } catch (InterruptedException e) {
+                        cancelled.set(true);
+                        return ret;
+                    } catch (ExecutionException e) {
+                        Log.log(e);
+                        break;
                     }
-                    check(indexKey, null, temp, token, ret);
+                    int current = worked.get();
+                    monitor.worked(current - reported);
+                    reported = current;
                 }
-            } finally {
-                monitor.done();
             }
+        } finally {
+            monitor.done();
         }
         return ret;
     }
 
+    /**
+     * Checks if a given module has the token (recreating the info for the module if needed).
+     * 
+     * Note: may be called from multiple threads at once (the lock is only acquired when the index is changed).
+     * 
+     * @param isCandidate whether the passed key was gotten from the inverted index (in which case only
+     * a freshness check is needed).
+     */
+    private void checkKey(CompleteIndexKey indexKey, boolean isCandidate, FastStringBuffer temp, String token,
+            List<ModulesKey> ret) {
+        if (isCandidate) {
+            CompleteIndexKey currentKey = completeIndex.getKey(indexKey);
+            if (currentKey == null) {
+                //Removed in the meanwhile.
+                return;
+            }
+            //Freshness check: if it was changed after being indexed, it has to be checked again.
+            if (currentKey.key.file != null && PythonPathHelper.canAddAstInfoFor(currentKey.key)) {
+                long lastModified = currentKey.key.file.lastModified();
+                boolean isFresh;
+                synchronized (lock) {
+                    isFresh = tokenToModulesIndex.isIndexed(currentKey.key.name, lastModified);
+                }
+                if (isFresh) {
+                    ret.add(currentKey.key);
+                    return;
+                }
+            }
+            indexKey = currentKey;
+        }
+        check(indexKey, null, temp, token, ret);
+    }
+
     private void check(CompleteIndexKey indexKey, CompleteIndexValue obj, FastStringBuffer temp, String token,
-            ArrayList<ModulesKey> ret) {
+            List<ModulesKey> ret) {
         if (obj == null) {
             obj = completeIndex.getObj(indexKey);
         }
@@ -406,13 +661,29 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 }
             }
 
+            //New instances are added instead of changing the passed key/value (which may be shared with other threads).
+            CompleteIndexKey newKey = new CompleteIndexKey(indexKey.key);
+            newKey.lastModified = lastModified;
+            obj = new CompleteIndexValue();
             obj.entries = set;
-            indexKey.lastModified = lastModified;
-            completeIndex.add(indexKey, obj); //Serialize the new contents
+            synchronized (lock) {
+                completeIndex.add(newKey, obj); //Serialize the new contents
+            }
+            indexKey = newKey;
         }
 
-        if (obj.entries != null && obj.entries.contains(token)) {
-            ret.add(indexKey.key);
+        if (obj.entries != null) {
+            synchronized (lock) {
+                if (!tokenToModulesIndex.isIndexed(indexKey.key.name, indexKey.lastModified)) {
+                    tokenToModulesIndex.put(indexKey, obj.entries);
+                    if (notIndexedModules != null) {
+                        notIndexedModules.remove(indexKey.key.name);
+                    }
+                }
+            }
+            if (obj.entries.contains(token)) {
+                ret.add(indexKey.key);
+            }
         }
 
     }
@@ -430,6 +701,8 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 if (key.file != null) {
                     completeIndex.add(new CompleteIndexKey(key), new CompleteIndexValue());
                 }
+                //Its tokens will be recomputed lazily.
+                markNotIndexed(key.name);
 
             }
         } catch (Exception e) {
@@ -445,6 +718,10 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 throw new AssertionError("The module name may not be null.");
             }
             completeIndex.remove(new CompleteIndexKey(moduleName));
+            tokenToModulesIndex.remove(moduleName);
+            if (notIndexedModules != null) {
+                notIndexedModules.remove(moduleName);
+            }
             super.removeInfoFromModule(moduleName, generateDelta);
         }
     }
@@ -453,6 +730,8 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
     protected void saveTo(OutputStreamWriter writer, FastStringBuffer tempBuf, File pathToSave) throws IOException {
         synchronized (lock) {
             completeIndex.writeTo(tempBuf);
+            tokenToModulesIndex.writeTo(tempBuf);
+            importersGraph.writeTo(tempBuf);
             writer.write(tempBuf.getInternalCharsArray(), 0, tempBuf.length());
             tempBuf.clear();
 
@@ -474,6 +753,8 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 throw new RuntimeException(
                         "Type Error (index == null): the info must be regenerated (changed across versions).");
             }
+            tokenToModulesIndex.clear();
+            notIndexedModules = null;
             completeIndex.readFromFileMethod = readFromFileMethod;
             completeIndex.toFileMethod = toFileMethod;
 
@@ -537,6 +818,9 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
             ObjectsPoolMap objectsPoolMap = new ObjectsPool.ObjectsPoolMap();
             if (string != null && string.startsWith("-- VERSION_")) {
                 Tuple tupWithResults = new Tuple(new Tuple3(null, null, null), null);
+                TokenToModulesIndex loadedTokenToModulesIndex = null;
+                SortedMap<String, Set<IInfo>> loadedBaseToSubclassesInfo = null;
+                ModuleImportersGraph loadedImportersGraph = null;
                 Tuple3 superTupWithResults = (Tuple3) tupWithResults.o1;
                 //tupWithResults.o2 = DiskCache
                 if (string.toString().equals(expected)) {
@@ -557,6 +841,10 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                                         superTupWithResults.o2 = TreeIO.loadTreeFrom(bufferedReader, dictionary,
                                                 tempBuf.clear(), objectsPoolMap);
 
+                                    } else if (line.startsWith("-- START TREE 3")) {
+                                        loadedBaseToSubclassesInfo = TreeIO.loadTreeFrom(bufferedReader, dictionary,
+                                                tempBuf.clear(), objectsPoolMap);
+
                                     } else if (line.startsWith("-- START DICTIONARY")) {
                                         dictionary = TreeIO.loadDictFrom(bufferedReader, tempBuf.clear(),
                                                 objectsPoolMap);
@@ -564,9 +852,17 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                                     } else if (line.startsWith("-- START DISKCACHE")) {
                                         tupWithResults.o2 = DiskCache.loadFrom(bufferedReader, objectsPoolMap);
 
+                                    } else if (line.startsWith("-- START TOKENS INDEX")) {
+                                        loadedTokenToModulesIndex = TokenToModulesIndex.loadFrom(bufferedReader,
+                                                objectsPoolMap);
+
+                                    } else if (line.startsWith("-- START DEPENDENCIES")) {
+                                        loadedImportersGraph = ModuleImportersGraph.loadFrom(bufferedReader,
+                                                objectsPoolMap);
+
                                     } else if (line.startsWith("-- VERSION_")) {
-                                        if (!line.endsWith("3")) {
-                                            throw new RuntimeException("Expected the version to be 3.");
+                                        if (!line.endsWith("4")) {
+                                            throw new RuntimeException("Expected the version to be 4.");
                                         }
                                     } else if (line.startsWith("-- END TREE")) {
                                         //just skip it in this situation.
@@ -582,7 +878,20 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                         reader.close();
                     }
 
+                    if (loadedBaseToSubclassesInfo == null) {
+                        throw new RuntimeException("Expected the subclasses info to be saved.");
+                    }
+                    //must be set before restoring (as the deltas are processed when restoring).
+                    baseToSubclassesInfo = loadedBaseToSubclassesInfo;
                     restoreSavedInfo(tupWithResults);
+                    if (loadedTokenToModulesIndex != null) {
+                        loadedTokenToModulesIndex.syncWith(completeIndex);
+                        tokenToModulesIndex = loadedTokenToModulesIndex;
+                        notIndexedModules = null;
+                    }
+                    if (loadedImportersGraph != null) {
+                        importersGraph = loadedImportersGraph;
+                    }
                     //                    timer.printDiff("Time taken");
                     return tupWithResults;
                 } else {
@@ -611,11 +920,15 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
 
     protected void addInfoToModuleOnRestoreInsertCommand(Tuple<ModulesKey, List<IInfo>> data) {
         completeIndex.add(new CompleteIndexKey(data.o1), null);
+        markNotIndexed(data.o1.name);
 
         //current way (saves a list of iinfo)
         for (Iterator<IInfo> it = data.o2.iterator(); it.hasNext();) {
             IInfo info = it.next();
-            if (info.getPath() == null || info.getPath().length() == 0) {
+            if (info.getType() == IInfo.SUBCLASS_TYPE) {
+                this.addSubclassInfo(info);
+
+            } else if (info.getPath() == null || info.getPath().length() == 0) {
                 this.add(info, TOP_LEVEL);
 
             } else {
@@ -47,6 +47,7 @@ import org.python.pydev.parser.jython.SimpleNode;
 import org.python.pydev.parser.jython.ast.ClassDef;
 import org.python.pydev.parser.jython.ast.FunctionDef;
 import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.exprType;
 import org.python.pydev.parser.visitors.NodeUtils;
 import org.python.pydev.parser.visitors.scope.ASTEntry;
 import org.python.pydev.parser.visitors.scope.DefinitionsASTIteratorVisitor;
@@ -121,63 +122,77 @@ public abstract class AbstractAdditionalTokensInfo {
     protected SortedMap<String, Set<IInfo>> innerInitialsToInfo = new PyPublicTreeMap<String, Set<IInfo>>();
 
     /**
-     * Should be used before re-creating the info, so that we have enough memory. 
+     * index from the name of a base class (without its module) to the classes that have it as a base (the 
+     * SubclassInfo has the path to the subclass), so that the subclasses of a class can be found without having
+     * to load the modules.
+     * 
+     * This map is persisted.
      */
-    public void clearAllInfo() {
-        synchronized (lock) {
-            if (topLevelInitialsToInfo != null) {
-                topLevelInitialsToInfo.clear();
-            }
-            if (innerInitialsToInfo != null) {
-                innerInitialsToInfo.clear();
-            }
-        }
-    }
-
-    protected Object lock = new Object();
+    protected SortedMap<String, Set<IInfo>> baseToSubclassesInfo = new PyPublicTreeMap<String, Set<IInfo>>();
 
     /**
-     * The filter interface
+     * A snapshot of topLevelInitialsToInfo or innerInitialsToInfo indexed by the lower-case names (used to get the
+     * tokens without locking) and the modification count of the map when it was created.
      */
-    public interface Filter {
-        boolean doCompare(String lowerCaseQual, IInfo info);
+    private static final class PrefixIndexSnapshot {
+        private final TokensPrefixIndex index;
+        private final int modCount;
 
-        boolean doCompare(String lowerCaseQual, String infoName);
+        private PrefixIndexSnapshot(TokensPrefixIndex index, int modCount) {
+            this.index = index;
+            this.modCount = modCount;
+        }
     }
 
     /**
-     * A filter that checks if tokens are equal
+     * Snapshots of topLevelInitialsToInfo and innerInitialsToInfo (lazily created again in the next query if the
+     * related map changed after it was created).
      */
-    private final Filter equalsFilter = new Filter() {
-        public boolean doCompare(String qualifier, IInfo info) {
-            return info.getName().equals(qualifier);
-        }
+    private volatile PrefixIndexSnapshot topLevelPrefixIndex;
 
-        public boolean doCompare(String qualifier, String infoName) {
-            return infoName.equals(qualifier);
-        }
-    };
+    private volatile PrefixIndexSnapshot innerPrefixIndex;
 
     /**
-     * A filter that checks if the tokens starts with a qualifier
+     * Incremented (with the lock held) whenever the contents of topLevelInitialsToInfo or innerInitialsToInfo change.
      */
-    private final Filter startingWithFilter = new Filter() {
+    private volatile int topLevelModCount;
 
-        public boolean doCompare(String lowerCaseQual, IInfo info) {
-            return doCompare(lowerCaseQual, info.getName());
-        }
+    private volatile int innerModCount;
+
+    /**
+     * Held while a snapshot is created (so that only one thread creates it and the lock is only held while the
+     * infos are copied -- not while they're sorted).
+     */
+    private final Object prefixIndexLock = new Object();
 
-        public boolean doCompare(String qualifier, String infoName) {
-            return infoName.toLowerCase().startsWith(qualifier);
+    /**
+     * Should be used before re-creating the info, so that we have enough memory. 
+     */
+    public void clearAllInfo() {
+        synchronized (lock) {
+            topLevelPrefixIndex = null;
+            innerPrefixIndex = null;
+            topLevelModCount++;
+            innerModCount++;
+            if (topLevelInitialsToInfo != null) {
+                topLevelInitialsToInfo.clear();
+            }
+            if (innerInitialsToInfo != null) {
+                innerInitialsToInfo.clear();
+            }
+            if (baseToSubclassesInfo != null) {
+                baseToSubclassesInfo.clear();
+            }
         }
+    }
 
-    };
+    protected Object lock = new Object();
 
     /**
      * 2: because we've removed some info (the hash is no longer saved)
      * 3: Changed from string-> list to string->set
      */
-    protected static final int version = 3;
+    protected static final int version = 4;
 
     public AbstractAdditionalTokensInfo() {
     }
@@ -212,7 +227,13 @@ public abstract class AbstractAdditionalTokensInfo {
                 throw new RuntimeException("List to add is invalid: " + doOn);
             }
             Set<IInfo> listForInitials = getAndCreateListForInitials(initials, initialsToInfo);
-            listForInitials.add(info);
+            if (listForInitials.add(info)) {
+                if (doOn == TOP_LEVEL) {
+                    topLevelModCount++;
+                } else {
+                    innerModCount++;
+                }
+            }
         }
     }
 
@@ -241,6 +262,49 @@ public abstract class AbstractAdditionalTokensInfo {
         return lInfo;
     }
 
+    /**
+     * Adds info on a class that has some base.
+     * 
+     * @param info the info to be added (its name is the name of the base)
+     */
+    protected void addSubclassInfo(IInfo info) {
+        synchronized (lock) {
+            getAndCreateListForInitials(info.getName(), baseToSubclassesInfo).add(info);
+        }
+    }
+
+    /**
+     * Adds a SubclassInfo for each base of the given class (only the last part of the base is used -- i.e.: 'Model'
+     * for 'models.Model').
+     */
+    private void addSubclassInfos(ClassDef classDef, String moduleName, String subclassPath, List<IInfo> createdInfos) {
+        exprType[] bases = classDef.bases;
+        if (bases == null) {
+            return;
+        }
+        for (exprType base : bases) {
+            String baseName = FullRepIterable.getLastPart(NodeUtils.getFullRepresentationString(base));
+            if (baseName == null || baseName.length() == 0 || !isIdentifier(baseName)) {
+                continue; //i.e.: a call as base
+            }
+            //no intern construct (locked in the loop that calls this method)
+            SubclassInfo info = new SubclassInfo(ObjectsPool.internUnsynched(baseName), moduleName,
+                    ObjectsPool.internUnsynched(subclassPath), false);
+            addSubclassInfo(info);
+            createdInfos.add(info);
+        }
+    }
+
+    private static boolean isIdentifier(String name) {
+        int len = name.length();
+        for (int i = 0; i < len; i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private IInfo addAssignTargets(ASTEntry entry, String moduleName, int doOn, String path, boolean lastIsMethod) {
         String rep = NodeUtils.getFullRepresentationString(entry.node);
         if (lastIsMethod) {
@@ -352,6 +416,7 @@ public abstract class AbstractAdditionalTokensInfo {
                                             key.name, null, false);
                                     add(info, TOP_LEVEL);
                                     infoCreated = info;
+                                    addSubclassInfos((ClassDef) entry.node, key.name, info.name, createdInfos);
 
                                 } else if (entry.node instanceof FunctionDef) {
                                     //no intern construct (locked in this loop)
@@ -383,6 +448,8 @@ public abstract class AbstractAdditionalTokensInfo {
                                                     key.name, ObjectsPool.internUnsynched(pathToRoot.o1), false);
                                             add(info, INNER);
                                             infoCreated = info;
+                                            addSubclassInfos((ClassDef) entry.node, key.name, pathToRoot.o1 + "."
+                                                    + info.name, createdInfos);
 
                                         } else {
                                             //FunctionDef
@@ -536,8 +603,13 @@ public abstract class AbstractAdditionalTokensInfo {
             Log.toLogFile(this, "Removing ast info from: " + moduleName);
         }
         synchronized (lock) {
-            removeInfoFromMap(moduleName, topLevelInitialsToInfo);
-            removeInfoFromMap(moduleName, innerInitialsToInfo);
+            if (removeInfoFromMap(moduleName, topLevelInitialsToInfo)) {
+                topLevelModCount++;
+            }
+            if (removeInfoFromMap(moduleName, innerInitialsToInfo)) {
+                innerModCount++;
+            }
+            removeInfoFromMap(moduleName, baseToSubclassesInfo);
         }
 
     }
@@ -545,8 +617,10 @@ public abstract class AbstractAdditionalTokensInfo {
     /**
      * @param moduleName
      * @param initialsToInfo
+     * @return whether some info was removed.
      */
-    private void removeInfoFromMap(String moduleName, SortedMap<String, Set<IInfo>> initialsToInfo) {
+    private boolean removeInfoFromMap(String moduleName, SortedMap<String, Set<IInfo>> initialsToInfo) {
+        boolean removed = false;
         Iterator<Set<IInfo>> itListOfInfo = initialsToInfo.values().iterator();
         while (itListOfInfo.hasNext()) {
 
@@ -557,83 +631,103 @@ public abstract class AbstractAdditionalTokensInfo {
                 if (info != null && info.getDeclaringModuleName() != null) {
                     if (info.getDeclaringModuleName().equals(moduleName)) {
                         it.remove();
+                        removed = true;
                     }
                 }
             }
         }
+        return removed;
     }
 
     /**
      * This is the function for which we are most optimized!
      * 
-     * @param qualifier the tokens returned have to start with the given qualifier
+     * @param qualifier the tokens returned have to start with the given qualifier (case-insensitive)
      * @return a list of info, all starting with the given qualifier
      */
     public Collection<IInfo> getTokensStartingWith(String qualifier, int getWhat) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, startingWithFilter, true, null);
-        }
+        return getTokensStartingWith(qualifier, getWhat, null);
     }
 
     public Collection<IInfo> getTokensStartingWith(String qualifier, int getWhat, Collection<IInfo> result) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, startingWithFilter, true, result);
+        if (result == null) {
+            result = new ArrayList<IInfo>();
         }
+        String lowerCaseQual = qualifier.toLowerCase();
+        if ((getWhat & TOP_LEVEL) != 0) {
+            getPrefixIndex(TOP_LEVEL).getStartingWith(lowerCaseQual, result);
+        }
+        if ((getWhat & INNER) != 0) {
+            getPrefixIndex(INNER).getStartingWith(lowerCaseQual, result);
+        }
+        return result;
     }
 
     public Collection<IInfo> getTokensEqualTo(String qualifier, int getWhat) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, equalsFilter, false, null);
-        }
+        return getTokensEqualTo(qualifier, getWhat, null);
     }
 
     public Collection<IInfo> getTokensEqualTo(String qualifier, int getWhat, Collection<IInfo> result) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, equalsFilter, false, result);
+        if (result == null) {
+            result = new ArrayList<IInfo>();
+        }
+        if ((getWhat & TOP_LEVEL) != 0) {
+            getPrefixIndex(TOP_LEVEL).getEqualTo(qualifier, result);
         }
+        if ((getWhat & INNER) != 0) {
+            getPrefixIndex(INNER).getEqualTo(qualifier, result);
+        }
+        return result;
     }
 
-    protected Collection<IInfo> getWithFilter(String qualifier, int getWhat, Filter filter, boolean useLowerCaseQual,
-            Collection<IInfo> result) {
-        synchronized (lock) {
-            if (result == null) {
-                result = new ArrayList<IInfo>();
-            }
-
-            if ((getWhat & TOP_LEVEL) != 0) {
-                getWithFilter(qualifier, topLevelInitialsToInfo, result, filter, useLowerCaseQual);
+    /**
+     * @return the current snapshot of the top level or inner infos (created if the info changed since the last one
+     * was created).
+     */
+    private TokensPrefixIndex getPrefixIndex(int doOn) {
+        boolean topLevel = doOn == TOP_LEVEL;
+        PrefixIndexSnapshot snapshot = topLevel ? topLevelPrefixIndex : innerPrefixIndex;
+        if (snapshot != null && snapshot.modCount == (topLevel ? topLevelModCount : innerModCount)) {
+            return snapshot.index;
+        }
+        synchronized (prefixIndexLock) {
+            int modCount;
+            IInfo[] infos;
+            synchronized (lock) {
+                modCount = topLevel ? topLevelModCount : innerModCount;
+                snapshot = topLevel ? topLevelPrefixIndex : innerPrefixIndex;
+                if (snapshot != null && snapshot.modCount == modCount) {
+                    return snapshot.index; //created by another thread while we waited.
+                }
+                infos = TokensPrefixIndex.toArray(topLevel ? topLevelInitialsToInfo.values() : innerInitialsToInfo
+                        .values());
             }
-            if ((getWhat & INNER) != 0) {
-                getWithFilter(qualifier, innerInitialsToInfo, result, filter, useLowerCaseQual);
+            //sort without holding the lock (so, the info may be changed while that's done).
+            snapshot = new PrefixIndexSnapshot(TokensPrefixIndex.create(infos), modCount);
+            if (topLevel) {
+                topLevelPrefixIndex = snapshot;
+            } else {
+                innerPrefixIndex = snapshot;
             }
-            return result;
+            return snapshot.index;
         }
     }
 
     /**
-     * @param qualifier
-     * @param initialsToInfo this is where we are going to get the info from (currently: inner or top level list)
-     * @param toks (out) the tokens will be added to this list
-     * @return
+     * @param baseName the name of the base class (without its module -- i.e.: 'Model' for 'models.Model').
+     * @return the info on the classes that have the given base (the path of each SubclassInfo is the path to the
+     * subclass in its module).
      */
-    protected void getWithFilter(String qualifier, SortedMap<String, Set<IInfo>> initialsToInfo,
-            Collection<IInfo> toks, Filter filter, boolean useLowerCaseQual) {
-        String initials = getInitials(qualifier);
-        String qualToCompare = qualifier;
-        if (useLowerCaseQual) {
-            qualToCompare = qualifier.toLowerCase();
-        }
-
-        //get until the end of the alphabet
-        SortedMap<String, Set<IInfo>> subMap = initialsToInfo.subMap(initials, initials + "z");
-
-        for (Set<IInfo> listForInitials : subMap.values()) {
-
-            for (IInfo info : listForInitials) {
-                if (filter.doCompare(qualToCompare, info)) {
-                    toks.add(info);
+    public List<SubclassInfo> getSubclassesInfo(String baseName) {
+        synchronized (lock) {
+            ArrayList<SubclassInfo> ret = new ArrayList<SubclassInfo>();
+            Set<IInfo> set = baseToSubclassesInfo.get(baseName);
+            if (set != null) {
+                for (IInfo info : set) {
+                    ret.add((SubclassInfo) info);
                 }
             }
+            return ret;
         }
     }
 
@@ -732,6 +826,9 @@ public abstract class AbstractAdditionalTokensInfo {
             tempBuf.append("-- START TREE 2\n");
             TreeIO.dumpTreeToBuffer(this.innerInitialsToInfo, tempBuf, dictionary);
 
+            tempBuf.append("-- START TREE 3\n");
+            TreeIO.dumpTreeToBuffer(this.baseToSubclassesInfo, tempBuf, dictionary);
+
             FastStringBuffer buf2 = new FastStringBuffer(50 * (dictionary.size() + 4));
             TreeIO.dumpDictToBuffer(dictionary, buf2);
 
@@ -760,6 +857,10 @@ public abstract class AbstractAdditionalTokensInfo {
 
             this.topLevelInitialsToInfo = (SortedMap<String, Set<IInfo>>) o1;
             this.innerInitialsToInfo = (SortedMap<String, Set<IInfo>>) o2;
+            this.topLevelPrefixIndex = null;
+            this.innerPrefixIndex = null;
+            this.topLevelModCount++;
+            this.innerModCount++;
             if (readFromFile.o3 != null) {
                 //may be null in new format (where that's checked during load time).
                 if (AbstractAdditionalTokensInfo.version != (Integer) readFromFile.o3) {
@@ -62,6 +62,11 @@ public interface IInfo extends Comparable<IInfo> {
      */
     int MOD_IMPORT_TYPE = 5;
 
+    /**
+     * The type when it is a class with some base (see SubclassInfo)
+     */
+    int SUBCLASS_TYPE = 6;
+
     /**
      * @return the type of the information we are holding (given constants)
      */
@@ -151,6 +151,11 @@ public class InfoStrFactory {
                     ret.add(new ClassInfo(map.get(name), map.get(declaringModuleName), map.get(path), true));
                     break;
 
+                case AbstractInfo.SUBCLASS_TYPE:
+                    //no intern construct (already interned when creating the map)
+                    ret.add(new SubclassInfo(map.get(name), map.get(declaringModuleName), map.get(path), true));
+                    break;
+
             }
         }
         return ret;
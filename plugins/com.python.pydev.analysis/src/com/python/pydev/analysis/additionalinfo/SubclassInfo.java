@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import org.python.pydev.core.FullRepIterable;
+
+/**
+ * Info on a class that has some base (used to find the subclasses of a class without loading the modules).
+ *
+ * Its name is the name of the base (without its module -- i.e.: 'Model' for 'models.Model') and its path is the
+ * path to the subclass in the module that declares it (i.e.: 'Sub' or 'Outer.Sub' for a class declared inside
+ * the class Outer).
+ */
+public final class SubclassInfo extends AbstractInfo {
+
+    private static final long serialVersionUID = 1L;
+
+    public SubclassInfo(String baseName, String moduleDeclared, String subclassPath) {
+        super(baseName, moduleDeclared, subclassPath);
+    }
+
+    public SubclassInfo(String baseName, String moduleDeclared, String subclassPath,
+            boolean doNotInternOnThisContstruct) {
+        super(baseName, moduleDeclared, subclassPath, doNotInternOnThisContstruct);
+    }
+
+    /**
+     * @return the name of the subclass.
+     */
+    public String getSubclassName() {
+        return FullRepIterable.getLastPart(path);
+    }
+
+    public int getType() {
+        return SUBCLASS_TYPE;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An immutable index of infos sorted by their lower-case names, so that all the infos whose names start with some
+ * (lower-case) prefix are in a contiguous range found with a binary search (so, getting the tokens starting with
+ * some qualifier doesn't need to lower-case the name of each candidate).
+ *
+ * As it's immutable, it may be queried without any lock (a new index is created when the info changes: the infos
+ * are copied with toArray while the info is locked and the index is created from the copy after it's unlocked).
+ */
+public final class TokensPrefixIndex {
+
+    public static final TokensPrefixIndex EMPTY = new TokensPrefixIndex(new String[0], new IInfo[0]);
+
+    /**
+     * The lower-case names (sorted).
+     */
+    private final String[] lowerCaseNames;
+
+    /**
+     * The info for each name in lowerCaseNames.
+     */
+    private final IInfo[] infos;
+
+    private TokensPrefixIndex(String[] lowerCaseNames, IInfo[] infos) {
+        this.lowerCaseNames = lowerCaseNames;
+        this.infos = infos;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final String lowerCaseName;
+        private final IInfo info;
+
+        private Entry(String lowerCaseName, IInfo info) {
+            this.lowerCaseName = lowerCaseName;
+            this.info = info;
+        }
+
+        public int compareTo(Entry o) {
+            return lowerCaseName.compareTo(o.lowerCaseName);
+        }
+    }
+
+    /**
+     * @param infos the infos to be indexed (i.e.: the values of the initials to info maps).
+     */
+    public static TokensPrefixIndex create(Collection<Set<IInfo>> infos) {
+        return create(toArray(infos));
+    }
+
+    /**
+     * @return the infos in the given sets (i.e.: the values of the initials to info maps).
+     */
+    public static IInfo[] toArray(Collection<Set<IInfo>> infos) {
+        int size = 0;
+        for (Set<IInfo> set : infos) {
+            size += set.size();
+        }
+        IInfo[] ret = new IInfo[size];
+        int i = 0;
+        for (Set<IInfo> set : infos) {
+            for (IInfo info : set) {
+                ret[i] = info;
+                i++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param infos the infos to be indexed (the array is not kept).
+     */
+    public static TokensPrefixIndex create(IInfo[] infos) {
+        int size = infos.length;
+        if (size == 0) {
+            return EMPTY;
+        }
+        Entry[] entries = new Entry[size];
+        int i;
+        for (i = 0; i < size; i++) {
+            entries[i] = new Entry(infos[i].getName().toLowerCase(), infos[i]);
+        }
+        Arrays.sort(entries);
+
+        String[] lowerCaseNames = new String[size];
+        IInfo[] sortedInfos = new IInfo[size];
+        for (i = 0; i < size; i++) {
+            lowerCaseNames[i] = entries[i].lowerCaseName;
+            sortedInfos[i] = entries[i].info;
+        }
+        return new TokensPrefixIndex(lowerCaseNames, sortedInfos);
+    }
+
+    public int size() {
+        return infos.length;
+    }
+
+    /**
+     * @param lowerCaseQual the qualifier (must be already in lower case).
+     * @param result (out) the infos whose names start with the qualifier (case-insensitive) are added to it.
+     */
+    public void getStartingWith(String lowerCaseQual, Collection<IInfo> result) {
+        for (int i = lowerBound(lowerCaseQual); i < lowerCaseNames.length
+                && lowerCaseNames[i].startsWith(lowerCaseQual); i++) {
+            result.add(infos[i]);
+        }
+    }
+
+    /**
+     * @param qualifier the qualifier (the comparison is case-sensitive).
+     * @param result (out) the infos whose names are equal to the qualifier are added to it.
+     */
+    public void getEqualTo(String qualifier, Collection<IInfo> result) {
+        String lowerCaseQual = qualifier.toLowerCase();
+        for (int i = lowerBound(lowerCaseQual); i < lowerCaseNames.length
+                && lowerCaseNames[i].equals(lowerCaseQual); i++) {
+            if (infos[i].getName().equals(qualifier)) {
+                result.add(infos[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the index of the first name which is not less than the given name.
+     */
+    private int lowerBound(String lowerCaseName) {
+        int low = 0;
+        int high = lowerCaseNames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lowerCaseNames[mid].compareTo(lowerCaseName) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -232,6 +232,9 @@ public class TreeIO {
                                 case IInfo.MOD_IMPORT_TYPE:
                                     set.add(new ModInfo(infoName, false));
                                     break;
+                                case IInfo.SUBCLASS_TYPE:
+                                    set.add(new SubclassInfo(infoName, moduleDeclared, path, false));
+                                    break;
                                 default:
                                     Log.log("Unexpected type: " + type);
                             }
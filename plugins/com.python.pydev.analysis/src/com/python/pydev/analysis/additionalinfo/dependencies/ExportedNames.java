@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Assign;
+import org.python.pydev.parser.jython.ast.AugAssign;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Import;
+import org.python.pydev.parser.jython.ast.ImportFrom;
+import org.python.pydev.parser.jython.ast.Lambda;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.NameTokType;
+import org.python.pydev.parser.jython.ast.Str;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+import org.python.pydev.parser.jython.ast.aliasType;
+import org.python.pydev.parser.jython.ast.argumentsType;
+import org.python.pydev.parser.jython.ast.decoratorsType;
+import org.python.pydev.parser.jython.ast.exprType;
+import org.python.pydev.parser.visitors.NodeUtils;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+import com.python.pydev.analysis.additionalinfo.IInfo;
+
+/**
+ * Gets the names exported by a module (used to know whether the modules importing it must be analyzed again and
+ * whether the analysis results cached for them are still valid).
+ *
+ * Besides the definitions (from the infos created for the module, including the class members), the signatures of
+ * the functions and methods (and the bases of the classes), the names imported in the global scope (which are
+ * re-exported by the module) and the contents of __all__ are also considered, as the analysis of the importers
+ * checks the attributes and the arguments of calls against them.
+ */
+public final class ExportedNames {
+
+    private ExportedNames() {
+    }
+
+    /**
+     * @param createdInfos the infos created for the module in the additional info.
+     * @param ast the ast of the module (may be null).
+     * @return the names exported (each import, signature and the contents of __all__ are added as a single entry).
+     */
+    public static List<String> getExportedNames(List<IInfo> createdInfos, SimpleNode ast) {
+        List<String> exportedNames = new ArrayList<String>(createdInfos.size());
+        for (IInfo info : createdInfos) {
+            String path = info.getPath();
+            if (path == null || path.length() == 0) {
+                if (info.getType() != IInfo.SUBCLASS_TYPE) {
+                    exportedNames.add(info.getName());
+                }
+            } else {
+                FastStringBuffer buf = new FastStringBuffer(path.length() + info.getName().length() + 4);
+                exportedNames.add(buf.append(info.getType()).append(':').append(path).append('.')
+                        .append(info.getName()).toString());
+            }
+        }
+        if (ast != null) {
+            GlobalImportsAndAllVisitor visitor = new GlobalImportsAndAllVisitor(exportedNames);
+            try {
+                ast.accept(visitor);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return exportedNames;
+    }
+
+    /**
+     * Visits the global scope (the contents of functions and lambdas are skipped) adding an entry for each name
+     * imported, for each assign to __all__ and for the signature of each class, function and method.
+     */
+    private static final class GlobalImportsAndAllVisitor extends VisitorBase {
+
+        private final List<String> exportedNames;
+
+        private GlobalImportsAndAllVisitor(List<String> exportedNames) {
+            this.exportedNames = exportedNames;
+        }
+
+        @Override
+        public Object visitFunctionDef(FunctionDef node) throws Exception {
+            addSignature(null, node);
+            return null;
+        }
+
+        @Override
+        public Object visitClassDef(ClassDef node) throws Exception {
+            addSignatures(null, node);
+            return null;
+        }
+
+        /**
+         * Adds the signature of the class (its bases and decorators) and of the classes and methods in its body.
+         */
+        private void addSignatures(String path, ClassDef node) {
+            String name = getName(path, node.name);
+            FastStringBuffer buf = new FastStringBuffer("class ", 60).append(name).append('(');
+            appendExprs(buf, node.bases);
+            buf.append(')');
+            appendDecorators(buf, node.decs);
+            exportedNames.add(buf.toString());
+
+            if (node.body != null) {
+                for (SimpleNode child : node.body) {
+                    if (child instanceof ClassDef) {
+                        addSignatures(name, (ClassDef) child);
+
+                    } else if (child instanceof FunctionDef) {
+                        addSignature(name, (FunctionDef) child);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the signature of the function (the names of its arguments, how many have defaults and its
+         * decorators).
+         */
+        private void addSignature(String path, FunctionDef node) {
+            FastStringBuffer buf = new FastStringBuffer("def ", 60).append(getName(path, node.name)).append('(');
+            argumentsType args = node.args;
+            if (args != null) {
+                appendExprs(buf, args.args);
+                buf.append(" defaults=").append(args.defaults != null ? args.defaults.length : 0);
+                if (args.vararg instanceof NameTok) {
+                    buf.append(" *").append(((NameTok) args.vararg).id);
+                }
+                if (args.kwonlyargs != null && args.kwonlyargs.length > 0) {
+                    buf.append(" kwonly=");
+                    appendExprs(buf, args.kwonlyargs);
+                }
+                if (args.kwarg instanceof NameTok) {
+                    buf.append(" **").append(((NameTok) args.kwarg).id);
+                }
+            }
+            buf.append(')');
+            appendDecorators(buf, node.decs);
+            exportedNames.add(buf.toString());
+        }
+
+        private String getName(String path, NameTokType name) {
+            String id = name instanceof NameTok ? ((NameTok) name).id : "";
+            return path == null ? id : path + "." + id;
+        }
+
+        private void appendExprs(FastStringBuffer buf, exprType[] exprs) {
+            if (exprs != null) {
+                for (exprType expr : exprs) {
+                    buf.append(expr != null ? NodeUtils.getFullRepresentationString(expr) : "").append(',');
+                }
+            }
+        }
+
+        private void appendDecorators(FastStringBuffer buf, decoratorsType[] decs) {
+            if (decs != null) {
+                for (decoratorsType dec : decs) {
+                    if (dec != null && dec.func != null) {
+                        buf.append(" @").append(NodeUtils.getFullRepresentationString(dec.func));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Object visitLambda(Lambda node) throws Exception {
+            return null;
+        }
+
+        @Override
+        public Object visitImport(Import node) throws Exception {
+            addImported("import ", node.names);
+            return null;
+        }
+
+        @Override
+        public Object visitImportFrom(ImportFrom node) throws Exception {
+            FastStringBuffer buf = new FastStringBuffer("from ", 40);
+            buf.appendN('.', node.level);
+            if (node.module instanceof NameTok) {
+                buf.append(((NameTok) node.module).id);
+            }
+            buf.append(" import ");
+            if (node.names == null || node.names.length == 0) {
+                exportedNames.add(buf.append('*').toString());
+            } else {
+                addImported(buf.toString(), node.names);
+            }
+            return null;
+        }
+
+        private void addImported(String prefix, aliasType[] names) {
+            if (names == null) {
+                return;
+            }
+            for (aliasType alias : names) {
+                if (alias != null && alias.name instanceof NameTok) {
+                    FastStringBuffer buf = new FastStringBuffer(prefix, 20);
+                    buf.append(((NameTok) alias.name).id);
+                    if (alias.asname instanceof NameTok) {
+                        buf.append(" as ").append(((NameTok) alias.asname).id);
+                    }
+                    exportedNames.add(buf.toString());
+                }
+            }
+        }
+
+        @Override
+        public Object visitAssign(Assign node) throws Exception {
+            if (node.targets != null) {
+                for (exprType target : node.targets) {
+                    if (isAll(target)) {
+                        addAll("__all__ = ", node.value);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitAugAssign(AugAssign node) throws Exception {
+            if (isAll(node.target)) {
+                addAll("__all__ += ", node.value);
+            }
+            return null;
+        }
+
+        private boolean isAll(exprType target) {
+            return target instanceof Name && "__all__".equals(((Name) target).id);
+        }
+
+        /**
+         * Adds the strings and names in the value assigned to __all__ as a single entry.
+         */
+        private void addAll(String prefix, exprType value) throws Exception {
+            final FastStringBuffer buf = new FastStringBuffer(prefix, 80);
+            if (value != null) {
+                value.accept(new VisitorBase() {
+
+                    @Override
+                    public Object visitStr(Str node) throws Exception {
+                        buf.append('\'').append(node.s).append("',");
+                        return null;
+                    }
+
+                    @Override
+                    public Object visitName(Name node) throws Exception {
+                        buf.append(node.id).append(',');
+                        return null;
+                    }
+
+                    @Override
+                    protected Object unhandled_node(SimpleNode node) throws Exception {
+                        return null;
+                    }
+
+                    @Override
+                    public void traverse(SimpleNode node) throws Exception {
+                        node.traverse(this);
+                    }
+                });
+            }
+            exportedNames.add(buf.toString());
+        }
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            return null;
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+    }
+}
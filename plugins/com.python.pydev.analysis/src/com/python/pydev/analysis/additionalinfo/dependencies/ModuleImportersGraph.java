@@ -0,0 +1,404 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.python.pydev.core.FastBufferedReader;
+import org.python.pydev.core.ObjectsPool;
+import org.python.pydev.core.ObjectsPool.ObjectsPoolMap;
+import org.python.pydev.core.docutils.StringUtils;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+/**
+ * Keeps the modules imported by each module (as found by the ImportChecker when the module was analyzed) and the
+ * inverse (module -> modules that import it), so that when the names exported by a module change, only the modules
+ * that depend on it have to be analyzed again.
+ *
+ * It also keeps a hash of the names exported by each module, so that we can know whether those actually changed.
+ *
+ * Note: this class is not synchronized (clients must synchronize the access to it).
+ */
+public final class ModuleImportersGraph {
+
+    private static final String[] EMPTY = new String[0];
+
+    /**
+     * Initial value for the hashes computed with the hash methods.
+     */
+    public static final long HASH_START = 0xcbf29ce484222325L;
+
+    /**
+     * The information on a module that was analyzed.
+     */
+    private static final class ModuleEntry {
+
+        private String[] imported = EMPTY;
+
+        private String[] wildImported = EMPTY;
+
+        private boolean hasExportsHash;
+
+        private long exportsHash;
+
+        private boolean isEmpty() {
+            return !hasExportsHash && imported.length == 0;
+        }
+    }
+
+    /**
+     * module name -> what we know about it
+     */
+    private final Map<String, ModuleEntry> modules = new HashMap<String, ModuleEntry>();
+
+    /**
+     * module name -> modules that import it (including the ones that do a wild import)
+     */
+    private final Map<String, Set<String>> importedToImporters = new HashMap<String, Set<String>>();
+
+    /**
+     * module name -> modules that do a wild import on it
+     */
+    private final Map<String, Set<String>> wildImportedToImporters = new HashMap<String, Set<String>>();
+
+    /**
+     * Sets the modules imported by the given module (removing the previous ones).
+     *
+     * @param imported the modules imported (a wild imported module should be in both collections).
+     * @param wildImported the modules on which a wild import is done.
+     */
+    public void setImports(String moduleName, Collection<String> imported, Collection<String> wildImported) {
+        ModuleEntry entry = getOrCreateEntry(moduleName);
+        removeImports(moduleName, entry);
+
+        entry.imported = toInternedArray(imported, moduleName);
+        entry.wildImported = toInternedArray(wildImported, moduleName);
+        addImports(moduleName, entry);
+    }
+
+    /**
+     * Updates the hash of the names exported by the given module.
+     *
+     * @return true if the names changed (or if there was no previous information on the module).
+     */
+    public boolean setExportedNames(String moduleName, Collection<String> exportedNames) {
+        long hash = computeExportsHash(exportedNames);
+        ModuleEntry entry = getOrCreateEntry(moduleName);
+        boolean changed = !entry.hasExportsHash || entry.exportsHash != hash;
+        entry.hasExportsHash = true;
+        entry.exportsHash = hash;
+        return changed;
+    }
+
+    /**
+     * @return the hash of the names exported by the given module (or null if it's not available).
+     */
+    public Long getExportsHash(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if (entry == null || !entry.hasExportsHash) {
+            return null;
+        }
+        return entry.exportsHash;
+    }
+
+    /**
+     * @return the modules whose exported names may change the analysis of the given module: the modules it imports
+     * and the modules those import (and so on, as a module may re-export the names -- and so, the signatures -- it
+     * imports). Returns null if the imports of the module are not known.
+     */
+    public Set<String> getModulesAffectingAnalysis(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if (entry == null) {
+            return null;
+        }
+        Set<String> ret = new TreeSet<String>();
+        LinkedList<String> toVisit = new LinkedList<String>(Arrays.asList(entry.imported));
+        while (toVisit.size() > 0) {
+            String current = toVisit.removeFirst();
+            if (!ret.add(current)) {
+                continue;
+            }
+            ModuleEntry importedEntry = modules.get(current);
+            if (importedEntry != null) {
+                toVisit.addAll(Arrays.asList(importedEntry.imported));
+            }
+        }
+        ret.remove(moduleName);
+        return ret;
+    }
+
+    /**
+     * Removes the information on the modules which are not in the passed names.
+     */
+    public void retainModules(Set<String> moduleNames) {
+        for (String moduleName : new ArrayList<String>(modules.keySet())) {
+            if (!moduleNames.contains(moduleName)) {
+                remove(moduleName);
+            }
+        }
+    }
+
+    /**
+     * Removes the information on what the given module imports and exports (but not on who imports it, as
+     * those modules still depend on it even if it doesn't exist anymore).
+     */
+    public void remove(String moduleName) {
+        ModuleEntry entry = modules.remove(moduleName);
+        if (entry != null) {
+            removeImports(moduleName, entry);
+        }
+    }
+
+    public void clear() {
+        modules.clear();
+        importedToImporters.clear();
+        wildImportedToImporters.clear();
+    }
+
+    /**
+     * @return the number of modules with some information.
+     */
+    public int size() {
+        return modules.size();
+    }
+
+    /**
+     * @return the modules imported by the given module.
+     */
+    public Set<String> getImported(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if (entry == null) {
+            return new HashSet<String>(0);
+        }
+        return new HashSet<String>(Arrays.asList(entry.imported));
+    }
+
+    /**
+     * @return the modules which should be analyzed again when the names exported by the given module change: the
+     * modules that import it and, for the modules that do a wild import on it, the modules that import those
+     * (and so on, as a wild import re-exports the names changed). The module itself is never returned.
+     */
+    public Set<String> getDependents(String moduleName) {
+        Set<String> dependents = new HashSet<String>();
+        Set<String> visitedWild = new HashSet<String>();
+        visitedWild.add(moduleName);
+
+        LinkedList<String> toVisit = new LinkedList<String>();
+        toVisit.add(moduleName);
+        while (toVisit.size() > 0) {
+            String current = toVisit.removeFirst();
+            Set<String> importers = importedToImporters.get(current);
+            if (importers != null) {
+                dependents.addAll(importers);
+            }
+            Set<String> wildImporters = wildImportedToImporters.get(current);
+            if (wildImporters != null) {
+                for (String wildImporter : wildImporters) {
+                    if (visitedWild.add(wildImporter)) {
+                        toVisit.add(wildImporter);
+                    }
+                }
+            }
+        }
+        dependents.remove(moduleName);
+        return dependents;
+    }
+
+    private ModuleEntry getOrCreateEntry(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if (entry == null) {
+            entry = new ModuleEntry();
+            modules.put(ObjectsPool.intern(moduleName), entry);
+        }
+        return entry;
+    }
+
+    private void addImports(String moduleName, ModuleEntry entry) {
+        for (String imported : entry.imported) {
+            addToMap(importedToImporters, imported, moduleName);
+        }
+        for (String imported : entry.wildImported) {
+            addToMap(wildImportedToImporters, imported, moduleName);
+        }
+    }
+
+    private void removeImports(String moduleName, ModuleEntry entry) {
+        for (String imported : entry.imported) {
+            removeFromMap(importedToImporters, imported, moduleName);
+        }
+        for (String imported : entry.wildImported) {
+            removeFromMap(wildImportedToImporters, imported, moduleName);
+        }
+        entry.imported = EMPTY;
+        entry.wildImported = EMPTY;
+    }
+
+    private static void addToMap(Map<String, Set<String>> map, String key, String moduleName) {
+        Set<String> set = map.get(key);
+        if (set == null) {
+            set = new HashSet<String>(4);
+            map.put(key, set);
+        }
+        set.add(moduleName);
+    }
+
+    private static void removeFromMap(Map<String, Set<String>> map, String key, String moduleName) {
+        Set<String> set = map.get(key);
+        if (set != null) {
+            set.remove(moduleName);
+            if (set.size() == 0) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static String[] toInternedArray(Collection<String> names, String moduleName) {
+        if (names == null || names.size() == 0) {
+            return EMPTY;
+        }
+        ArrayList<String> ret = new ArrayList<String>(names.size());
+        for (String name : new TreeSet<String>(names)) {
+            if (name.length() > 0 && !name.equals(moduleName)) {
+                ret.add(ObjectsPool.intern(name));
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    /**
+     * @return a hash for the given names (which doesn't depend on the order of the names).
+     */
+    /*default*/static long computeExportsHash(Collection<String> exportedNames) {
+        long hash = HASH_START;
+        for (String name : new TreeSet<String>(exportedNames)) {
+            hash = hash(hash, name);
+        }
+        return hash;
+    }
+
+    /**
+     * @return the hash with the chars of the given string (FNV-1a) -- a separator is added after the string.
+     */
+    public static long hash(long hash, CharSequence chars) {
+        int len = chars.length();
+        for (int i = 0; i < len; i++) {
+            hash ^= chars.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= '\n';
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * @return the hash with the given value (FNV-1a on its bytes).
+     */
+    public static long hash(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes this graph in a format that may later be restored with loadFrom.
+     *
+     * The format is:
+     *
+     * module name|exports hash (or empty)|imported,imported,...|wild imported,wild imported,...
+     * (one line for each module)
+     */
+    public void writeTo(FastStringBuffer tempBuf) {
+        tempBuf.append("-- START DEPENDENCIES\n");
+        for (Entry<String, ModuleEntry> entry : modules.entrySet()) {
+            ModuleEntry moduleEntry = entry.getValue();
+            if (moduleEntry.isEmpty()) {
+                continue;
+            }
+            tempBuf.append(entry.getKey());
+            tempBuf.append('|');
+            if (moduleEntry.hasExportsHash) {
+                tempBuf.append(moduleEntry.exportsHash);
+            }
+            tempBuf.append('|');
+            appendNames(tempBuf, moduleEntry.imported);
+            tempBuf.append('|');
+            appendNames(tempBuf, moduleEntry.wildImported);
+            tempBuf.append('\n');
+        }
+        tempBuf.append("-- END DEPENDENCIES\n");
+    }
+
+    private static void appendNames(FastStringBuffer tempBuf, String[] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                tempBuf.append(',');
+            }
+            tempBuf.append(names[i]);
+        }
+    }
+
+    /**
+     * Loads from a reader a string that was acquired from writeTo (the "-- START DEPENDENCIES" line must've been
+     * already consumed).
+     */
+    public static ModuleImportersGraph loadFrom(FastBufferedReader reader, ObjectsPoolMap objectsPoolMap)
+            throws IOException {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        while (true) {
+            FastStringBuffer line = reader.readLine();
+            if (line == null || line.startsWith("-- ")) {
+                if (line != null && line.startsWith("-- END DEPENDENCIES")) {
+                    return graph;
+                }
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            String str = line.toString();
+            int i1 = str.indexOf('|');
+            int i2 = i1 == -1 ? -1 : str.indexOf('|', i1 + 1);
+            int i3 = i2 == -1 ? -1 : str.indexOf('|', i2 + 1);
+            if (i3 == -1) {
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            String moduleName = ObjectsPool.internLocal(objectsPoolMap, str.substring(0, i1));
+            ModuleEntry entry = new ModuleEntry();
+            if (i2 > i1 + 1) {
+                entry.hasExportsHash = true;
+                entry.exportsHash = Long.parseLong(str.substring(i1 + 1, i2));
+            }
+            entry.imported = loadNames(str.substring(i2 + 1, i3), objectsPoolMap);
+            entry.wildImported = loadNames(str.substring(i3 + 1), objectsPoolMap);
+            graph.modules.put(moduleName, entry);
+            graph.addImports(moduleName, entry);
+        }
+    }
+
+    private static String[] loadNames(String names, ObjectsPoolMap objectsPoolMap) {
+        if (names.length() == 0) {
+            return EMPTY;
+        }
+        ArrayList<String> ret = new ArrayList<String>();
+        for (String name : StringUtils.split(names, ',')) {
+            if (name.length() > 0) {
+                ret.add(ObjectsPool.internLocal(objectsPoolMap, name));
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+}
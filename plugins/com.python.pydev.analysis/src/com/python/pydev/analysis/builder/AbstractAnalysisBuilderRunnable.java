@@ -87,10 +87,26 @@ public abstract class AbstractAnalysisBuilderRunnable implements IAnalysisBuilde
         return forceAnalysis;
     }
 
-    public synchronized boolean getRunFinished() {
+    public boolean getRunFinished() {
         return runFinished;
     }
 
+    public KeyForAnalysisRunnable getKey() {
+        return key;
+    }
+
+    public void waitForRunFinished() {
+        synchronized (lock) {
+            while (!runFinished) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    //ignore
+                }
+            }
+        }
+    }
+
     public String getModuleName() {
         return moduleName;
     }
@@ -129,20 +145,10 @@ public abstract class AbstractAnalysisBuilderRunnable implements IAnalysisBuilde
 
                     //just to make sure that the analysis of the existing runnable had a request for stopping already
                     oldAnalysisBuilderThread.stopAnalysis();
+                    oldAnalysisBuilderThread.waitForRunFinished();
 
-                    int attempts = 0;
-                    while (!oldAnalysisBuilderThread.getRunFinished()) {
-                        attempts += 1;
-                        synchronized (lock) {
-                            try {
-                                Thread.sleep(50);
-                            } catch (InterruptedException e) {
-                                //ignore
-                            }
-                        }
-                    }
                     if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
-                        Log.toLogFile(this, "Starting analysis after attempts: " + attempts);
+                        Log.toLogFile(this, "Starting analysis after other finished.");
                     }
                 }
                 //that's all we need it for... we can already dispose of it.
@@ -160,16 +166,29 @@ public abstract class AbstractAnalysisBuilderRunnable implements IAnalysisBuilde
         } catch (Exception e) {
             Log.log(e);
         } finally {
-            try {
-                AnalysisBuilderRunnableFactory.removeFromThreads(key, this);
-            } catch (Throwable e) {
-                Log.log(e);
-            } finally {
+            finish();
+        }
+    }
+
+    public void finishWithoutRunning() {
+        stopAnalysis();
+        logOperationCancelled();
+        finish();
+    }
+
+    private void finish() {
+        try {
+            AnalysisBuilderRunnableFactory.removeFromThreads(key, this);
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            synchronized (lock) {
                 runFinished = true;
+                lock.notifyAll();
             }
-
-            dispose();
         }
+
+        dispose();
     }
 
     protected void dispose() {
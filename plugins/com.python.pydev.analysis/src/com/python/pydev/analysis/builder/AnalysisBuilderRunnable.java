@@ -11,6 +11,7 @@ package com.python.pydev.analysis.builder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -29,9 +30,11 @@ import com.aptana.shared_core.callbacks.ICallback;
 import com.python.pydev.analysis.AnalysisPreferences;
 import com.python.pydev.analysis.IAnalysisPreferences;
 import com.python.pydev.analysis.OccurrencesAnalyzer;
-import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo;
 import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
+import com.python.pydev.analysis.additionalinfo.IInfo;
 import com.python.pydev.analysis.messages.IMessage;
+import com.python.pydev.analysis.visitors.ImportChecker;
 
 /**
  * This class is used to do analysis on a thread, so that if an analysis is asked for some analysis that
@@ -153,7 +156,8 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable {
                 Log.log("Finished analysis: null nature -- " + moduleName);
                 return;
             }
-            AbstractAdditionalTokensInfo info = AdditionalProjectInterpreterInfo.getAdditionalInfoForProject(nature);
+            AbstractAdditionalDependencyInfo info = AdditionalProjectInterpreterInfo
+                    .getAdditionalInfoForProject(nature);
 
             if (info == null) {
                 Log.log("Unable to get additional info for: " + r + " -- " + moduleName);
@@ -191,7 +195,19 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable {
 
             checkStop();
             //recreate the ctx insensitive info
-            recreateCtxInsensitiveInfo(info, module, nature, r);
+            List<IInfo> createdInfos = recreateCtxInsensitiveInfo(info, module, nature, r);
+
+            //if the names exported changed, the modules that depend on this one must be analyzed again (also on a
+            //full build, as the dependents may have reused cached results based on the previous names -- or, for a
+            //module which still had no names, i.e.: created while the workspace was closed, on no names at all).
+            if (info.setModuleExports(moduleName, createdInfos, module.getAst())) {
+                Set<String> dependents = info.getDependentModules(moduleName);
+                if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                    Log.toLogFile(this, "Exported names changed. Dependents: " + dependents + " -- " + moduleName);
+                }
+                AnalysisBuilderRunnableFactory.createRunnablesForDependents(nature, dependents);
+                AnalysisBuilderRunnableFactory.createRunnablesForDependentsInReferencingProjects(nature, moduleName);
+            }
 
             if (onlyRecreateCtxInsensitiveInfo) {
                 if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
@@ -228,13 +244,48 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable {
                 return;
             }
 
-            //ok, let's do it
-            OccurrencesAnalyzer analyzer = new OccurrencesAnalyzer();
-            checkStop();
-            IMessage[] messages = analyzer.analyzeDocument(nature, module, analysisPreferences, document,
-                    this.internalCancelMonitor, DefaultIndentPrefs.get());
+            //check if the results of a previous analysis with the same contents and settings can be reused
+            AnalysisResultsCache cache = AnalysisResultsCache.getForProject(r.getProject());
+            long settingsFingerprint = 0;
+            boolean useCache = true;
+            try {
+                settingsFingerprint = AnalysisResultsCache.computeSettingsFingerprint(nature, analysisPreferences,
+                        DefaultIndentPrefs.get());
+            } catch (Exception e) {
+                Log.log("Unable to compute the analysis settings fingerprint (results won't be cached).", e);
+                useCache = false;
+            }
 
-            checkStop();
+            IMessage[] messages = null;
+            if (useCache && !forceAnalysis) {
+                long key = AnalysisResultsCache.computeKey(document, settingsFingerprint,
+                        AnalysisResultsCache.computeImportsHash(moduleName, nature, info));
+                messages = cache.getMessages(moduleName, key);
+                if (messages != null && DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                    Log.toLogFile(this, "Reusing cached analysis results -- " + moduleName);
+                }
+            }
+
+            if (messages == null) {
+                //ok, let's do it
+                OccurrencesAnalyzer analyzer = new OccurrencesAnalyzer();
+                checkStop();
+                messages = analyzer.analyzeDocument(nature, module, analysisPreferences, document,
+                        this.internalCancelMonitor, DefaultIndentPrefs.get());
+
+                checkStop();
+                ImportChecker importChecker = analyzer.getImportChecker();
+                if (importChecker != null) {
+                    info.setModuleImports(moduleName, importChecker.getImportedModules(),
+                            importChecker.getWildImportedModules());
+                }
+                if (useCache && analysisCause == ANALYSIS_CAUSE_BUILDER) {
+                    //the key is computed again as the imports may have changed in this analysis.
+                    long key = AnalysisResultsCache.computeKey(document, settingsFingerprint,
+                            AnalysisResultsCache.computeImportsHash(moduleName, nature, info));
+                    cache.putMessages(moduleName, key, messages, document);
+                }
+            }
             if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
                 Log.toLogFile(this, "Adding markers for module: " + moduleName);
                 //for (IMessage message : messages) {
@@ -292,9 +343,9 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable {
     }
 
     /**
-     * @return false if there's no modification among the current version of the file and the last version analyzed.
+     * @return the infos created for the module.
      */
-    private void recreateCtxInsensitiveInfo(AbstractAdditionalTokensInfo info, SourceModule sourceModule,
+    private List<IInfo> recreateCtxInsensitiveInfo(AbstractAdditionalDependencyInfo info, SourceModule sourceModule,
             IPythonNature nature, IResource r) {
 
         //info.removeInfoFromModule(sourceModule.getName()); -- does not remove info from the module because this
@@ -306,7 +357,7 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable {
         } else {
             generateDelta = true;
         }
-        info.addAstInfo(sourceModule.getAst(), sourceModule.getModulesKey(), generateDelta);
+        return info.addAstInfo(sourceModule.getAst(), sourceModule.getModulesKey(), generateDelta);
     }
 
 }
@@ -6,22 +6,37 @@
  */
 package com.python.pydev.analysis.builder;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.builder.PyDevBuilderPrefPage;
+import org.python.pydev.core.FileUtilsFileBuffer;
 import org.python.pydev.core.IModule;
+import org.python.pydev.core.IModulesManager;
 import org.python.pydev.core.IPythonNature;
+import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.ModulesKeyForZip;
 import org.python.pydev.core.log.Log;
+import org.python.pydev.editor.PyEdit;
 import org.python.pydev.logging.DebugSettings;
+import org.python.pydev.plugin.nature.PythonNature;
 
 import com.aptana.shared_core.cache.LRUCache;
 import com.aptana.shared_core.callbacks.ICallback;
 import com.aptana.shared_core.structure.Tuple;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo;
+import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
 
 public class AnalysisBuilderRunnableFactory {
 
@@ -257,4 +272,120 @@ public class AnalysisBuilderRunnableFactory {
         }
     }
 
+    /**
+     * Schedules the analysis of the given modules (the modules which depend on some module whose exported names
+     * changed), so that markers such as the ones for unresolved imports are updated without a full build.
+     * 
+     * The modules opened in an editor are always analyzed (the analysis is forced) and the others are only analyzed
+     * if the analysis is not restricted to the active editor (otherwise they're skipped).
+     */
+    /*Default*/static void createRunnablesForDependents(final IPythonNature nature, Collection<String> dependents) {
+        if (nature == null || dependents.size() == 0) {
+            return;
+        }
+        IProject project = nature.getProject();
+        if (project == null || !project.isOpen()) {
+            return;
+        }
+        IModulesManager modulesManager = nature.getAstManager().getModulesManager();
+        boolean analyzeOnlyActiveEditor = PyDevBuilderPrefPage.getAnalyzeOnlyActiveEditor();
+
+        for (final String dependent : dependents) {
+            IFile file = getWorkspaceFile(modulesManager, project, dependent);
+            if (file == null) {
+                continue; //not a module in this project (i.e.: a dependency in some other project)
+            }
+            boolean editorOpen = PyEdit.isEditorOpenForResource(file);
+            if (analyzeOnlyActiveEditor && !editorOpen) {
+                if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                    Log.toLogFile("Skipping analysis of dependent module (editor not opened): " + dependent,
+                            AnalysisBuilderRunnableFactory.class);
+                }
+                continue;
+            }
+            IDocument doc = FileUtilsFileBuffer.getDocFromResource(file);
+            if (doc == null) {
+                continue;
+            }
+
+            //the module is only gotten when the analysis actually runs.
+            ICallback<IModule, Integer> moduleCallback = new ICallback<IModule, Integer>() {
+
+                public IModule call(Integer arg) {
+                    return nature.getAstManager().getModule(dependent, nature, true);
+                }
+            };
+
+            IAnalysisBuilderRunnable runnable = createRunnable(doc, file, moduleCallback, false, dependent,
+                    editorOpen, IAnalysisBuilderRunnable.ANALYSIS_CAUSE_BUILDER, nature, System.currentTimeMillis(),
+                    file.getModificationStamp());
+            if (runnable != null) {
+                if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                    Log.toLogFile(runnable, "Scheduling analysis of dependent module: " + dependent);
+                }
+                AnalysisScheduler.getSingleton().schedule(runnable);
+            }
+        }
+    }
+
+    /**
+     * Schedules the analysis of the modules in other projects which depend on the given module (each project keeps
+     * the imports of its own modules, so, the projects which reference the project of the module -- directly or
+     * indirectly -- are checked).
+     */
+    /*Default*/static void createRunnablesForDependentsInReferencingProjects(IPythonNature nature, String moduleName) {
+        if (nature == null) {
+            return;
+        }
+        IProject project = nature.getProject();
+        if (project == null || !project.isOpen()) {
+            return;
+        }
+        Set<IProject> visited = new HashSet<IProject>();
+        visited.add(project);
+        LinkedList<IProject> toVisit = new LinkedList<IProject>();
+        toVisit.add(project);
+        while (toVisit.size() > 0) {
+            for (IProject referencing : toVisit.removeFirst().getReferencingProjects()) {
+                if (!visited.add(referencing) || !referencing.isOpen()) {
+                    continue;
+                }
+                toVisit.add(referencing);
+                PythonNature referencingNature = PythonNature.getPythonNature(referencing);
+                if (referencingNature == null) {
+                    continue;
+                }
+                try {
+                    AbstractAdditionalDependencyInfo info = AdditionalProjectInterpreterInfo
+                            .getAdditionalInfoForProject(referencingNature);
+                    if (info != null) {
+                        createRunnablesForDependents(referencingNature, info.getDependentModules(moduleName));
+                    }
+                } catch (Exception e) {
+                    Log.log(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the file in the workspace for the given module (only if it's a direct module in the given project).
+     */
+    private static IFile getWorkspaceFile(IModulesManager modulesManager, IProject project, String moduleName) {
+        SortedMap<ModulesKey, ModulesKey> keys = modulesManager.getAllDirectModulesStartingWith(moduleName);
+        ModulesKey key = keys.get(new ModulesKey(moduleName, null));
+        if (key == null || key.file == null || key instanceof ModulesKeyForZip) {
+            return null;
+        }
+        IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(key.file.toURI());
+        if (files != null) {
+            for (IFile file : files) {
+                if (project.equals(file.getProject()) && file.exists()) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
 }
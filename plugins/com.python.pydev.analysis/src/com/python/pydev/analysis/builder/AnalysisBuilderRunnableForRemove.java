@@ -6,6 +6,8 @@
  */
 package com.python.pydev.analysis.builder;
 
+import java.util.Set;
+
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.MisconfigurationException;
 import org.python.pydev.core.log.Log;
@@ -41,6 +43,32 @@ public class AnalysisBuilderRunnableForRemove extends AbstractAnalysisBuilderRun
             Log.toLogFile(this, "Removing additional info from: " + moduleName);
         }
         removeInfoForModule(moduleName, nature, isFullBuild);
+        if (!isFullBuild) {
+            analyzeDependents(moduleName, nature);
+        }
+    }
+
+    /**
+     * Schedules the analysis of the modules that depended on the removed module (so that their imports are now
+     * reported as unresolved).
+     */
+    private static void analyzeDependents(String moduleName, IPythonNature nature) {
+        if (moduleName != null && nature != null) {
+            AbstractAdditionalDependencyInfo info;
+            try {
+                info = AdditionalProjectInterpreterInfo.getAdditionalInfoForProject(nature);
+            } catch (MisconfigurationException e) {
+                Log.log(e);
+                return;
+            }
+            Set<String> dependents = info.getDependentModules(moduleName);
+            info.removeModuleDependencies(moduleName);
+            if (nature.getProject() != null) {
+                AnalysisResultsCache.getForProject(nature.getProject()).remove(moduleName);
+            }
+            AnalysisBuilderRunnableFactory.createRunnablesForDependents(nature, dependents);
+            AnalysisBuilderRunnableFactory.createRunnablesForDependentsInReferencingProjects(nature, moduleName);
+        }
     }
 
     /**
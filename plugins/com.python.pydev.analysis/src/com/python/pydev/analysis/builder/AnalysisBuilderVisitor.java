@@ -10,17 +10,19 @@
 package com.python.pydev.analysis.builder;
 
 import java.io.File;
+import java.util.HashSet;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.builder.PyDevBuilderVisitor;
+import org.python.pydev.core.ICodeCompletionASTManager;
 import org.python.pydev.core.IModule;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.MisconfigurationException;
+import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.callbacks.ICallback0;
-import org.python.pydev.core.concurrency.RunnableAsJobsPoolThread;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.revisited.PyCodeCompletionVisitor;
 import org.python.pydev.editor.codecompletion.revisited.modules.SourceModule;
@@ -177,13 +179,13 @@ public class AnalysisBuilderVisitor extends PyDevBuilderVisitor {
 
     /**
      * Depending on whether we're in a full build or delta build, this method will run the runnable directly
-     * or schedule it as a job.
+     * or schedule it in the analysis scheduler.
      */
     private void execRunnable(final String moduleName, final IAnalysisBuilderRunnable runnable) {
         if (isFullBuild()) {
             runnable.run();
         } else {
-            RunnableAsJobsPoolThread.getSingleton().scheduleToRun(runnable, "PyDev: Code Analysis:" + moduleName);
+            AnalysisScheduler.getSingleton().schedule(runnable);
         }
     }
 
@@ -240,6 +242,16 @@ public class AnalysisBuilderVisitor extends PyDevBuilderVisitor {
             }
 
             info.clearAllInfo();
+
+            //the dependencies are kept among full builds (only the ones of modules which no longer exist are removed).
+            ICodeCompletionASTManager astManager = nature.getAstManager();
+            if (astManager != null) {
+                HashSet<String> moduleNames = new HashSet<String>();
+                for (ModulesKey key : astManager.getModulesManager().getOnlyDirectModules()) {
+                    moduleNames.add(key.name);
+                }
+                info.retainModuleDependencies(moduleNames);
+            }
         }
     }
 
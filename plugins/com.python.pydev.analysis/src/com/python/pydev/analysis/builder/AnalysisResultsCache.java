@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.builder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jface.text.IDocument;
+import org.python.pydev.core.IIndentPrefs;
+import org.python.pydev.core.IInterpreterInfo;
+import org.python.pydev.core.IPythonNature;
+import org.python.pydev.core.IPythonPathNature;
+import org.python.pydev.core.cache.CompleteIndexKey;
+import org.python.pydev.core.cache.IDiskCacheStore;
+import org.python.pydev.core.cache.SegmentFileDiskCacheStore;
+import org.python.pydev.core.log.Log;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+import com.python.pydev.analysis.AnalysisPlugin;
+import com.python.pydev.analysis.IAnalysisPreferences;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo;
+import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
+import com.python.pydev.analysis.additionalinfo.dependencies.ModuleImportersGraph;
+import com.python.pydev.analysis.messages.CachedMessage;
+import com.python.pydev.analysis.messages.IMessage;
+import com.python.pydev.analysis.ui.AnalysisPreferencesPage;
+
+/**
+ * Keeps the messages generated in the analysis of each module of a project (persisted, so that the analysis of
+ * modules which didn't change doesn't have to be redone on a full build or when the workspace is restarted).
+ *
+ * The messages are only reused if the key used when they were stored is the same, where the key is computed from:
+ * - the contents of the module;
+ * - the settings used in the analysis (preferences, interpreter, pythonpath);
+ * - the names exported by the modules it imports (see: AbstractAdditionalDependencyInfo#getModulesAffectingAnalysis).
+ *
+ * Only the results of analyses requested by the builder are stored (the results of the analyses done while the
+ * user is typing would hardly ever be reused).
+ *
+ * The store of a project is disposed when the project is closed or deleted (and all the stores are disposed when
+ * the plugin is stopped).
+ *
+ * Note: changes in the modules of the interpreter are only detected through its configuration.
+ */
+public final class AnalysisResultsCache {
+
+    /**
+     * project name -> cache for the project
+     */
+    private static final Map<String, AnalysisResultsCache> projectNameToCache = new HashMap<String, AnalysisResultsCache>();
+
+    /**
+     * Marks the modules which don't have the hash of the names they export (i.e.: system modules).
+     */
+    private static final long NO_EXPORTS_HASH = 0;
+
+    /**
+     * Disposes the cache of projects being closed or deleted (only registered while some cache is open).
+     */
+    private static final IResourceChangeListener closeListener = new IResourceChangeListener() {
+
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResource resource = event.getResource();
+            if (resource instanceof IProject) {
+                disposeForProject((IProject) resource);
+            }
+        }
+    };
+
+    private final IDiskCacheStore store;
+
+    private final Object lock = new Object();
+
+    /**
+     * After disposed, the cache doesn't return nor store anything (runnables still holding it may still call it).
+     */
+    private boolean disposed = false;
+
+    /*default*/AnalysisResultsCache(IDiskCacheStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return the cache for the given project.
+     */
+    public static synchronized AnalysisResultsCache getForProject(IProject project) {
+        String name = project.getName();
+        AnalysisResultsCache cache = projectNameToCache.get(name);
+        if (cache == null) {
+            File folder = new File(AnalysisPlugin.getStorageDirForProject(project), "v1_analysiscache");
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+            if (projectNameToCache.size() == 0) {
+                ResourcesPlugin.getWorkspace().addResourceChangeListener(closeListener,
+                        IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+            }
+            cache = new AnalysisResultsCache(new SegmentFileDiskCacheStore(folder, null));
+            projectNameToCache.put(name, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Disposes the cache of the given project (a new one is opened if it's requested again).
+     */
+    public static synchronized void disposeForProject(IProject project) {
+        AnalysisResultsCache cache = projectNameToCache.remove(project.getName());
+        if (cache != null) {
+            cache.dispose();
+            if (projectNameToCache.size() == 0) {
+                ResourcesPlugin.getWorkspace().removeResourceChangeListener(closeListener);
+            }
+        }
+    }
+
+    /**
+     * Disposes the caches of all the projects (called when the plugin is stopped).
+     */
+    public static synchronized void disposeAll() {
+        if (projectNameToCache.size() == 0) {
+            return;
+        }
+        for (AnalysisResultsCache cache : projectNameToCache.values()) {
+            cache.dispose();
+        }
+        projectNameToCache.clear();
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(closeListener);
+    }
+
+    private void dispose() {
+        synchronized (lock) {
+            if (!disposed) {
+                disposed = true;
+                store.flush();
+                store.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return the messages stored for the module with the given key (or null if there are no messages for that key).
+     */
+    public IMessage[] getMessages(String moduleName, long key) {
+        String contents;
+        synchronized (lock) {
+            if (disposed) {
+                return null;
+            }
+            contents = store.read(new CompleteIndexKey(moduleName));
+        }
+        if (contents == null) {
+            return null;
+        }
+        try {
+            return fromContents(contents, key);
+        } catch (Exception e) {
+            Log.log("Error restoring analysis results for: " + moduleName, e);
+            remove(moduleName);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the messages for the given module (the positions of the messages are resolved in the passed document).
+     */
+    public void putMessages(String moduleName, long key, IMessage[] messages, IDocument document) {
+        String contents = toContents(key, messages, document);
+        synchronized (lock) {
+            if (!disposed) {
+                store.write(new CompleteIndexKey(moduleName), contents);
+            }
+        }
+    }
+
+    public void remove(String moduleName) {
+        synchronized (lock) {
+            if (!disposed) {
+                store.remove(new CompleteIndexKey(moduleName));
+            }
+        }
+    }
+
+    // Key computation ------------------------------------------------------------------------------------------
+
+    /**
+     * @param settingsFingerprint see: computeSettingsFingerprint
+     * @param importsHash see: computeImportsHash
+     * @return the key for the analysis of the given document.
+     */
+    public static long computeKey(IDocument document, long settingsFingerprint, long importsHash) {
+        long h = ModuleImportersGraph.hash(ModuleImportersGraph.HASH_START, document.get());
+        h = ModuleImportersGraph.hash(h, settingsFingerprint);
+        return ModuleImportersGraph.hash(h, importsHash);
+    }
+
+    /**
+     * @return a hash of the names exported by the modules that may change the analysis of the given module (which
+     * includes the class members and signatures -- see ExportedNames -- of the modules imported directly or through
+     * other modules). The hash of modules in referenced projects is gotten from the info of those projects.
+     */
+    public static long computeImportsHash(String moduleName, IPythonNature nature,
+            AbstractAdditionalDependencyInfo info) throws Exception {
+        Set<String> modules = info.getModulesAffectingAnalysis(moduleName);
+        if (modules == null) {
+            return ModuleImportersGraph.HASH_START; //imports still not known (the module was still not analyzed).
+        }
+        List<AbstractAdditionalTokensInfo> referencedInfos = null;
+        long h = ModuleImportersGraph.HASH_START;
+        for (String module : modules) {
+            h = ModuleImportersGraph.hash(h, module);
+            Long exportsHash = info.getModuleExportsHash(module);
+            if (exportsHash == null) {
+                if (referencedInfos == null) {
+                    referencedInfos = AdditionalProjectInterpreterInfo.getAdditionalInfo(nature, false, false);
+                }
+                for (AbstractAdditionalTokensInfo referencedInfo : referencedInfos) {
+                    if (referencedInfo != info && referencedInfo instanceof AbstractAdditionalDependencyInfo) {
+                        exportsHash = ((AbstractAdditionalDependencyInfo) referencedInfo)
+                                .getModuleExportsHash(module);
+                        if (exportsHash != null) {
+                            break;
+                        }
+                    }
+                }
+            }
+            h = ModuleImportersGraph.hash(h, exportsHash != null ? exportsHash : NO_EXPORTS_HASH);
+        }
+        return h;
+    }
+
+    /**
+     * @return a hash of the settings which may change the results of the analysis.
+     */
+    public static long computeSettingsFingerprint(IPythonNature nature, IAnalysisPreferences prefs,
+            IIndentPrefs indentPrefs) throws Exception {
+        FastStringBuffer buf = new FastStringBuffer();
+        for (int type = IAnalysisPreferences.TYPE_UNUSED_IMPORT; type <= IAnalysisPreferences.TYPE_ARGUMENTS_MISATCH; type++) {
+            if (type == IAnalysisPreferences.TYPE_UNDEFINED_VARIABLE_IN_SELF) {
+                continue; //only generated on demand (has no preferences)
+            }
+            buf.append(type).append(':').append(prefs.getSeverityForType(type)).append(':')
+                    .append(String.valueOf(prefs.getRequiredMessageToIgnore(type))).append('\n');
+        }
+        appendSorted(buf, prefs.getNamesIgnoredByUnusedVariable());
+        appendSorted(buf, prefs.getModuleNamePatternsToBeIgnored());
+        appendSorted(buf, prefs.getTokensAlwaysInGlobals());
+
+        buf.append(indentPrefs.getTabWidth()).append(':').append(indentPrefs.getUseSpaces(true)).append('\n');
+        buf.append(String.valueOf(AnalysisPreferencesPage.getPep8Location())).append('\n');
+        String[] pep8CommandLine = AnalysisPreferencesPage.getPep8CommandLine();
+        if (pep8CommandLine != null) {
+            for (String s : pep8CommandLine) {
+                buf.append(s).append(' ');
+            }
+        }
+        buf.append('\n');
+
+        buf.append(nature.getGrammarVersion()).append('\n');
+        IInterpreterInfo interpreterInfo = nature.getProjectInterpreter();
+        if (interpreterInfo != null) {
+            buf.append(interpreterInfo.getExecutableOrJar()).append('\n');
+            for (String s : interpreterInfo.getPythonPath()) {
+                buf.append(s).append('\n');
+            }
+        }
+        IPythonPathNature pythonPathNature = nature.getPythonPathNature();
+        if (pythonPathNature != null) {
+            buf.append(pythonPathNature.getOnlyProjectPythonPathStr(true)).append('\n');
+        }
+        return ModuleImportersGraph.hash(ModuleImportersGraph.HASH_START, buf.toString());
+    }
+
+    private static void appendSorted(FastStringBuffer buf, Set<String> strings) {
+        if (strings != null) {
+            for (String s : new TreeSet<String>(strings)) {
+                buf.append(s).append(',');
+            }
+        }
+        buf.append('\n');
+    }
+
+    // Persistence ----------------------------------------------------------------------------------------------
+
+    /**
+     * The contents stored are:
+     *
+     * key
+     * number of messages
+     * and for each message:
+     * type|severity|start line|start col|end line|end col|number of additional infos
+     * the message and the additional infos (each written as length:contents)
+     */
+    /*default*/static String toContents(long key, IMessage[] messages, IDocument document) {
+        FastStringBuffer buf = new FastStringBuffer(64 + (messages.length * 80));
+        buf.append(key).append('\n');
+        buf.append(messages.length).append('\n');
+        for (IMessage m : messages) {
+            List<String> additionalInfo = m.getAdditionalInfo();
+            buf.append(m.getType()).append('|');
+            buf.append(m.getSeverity()).append('|');
+            buf.append(m.getStartLine(document)).append('|');
+            buf.append(m.getStartCol(document)).append('|');
+            buf.append(m.getEndLine(document)).append('|');
+            buf.append(m.getEndCol(document)).append('|');
+            buf.append(additionalInfo != null ? additionalInfo.size() : -1).append('\n');
+            appendString(buf, m.getMessage());
+            if (additionalInfo != null) {
+                for (String s : additionalInfo) {
+                    appendString(buf, s);
+                }
+            }
+        }
+        return buf.toString();
+    }
+
+    private static void appendString(FastStringBuffer buf, String s) {
+        buf.append(s.length()).append(':').append(s);
+    }
+
+    /**
+     * @return the messages in the contents (or null if the contents were stored with a different key).
+     */
+    /*default*/static IMessage[] fromContents(String contents, long key) {
+        int[] pos = new int[] { 0 };
+        long storedKey = Long.parseLong(readLine(contents, pos));
+        if (storedKey != key) {
+            return null;
+        }
+        int size = Integer.parseInt(readLine(contents, pos));
+        IMessage[] messages = new IMessage[size];
+        for (int i = 0; i < size; i++) {
+            String line = readLine(contents, pos);
+            String[] header = line.split("\\|");
+            if (header.length != 7) {
+                throw new RuntimeException("Unexpected message header: " + line);
+            }
+            String message = readString(contents, pos);
+            int additionalInfoSize = Integer.parseInt(header[6]);
+            List<String> additionalInfo = null;
+            if (additionalInfoSize >= 0) {
+                additionalInfo = new ArrayList<String>(additionalInfoSize);
+                for (int j = 0; j < additionalInfoSize; j++) {
+                    additionalInfo.add(readString(contents, pos));
+                }
+            }
+            messages[i] = new CachedMessage(Integer.parseInt(header[0]), Integer.parseInt(header[1]),
+                    Integer.parseInt(header[2]), Integer.parseInt(header[3]), Integer.parseInt(header[4]),
+                    Integer.parseInt(header[5]), message, additionalInfo);
+        }
+        return messages;
+    }
+
+    private static String readLine(String contents, int[] pos) {
+        int end = contents.indexOf('\n', pos[0]);
+        if (end == -1) {
+            throw new RuntimeException("Unexpected end of contents.");
+        }
+        String line = contents.substring(pos[0], end);
+        pos[0] = end + 1;
+        return line;
+    }
+
+    private static String readString(String contents, int[] pos) {
+        int colon = contents.indexOf(':', pos[0]);
+        if (colon == -1) {
+            throw new RuntimeException("Unexpected end of contents.");
+        }
+        int len = Integer.parseInt(contents.substring(pos[0], colon));
+        String s = contents.substring(colon + 1, colon + 1 + len);
+        pos[0] = colon + 1 + len;
+        return s;
+    }
+}
@@ -10,9 +10,12 @@
 package com.python.pydev.analysis.builder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -21,7 +24,9 @@ import org.python.pydev.builder.PydevMarkerUtils;
 import org.python.pydev.builder.PydevMarkerUtils.MarkerInfo;
 import org.python.pydev.core.docutils.PySelection;
 import org.python.pydev.core.log.Log;
+import org.python.pydev.logging.DebugSettings;
 
+import com.aptana.shared_core.callbacks.ICallback;
 import com.python.pydev.analysis.messages.IMessage;
 
 public class AnalysisRunner {
@@ -49,6 +54,18 @@ public class AnalysisRunner {
      */
     private static final boolean DEBUG_ANALYSIS_RUNNER = false;
 
+    /**
+     * An existing marker is reused for a new message (only updating its attributes) if both have the same type,
+     * message and line.
+     */
+    private static final ICallback<Object, Map<String, Object>> MARKER_MATCH_KEY = new ICallback<Object, Map<String, Object>>() {
+
+        public Object call(Map<String, Object> attributes) {
+            return Arrays.asList(attributes.get(PYDEV_ANALYSIS_TYPE), attributes.get(IMarker.MESSAGE),
+                    attributes.get(IMarker.LINE_NUMBER));
+        }
+    };
+
     /**
      * @param document the document we want to check
      * @return true if we can analyze it and false if there is some flag saying that we shouldn't
@@ -92,7 +109,7 @@ public class AnalysisRunner {
     }
 
     /**
-     * Sets the analysis markers in the resource (removes current markers and adds the new ones)
+     * Sets the analysis markers in the resource (only the markers that changed are removed, updated or added)
      * 
      * @param resource the resource where we want to add the markers
      * @param document the document
@@ -146,7 +163,12 @@ public class AnalysisRunner {
                 return;
             }
 
-            PydevMarkerUtils.replaceMarkers(lst, resource, AnalysisRunner.PYDEV_ANALYSIS_PROBLEM_MARKER, true, monitor);
+            int saved = PydevMarkerUtils.updateMarkers(lst, resource, AnalysisRunner.PYDEV_ANALYSIS_PROBLEM_MARKER,
+                    true, MARKER_MATCH_KEY, monitor);
+            if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                Log.toLogFile(this, "Marker operations saved: " + saved + " (markers: " + lst.size() + ") -- "
+                        + resource);
+            }
             //timer.printDiff("Time to put markers: "+lst.size());
         } catch (Exception e) {
             Log.log("Error when setting markers on: " + resource, e);
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.builder;
+
+import org.python.pydev.core.concurrency.KeyedPriorityExecutor;
+import org.python.pydev.core.concurrency.WorkersPool;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.logging.DebugSettings;
+
+/**
+ * Runs the analysis requests in a fixed number of worker threads.
+ *
+ * Requests are coalesced by module: while a request for a module is waiting to run, a new request for the same
+ * module replaces it (the factory only creates a new request when its document is newer than the one from the
+ * existing request) and only one request for a given module runs at a time (a request for a module which is
+ * being analyzed only starts after the current analysis finishes -- it's not busy-waiting in a thread).
+ *
+ * Requests from the editor (i.e.: from the parser) have priority over the ones from the builder.
+ *
+ * @see KeyedPriorityExecutor
+ */
+public class AnalysisScheduler {
+
+    private static final int PRIORITY_EDITOR = 0;
+    private static final int PRIORITY_BACKGROUND = 1;
+
+    private final KeyedPriorityExecutor<KeyForAnalysisRunnable, IAnalysisBuilderRunnable> executor;
+
+    public AnalysisScheduler(int workers) {
+        executor = new KeyedPriorityExecutor<KeyForAnalysisRunnable, IAnalysisBuilderRunnable>(
+                "PyDev: Code Analysis: ", workers, 2);
+    }
+
+    /**
+     * Schedules the given runnable to be run (superseding a request for the same module that's still waiting).
+     */
+    public void schedule(IAnalysisBuilderRunnable runnable) {
+        KeyForAnalysisRunnable key = runnable.getKey();
+        int priority = runnable.getAnalysisCause() == IAnalysisBuilderRunnable.ANALYSIS_CAUSE_PARSER ? PRIORITY_EDITOR
+                : PRIORITY_BACKGROUND;
+
+        IAnalysisBuilderRunnable superseded = executor.schedule(key, runnable, priority);
+        if (superseded != null) {
+            if (DebugSettings.DEBUG_ANALYSIS_REQUESTS) {
+                Log.toLogFile(this, "Superseded analysis request for: " + key.moduleName);
+            }
+            superseded.finishWithoutRunning();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to run.
+     */
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    /**
+     * @return the number of requests being run.
+     */
+    public int getRunningCount() {
+        return executor.getRunningCount();
+    }
+
+    public long getAnalysesRun() {
+        return executor.getRequestsRun();
+    }
+
+    /**
+     * @return the number of requests that were replaced by a newer request before running.
+     */
+    public long getAnalysesSuperseded() {
+        return executor.getRequestsCoalesced();
+    }
+
+    /**
+     * @return the average time (in millis) that requests waited before running.
+     */
+    public double getAverageQueueLatency() {
+        return executor.getAverageQueueLatency();
+    }
+
+    /**
+     * @return the maximum time (in millis) that a request waited before running.
+     */
+    public long getMaxQueueLatency() {
+        return executor.getMaxQueueLatency();
+    }
+
+    /**
+     * @return the average time (in millis) that it took to run a request.
+     */
+    public double getAverageRunTime() {
+        return executor.getAverageRunTime();
+    }
+
+    private static AnalysisScheduler singleton;
+
+    public synchronized static AnalysisScheduler getSingleton() {
+        if (singleton == null) {
+            singleton = new AnalysisScheduler(WorkersPool.getNumberOfWorkers());
+        }
+        return singleton;
+    }
+}
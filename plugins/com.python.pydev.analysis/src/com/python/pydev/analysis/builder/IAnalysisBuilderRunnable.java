@@ -41,6 +41,19 @@ public interface IAnalysisBuilderRunnable extends IRunnableWithMonitor {
 
     boolean getRunFinished();
 
+    /**
+     * Blocks until the run of this runnable finishes (or until it's finished without running).
+     */
+    void waitForRunFinished();
+
+    /**
+     * Marks this runnable as finished without actually running it (used when a newer request for the same
+     * module superseded it before it started).
+     */
+    void finishWithoutRunning();
+
+    KeyForAnalysisRunnable getKey();
+
     String getModuleName();
 
     String getAnalysisCauseStr();
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.IDocument;
+import org.python.pydev.core.IToken;
+
+/**
+ * A message restored from the analysis results cache.
+ *
+ * Its positions are already resolved (the cached messages are only used for the same contents they were created
+ * for) and it has no generator token.
+ */
+public final class CachedMessage implements IMessage {
+
+    private final int type;
+
+    private final int severity;
+
+    private final int startLine;
+
+    private final int startCol;
+
+    private final int endLine;
+
+    private final int endCol;
+
+    private final String message;
+
+    private List<String> additionalInfo;
+
+    /**
+     * @param startLine starts at 1
+     * @param startCol starts at 1
+     * @param endLine starts at 1
+     * @param endCol starts at 1
+     */
+    public CachedMessage(int type, int severity, int startLine, int startCol, int endLine, int endCol,
+            String message, List<String> additionalInfo) {
+        this.type = type;
+        this.severity = severity;
+        this.startLine = startLine;
+        this.startCol = startCol;
+        this.endLine = endLine;
+        this.endCol = endCol;
+        this.message = message;
+        this.additionalInfo = additionalInfo;
+    }
+
+    /**
+     * @return a message with the positions of the passed message resolved in the given document.
+     */
+    public static CachedMessage create(IMessage m, IDocument doc) {
+        List<String> info = m.getAdditionalInfo();
+        return new CachedMessage(m.getType(), m.getSeverity(), m.getStartLine(doc), m.getStartCol(doc),
+                m.getEndLine(doc), m.getEndCol(doc), m.getMessage(), info != null ? new ArrayList<String>(info)
+                        : null);
+    }
+
+    public int getSeverity() {
+        return severity;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getStartLine(IDocument doc) {
+        return startLine;
+    }
+
+    public int getStartCol(IDocument doc) {
+        return startCol;
+    }
+
+    public int getEndLine(IDocument doc) {
+        return endLine;
+    }
+
+    public int getEndCol(IDocument doc) {
+        return endCol;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public List<String> getAdditionalInfo() {
+        return additionalInfo;
+    }
+
+    public void addAdditionalInfo(String info) {
+        if (this.additionalInfo == null) {
+            this.additionalInfo = new ArrayList<String>();
+        }
+        this.additionalInfo.add(info);
+    }
+
+    public Object getShortMessage() {
+        return message;
+    }
+
+    public IToken getGenerator() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -9,6 +9,10 @@
  */
 package com.python.pydev.analysis.visitors;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import org.python.pydev.core.FullRepIterable;
 import org.python.pydev.core.ICodeCompletionASTManager;
 import org.python.pydev.core.ICompletionCache;
 import org.python.pydev.core.ICompletionState;
@@ -46,6 +50,17 @@ public final class ImportChecker {
 
     private final AbstractScopeAnalyzerVisitor visitor;
 
+    /**
+     * The names of the modules this module depends on (the modules where imports were resolved and, for the
+     * unresolved imports, the modules which could resolve them if they were created).
+     */
+    private final Set<String> importedModules = new HashSet<String>();
+
+    /**
+     * The names of the modules on which a wild import was done.
+     */
+    private final Set<String> wildImportedModules = new HashSet<String>();
+
     /**
      * This is the information stored about some import:
      * Contains the actual module, the representation in the current module and whether it was resolved or not.
@@ -164,7 +179,58 @@ public final class ImportChecker {
      * token we were looking for.
      */
     public ImportInfo visitImportToken(IToken token, boolean reportUndefinedImports, ICompletionCache completionCache) {
-        return visitImportToken(reportUndefinedImports, token, moduleName, nature, visitor, completionCache);
+        ImportInfo importInfo = visitImportToken(reportUndefinedImports, token, moduleName, nature, visitor,
+                completionCache);
+        addDependency(token, importInfo);
+        return importInfo;
+    }
+
+    private void addDependency(IToken token, ImportInfo importInfo) {
+        if (importInfo.mod != null) {
+            String name = importInfo.mod.getName();
+            if (name != null) {
+                addDependency(name, token.isWildImport());
+            }
+        }
+        if (!importInfo.wasResolved && token instanceof SourceToken) {
+            //any module in the path of the import could make it resolved (checking it absolute and relative to
+            //the current package).
+            String absolute = token.getAsAbsoluteImport();
+            boolean isWildImport = token.isWildImport();
+            if (isWildImport && absolute != null && absolute.endsWith("*")) {
+                absolute = FullRepIterable.getWithoutLastPart(absolute);
+            }
+            String parentPackage = FullRepIterable.getWithoutLastPart(moduleName);
+            while (absolute != null && absolute.length() > 0) {
+                addDependency(absolute, isWildImport);
+                if (parentPackage.length() > 0) {
+                    addDependency(parentPackage + "." + absolute, isWildImport);
+                }
+                absolute = FullRepIterable.getWithoutLastPart(absolute);
+                isWildImport = false; //only the module itself is wild-imported (not its packages)
+            }
+        }
+    }
+
+    private void addDependency(String importedModuleName, boolean isWildImport) {
+        importedModules.add(importedModuleName);
+        if (isWildImport) {
+            wildImportedModules.add(importedModuleName);
+        }
+    }
+
+    /**
+     * @return the names of the modules this module depends on (gathered as the imports are visited).
+     */
+    public Set<String> getImportedModules() {
+        return importedModules;
+    }
+
+    /**
+     * @return the names of the modules on which a wild import was done.
+     */
+    public Set<String> getWildImportedModules() {
+        return wildImportedModules;
     }
 
     /**
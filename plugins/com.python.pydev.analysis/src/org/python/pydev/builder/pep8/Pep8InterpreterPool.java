@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pep8;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.pydev.core.NullOutputStream;
+import org.python.pydev.core.concurrency.WorkersPool;
+import org.python.pydev.core.docutils.StringUtils;
+import org.python.pydev.jython.IPythonInterpreter;
+import org.python.pydev.jython.JythonPlugin;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+/**
+ * Keeps jython interpreters which already imported pep8 and processed its options (which were the slowest part
+ * of the pep8 pass), so that analyzing a file only has to run the checker.
+ *
+ * At most one interpreter is created for each analysis worker and an interpreter is used for a single file at a
+ * time. Interpreters are discarded when the pep8 preferences change or when running pep8 fails.
+ */
+public final class Pep8InterpreterPool {
+
+    /**
+     * Executed once in each interpreter: imports pep8, processes the options and defines the function which
+     * checks a file.
+     */
+    private static final String BOOTSTRAP = "import sys\n"
+            + "argv = ['pep8.py', r'pooled'%s]\n"
+            + "sys.argv=argv\n"
+            + //It always accesses sys.argv[0] in process_options, so, it must be set.
+            "\n"
+            + "add_to_pythonpath = '%s'\n"
+            + "if add_to_pythonpath not in sys.path:\n"
+            + "    sys.path.append(add_to_pythonpath)\n"
+            + "import pep8\n"
+            + "\n"
+            + "options, args = pep8.process_options(argv[1:])\n"
+            + //don't use sys.argv (it seems it doesn't get updated as it should).
+            "\n"
+            + "def run_checker(filename, lines, visitor):\n"
+            + "    options.counters = dict.fromkeys(pep8.BENCHMARK_KEYS, 0)\n"
+            + //the options are shared among runs: reset what's collected on each run.
+            "    options.messages = {}\n"
+            + "    checker = pep8.Checker(options, filename, lines)\n"
+            + "    original = checker.report_error\n"
+            + "\n"
+            + "    def report_error(line_number, offset, text, check):\n"
+            + "        code = text[:4]\n"
+            + "        if pep8.ignore_code(options, code) or code in checker.expected:\n"
+            + "            return\n"
+            + "        visitor.reportError(line_number, offset, text, check)\n"
+            + "        return original(line_number, offset, text, check)\n"
+            + "\n"
+            + "    checker.report_error = report_error\n"
+            + "    checker.check_all()\n"
+            + "\n";
+
+    private static final String RUN_CHECKER = "run_checker(filename, lines, visitor)\n";
+
+    private static final class PooledInterpreter {
+        final IPythonInterpreter interpreter;
+        final String configuration;
+
+        PooledInterpreter(IPythonInterpreter interpreter, String configuration) {
+            this.interpreter = interpreter;
+            this.configuration = configuration;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Interpreters not being used (synchronized with lock).
+     */
+    private final LinkedList<PooledInterpreter> idle = new LinkedList<PooledInterpreter>();
+
+    /**
+     * The number of interpreters alive or being created (synchronized with lock).
+     */
+    private int created;
+
+    /**
+     * The configuration of the interpreters in the pool (synchronized with lock).
+     */
+    private String configuration;
+
+    private final int maxInterpreters;
+
+    /**
+     * The compiled call to run_checker (lazily created as jython must be initialized to compile it).
+     */
+    private volatile PyObject runCheckerCode;
+
+    public Pep8InterpreterPool(int maxInterpreters) {
+        this.maxInterpreters = Math.max(1, maxInterpreters);
+    }
+
+    /**
+     * Runs pep8 in the given lines, reporting the errors found to visitor.reportError.
+     *
+     * If all the interpreters are being used, waits until one is available.
+     *
+     * @param pep8Loc the location of pep8.py
+     * @param commandLine the arguments to be passed to pep8
+     * @param useConsole whether the output of pep8 should go to the console
+     * @param file the file being checked (only used to report the errors)
+     */
+    public void check(File pep8Loc, String[] commandLine, boolean useConsole, String file, List<String> lines,
+            Object visitor) throws InterruptedException {
+
+        FastStringBuffer args = new FastStringBuffer(commandLine.length * 20);
+        for (String string : commandLine) {
+            args.append(',').append("r'").append(string).append('\'');
+        }
+        //put the parent dir of pep8.py in the pythonpath.
+        String bootstrap = com.aptana.shared_core.string.StringUtils.format(BOOTSTRAP, args.toString(),
+                StringUtils.replaceAllSlashes(pep8Loc.getParentFile().getAbsolutePath()));
+        String configuration = bootstrap + useConsole;
+
+        PooledInterpreter pooled = checkOut(configuration);
+        boolean reuse = false;
+        try {
+            if (pooled == null) {
+                pooled = new PooledInterpreter(createInterpreter(bootstrap, useConsole), configuration);
+            }
+            IPythonInterpreter interpreter = pooled.interpreter;
+            interpreter.set("filename", file);
+            interpreter.set("lines", lines);
+            interpreter.set("visitor", visitor);
+            try {
+                interpreter.exec(getRunCheckerCode());
+            } finally {
+                //don't keep the document/visitor alive while in the pool
+                interpreter.set("filename", Py.None);
+                interpreter.set("lines", Py.None);
+                interpreter.set("visitor", Py.None);
+            }
+            reuse = true;
+        } finally {
+            //if it failed, the interpreter may be in an unknown state (so, it's not reused).
+            checkIn(pooled, reuse);
+        }
+    }
+
+    /**
+     * Creates an interpreter and runs the bootstrap code in it.
+     *
+     * Note that the interpreter doesn't share the sys with other interpreters (so, the output set is kept in it
+     * and it may be used later on by any thread).
+     */
+    private IPythonInterpreter createInterpreter(String bootstrap, boolean useConsole) {
+        IPythonInterpreter interpreter = JythonPlugin.newPythonInterpreter(useConsole, false);
+        if (!useConsole) {
+            interpreter.setErr(NullOutputStream.singleton);
+            interpreter.setOut(NullOutputStream.singleton);
+        }
+        interpreter.exec(bootstrap);
+        return interpreter;
+    }
+
+    private PyObject getRunCheckerCode() {
+        PyObject code = runCheckerCode;
+        if (code == null) {
+            //no problem if it's compiled more than once in a race.
+            code = Py.compile_flags(RUN_CHECKER, "<pep8>", "exec", null);
+            runCheckerCode = code;
+        }
+        return code;
+    }
+
+    /**
+     * @return an idle interpreter with the given configuration or null if a new one should be created by the caller
+     * (in which case it must be passed to #checkIn later on even if its creation failed).
+     */
+    private PooledInterpreter checkOut(String configuration) throws InterruptedException {
+        List<PooledInterpreter> discarded = new ArrayList<PooledInterpreter>();
+        try {
+            synchronized (lock) {
+                while (true) {
+                    if (!configuration.equals(this.configuration)) {
+                        //the preferences changed: the interpreters available are no longer valid.
+                        this.configuration = configuration;
+                        discarded.addAll(idle);
+                        created -= idle.size();
+                        idle.clear();
+                    }
+                    if (idle.size() > 0) {
+                        return idle.removeFirst();
+                    }
+                    if (created < maxInterpreters) {
+                        created++;
+                        return null;
+                    }
+                    lock.wait();
+                }
+            }
+        } finally {
+            for (PooledInterpreter pooled : discarded) {
+                pooled.interpreter.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Gives back an interpreter gotten from #checkOut (or the slot gotten to create one if pooled is null).
+     */
+    private void checkIn(PooledInterpreter pooled, boolean reuse) {
+        synchronized (lock) {
+            if (pooled != null && reuse && pooled.configuration.equals(configuration)) {
+                idle.addFirst(pooled);
+                pooled = null;
+            } else {
+                created--;
+            }
+            lock.notify();
+        }
+        if (pooled != null) {
+            pooled.interpreter.cleanup();
+        }
+    }
+
+    private static Pep8InterpreterPool singleton;
+
+    public synchronized static Pep8InterpreterPool getSingleton() {
+        if (singleton == null) {
+            singleton = new Pep8InterpreterPool(WorkersPool.getNumberOfWorkers());
+        }
+        return singleton;
+    }
+}
@@ -11,7 +11,9 @@ package com.python.pydev.analysis.additionalinfo;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.jface.text.Document;
 import org.python.pydev.core.MisconfigurationException;
@@ -116,6 +118,23 @@ public class AdditionalInterpreterInfoTest extends AdditionalInfoTestsBase {
         assertEquals(1, tokensStartingWith.size());
     }
 
+    public void testPrefixIndexUpdatedOnChanges() {
+        info.add(new FuncInfo("method1", "mod1", null), AbstractAdditionalTokensInfo.TOP_LEVEL);
+        assertEquals(1, info.getTokensStartingWith("meth", AbstractAdditionalTokensInfo.TOP_LEVEL).size());
+
+        info.add(new FuncInfo("Method2", "mod2", null), AbstractAdditionalTokensInfo.TOP_LEVEL);
+        assertEquals(2, info.getTokensStartingWith("meth", AbstractAdditionalTokensInfo.TOP_LEVEL).size());
+        assertEquals(1, info.getTokensEqualTo("Method2", AbstractAdditionalTokensInfo.TOP_LEVEL).size());
+
+        info.removeInfoFromModule("mod1", false);
+        Collection<IInfo> tokens = info.getTokensStartingWith("meth", AbstractAdditionalTokensInfo.TOP_LEVEL);
+        assertEquals(1, tokens.size());
+        assertEquals("Method2", tokens.iterator().next().getName());
+
+        info.clearAllInfo();
+        assertEquals(0, info.getTokensStartingWith("meth", AbstractAdditionalTokensInfo.TOP_LEVEL).size());
+    }
+
     public void testAddFunc() {
         FuncInfo info2 = new FuncInfo(((NameTok) createFuncDef("met1").name).id, "mod1", null);
         info.add(info2, AbstractAdditionalTokensInfo.TOP_LEVEL);
@@ -257,6 +276,40 @@ public class AdditionalInterpreterInfoTest extends AdditionalInfoTestsBase {
 
     }
 
+    public void testSubclassesInfo() throws MisconfigurationException {
+        String doc = "class Test(Base):\n" +
+                "    class Test2(mod.Base, Other):\n" +
+                "        pass\n" +
+                "    def m1(self):\n" +
+                "        class NotIndexed(Base):\n" +
+                "            pass\n";
+        SourceModule module = (SourceModule) AbstractModule.createModuleFromDoc("test", null, new Document(doc),
+                nature, true);
+        info.addAstInfo(module.getAst(), module.getModulesKey(), false);
+
+        List<SubclassInfo> subclasses = info.getSubclassesInfo("Base");
+        assertEquals(2, subclasses.size());
+        Set<String> paths = new HashSet<String>();
+        for (SubclassInfo subclassInfo : subclasses) {
+            assertEquals("test", subclassInfo.getDeclaringModuleName());
+            paths.add(subclassInfo.getPath());
+        }
+        assertTrue(paths.contains("Test"));
+        assertTrue(paths.contains("Test.Test2"));
+
+        subclasses = info.getSubclassesInfo("Other");
+        assertEquals(1, subclasses.size());
+        assertEquals("Test2", subclasses.get(0).getSubclassName());
+
+        //the subclasses info is not mixed with the tokens.
+        assertEquals(0, info.getTokensEqualTo("Base", AbstractAdditionalTokensInfo.TOP_LEVEL
+                | AbstractAdditionalTokensInfo.INNER).size());
+
+        info.removeInfoFromModule("test", false);
+        assertEquals(0, info.getSubclassesInfo("Base").size());
+        assertEquals(0, info.getSubclassesInfo("Other").size());
+    }
+
     public void testCompleteIndex() throws MisconfigurationException, InterruptedException {
         String doc = "class Test:\n" +
                 "    class Test2:\n" +
@@ -298,6 +351,46 @@ public class AdditionalInterpreterInfoTest extends AdditionalInfoTestsBase {
         }
     }
 
+    public void testCompleteIndexInParallel() throws Exception {
+        boolean searchInParallel = AbstractAdditionalDependencyInfo.SEARCH_IN_PARALLEL;
+        int minModules = AbstractAdditionalDependencyInfo.MIN_MODULES_TO_SEARCH_IN_PARALLEL;
+        AbstractAdditionalDependencyInfo.SEARCH_IN_PARALLEL = true;
+        AbstractAdditionalDependencyInfo.MIN_MODULES_TO_SEARCH_IN_PARALLEL = 1;
+        try {
+            int nModules = 120;
+            File[] files = new File[nModules];
+            for (int i = 0; i < nModules; i++) {
+                String doc = "def method" + i + "():\n    return common + token" + (i % 3) + "\n";
+                files[i] = new File(baseDir, "mod" + i + ".py");
+                FileUtils.writeStrToFile(doc, files[i]);
+                SourceModule module = (SourceModule) AbstractModule.createModuleFromDoc("mod" + i, files[i],
+                        new Document(doc), nature, true);
+                info.addAstInfo(module.getAst(), new ModulesKey("mod" + i, files[i]), false);
+            }
+
+            //the first searches index the modules in the workers and the others use the index.
+            for (int j = 0; j < 2; j++) {
+                assertEquals(nModules, info.getModulesWithToken("common", null).size());
+                assertEquals(40, info.getModulesWithToken("token1", null).size());
+                assertEquals(1, info.getModulesWithToken("method7", null).size());
+                assertEquals(0, info.getModulesWithToken("token3", null).size());
+            }
+
+            synchronized (this) {
+                wait(1000);
+            }
+            FileUtils.writeStrToFile("token3 = 10\n", files[5]);
+            //mod5 was a candidate, so, the change is noticed (and it's indexed again).
+            assertEquals(nModules - 1, info.getModulesWithToken("common", null).size());
+            List<ModulesKey> modules = info.getModulesWithToken("token3", null);
+            assertEquals(1, modules.size());
+            assertEquals("mod5", modules.get(0).name);
+        } finally {
+            AbstractAdditionalDependencyInfo.SEARCH_IN_PARALLEL = searchInParallel;
+            AbstractAdditionalDependencyInfo.MIN_MODULES_TO_SEARCH_IN_PARALLEL = minModules;
+        }
+    }
+
     private ClassDef createClassDef(String name) {
         return new ClassDef(new NameTok(name, NameTok.FunctionName), null, null, null, null, null, null);
     }
@@ -22,6 +22,7 @@ public class InfoStrFactoryTest extends TestCase {
         iInfo.add(new FuncInfo("Bar", "Foo", null));
         iInfo.add(new ClassInfo("Class", "ClassMod", null));
         iInfo.add(new FuncInfo("Bar", "Foo", null));
+        iInfo.add(new SubclassInfo("Base", "ClassMod", "Class"));
         assertEquals(iInfo, InfoStrFactory.strToInfo(InfoStrFactory.infoToString(iInfo)));
     }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TokensPrefixIndexTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TokensPrefixIndexTest.class);
+    }
+
+    private TokensPrefixIndex createIndex() {
+        Set<IInfo> set1 = new HashSet<IInfo>();
+        set1.add(new FuncInfo("method", "mod1", null));
+        set1.add(new FuncInfo("Method", "mod1", null));
+        set1.add(new ClassInfo("MetaClass", "mod2", null));
+        Set<IInfo> set2 = new HashSet<IInfo>();
+        set2.add(new FuncInfo("Qt", "mod2", null));
+        set2.add(new FuncInfo("other", "mod3", null));
+        List<Set<IInfo>> sets = new ArrayList<Set<IInfo>>();
+        sets.add(set1);
+        sets.add(set2);
+        return TokensPrefixIndex.create(sets);
+    }
+
+    private Set<String> names(List<IInfo> infos) {
+        Set<String> ret = new HashSet<String>();
+        for (IInfo info : infos) {
+            ret.add(info.getName());
+        }
+        return ret;
+    }
+
+    private Set<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    public void testStartingWith() throws Exception {
+        TokensPrefixIndex index = createIndex();
+        assertEquals(5, index.size());
+
+        List<IInfo> result = new ArrayList<IInfo>();
+        index.getStartingWith("met", result);
+        assertEquals(set("method", "Method", "MetaClass"), names(result));
+
+        result.clear();
+        index.getStartingWith("metho", result);
+        assertEquals(set("method", "Method"), names(result));
+
+        result.clear();
+        index.getStartingWith("q", result);
+        assertEquals(set("Qt"), names(result));
+
+        result.clear();
+        index.getStartingWith("", result);
+        assertEquals(5, result.size());
+
+        result.clear();
+        index.getStartingWith("z", result);
+        assertEquals(0, result.size());
+    }
+
+    public void testEqualTo() throws Exception {
+        TokensPrefixIndex index = createIndex();
+        List<IInfo> result = new ArrayList<IInfo>();
+        index.getEqualTo("Method", result);
+        assertEquals(1, result.size());
+        assertEquals("Method", result.get(0).getName());
+
+        result.clear();
+        index.getEqualTo("metho", result);
+        assertEquals(0, result.size());
+    }
+
+    public void testEmpty() throws Exception {
+        TokensPrefixIndex index = TokensPrefixIndex.create(new ArrayList<Set<IInfo>>());
+        assertSame(TokensPrefixIndex.EMPTY, index);
+        List<IInfo> result = new ArrayList<IInfo>();
+        index.getStartingWith("", result);
+        assertEquals(0, result.size());
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.jython.SimpleNode;
+
+import com.python.pydev.analysis.additionalinfo.AttrInfo;
+import com.python.pydev.analysis.additionalinfo.ClassInfo;
+import com.python.pydev.analysis.additionalinfo.IInfo;
+
+public class ExportedNamesTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ExportedNamesTest.class);
+    }
+
+    private ModuleImportersGraph graph;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        graph = new ModuleImportersGraph();
+    }
+
+    private SimpleNode parse(String contents) {
+        SimpleNode ast = PyParser.reparseDocument(new PyParser.ParserInfo(new Document(contents),
+                IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7)).o1;
+        assertNotNull(ast);
+        return ast;
+    }
+
+    /**
+     * @return whether the exports of the module 'a' changed.
+     */
+    private boolean setExports(String contents) {
+        return graph.setExportedNames("a", ExportedNames.getExportedNames(new ArrayList<IInfo>(), parse(contents)));
+    }
+
+    public void testReExportedImports() throws Exception {
+        assertTrue(setExports("from c import y\nimport d\n"));
+        assertFalse(setExports("import d\nfrom c import y\n"));
+
+        assertTrue(setExports("import d\n")); //dropped the re-exported import
+        assertTrue(setExports("import d\nfrom c import y as z\n"));
+        assertTrue(setExports("import d\nfrom e import y as z\n"));
+        assertTrue(setExports("import d\nfrom e import *\n"));
+
+        //imports in the global scope are re-exported (even if inside an if or a try).
+        assertTrue(setExports("import d\nfrom e import *\ntry:\n    import f\nexcept:\n    f = None\n"));
+
+        //imports inside a function are not (only the signature of the function is).
+        assertTrue(setExports("import d\nfrom e import *\ntry:\n    import f\nexcept:\n    f = None\n"
+                + "def m():\n    pass\n"));
+        assertFalse(setExports("import d\nfrom e import *\ntry:\n    import f\nexcept:\n    f = None\n"
+                + "def m():\n    import g\n"));
+    }
+
+    public void testAll() throws Exception {
+        assertTrue(setExports("__all__ = ['x', 'y']\n"));
+        assertFalse(setExports("__all__ = ['x', 'y']\n"));
+        assertTrue(setExports("__all__ = ['x']\n"));
+        assertTrue(setExports("__all__ = ('x', 'z')\n"));
+        assertTrue(setExports("__all__ = ('x', 'z')\n__all__ += ['w']\n"));
+        assertTrue(setExports("__all__ = ('x', 'z')\n__all__ += ['w', name]\n"));
+    }
+
+    public void testSignatures() throws Exception {
+        assertTrue(setExports("class A(object):\n    def m(self, a):\n        pass\n"));
+        assertFalse(setExports("class A(object):\n    def m(self, a):\n        return 1\n")); //only the body changed
+
+        assertTrue(setExports("class A(object):\n    def m(self, a, b=1):\n        pass\n"));
+        assertTrue(setExports("class A(object):\n    @staticmethod\n    def m(a, b=1):\n        pass\n"));
+        assertTrue(setExports("class A(B):\n    @staticmethod\n    def m(a, b=1):\n        pass\n"));
+        assertTrue(setExports("class A(B):\n    @staticmethod\n    def m(a, b=1):\n        pass\n"
+                + "    class Inner:\n        def n(self, *args):\n            pass\n"));
+        assertTrue(setExports("class A(B):\n    @staticmethod\n    def m(a, b=1):\n        pass\n"
+                + "    class Inner:\n        def n(self, *args, **kwargs):\n            pass\n"));
+
+        assertTrue(setExports("def f(a):\n    def inner(b):\n        pass\n"));
+        assertFalse(setExports("def f(a):\n    def inner(b, c):\n        pass\n")); //not accessible from outside
+        assertTrue(setExports("def f(a, c):\n    def inner(b, c):\n        pass\n"));
+    }
+
+    public void testMemberInfos() throws Exception {
+        List<IInfo> infos = new ArrayList<IInfo>();
+        infos.add(new ClassInfo("A", "a", null));
+        infos.add(new AttrInfo("attr", "a", "A"));
+        List<String> exported = ExportedNames.getExportedNames(infos, null);
+        assertTrue(graph.setExportedNames("a", exported));
+
+        infos.set(1, new AttrInfo("other", "a", "A"));
+        assertTrue(graph.setExportedNames("a", ExportedNames.getExportedNames(infos, null)));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.FastBufferedReader;
+import org.python.pydev.core.ObjectsPool.ObjectsPoolMap;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+public class ModuleImportersGraphTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ModuleImportersGraphTest.class);
+    }
+
+    private HashSet<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private List<String> list(String... names) {
+        return Arrays.asList(names);
+    }
+
+    public void testDependents() throws Exception {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        graph.setImports("b", list("a"), list());
+        graph.setImports("c", list("a", "b"), list());
+        graph.setImports("d", list("c"), list());
+
+        assertEquals(set("b", "c"), graph.getDependents("a"));
+        assertEquals(set("c"), graph.getDependents("b"));
+        assertEquals(set("d"), graph.getDependents("c"));
+        assertEquals(set(), graph.getDependents("d"));
+
+        //Setting the imports again must remove the previous ones.
+        graph.setImports("c", list("b"), list());
+        assertEquals(set("b"), graph.getDependents("a"));
+        assertEquals(set("a"), graph.getImported("b"));
+
+        //Removing a module removes what it imports, but not who imports it.
+        graph.remove("b");
+        assertEquals(set(), graph.getDependents("a"));
+        assertEquals(set("c"), graph.getDependents("b"));
+    }
+
+    public void testWildImportChain() throws Exception {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        graph.setImports("b", list("a"), list("a"));
+        graph.setImports("c", list("b"), list("b"));
+        graph.setImports("d", list("c"), list());
+        graph.setImports("e", list("b"), list());
+
+        //the names of a are re-exported by b and c, so, all of those must be analyzed again.
+        assertEquals(set("b", "c", "d", "e"), graph.getDependents("a"));
+        assertEquals(set("c", "d", "e"), graph.getDependents("b"));
+
+        //cycles in the wild imports must not be a problem (and the module itself is never returned).
+        graph.setImports("a", list("c"), list("c"));
+        assertEquals(set("b", "c", "d", "e"), graph.getDependents("a"));
+    }
+
+    public void testExportedNames() throws Exception {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        assertTrue(graph.setExportedNames("a", list("x", "y")));
+        assertFalse(graph.setExportedNames("a", list("y", "x")));
+        assertTrue(graph.setExportedNames("a", list("x")));
+        assertTrue(graph.setExportedNames("a", list("x", "z")));
+
+        graph.remove("a");
+        assertTrue(graph.setExportedNames("a", list("x", "z")));
+    }
+
+    public void testWriteAndLoad() throws Exception {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        graph.setImports("b", list("a", "pack.mod"), list("a"));
+        graph.setImports("c", list("b"), list());
+        graph.setExportedNames("c", list("x"));
+        graph.setExportedNames("a", list("y"));
+
+        FastStringBuffer buf = new FastStringBuffer();
+        graph.writeTo(buf);
+        buf.append("-- END TREE\n");
+
+        FastBufferedReader reader = new FastBufferedReader(new StringReader(buf.toString()));
+        assertEquals("-- START DEPENDENCIES", reader.readLine().toString());
+        ModuleImportersGraph loaded = ModuleImportersGraph.loadFrom(reader, new ObjectsPoolMap());
+        assertEquals("-- END TREE", reader.readLine().toString());
+
+        assertEquals(3, loaded.size());
+        assertEquals(set("b", "c"), loaded.getDependents("a"));
+        assertEquals(set("b"), loaded.getDependents("pack.mod"));
+        assertEquals(set("a", "pack.mod"), loaded.getImported("b"));
+        assertFalse(loaded.setExportedNames("c", list("x")));
+        assertFalse(loaded.setExportedNames("a", list("y")));
+        assertTrue(loaded.setExportedNames("b", list()));
+    }
+
+    public void testModulesAffectingAnalysis() throws Exception {
+        ModuleImportersGraph graph = new ModuleImportersGraph();
+        assertNull(graph.getModulesAffectingAnalysis("c"));
+
+        graph.setImports("b", list("a"), list("a"));
+        graph.setImports("c", list("b", "x"), list("b"));
+        assertEquals(set("a", "b", "x"), graph.getModulesAffectingAnalysis("c"));
+        assertEquals(set("a"), graph.getModulesAffectingAnalysis("b"));
+
+        //the modules imported by the ones imported are also considered (as they may re-export names).
+        graph.setImports("d", list("c"), list());
+        graph.setImports("a", list("d", "y"), list());
+        assertEquals(set("a", "b", "c", "x", "y"), graph.getModulesAffectingAnalysis("d"));
+        graph.setImports("a", list(), list());
+        graph.remove("d");
+
+        graph.retainModules(set("c"));
+        assertNull(graph.getModulesAffectingAnalysis("b"));
+        assertEquals(set("b", "x"), graph.getModulesAffectingAnalysis("c"));
+        assertEquals(set("c"), graph.getDependents("b"));
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.builder;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.python.pydev.analysis.IAnalysisPreferences;
+import com.python.pydev.analysis.messages.CachedMessage;
+import com.python.pydev.analysis.messages.IMessage;
+
+public class AnalysisResultsCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AnalysisResultsCacheTest.class);
+    }
+
+    public void testContentsRoundTrip() throws Exception {
+        IMessage[] messages = new IMessage[] {
+                new CachedMessage(IAnalysisPreferences.TYPE_UNUSED_IMPORT, 1, 1, 1, 1, 10, "Unused import: a|b",
+                        Arrays.asList("a", "line1\nline2:")),
+                new CachedMessage(IAnalysisPreferences.TYPE_UNDEFINED_VARIABLE, 2, 3, 5, 4, 7, "", null), };
+
+        String contents = AnalysisResultsCache.toContents(-15L, messages, null);
+        assertNull(AnalysisResultsCache.fromContents(contents, 15L));
+
+        IMessage[] restored = AnalysisResultsCache.fromContents(contents, -15L);
+        assertEquals(2, restored.length);
+
+        assertEquals(IAnalysisPreferences.TYPE_UNUSED_IMPORT, restored[0].getType());
+        assertEquals(1, restored[0].getSeverity());
+        assertEquals(10, restored[0].getEndCol(null));
+        assertEquals("Unused import: a|b", restored[0].getMessage());
+        assertEquals(Arrays.asList("a", "line1\nline2:"), restored[0].getAdditionalInfo());
+
+        assertEquals(IAnalysisPreferences.TYPE_UNDEFINED_VARIABLE, restored[1].getType());
+        assertEquals(3, restored[1].getStartLine(null));
+        assertEquals(5, restored[1].getStartCol(null));
+        assertEquals(4, restored[1].getEndLine(null));
+        assertEquals("", restored[1].getMessage());
+        assertNull(restored[1].getAdditionalInfo());
+    }
+
+    public void testEmpty() throws Exception {
+        String contents = AnalysisResultsCache.toContents(0L, new IMessage[0], null);
+        assertEquals(0, AnalysisResultsCache.fromContents(contents, 0L).length);
+    }
+}
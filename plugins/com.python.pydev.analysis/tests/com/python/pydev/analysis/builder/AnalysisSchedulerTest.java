@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+public class AnalysisSchedulerTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AnalysisSchedulerTest.class);
+    }
+
+    private final List<String> ran = new ArrayList<String>();
+
+    private final List<String> finishedWithoutRunning = new ArrayList<String>();
+
+    private class RunnableStub implements IAnalysisBuilderRunnable {
+
+        private final String name;
+        private final KeyForAnalysisRunnable key;
+        private final int analysisCause;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private CountDownLatch waitBeforeFinish;
+        private CountDownLatch started;
+
+        RunnableStub(String name, String moduleName, int analysisCause) {
+            this.name = name;
+            this.key = new KeyForAnalysisRunnable("project", moduleName);
+            this.analysisCause = analysisCause;
+        }
+
+        public void run() {
+            synchronized (ran) {
+                ran.add(name);
+            }
+            try {
+                if (started != null) {
+                    started.countDown();
+                }
+                if (waitBeforeFinish != null) {
+                    waitBeforeFinish.await();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        public void finishWithoutRunning() {
+            synchronized (ran) {
+                finishedWithoutRunning.add(name);
+            }
+            finished.countDown();
+        }
+
+        public void waitForRunFinished() {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public boolean getRunFinished() {
+            return finished.getCount() == 0;
+        }
+
+        public KeyForAnalysisRunnable getKey() {
+            return key;
+        }
+
+        public int getAnalysisCause() {
+            return analysisCause;
+        }
+
+        public void setMonitor(IProgressMonitor monitor) {
+        }
+
+        public void stopAnalysis() {
+        }
+
+        public boolean getForceAnalysis() {
+            return false;
+        }
+
+        public String getModuleName() {
+            return key.moduleName;
+        }
+
+        public String getAnalysisCauseStr() {
+            return "";
+        }
+
+        public long getDocumentTime() {
+            return 0;
+        }
+
+        public long getResourceModificationStamp() {
+            return 0;
+        }
+    }
+
+    public void testCoalescingAndPriorities() throws Exception {
+        AnalysisScheduler scheduler = new AnalysisScheduler(1);
+
+        RunnableStub a = new RunnableStub("a", "mod1", IAnalysisBuilderRunnable.ANALYSIS_CAUSE_BUILDER);
+        a.started = new CountDownLatch(1);
+        a.waitBeforeFinish = new CountDownLatch(1);
+        scheduler.schedule(a);
+        assertTrue(a.started.await(5, TimeUnit.SECONDS));
+
+        //while 'a' is running, new requests for the same module are coalesced (only the last one runs).
+        RunnableStub b = new RunnableStub("b", "mod1", IAnalysisBuilderRunnable.ANALYSIS_CAUSE_BUILDER);
+        RunnableStub c = new RunnableStub("c", "mod1", IAnalysisBuilderRunnable.ANALYSIS_CAUSE_BUILDER);
+        RunnableStub d = new RunnableStub("d", "mod2", IAnalysisBuilderRunnable.ANALYSIS_CAUSE_BUILDER);
+        RunnableStub e = new RunnableStub("e", "mod3", IAnalysisBuilderRunnable.ANALYSIS_CAUSE_PARSER);
+        scheduler.schedule(b);
+        scheduler.schedule(c);
+        scheduler.schedule(d);
+        scheduler.schedule(e);
+        assertEquals(Arrays.asList("b"), finishedWithoutRunning);
+        assertTrue(b.getRunFinished());
+        assertEquals(3, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getRunningCount());
+
+        a.waitBeforeFinish.countDown();
+        c.waitForRunFinished();
+        d.waitForRunFinished();
+        e.waitForRunFinished();
+
+        //the request from the editor runs before the ones from the builder.
+        synchronized (ran) {
+            assertEquals(Arrays.asList("a", "e", "d", "c"), ran);
+        }
+        assertEquals(1, scheduler.getAnalysesSuperseded());
+        assertEquals(0, scheduler.getQueueDepth());
+        assertTrue(scheduler.getMaxQueueLatency() >= 0);
+    }
+}
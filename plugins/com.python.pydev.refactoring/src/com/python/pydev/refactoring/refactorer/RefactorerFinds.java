@@ -18,7 +18,6 @@ import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.python.pydev.core.ICompletionCache;
@@ -26,7 +25,6 @@ import org.python.pydev.core.IDefinition;
 import org.python.pydev.core.IModule;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.MisconfigurationException;
-import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.revisited.CompletionCache;
@@ -36,6 +34,7 @@ import org.python.pydev.editor.codecompletion.revisited.visitors.Definition;
 import org.python.pydev.editor.model.ItemPointer;
 import org.python.pydev.editor.refactoring.PyRefactoringFindDefinition;
 import org.python.pydev.editor.refactoring.RefactoringRequest;
+import org.python.pydev.parser.jython.SimpleNode;
 import org.python.pydev.parser.jython.ast.ClassDef;
 import org.python.pydev.parser.jython.ast.exprType;
 import org.python.pydev.parser.visitors.NodeUtils;
@@ -43,8 +42,11 @@ import org.python.pydev.parser.visitors.scope.ASTEntry;
 import org.python.pydev.parser.visitors.scope.EasyASTIteratorVisitor;
 import org.python.pydev.plugin.nature.PythonNature;
 
+import com.aptana.shared_core.callbacks.ICallback;
+import com.aptana.shared_core.string.FastStringBuffer;
 import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo;
 import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
+import com.python.pydev.analysis.additionalinfo.SubclassInfo;
 import com.python.pydev.ui.hierarchy.HierarchyNodeModel;
 
 public class RefactorerFinds {
@@ -135,7 +137,7 @@ public class RefactorerFinds {
     private void findChildren(RefactoringRequest request, HierarchyNodeModel initialModel,
             HashMap<HierarchyNodeModel, HierarchyNodeModel> allFound) {
         try {
-            request.getMonitor().beginTask("Find children", 100);
+            request.getMonitor().beginTask("Find children", IProgressMonitor.UNKNOWN);
             //and now the children...
             List<AbstractAdditionalDependencyInfo> infoForProject;
             try {
@@ -148,32 +150,16 @@ public class RefactorerFinds {
             HashSet<HierarchyNodeModel> foundOnRound = new HashSet<HierarchyNodeModel>();
             foundOnRound.add(initialModel);
 
-            int totalWork = 1000;
-
             while (foundOnRound.size() > 0) {
                 HashSet<HierarchyNodeModel> nextRound = new HashSet<HierarchyNodeModel>(foundOnRound);
                 foundOnRound.clear();
 
                 for (HierarchyNodeModel toFindOnRound : nextRound) {
-
-                    HashSet<SourceModule> modulesToAnalyze;
-
-                    int work = totalWork / 250;
-                    if (work <= 0) {
-                        work = 1;
-                        totalWork = 0;
-                    }
-                    totalWork -= work;
-
-                    try {
-                        request.pushMonitor(new SubProgressMonitor(request.getMonitor(), work));
-                        modulesToAnalyze = findLikelyModulesWithChildren(request, toFindOnRound, infoForProject);
-                    } finally {
-                        request.popMonitor().done();
+                    if (request.getMonitor().isCanceled()) {
+                        throw new OperationCanceledException();
                     }
-
-                    request.communicateWork("Likely modules with matches:" + modulesToAnalyze.size());
-                    findChildrenOnModules(request, allFound, foundOnRound, toFindOnRound, modulesToAnalyze);
+                    findChildrenInIndex(request, allFound, foundOnRound, toFindOnRound, infoForProject);
+                    request.getMonitor().worked(1);
                 }
             }
         } finally {
@@ -181,100 +167,89 @@ public class RefactorerFinds {
         }
     }
 
-    private void findChildrenOnModules(RefactoringRequest request,
+    /**
+     * Finds the children of the passed node in the index of subclasses kept in the additional info (the modules
+     * of the children are not loaded: the ast of a node is only loaded when requested through 
+     * HierarchyNodeModel.loadAst()).
+     */
+    private void findChildrenInIndex(RefactoringRequest request,
             HashMap<HierarchyNodeModel, HierarchyNodeModel> allFound, HashSet<HierarchyNodeModel> foundOnRound,
-            HierarchyNodeModel toFindOnRound, HashSet<SourceModule> modulesToAnalyze) {
-        for (SourceModule module : modulesToAnalyze) {
-            SourceModule m = (SourceModule) module;
-            request.communicateWork("Analyzing:" + m.getName());
-
-            Iterator<ASTEntry> entries = EasyASTIteratorVisitor.createClassIterator(m.getAst());
-
-            while (entries.hasNext()) {
-                ASTEntry entry = entries.next();
-                //we're checking for those that have model.name as a parent
-                ClassDef def = (ClassDef) entry.node;
-                List<String> parentNames = NodeUtils.getParentNames(def, true);
-                if (parentNames.contains(toFindOnRound.name)) {
-                    HierarchyNodeModel newNode = new HierarchyNodeModel(module, def);
-                    if (allFound.containsKey(newNode) == false) {
-                        toFindOnRound.children.add(newNode);
-                        allFound.put(newNode, newNode);
-                        foundOnRound.add(newNode);
-                    } else {
-                        newNode = allFound.get(newNode);
-                        Assert.isNotNull(newNode);
-                        toFindOnRound.children.add(newNode);
-                    }
+            HierarchyNodeModel toFindOnRound, List<AbstractAdditionalDependencyInfo> infoForProject) {
+        for (AbstractAdditionalDependencyInfo additionalInfo : infoForProject) {
+            for (SubclassInfo info : additionalInfo.getSubclassesInfo(toFindOnRound.name)) {
+                if (DEBUG) {
+                    System.out.println("findChildrenInIndex: " + info.getDeclaringModuleName() + " - "
+                            + info.getPath());
+                }
+                HierarchyNodeModel newNode = new HierarchyNodeModel(info.getSubclassName(),
+                        info.getDeclaringModuleName(), null);
+                if (allFound.containsKey(newNode) == false) {
+                    newNode.astLoader = createAstLoader(request.nature, additionalInfo, info.getPath());
+                    toFindOnRound.children.add(newNode);
+                    allFound.put(newNode, newNode);
+                    foundOnRound.add(newNode);
+                } else {
+                    newNode = allFound.get(newNode);
+                    Assert.isNotNull(newNode);
+                    toFindOnRound.children.add(newNode);
                 }
             }
         }
     }
 
-    private HashSet<SourceModule> findLikelyModulesWithChildren(RefactoringRequest request, HierarchyNodeModel model,
-            List<AbstractAdditionalDependencyInfo> infoForProject) {
-        //get the modules that are most likely to have that declaration.
-        HashSet<SourceModule> modulesToAnalyze = new HashSet<SourceModule>();
-        for (AbstractAdditionalDependencyInfo additionalInfo : infoForProject) {
-
-            IProgressMonitor monitor = request.getMonitor();
-            if (monitor == null) {
-                monitor = new NullProgressMonitor();
-            }
-            monitor.beginTask("Find likely modules with children", 100);
+    /**
+     * @return a callback that loads the module and the ast for a node found in the index of subclasses.
+     */
+    private ICallback<Object, HierarchyNodeModel> createAstLoader(final IPythonNature requestNature,
+            final AbstractAdditionalDependencyInfo additionalInfo, final String subclassPath) {
+        return new ICallback<Object, HierarchyNodeModel>() {
+
+            public Object call(HierarchyNodeModel model) {
+                IPythonNature pythonNature = null;
+                if (additionalInfo instanceof AdditionalProjectInterpreterInfo) {
+                    AdditionalProjectInterpreterInfo projectInterpreterInfo = (AdditionalProjectInterpreterInfo) additionalInfo;
+                    pythonNature = PythonNature.getPythonNature(projectInterpreterInfo.getProject());
+                }
+                if (pythonNature == null) {
+                    pythonNature = requestNature;
+                }
+                IModule module = pythonNature.getAstManager().getModule(model.moduleName, pythonNature, false);
+                if (module == null && pythonNature != requestNature) {
+                    module = requestNature.getAstManager().getModule(model.moduleName, requestNature, false);
+                }
 
-            try {
-                List<ModulesKey> modules;
-                try {
-                    request.pushMonitor(new SubProgressMonitor(monitor, 90));
-                    modules = additionalInfo.getModulesWithToken(model.name, monitor);
-                    monitor.setTaskName("Searching: " + model.name);
-                    if (monitor.isCanceled()) {
-                        throw new OperationCanceledException();
+                if (module instanceof SourceModule) {
+                    ClassDef classDef = findClassDef(((SourceModule) module).getAst(), subclassPath);
+                    if (classDef != null) {
+                        model.module = module;
+                        model.ast = classDef;
                     }
-                } finally {
-                    request.popMonitor().done();
                 }
+                return null;
+            }
+        };
+    }
 
-                try {
-                    request.pushMonitor(new SubProgressMonitor(monitor, 10));
-                    request.getMonitor().beginTask("Find likely modules with children", modules.size());
-                    for (ModulesKey declaringModuleName : modules) {
-                        if (DEBUG) {
-                            System.out.println("findLikelyModulesWithChildren: " + declaringModuleName);
-                        }
-
-                        IModule module = null;
-
-                        IPythonNature pythonNature = null;
-                        if (additionalInfo instanceof AdditionalProjectInterpreterInfo) {
-                            AdditionalProjectInterpreterInfo projectInterpreterInfo = (AdditionalProjectInterpreterInfo) additionalInfo;
-                            pythonNature = PythonNature.getPythonNature(projectInterpreterInfo.getProject());
-
-                        }
-                        if (pythonNature == null) {
-                            pythonNature = request.nature;
-                        }
-                        module = pythonNature.getAstManager().getModule(declaringModuleName.name, pythonNature, false);
-                        if (module == null && pythonNature != request.nature) {
-                            module = request.nature.getAstManager().getModule(declaringModuleName.name, request.nature,
-                                    false);
-                        }
-
-                        if (module instanceof SourceModule) {
-                            modulesToAnalyze.add((SourceModule) module);
-                        }
-
-                        request.getMonitor().worked(1);
-                    }
-                } finally {
-                    request.popMonitor().done();
+    /**
+     * @return the class definition with the given path in the ast (i.e.: 'Outer.Inner') or null if not found.
+     */
+    private static ClassDef findClassDef(SimpleNode ast, String classPath) {
+        Iterator<ASTEntry> entries = EasyASTIteratorVisitor.createClassIterator(ast);
+        FastStringBuffer buf = new FastStringBuffer();
+        while (entries.hasNext()) {
+            ASTEntry entry = entries.next();
+            buf.clear();
+            for (ASTEntry e = entry; e != null; e = e.parent) {
+                if (buf.length() > 0) {
+                    buf.insert(0, '.');
                 }
-            } finally {
-                monitor.done();
+                buf.insert(0, e.getName());
+            }
+            if (buf.toString().equals(classPath)) {
+                return (ClassDef) entry.node;
             }
         }
-        return modulesToAnalyze;
+        return null;
     }
 
     /**
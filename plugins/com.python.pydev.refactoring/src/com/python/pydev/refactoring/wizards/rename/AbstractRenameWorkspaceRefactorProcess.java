@@ -201,8 +201,11 @@ public abstract class AbstractRenameWorkspaceRefactorProcess extends AbstractRen
                                         if (module instanceof SourceModule) {
 
                                             request.checkCancelled();
+                                            //the comments are needed (and the modules manager may keep only the
+                                            //compact ast)
+                                            SourceModule fullModule = ((SourceModule) module).getFullModule(nature);
                                             List<ASTEntry> entryOccurrences = getOccurrencesInOtherModule(status,
-                                                    request.initialName, (SourceModule) module, nature);
+                                                    request.initialName, fullModule, nature);
 
                                             if (entryOccurrences.size() > 0) {
                                                 addOccurrences(entryOccurrences, key.file, modName);
@@ -17,6 +17,8 @@ import org.python.pydev.core.IModule;
 import org.python.pydev.parser.jython.ast.ClassDef;
 import org.python.pydev.parser.visitors.NodeUtils;
 
+import com.aptana.shared_core.callbacks.ICallback;
+
 /**
  * This is an hierarchy node that can have many parents and many children.
  * 
@@ -47,6 +49,12 @@ public class HierarchyNodeModel {
      */
     public IModule module;
 
+    /**
+     * Used to load the module and the ast when the node is created without them (i.e.: nodes created from the
+     * index of subclasses). May be null.
+     */
+    public ICallback<Object, HierarchyNodeModel> astLoader;
+
     public HierarchyNodeModel(String name) {
         this(name, "", null);
     }
@@ -70,6 +78,18 @@ public class HierarchyNodeModel {
         this.module = module;
     }
 
+    /**
+     * Loads the module and the ast of this node if it still wasn't loaded (the nodes found from the index of
+     * subclasses are only loaded when actually needed).
+     */
+    public void loadAst() {
+        ICallback<Object, HierarchyNodeModel> loader = this.astLoader;
+        if (ast == null && loader != null) {
+            this.astLoader = null;
+            loader.call(this);
+        }
+    }
+
     @Override
     public String toString() {
         return "HierarchyNodeModel[" + name + " - " + moduleName + "]";
@@ -192,6 +192,9 @@ public class HierarchyViewer {
     }
 
     private void onClick(final HierarchyNodeModel model, int clickCount) {
+        if (model != null) {
+            model.loadAst(); //the children are found in the index and are only loaded when selected.
+        }
         if (clickCount == 2) {
             if (model != null) {
                 IModule m = model.module;
@@ -40,6 +40,9 @@ import com.aptana.shared_core.structure.Tuple;
  * There is a 'catch': its keys must be Strings, as its name will be used as the name of the entry in the disk,
  * so, a 'miss' in memory will try to get it from the disk (and a miss from the disk will mean there is no such key).
  * 
+ * The values in the disk are kept by an IDiskCacheStore (by default all the values are kept in a single segment
+ * file -- see: USE_SEGMENT_FILE_STORE).
+ * 
  * -- And yes, the cache itself is Serializable! 
  */
 public final class DiskCache implements Serializable {
@@ -88,6 +91,17 @@ public final class DiskCache implements Serializable {
 
     private transient Job scheduleRemoveStale;
 
+    /**
+     * If true, the values are persisted in a single memory-mapped segment file (otherwise, a file is created for
+     * each key).
+     */
+    public static boolean USE_SEGMENT_FILE_STORE = true;
+
+    /**
+     * Where the values are actually persisted (lazily created).
+     */
+    private transient IDiskCacheStore store;
+
     private class JobRemoveStale extends Job {
 
         public JobRemoveStale() {
@@ -149,6 +163,7 @@ public final class DiskCache implements Serializable {
             tempBuf.append('\n');
         }
         tempBuf.append("-- END DISKCACHE\n");
+        getStore().flush();
     }
 
     /**
@@ -294,14 +309,13 @@ public final class DiskCache implements Serializable {
             CompleteIndexValue v = cache.getObj(key);
             if (v == null && keys.containsKey(key)) {
                 //miss in memory... get from disk
-                File file = getFileForKey(key);
-                if (file.exists()) {
-                    String fileContents = FileUtils.getFileContents(file);
+                String fileContents = getStore().read(key);
+                if (fileContents != null) {
                     v = (CompleteIndexValue) readFromFileMethod.call(fileContents);
                 } else {
                     if (DEBUG) {
-                        System.out.println("File: " + file
-                                + " is in the cache but does not exist (so, it will be removed).");
+                        System.out.println("Key: " + key
+                                + " is in the cache but is not in the disk (so, it will be removed).");
                     }
                 }
                 if (v == null) {
@@ -315,12 +329,21 @@ public final class DiskCache implements Serializable {
         }
     }
 
-    private File getFileForKey(CompleteIndexKey o) {
+    /**
+     * @return the store where the values are persisted (created on demand for the current folder to persist).
+     */
+    private IDiskCacheStore getStore() {
         synchronized (lock) {
-            String name = o.key.name;
-            String md5 = com.aptana.shared_core.string.StringUtils.md5(name);
-            name += "_" + md5.substring(0, 4); //Just add 4 chars to it...
-            return new File(folderToPersist, name + suffix);
+            if (store == null) {
+                FilePerKeyDiskCacheStore filePerKeyStore = new FilePerKeyDiskCacheStore(folderToPersist, suffix);
+                if (USE_SEGMENT_FILE_STORE) {
+                    //Values still persisted in a file per key are moved to the segment as they're requested.
+                    store = new SegmentFileDiskCacheStore(new File(folderToPersist), filePerKeyStore);
+                } else {
+                    store = filePerKeyStore;
+                }
+            }
+            return store;
         }
     }
 
@@ -334,8 +357,7 @@ public final class DiskCache implements Serializable {
                 System.out.println("Disk cache - Removing: " + key);
             }
             cache.remove(key);
-            File fileForKey = getFileForKey(key);
-            fileForKey.delete();
+            getStore().remove(key);
             keys.remove(key);
         }
     }
@@ -348,11 +370,10 @@ public final class DiskCache implements Serializable {
             scheduleRemoveStale();
             if (n != null) {
                 cache.add(key, n);
-                File fileForKey = getFileForKey(key);
                 if (DEBUG) {
-                    System.out.println("Disk cache - Adding: " + key + " file: " + fileForKey);
+                    System.out.println("Disk cache - Adding: " + key);
                 }
-                FileUtils.writeStrToFile(toFileMethod.call(n), fileForKey);
+                getStore().write(key, toFileMethod.call(n));
             } else {
                 if (DEBUG) {
                     System.out.println("Disk cache - Adding: " + key + " with empty value (computed on demand).");
@@ -374,10 +395,7 @@ public final class DiskCache implements Serializable {
             if (DEBUG) {
                 System.out.println("Disk cache - clear");
             }
-            for (CompleteIndexKey key : keys.keySet()) {
-                File fileForKey = getFileForKey(key);
-                fileForKey.delete();
-            }
+            getStore().clear(keys.keySet());
             keys.clear();
             cache.clear();
         }
@@ -392,6 +410,15 @@ public final class DiskCache implements Serializable {
         }
     }
 
+    /**
+     * @return the key stored in this cache which is equal to the passed key (or null if it's not available).
+     */
+    public CompleteIndexKey getKey(CompleteIndexKey key) {
+        synchronized (lock) {
+            return keys.get(key);
+        }
+    }
+
     public void setFolderToPersist(String folderToPersist) {
         synchronized (lock) {
             File file = new File(folderToPersist);
@@ -402,6 +429,10 @@ public final class DiskCache implements Serializable {
                 System.out.println("Disk cache - persist :" + folderToPersist);
             }
             this.folderToPersist = folderToPersist;
+            if (store != null) {
+                store.dispose();
+                store = null;
+            }
         }
     }
 
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.io.File;
+import java.util.Collection;
+
+import com.aptana.shared_core.io.FileUtils;
+
+/**
+ * Store which creates a file for each key in the folder to persist (the name of the file is based on the name of
+ * the key).
+ */
+public final class FilePerKeyDiskCacheStore implements IDiskCacheStore {
+
+    private final String folderToPersist;
+
+    private final String suffix;
+
+    public FilePerKeyDiskCacheStore(String folderToPersist, String suffix) {
+        this.folderToPersist = folderToPersist;
+        this.suffix = suffix;
+    }
+
+    private File getFileForKey(CompleteIndexKey o) {
+        String name = o.key.name;
+        String md5 = com.aptana.shared_core.string.StringUtils.md5(name);
+        name += "_" + md5.substring(0, 4); //Just add 4 chars to it...
+        return new File(folderToPersist, name + suffix);
+    }
+
+    public String read(CompleteIndexKey key) {
+        File file = getFileForKey(key);
+        if (file.exists()) {
+            return FileUtils.getFileContents(file);
+        }
+        return null;
+    }
+
+    public void write(CompleteIndexKey key, String contents) {
+        FileUtils.writeStrToFile(contents, getFileForKey(key));
+    }
+
+    public void remove(CompleteIndexKey key) {
+        getFileForKey(key).delete();
+    }
+
+    public void clear(Collection<CompleteIndexKey> keys) {
+        for (CompleteIndexKey key : keys) {
+            getFileForKey(key).delete();
+        }
+    }
+
+    public void flush() {
+        //Nothing to do: files are written at once.
+    }
+
+    public void dispose() {
+        //Nothing to do: no resources are kept.
+    }
+}
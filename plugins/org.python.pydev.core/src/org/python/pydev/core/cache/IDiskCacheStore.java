@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.util.Collection;
+
+/**
+ * Interface for the place where a DiskCache actually persists its values (as strings).
+ * 
+ * Implementations must be thread-safe.
+ */
+public interface IDiskCacheStore {
+
+    /**
+     * @return the contents stored for the given key or null if there are no contents for it.
+     */
+    String read(CompleteIndexKey key);
+
+    /**
+     * Stores the contents for the given key (overriding previous contents).
+     */
+    void write(CompleteIndexKey key, String contents);
+
+    /**
+     * Removes the contents for the given key.
+     */
+    void remove(CompleteIndexKey key);
+
+    /**
+     * Removes all the contents in the store.
+     * 
+     * @param keys the keys which are currently available.
+     */
+    void clear(Collection<CompleteIndexKey> keys);
+
+    /**
+     * Makes sure that the contents written are actually on the disk.
+     */
+    void flush();
+
+    /**
+     * Releases the resources held by the store (it should not be used afterwards).
+     */
+    void dispose();
+}
@@ -0,0 +1,554 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.python.pydev.core.log.Log;
+
+/**
+ * Store which keeps all the values in a single append-only segment file (with an in-memory table with the offset
+ * of the record of each key).
+ *
+ * Each record is written as:
+ *
+ * int: length of the key name (utf-8 bytes)
+ * bytes: key name
+ * int: length of the contents (utf-8 bytes) or -1 if the key was removed
+ * bytes: contents
+ *
+ * The offset table is rebuilt by going through the records when the store is opened (so, no other file has to be
+ * kept in sync). Reads of the records which were in the file when it was opened are done from a memory-mapped
+ * view of the file (which is created only once per file) and the records appended later on are read through
+ * the channel.
+ *
+ * As writes and removals only append to the file, the space of the old records is only reclaimed when the
+ * store is compacted (in a background job, when the size of the dead records is bigger than the size of the
+ * live records). A compaction writes a new segment file (with a new generation number in the name), so that reads
+ * can still be done from the old file while the compaction runs.
+ *
+ * Keys not found in the segment are searched in the legacy store (if given) and moved to the segment file.
+ */
+public final class SegmentFileDiskCacheStore implements IDiskCacheStore {
+
+    private static final boolean DEBUG = false;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String SEGMENT_PREFIX = "__segment_";
+
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    /**
+     * Only compact if we have at least this number of bytes in dead records.
+     */
+    private static final long MIN_DEAD_BYTES_TO_COMPACT = 1024 * 1024;
+
+    /**
+     * The records after this position are read through the channel instead of being memory-mapped.
+     */
+    private static final long MAX_SIZE_TO_MAP = Integer.MAX_VALUE;
+
+    /**
+     * Position and size of a record in the segment file.
+     */
+    private static final class RecordLocation {
+
+        private final long offset;
+
+        private final int size;
+
+        private RecordLocation(long offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    private final File folder;
+
+    private final IDiskCacheStore legacyStore;
+
+    private int generation;
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileChannel channel;
+
+    /**
+     * Where the next record should be written.
+     */
+    private long end;
+
+    /**
+     * key name -> location of the last record written for the key.
+     */
+    private Map<String, RecordLocation> locations = new HashMap<String, RecordLocation>();
+
+    private long liveBytes;
+
+    private long deadBytes;
+
+    /**
+     * The records before this position are read from the mapping (it's the end of the file when it was opened).
+     */
+    private long mappedEnd;
+
+    /**
+     * A read-only mapping of the file up to mappedEnd (lazily created).
+     */
+    private MappedByteBuffer mapped;
+
+    private final Job compactJob = new Job("Compact index cache") {
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            compact();
+            return Status.OK_STATUS;
+        }
+    };
+
+    /**
+     * @param folder the folder where the segment file should be kept.
+     * @param legacyStore a store where contents may be found if not found in the segment (may be null).
+     */
+    public SegmentFileDiskCacheStore(File folder, IDiskCacheStore legacyStore) {
+        this.folder = folder;
+        this.legacyStore = legacyStore;
+        compactJob.setSystem(true);
+        compactJob.setPriority(Job.DECORATE);
+        synchronized (lock) {
+            open();
+        }
+    }
+
+    private File getSegmentFile(int generation) {
+        return new File(folder, SEGMENT_PREFIX + generation + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Opens the segment file with the highest generation (deleting the others) and rebuilds the offsets table.
+     */
+    private void open() {
+        generation = 0;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        generation = Math.max(generation, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        //ignore
+                    }
+                }
+            }
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                        && !f.equals(getSegmentFile(generation))) {
+                    f.delete(); //Old generation (i.e.: compaction finished but it couldn't be deleted)
+                }
+            }
+        }
+
+        locations = new HashMap<String, RecordLocation>();
+        liveBytes = 0;
+        deadBytes = 0;
+        mapped = null;
+        mappedEnd = 0;
+        try {
+            folder.mkdirs();
+            randomAccessFile = new RandomAccessFile(getSegmentFile(generation), "rw");
+            channel = randomAccessFile.getChannel();
+            end = scanRecords();
+            if (end != channel.size()) {
+                //Last record was not completely written (i.e.: crash while writing): discard it.
+                channel.truncate(end);
+            }
+            mappedEnd = Math.min(end, MAX_SIZE_TO_MAP);
+        } catch (IOException e) {
+            Log.log(e);
+        }
+    }
+
+    /**
+     * Goes through the records in the file to build the offsets table.
+     *
+     * @return the position after the last valid record.
+     */
+    private long scanRecords() throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        ByteBuffer intBuf = ByteBuffer.allocate(4);
+        while (pos + 8 <= size) {
+            //Note: the lengths are checked with long arithmetic (a corrupt length could overflow an int).
+            int nameLen = readInt(intBuf, pos);
+            if (nameLen < 0 || nameLen > size - pos - 8) {
+                break;
+            }
+            int dataLen = readInt(intBuf, pos + 4 + nameLen);
+            if (dataLen < -1 || dataLen > size - pos - 8 - nameLen) {
+                break;
+            }
+            long recordSize = 8L + nameLen + Math.max(0, dataLen);
+            if (recordSize > Integer.MAX_VALUE) {
+                break;
+            }
+            ByteBuffer nameBuf = ByteBuffer.allocate(nameLen);
+            readFully(nameBuf, pos + 4);
+            nameBuf.flip();
+            String name = UTF8.decode(nameBuf).toString();
+            RecordLocation old = locations.remove(name);
+            if (old != null) {
+                liveBytes -= old.size;
+                deadBytes += old.size;
+            }
+            if (dataLen >= 0) {
+                locations.put(name, new RecordLocation(pos, (int) recordSize));
+                liveBytes += recordSize;
+            } else {
+                deadBytes += recordSize;
+            }
+            pos += recordSize;
+        }
+        return pos;
+    }
+
+    private int readInt(ByteBuffer intBuf, long pos) throws IOException {
+        intBuf.clear();
+        readFully(intBuf, pos);
+        intBuf.flip();
+        return intBuf.getInt();
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        readFully(channel, buf, pos);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+            pos += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    public String read(CompleteIndexKey key) {
+        synchronized (lock) {
+            RecordLocation location = locations.get(key.key.name);
+            if (location != null) {
+                try {
+                    return readContents(location);
+                } catch (IOException e) {
+                    Log.log(e);
+                    return null;
+                }
+            }
+        }
+        if (legacyStore != null) {
+            String contents = legacyStore.read(key);
+            if (contents != null) {
+                //Move it to the segment.
+                write(key, contents);
+                legacyStore.remove(key);
+            }
+            return contents;
+        }
+        return null;
+    }
+
+    private String readContents(RecordLocation location) throws IOException {
+        long recordEnd = location.offset + location.size;
+        ByteBuffer record;
+        if (recordEnd <= mappedEnd) {
+            if (mapped == null) {
+                //The file is only appended, so, the mapped region never changes (it's not remapped after writes).
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, mappedEnd);
+            }
+            record = mapped.duplicate();
+            record.limit((int) recordEnd);
+            record.position((int) location.offset);
+        } else {
+            record = ByteBuffer.allocate(location.size);
+            readFully(record, location.offset);
+            record.flip();
+        }
+        int nameLen = record.getInt();
+        record.position(record.position() + nameLen);
+        int dataLen = record.getInt();
+        if (dataLen < 0) {
+            return null;
+        }
+        return UTF8.decode(record).toString();
+    }
+
+    public void write(CompleteIndexKey key, String contents) {
+        String name = key.key.name;
+        byte[] nameBytes;
+        byte[] dataBytes;
+        try {
+            nameBytes = name.getBytes("UTF-8");
+            dataBytes = contents.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(8 + nameBytes.length + dataBytes.length);
+        buf.putInt(nameBytes.length);
+        buf.put(nameBytes);
+        buf.putInt(dataBytes.length);
+        buf.put(dataBytes);
+        buf.flip();
+
+        synchronized (lock) {
+            try {
+                int size = buf.remaining();
+                writeFully(channel, buf, end);
+                RecordLocation old = locations.put(name, new RecordLocation(end, size));
+                end += size;
+                liveBytes += size;
+                if (old != null) {
+                    liveBytes -= old.size;
+                    deadBytes += old.size;
+                    scheduleCompactIfNeeded();
+                }
+            } catch (IOException e) {
+                Log.log(e);
+            }
+        }
+    }
+
+    public void remove(CompleteIndexKey key) {
+        String name = key.key.name;
+        synchronized (lock) {
+            RecordLocation old = locations.remove(name);
+            if (old != null) {
+                try {
+                    byte[] nameBytes = name.getBytes("UTF-8");
+                    ByteBuffer buf = ByteBuffer.allocate(8 + nameBytes.length);
+                    buf.putInt(nameBytes.length);
+                    buf.put(nameBytes);
+                    buf.putInt(-1);
+                    buf.flip();
+                    int size = buf.remaining();
+                    writeFully(channel, buf, end);
+                    end += size;
+                    liveBytes -= old.size;
+                    deadBytes += old.size + size;
+                    scheduleCompactIfNeeded();
+                } catch (IOException e) {
+                    Log.log(e);
+                }
+            }
+        }
+        if (legacyStore != null) {
+            legacyStore.remove(key);
+        }
+    }
+
+    public void clear(Collection<CompleteIndexKey> keys) {
+        synchronized (lock) {
+            closeChannel();
+            getSegmentFile(generation).delete();
+            open();
+        }
+        if (legacyStore != null) {
+            legacyStore.clear(keys);
+        }
+    }
+
+    public void flush() {
+        synchronized (lock) {
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                Log.log(e);
+            }
+        }
+    }
+
+    public void dispose() {
+        compactJob.cancel();
+        synchronized (lock) {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        mapped = null;
+        mappedEnd = 0;
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close(); //closes the channel too
+            } catch (IOException e) {
+                Log.log(e);
+            }
+            randomAccessFile = null;
+            channel = null;
+        }
+    }
+
+    private void scheduleCompactIfNeeded() {
+        if (deadBytes > MIN_DEAD_BYTES_TO_COMPACT && deadBytes > liveBytes) {
+            compactJob.schedule(2000);
+        }
+    }
+
+    /**
+     * @return the size (in bytes) of the records which are no longer valid.
+     */
+    public long getDeadBytes() {
+        synchronized (lock) {
+            return deadBytes;
+        }
+    }
+
+    /**
+     * @return the size (in bytes) of the records which are valid.
+     */
+    public long getLiveBytes() {
+        synchronized (lock) {
+            return liveBytes;
+        }
+    }
+
+    /**
+     * Copies the live records to a new segment file (the lock is held to get the records to copy, while reading
+     * each record -- so that the file isn't closed in the meanwhile -- and later to copy what was written during
+     * the compaction and to swap the files).
+     */
+    void compact() {
+        Map<String, RecordLocation> snapshot;
+        FileChannel oldChannel;
+        int newGeneration;
+        synchronized (lock) {
+            if (channel == null) {
+                return;
+            }
+            snapshot = new HashMap<String, RecordLocation>(locations);
+            oldChannel = channel;
+            newGeneration = generation + 1;
+        }
+
+        File newFile = getSegmentFile(newGeneration);
+        RandomAccessFile newRandomAccessFile = null;
+        try {
+            newRandomAccessFile = new RandomAccessFile(newFile, "rw");
+            newRandomAccessFile.setLength(0);
+            FileChannel newChannel = newRandomAccessFile.getChannel();
+            Map<String, RecordLocation> newLocations = new HashMap<String, RecordLocation>(snapshot.size());
+            long newEnd = 0;
+            boolean closed = false;
+            for (Map.Entry<String, RecordLocation> entry : snapshot.entrySet()) {
+                RecordLocation location = entry.getValue();
+                ByteBuffer buf = ByteBuffer.allocate(location.size);
+                synchronized (lock) {
+                    closed = channel != oldChannel;
+                    if (closed) {
+                        break;
+                    }
+                    readFully(oldChannel, buf, location.offset);
+                }
+                buf.flip();
+                writeFully(newChannel, buf, newEnd);
+                newLocations.put(entry.getKey(), new RecordLocation(newEnd, location.size));
+                newEnd += location.size;
+            }
+
+            synchronized (lock) {
+                if (closed || channel != oldChannel) {
+                    //Cleared/disposed in the meanwhile.
+                    newRandomAccessFile.close();
+                    newFile.delete();
+                    return;
+                }
+                Map<String, RecordLocation> finalLocations = new HashMap<String, RecordLocation>(locations.size());
+                long finalLiveBytes = 0;
+                for (Map.Entry<String, RecordLocation> entry : locations.entrySet()) {
+                    String name = entry.getKey();
+                    RecordLocation current = entry.getValue();
+                    RecordLocation copied = snapshot.get(name);
+                    if (copied != null && copied.offset == current.offset) {
+                        finalLocations.put(name, newLocations.get(name));
+                    } else {
+                        //Written during the compaction.
+                        newEnd = copyRecord(channel, current, newChannel, newEnd, name, finalLocations);
+                    }
+                    finalLiveBytes += current.size;
+                }
+
+                File oldFile = getSegmentFile(generation);
+                closeChannel();
+                if (!oldFile.delete()) {
+                    oldFile.deleteOnExit(); //i.e.: still mapped on windows (will be removed when opened later on).
+                }
+
+                randomAccessFile = newRandomAccessFile;
+                channel = newChannel;
+                generation = newGeneration;
+                locations = finalLocations;
+                end = newEnd;
+                mappedEnd = Math.min(end, MAX_SIZE_TO_MAP);
+                liveBytes = finalLiveBytes;
+                deadBytes = newEnd - finalLiveBytes;
+                if (DEBUG) {
+                    System.out.println("Compacted: " + newFile + " live: " + liveBytes + " dead: " + deadBytes);
+                }
+            }
+        } catch (IOException e) {
+            Log.log(e);
+            try {
+                if (newRandomAccessFile != null) {
+                    newRandomAccessFile.close();
+                }
+            } catch (IOException e1) {
+                //ignore
+            }
+            synchronized (lock) {
+                if (generation != newGeneration) {
+                    newFile.delete();
+                }
+            }
+        }
+    }
+
+    private static long copyRecord(FileChannel from, RecordLocation location, FileChannel to, long toPos,
+            String name, Map<String, RecordLocation> newLocations) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(location.size);
+        readFully(from, buf, location.offset);
+        buf.flip();
+        writeFully(to, buf, toPos);
+        newLocations.put(name, new RecordLocation(toPos, location.size));
+        return toPos + location.size;
+    }
+}
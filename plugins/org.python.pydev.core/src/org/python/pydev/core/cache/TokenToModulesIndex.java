@@ -0,0 +1,371 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.python.pydev.core.FastBufferedReader;
+import org.python.pydev.core.ObjectsPool;
+import org.python.pydev.core.ObjectsPool.ObjectsPoolMap;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+/**
+ * Inverted index for the complete index kept in a DiskCache: maps a token to the modules that contain it.
+ *
+ * Each indexed module receives an int id and each token points to a posting list with those ids (ids are always
+ * given in increasing order, so, posting lists are kept sorted just by appending to them).
+ *
+ * When a module is removed (or re-indexed), its old id is just marked as dead (so that we don't have to go through
+ * all the tokens to remove it) and the dead ids are only really removed from the posting lists when there are
+ * too many of those (or when the index is written to disk).
+ *
+ * Note: this class is not synchronized (clients must synchronize the access to it).
+ */
+public final class TokenToModulesIndex {
+
+    /**
+     * Only compact when we have at least this number of dead ids (and more dead than live ids).
+     */
+    private static final int MIN_DEAD_IDS_TO_COMPACT = 1000;
+
+    /**
+     * A growable list of ints (sorted as the ids are always added in increasing order).
+     */
+    private static final class PostingList {
+
+        private int[] ids;
+
+        private int size;
+
+        private PostingList(int initialCapacity) {
+            ids = new int[initialCapacity];
+        }
+
+        private void add(int id) {
+            if (size == ids.length) {
+                int[] newIds = new int[size + (size >> 1) + 2];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                ids = newIds;
+            }
+            ids[size] = id;
+            size++;
+        }
+    }
+
+    /**
+     * token -> ids of the modules that have the token
+     */
+    private Map<String, PostingList> tokenToPostings = new HashMap<String, PostingList>();
+
+    /**
+     * id -> key indexed (null if the id is dead).
+     */
+    private ArrayList<CompleteIndexKey> idToKey = new ArrayList<CompleteIndexKey>();
+
+    /**
+     * id -> modification time of the module when it was indexed.
+     */
+    private long[] idToLastModified = new long[16];
+
+    /**
+     * module name -> id
+     */
+    private Map<String, Integer> moduleNameToId = new HashMap<String, Integer>();
+
+    private int deadIds;
+
+    /**
+     * Indexes the tokens of the given module (removing any previous information the module had).
+     *
+     * @param key the key for the module (note that its lastModified is used to check whether the information
+     * is still valid later on).
+     * @param tokens the tokens found in the module.
+     */
+    public void put(CompleteIndexKey key, Collection<String> tokens) {
+        remove(key.key.name);
+
+        int id = idToKey.size();
+        idToKey.add(key);
+        if (id == idToLastModified.length) {
+            long[] newArray = new long[id * 2];
+            System.arraycopy(idToLastModified, 0, newArray, 0, id);
+            idToLastModified = newArray;
+        }
+        idToLastModified[id] = key.lastModified;
+        moduleNameToId.put(key.key.name, id);
+
+        for (String token : tokens) {
+            PostingList postingList = tokenToPostings.get(token);
+            if (postingList == null) {
+                postingList = new PostingList(2);
+                tokenToPostings.put(ObjectsPool.intern(token), postingList);
+            }
+            postingList.add(id);
+        }
+    }
+
+    /**
+     * Removes the information on the given module (its id is marked as dead).
+     */
+    public void remove(String moduleName) {
+        if (removeNoCompact(moduleName)) {
+            if (deadIds > MIN_DEAD_IDS_TO_COMPACT && deadIds > moduleNameToId.size()) {
+                compact();
+            }
+        }
+    }
+
+    private boolean removeNoCompact(String moduleName) {
+        Integer id = moduleNameToId.remove(moduleName);
+        if (id == null) {
+            return false;
+        }
+        idToKey.set(id, null);
+        deadIds++;
+        return true;
+    }
+
+    /**
+     * @return true if the module is indexed with the given modification time.
+     */
+    public boolean isIndexed(String moduleName, long lastModified) {
+        Integer id = moduleNameToId.get(moduleName);
+        if (id == null) {
+            return false;
+        }
+        return idToLastModified[id] == lastModified;
+    }
+
+    /**
+     * @return true if the module has some information in this index (regardless of its modification time).
+     */
+    public boolean isIndexed(String moduleName) {
+        return moduleNameToId.containsKey(moduleName);
+    }
+
+    /**
+     * @return the keys of the modules that contained the token when they were indexed (clients should check
+     * whether the information is still up to date through the lastModified in the returned keys).
+     */
+    public List<CompleteIndexKey> getModulesWithToken(String token) {
+        PostingList postingList = tokenToPostings.get(token);
+        if (postingList == null) {
+            return new ArrayList<CompleteIndexKey>(0);
+        }
+        ArrayList<CompleteIndexKey> ret = new ArrayList<CompleteIndexKey>(postingList.size);
+        int[] ids = postingList.ids;
+        int size = postingList.size;
+        for (int i = 0; i < size; i++) {
+            CompleteIndexKey key = idToKey.get(ids[i]);
+            if (key != null) {
+                ret.add(key);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of modules indexed.
+     */
+    public int size() {
+        return moduleNameToId.size();
+    }
+
+    public void clear() {
+        tokenToPostings.clear();
+        idToKey.clear();
+        idToLastModified = new long[16];
+        moduleNameToId.clear();
+        deadIds = 0;
+    }
+
+    /**
+     * Removes the dead ids from the posting lists (and renumbers the live ids).
+     */
+    public void compact() {
+        if (deadIds == 0) {
+            return;
+        }
+        int size = idToKey.size();
+        int[] oldToNew = new int[size];
+        ArrayList<CompleteIndexKey> newIdToKey = new ArrayList<CompleteIndexKey>(moduleNameToId.size());
+        long[] newIdToLastModified = new long[Math.max(16, moduleNameToId.size())];
+        for (int i = 0; i < size; i++) {
+            CompleteIndexKey key = idToKey.get(i);
+            if (key == null) {
+                oldToNew[i] = -1;
+            } else {
+                int newId = newIdToKey.size();
+                oldToNew[i] = newId;
+                newIdToKey.add(key);
+                newIdToLastModified[newId] = idToLastModified[i];
+                moduleNameToId.put(key.key.name, newId);
+            }
+        }
+
+        Iterator<PostingList> it = tokenToPostings.values().iterator();
+        while (it.hasNext()) {
+            PostingList postingList = it.next();
+            int[] ids = postingList.ids;
+            int newSize = 0;
+            for (int i = 0; i < postingList.size; i++) {
+                int newId = oldToNew[ids[i]];
+                if (newId != -1) {
+                    ids[newSize] = newId;
+                    newSize++;
+                }
+            }
+            if (newSize == 0) {
+                it.remove();
+            } else {
+                postingList.size = newSize;
+            }
+        }
+
+        idToKey = newIdToKey;
+        idToLastModified = newIdToLastModified;
+        deadIds = 0;
+    }
+
+    /**
+     * Writes this index in a format that may later be restored with loadFrom.
+     *
+     * The format is:
+     *
+     * number of modules
+     * module name|last modified (one line for each module: the line order is the id)
+     * token|id delta,id delta,... (one line for each token, where the ids are written as the delta from the previous id)
+     */
+    public void writeTo(FastStringBuffer tempBuf) {
+        compact();
+        tempBuf.append("-- START TOKENS INDEX\n");
+        int size = idToKey.size();
+        tempBuf.append(size);
+        tempBuf.append('\n');
+        for (int i = 0; i < size; i++) {
+            tempBuf.append(idToKey.get(i).key.name);
+            tempBuf.append('|');
+            tempBuf.append(idToLastModified[i]);
+            tempBuf.append('\n');
+        }
+
+        for (Entry<String, PostingList> entry : tokenToPostings.entrySet()) {
+            tempBuf.append(entry.getKey());
+            tempBuf.append('|');
+            PostingList postingList = entry.getValue();
+            int[] ids = postingList.ids;
+            int last = 0;
+            for (int i = 0; i < postingList.size; i++) {
+                if (i > 0) {
+                    tempBuf.append(',');
+                }
+                tempBuf.append(ids[i] - last);
+                last = ids[i];
+            }
+            tempBuf.append('\n');
+        }
+        tempBuf.append("-- END TOKENS INDEX\n");
+    }
+
+    /**
+     * Loads from a reader a string that was acquired from writeTo (the "-- START TOKENS INDEX" line must've been
+     * already consumed).
+     */
+    public static TokenToModulesIndex loadFrom(FastBufferedReader reader, ObjectsPoolMap objectsPoolMap)
+            throws IOException {
+        TokenToModulesIndex index = new TokenToModulesIndex();
+
+        FastStringBuffer line = reader.readLine();
+        if (line == null || line.startsWith("-- ")) {
+            throw new RuntimeException("Unexpected line: " + line);
+        }
+        int size = com.aptana.shared_core.string.StringUtils.parsePositiveInt(line);
+        index.idToLastModified = new long[Math.max(16, size)];
+        index.idToKey.ensureCapacity(size);
+
+        FastStringBuffer buf = new FastStringBuffer();
+        for (int id = 0; id < size; id++) {
+            line = reader.readLine();
+            if (line == null || line.startsWith("-- ")) {
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            int i = line.indexOf('|');
+            if (i == -1) {
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            String name = ObjectsPool.internLocal(objectsPoolMap, line.toString().substring(0, i));
+            buf.clear().append(line.getInternalCharsArray(), i + 1, line.length() - (i + 1));
+            CompleteIndexKey key = new CompleteIndexKey(name);
+            key.lastModified = com.aptana.shared_core.string.StringUtils.parsePositiveLong(buf);
+            index.idToKey.add(key);
+            index.idToLastModified[id] = key.lastModified;
+            index.moduleNameToId.put(name, id);
+        }
+
+        while (true) {
+            line = reader.readLine();
+            if (line == null || line.startsWith("-- ")) {
+                if (line != null && line.startsWith("-- END TOKENS INDEX")) {
+                    return index;
+                }
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            int i = line.indexOf('|');
+            if (i == -1) {
+                throw new RuntimeException("Unexpected line: " + line);
+            }
+            char[] internalCharsArray = line.getInternalCharsArray();
+            int length = line.length();
+            String token = ObjectsPool.intern(new String(internalCharsArray, 0, i));
+            PostingList postingList = new PostingList(4);
+            int last = 0;
+            buf.clear();
+            for (int j = i + 1; j < length; j++) {
+                char c = internalCharsArray[j];
+                if (c == ',') {
+                    last += com.aptana.shared_core.string.StringUtils.parsePositiveInt(buf);
+                    postingList.add(last);
+                    buf.clear();
+                } else {
+                    buf.append(c);
+                }
+            }
+            if (buf.length() > 0) {
+                last += com.aptana.shared_core.string.StringUtils.parsePositiveInt(buf);
+                postingList.add(last);
+                buf.clear();
+            }
+            index.tokenToPostings.put(token, postingList);
+        }
+    }
+
+    /**
+     * Makes the index reference the keys that are actually in the passed DiskCache (and removes the modules which
+     * are no longer there or were indexed with a different modification time).
+     */
+    public void syncWith(DiskCache diskCache) {
+        Map<String, Integer> copy = new HashMap<String, Integer>(moduleNameToId);
+        for (Entry<String, Integer> entry : copy.entrySet()) {
+            int id = entry.getValue();
+            CompleteIndexKey key = diskCache.getKey(idToKey.get(id));
+            if (key == null || key.lastModified != idToLastModified[id]) {
+                removeNoCompact(entry.getKey());
+            } else {
+                idToKey.set(id, key);
+            }
+        }
+        compact();
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.concurrency;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+
+import org.python.pydev.core.concurrency.WorkersPool.DaemonThreadFactory;
+import org.python.pydev.core.log.Log;
+
+/**
+ * Runs requests in a fixed number of worker threads (which caps the number of requests running concurrently).
+ *
+ * Requests are coalesced by key: while a request for a key is waiting to run, a new request for the same key
+ * replaces it and only one request for a given key runs at a time (a request for a key whose request is running
+ * only starts after the current one finishes -- it's not busy-waiting in a thread).
+ *
+ * Requests with a lower priority value run first (0 is the highest priority).
+ *
+ * @param <K> the type of the keys used to coalesce the requests.
+ * @param <R> the type of the requests.
+ */
+public final class KeyedPriorityExecutor<K, R extends Runnable> {
+
+    /**
+     * A request waiting to be run.
+     */
+    private static final class Pending<R> {
+        final R runnable;
+        final int priority;
+        final long scheduleTime;
+
+        Pending(R runnable, int priority, long scheduleTime) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.scheduleTime = scheduleTime;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Keys with pending requests (one queue for each priority). The queues may have stale keys (which are skipped
+     * when they don't have a pending request anymore).
+     */
+    private final LinkedList<K>[] queues;
+
+    /**
+     * The request waiting to run for each key.
+     */
+    private final Map<K, Pending<R>> pending = new HashMap<K, Pending<R>>();
+
+    /**
+     * Keys whose request is running.
+     */
+    private final Set<K> running = new HashSet<K>();
+
+    private final int workers;
+
+    private final long creationTime = System.currentTimeMillis();
+
+    // Metrics (synchronized with lock) ------------------------------------------------------------------
+    private long requestsRun;
+    private long requestsCoalesced;
+    private long totalQueueLatency;
+    private long maxQueueLatency;
+    private long totalRunTime;
+
+    // End Metrics -----------------------------------------------------------------------------------------
+
+    /**
+     * @param threadsPrefix the prefix of the name of the worker threads.
+     * @param workers the maximum number of requests running at the same time.
+     * @param priorities the number of priorities (requests are scheduled with a priority from 0 to priorities-1).
+     */
+    @SuppressWarnings("unchecked")
+    public KeyedPriorityExecutor(String threadsPrefix, int workers, int priorities) {
+        this.workers = Math.max(1, workers);
+        queues = new LinkedList[Math.max(1, priorities)];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new LinkedList<K>();
+        }
+
+        ThreadFactory threadFactory = new DaemonThreadFactory(threadsPrefix, Thread.NORM_PRIORITY - 1);
+        for (int i = 0; i < this.workers; i++) {
+            threadFactory.newThread(new Runnable() {
+
+                public void run() {
+                    while (true) {
+                        runNext();
+                    }
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Schedules the given runnable to be run (replacing a request for the same key that's still waiting -- the
+     * new request keeps the time of the replaced one and the higher of both priorities).
+     *
+     * @return the request replaced (which won't be run) or null if there was no request waiting for the key.
+     */
+    public R schedule(K key, R runnable, int priority) {
+        if (priority < 0 || priority >= queues.length) {
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+        }
+        synchronized (lock) {
+            Pending<R> replaced = pending.get(key);
+            long scheduleTime = System.currentTimeMillis();
+            if (replaced != null) {
+                //keep the original time (it's been waiting since then) and the higher priority.
+                scheduleTime = replaced.scheduleTime;
+                priority = Math.min(priority, replaced.priority);
+                requestsCoalesced++;
+            }
+            pending.put(key, new Pending<R>(runnable, priority, scheduleTime));
+
+            if (!running.contains(key) && (replaced == null || priority < replaced.priority)) {
+                queues[priority].add(key);
+                lock.notify();
+            }
+            return replaced != null ? replaced.runnable : null;
+        }
+    }
+
+    /**
+     * Removes the request waiting to run for the given key (if any).
+     *
+     * @return the request removed or null if there was no request waiting for the key.
+     */
+    public R cancel(K key) {
+        synchronized (lock) {
+            Pending<R> removed = pending.remove(key);
+            return removed != null ? removed.runnable : null;
+        }
+    }
+
+    /**
+     * Waits for a request and runs it.
+     */
+    private void runNext() {
+        K key;
+        Pending<R> request;
+        synchronized (lock) {
+            while (true) {
+                key = null;
+                for (int i = 0; i < queues.length && key == null; i++) {
+                    key = queues[i].poll();
+                }
+                if (key == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        //ignore
+                    }
+                    continue;
+                }
+                if (running.contains(key)) {
+                    continue; //it'll be added back to the queue when the current request finishes.
+                }
+                request = pending.remove(key);
+                if (request != null) {
+                    running.add(key);
+                    break;
+                }
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            request.runnable.run();
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            long endTime = System.currentTimeMillis();
+            synchronized (lock) {
+                running.remove(key);
+
+                long latency = startTime - request.scheduleTime;
+                requestsRun++;
+                totalQueueLatency += latency;
+                maxQueueLatency = Math.max(maxQueueLatency, latency);
+                totalRunTime += endTime - startTime;
+
+                Pending<R> next = pending.get(key);
+                if (next != null) {
+                    queues[next.priority].add(key);
+                    lock.notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of requests running at the same time.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return the number of requests waiting to run.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return the number of requests being run.
+     */
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running.size();
+        }
+    }
+
+    public long getRequestsRun() {
+        synchronized (lock) {
+            return requestsRun;
+        }
+    }
+
+    /**
+     * @return the number of requests that were replaced by a newer request before running.
+     */
+    public long getRequestsCoalesced() {
+        synchronized (lock) {
+            return requestsCoalesced;
+        }
+    }
+
+    /**
+     * @return the average time (in millis) that requests waited before running.
+     */
+    public double getAverageQueueLatency() {
+        synchronized (lock) {
+            return requestsRun == 0 ? 0 : totalQueueLatency / (double) requestsRun;
+        }
+    }
+
+    /**
+     * @return the maximum time (in millis) that a request waited before running.
+     */
+    public long getMaxQueueLatency() {
+        synchronized (lock) {
+            return maxQueueLatency;
+        }
+    }
+
+    /**
+     * @return the average time (in millis) that it took to run a request.
+     */
+    public double getAverageRunTime() {
+        synchronized (lock) {
+            return requestsRun == 0 ? 0 : totalRunTime / (double) requestsRun;
+        }
+    }
+
+    /**
+     * @return the number of requests run per second since this executor was created.
+     */
+    public double getThroughput() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - creationTime);
+        synchronized (lock) {
+            return requestsRun * 1000.0 / elapsed;
+        }
+    }
+}
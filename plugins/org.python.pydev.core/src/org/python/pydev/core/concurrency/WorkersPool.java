@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.concurrency;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides a pool of daemon threads which may be used for cpu-bound work that should be split among the
+ * available processors (i.e.: work which is not a good fit to be run as eclipse jobs because it's split in
+ * many small parts and the caller waits for the results).
+ */
+public class WorkersPool {
+
+    private static ExecutorService singleton;
+
+    /**
+     * Creates daemon threads with a given prefix.
+     */
+    public static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final int priority;
+
+        public DaemonThreadFactory(String prefix) {
+            this(prefix, Thread.NORM_PRIORITY);
+        }
+
+        public DaemonThreadFactory(String prefix, int priority) {
+            this.prefix = prefix;
+            this.priority = priority;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+
+    /**
+     * @return the number of workers in the shared pool.
+     */
+    public static int getNumberOfWorkers() {
+        try {
+            return Math.max(1, Runtime.getRuntime().availableProcessors());
+        } catch (Throwable e) {
+            return 2;
+        }
+    }
+
+    /**
+     * @return a pool shared with the whole application (threads are only created when work is given to
+     * the pool and are daemon threads, so, they don't prevent the vm from exiting).
+     * 
+     * Note: once created, the threads are kept alive (idle) until the vm exits, as the core threads can't be
+     * configured to time out in java 5.
+     */
+    public synchronized static ExecutorService getSingleton() {
+        if (singleton == null) {
+            int workers = getNumberOfWorkers();
+            singleton = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("PyDev Worker: "));
+        }
+        return singleton;
+    }
+}
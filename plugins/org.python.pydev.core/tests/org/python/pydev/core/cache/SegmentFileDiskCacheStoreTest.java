@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+public class SegmentFileDiskCacheStoreTest extends TestCase {
+
+    private File baseDir;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SegmentFileDiskCacheStoreTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = new File("SegmentFileDiskCacheStoreTest.temporary_dir").getAbsoluteFile();
+        deleteDir(baseDir);
+        baseDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDir(baseDir);
+        super.tearDown();
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testStore() throws Exception {
+        SegmentFileDiskCacheStore store = new SegmentFileDiskCacheStore(baseDir, null);
+        CompleteIndexKey key1 = new CompleteIndexKey("mod1");
+        CompleteIndexKey key2 = new CompleteIndexKey("mod2");
+        assertNull(store.read(key1));
+
+        store.write(key1, "a\nb\n");
+        store.write(key2, "c\n");
+        store.write(key1, "d\n");
+        assertEquals("d\n", store.read(key1));
+        assertEquals("c\n", store.read(key2));
+
+        store.remove(key2);
+        assertNull(store.read(key2));
+        store.dispose();
+
+        //Reopen: the offsets must be rebuilt from the file.
+        store = new SegmentFileDiskCacheStore(baseDir, null);
+        assertEquals("d\n", store.read(key1));
+        assertNull(store.read(key2));
+        assertTrue(store.getDeadBytes() > 0);
+
+        store.compact();
+        assertEquals(0, store.getDeadBytes());
+        assertEquals("d\n", store.read(key1));
+        assertNull(store.read(key2));
+        store.dispose();
+
+        store = new SegmentFileDiskCacheStore(baseDir, null);
+        assertEquals("d\n", store.read(key1));
+        store.clear(new ArrayList<CompleteIndexKey>());
+        assertNull(store.read(key1));
+        store.dispose();
+    }
+
+    public void testReadsAfterWrites() throws Exception {
+        SegmentFileDiskCacheStore store = new SegmentFileDiskCacheStore(baseDir, null);
+        store.write(new CompleteIndexKey("mod0"), "0");
+        store.dispose();
+
+        //mod0 is read from the mapping and the others (written after the store was opened) through the channel.
+        store = new SegmentFileDiskCacheStore(baseDir, null);
+        for (int i = 1; i < 50; i++) {
+            store.write(new CompleteIndexKey("mod" + i), String.valueOf(i));
+            assertEquals("0", store.read(new CompleteIndexKey("mod0")));
+            assertEquals(String.valueOf(i), store.read(new CompleteIndexKey("mod" + i)));
+        }
+        store.compact();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(String.valueOf(i), store.read(new CompleteIndexKey("mod" + i)));
+        }
+        store.dispose();
+    }
+
+    public void testCorruptRecords() throws Exception {
+        SegmentFileDiskCacheStore store = new SegmentFileDiskCacheStore(baseDir, null);
+        CompleteIndexKey key1 = new CompleteIndexKey("mod1");
+        store.write(key1, "a\n");
+        store.dispose();
+
+        File[] files = baseDir.listFiles();
+        assertEquals(1, files.length);
+        long validSize = files[0].length();
+
+        //A record whose size overflows an int (it must not make the scan go back in the file).
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+        try {
+            file.seek(validSize);
+            file.writeInt(4);
+            file.write("mod2".getBytes("UTF-8"));
+            file.writeInt(Integer.MAX_VALUE - 4);
+            file.writeInt(0);
+        } finally {
+            file.close();
+        }
+
+        store = new SegmentFileDiskCacheStore(baseDir, null);
+        assertEquals("a\n", store.read(key1));
+        assertNull(store.read(new CompleteIndexKey("mod2")));
+        store.dispose();
+        assertEquals(validSize, files[0].length());
+    }
+
+    public void testLegacyStore() throws Exception {
+        FilePerKeyDiskCacheStore legacy = new FilePerKeyDiskCacheStore(baseDir.toString(), ".v1_indexcache");
+        CompleteIndexKey key1 = new CompleteIndexKey("mod1");
+        legacy.write(key1, "legacy\n");
+
+        SegmentFileDiskCacheStore store = new SegmentFileDiskCacheStore(baseDir, legacy);
+        assertEquals("legacy\n", store.read(key1));
+        //Moved to the segment.
+        assertNull(legacy.read(key1));
+        assertEquals("legacy\n", store.read(key1));
+        store.dispose();
+    }
+}
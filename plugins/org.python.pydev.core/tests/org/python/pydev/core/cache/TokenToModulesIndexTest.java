@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.FastBufferedReader;
+import org.python.pydev.core.ObjectsPool.ObjectsPoolMap;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+public class TokenToModulesIndexTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TokenToModulesIndexTest.class);
+    }
+
+    private CompleteIndexKey createKey(String name, long lastModified) {
+        CompleteIndexKey key = new CompleteIndexKey(name);
+        key.lastModified = lastModified;
+        return key;
+    }
+
+    private List<String> getNames(List<CompleteIndexKey> keys) {
+        ArrayList<String> ret = new ArrayList<String>();
+        for (CompleteIndexKey key : keys) {
+            ret.add(key.key.name);
+        }
+        return ret;
+    }
+
+    public void testIndex() throws Exception {
+        TokenToModulesIndex index = new TokenToModulesIndex();
+        index.put(createKey("mod1", 1), Arrays.asList("a", "b"));
+        index.put(createKey("mod2", 2), Arrays.asList("b", "c"));
+
+        assertEquals(Arrays.asList("mod1"), getNames(index.getModulesWithToken("a")));
+        assertEquals(Arrays.asList("mod1", "mod2"), getNames(index.getModulesWithToken("b")));
+        assertEquals(0, index.getModulesWithToken("d").size());
+
+        assertTrue(index.isIndexed("mod1", 1));
+        assertFalse(index.isIndexed("mod1", 2));
+
+        //Re-indexing must remove the previous info.
+        index.put(createKey("mod1", 3), Arrays.asList("d"));
+        assertEquals(0, index.getModulesWithToken("a").size());
+        assertEquals(Arrays.asList("mod2"), getNames(index.getModulesWithToken("b")));
+        assertEquals(Arrays.asList("mod1"), getNames(index.getModulesWithToken("d")));
+
+        index.remove("mod2");
+        assertEquals(0, index.getModulesWithToken("b").size());
+        assertFalse(index.isIndexed("mod2"));
+        assertEquals(1, index.size());
+
+        index.compact();
+        assertEquals(Arrays.asList("mod1"), getNames(index.getModulesWithToken("d")));
+        assertTrue(index.isIndexed("mod1", 3));
+    }
+
+    public void testWriteAndLoad() throws Exception {
+        TokenToModulesIndex index = new TokenToModulesIndex();
+        index.put(createKey("mod1", 10), Arrays.asList("a", "b"));
+        index.put(createKey("mod2", 20), Arrays.asList("b", "c"));
+        index.put(createKey("mod3", 30), Arrays.asList("b"));
+        index.remove("mod1");
+
+        FastStringBuffer buf = new FastStringBuffer();
+        index.writeTo(buf);
+
+        FastBufferedReader reader = new FastBufferedReader(new StringReader(buf.toString()));
+        assertEquals("-- START TOKENS INDEX", reader.readLine().toString());
+        TokenToModulesIndex loaded = TokenToModulesIndex.loadFrom(reader, new ObjectsPoolMap());
+
+        assertEquals(2, loaded.size());
+        assertEquals(0, loaded.getModulesWithToken("a").size());
+        assertEquals(Arrays.asList("mod2", "mod3"), getNames(loaded.getModulesWithToken("b")));
+        assertEquals(Arrays.asList("mod2"), getNames(loaded.getModulesWithToken("c")));
+        assertTrue(loaded.isIndexed("mod3", 30));
+    }
+}
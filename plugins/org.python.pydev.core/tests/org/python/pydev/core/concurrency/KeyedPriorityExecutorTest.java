@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.concurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class KeyedPriorityExecutorTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(KeyedPriorityExecutorTest.class);
+    }
+
+    private final List<String> ran = new ArrayList<String>();
+
+    private class RunnableStub implements Runnable {
+
+        private final String name;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private CountDownLatch waitBeforeFinish;
+        private CountDownLatch started;
+        private boolean fail;
+
+        RunnableStub(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            synchronized (ran) {
+                ran.add(name);
+            }
+            try {
+                if (started != null) {
+                    started.countDown();
+                }
+                if (waitBeforeFinish != null) {
+                    waitBeforeFinish.await();
+                }
+                if (fail) {
+                    throw new RuntimeException("Expected error (to check that the worker keeps on running).");
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        void waitForRunFinished() throws InterruptedException {
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testCoalescingAndPriorities() throws Exception {
+        KeyedPriorityExecutor<String, RunnableStub> executor = new KeyedPriorityExecutor<String, RunnableStub>(
+                "Test: ", 1, 3);
+
+        RunnableStub a = new RunnableStub("a");
+        a.started = new CountDownLatch(1);
+        a.waitBeforeFinish = new CountDownLatch(1);
+        assertNull(executor.schedule("k1", a, 2));
+        assertTrue(a.started.await(5, TimeUnit.SECONDS));
+
+        //while 'a' is running, new requests for the same key are coalesced (only the last one runs).
+        RunnableStub b = new RunnableStub("b");
+        RunnableStub c = new RunnableStub("c");
+        RunnableStub d = new RunnableStub("d");
+        RunnableStub e = new RunnableStub("e");
+        RunnableStub f = new RunnableStub("f");
+        assertNull(executor.schedule("k1", b, 2));
+        assertSame(b, executor.schedule("k1", c, 2));
+        assertNull(executor.schedule("k2", d, 2));
+        assertNull(executor.schedule("k3", e, 1));
+        assertNull(executor.schedule("k4", f, 2));
+
+        //the coalesced request keeps the higher priority (and the new runnable).
+        RunnableStub d2 = new RunnableStub("d2");
+        assertSame(d, executor.schedule("k2", d2, 0));
+
+        //a cancelled request doesn't run.
+        assertSame(f, executor.cancel("k4"));
+        assertNull(executor.cancel("k4"));
+
+        assertEquals(3, executor.getQueueDepth());
+        assertEquals(1, executor.getRunningCount());
+        assertEquals(2, executor.getRequestsCoalesced());
+
+        a.waitBeforeFinish.countDown();
+        c.waitForRunFinished();
+        d2.waitForRunFinished();
+        e.waitForRunFinished();
+
+        synchronized (ran) {
+            assertEquals(Arrays.asList("a", "d2", "e", "c"), ran);
+        }
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(4, executor.getRequestsRun());
+        assertTrue(executor.getMaxQueueLatency() >= 0);
+    }
+
+    public void testSameKeyDoesNotRunConcurrently() throws Exception {
+        KeyedPriorityExecutor<String, RunnableStub> executor = new KeyedPriorityExecutor<String, RunnableStub>(
+                "Test: ", 2, 1);
+
+        RunnableStub a = new RunnableStub("a");
+        a.started = new CountDownLatch(1);
+        a.waitBeforeFinish = new CountDownLatch(1);
+        a.fail = true;
+        executor.schedule("k1", a, 0);
+        assertTrue(a.started.await(5, TimeUnit.SECONDS));
+
+        //the other worker is free but the request for 'k1' only starts after 'a' finishes.
+        RunnableStub b = new RunnableStub("b");
+        RunnableStub c = new RunnableStub("c");
+        executor.schedule("k1", b, 0);
+        executor.schedule("k2", c, 0);
+        c.waitForRunFinished();
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(1, executor.getRunningCount());
+
+        //an error in a request doesn't stop the worker.
+        a.waitBeforeFinish.countDown();
+        b.waitForRunFinished();
+        synchronized (ran) {
+            assertEquals(Arrays.asList("a", "c", "b"), ran);
+        }
+        assertEquals(2, executor.getWorkers());
+    }
+
+    public void testInvalidPriority() throws Exception {
+        KeyedPriorityExecutor<String, RunnableStub> executor = new KeyedPriorityExecutor<String, RunnableStub>(
+                "Test: ", 1, 2);
+        try {
+            executor.schedule("k1", new RunnableStub("a"), 2);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
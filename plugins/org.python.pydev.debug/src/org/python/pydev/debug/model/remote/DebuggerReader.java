@@ -9,6 +9,7 @@ package org.python.pydev.debug.model.remote;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.net.URLDecoder;
 import java.util.Dictionary;
@@ -40,11 +41,6 @@ public class DebuggerReader implements Runnable {
      */
     private volatile boolean done = false;
 
-    /**
-     * Lock object for sleeping.
-     */
-    private Object lock = new Object();
-
     /**
      * commands waiting for response. Their keys are the sequence ids
      */
@@ -55,6 +51,20 @@ public class DebuggerReader implements Runnable {
      */
     private InputStreamReader in;
 
+    /**
+     * Buffer with the contents read from the socket (chars from bufferPos to bufferLen are still not consumed).
+     */
+    private final char[] buffer = new char[8192];
+
+    private int bufferPos;
+
+    private int bufferLen;
+
+    /**
+     * Used to build the lines which don't fit the current buffer.
+     */
+    private final StringBuilder contents = new StringBuilder();
+
     /**
      * that's the debugger that made us... we have to finish it when we are done
      */
@@ -97,10 +107,16 @@ public class DebuggerReader implements Runnable {
      */
     private void processCommand(String cmdLine) {
         try {
-            String[] cmdParsed = cmdLine.split("\t", 3);
-            int cmdCode = Integer.parseInt(cmdParsed[0]);
-            int seqCode = Integer.parseInt(cmdParsed[1]);
-            String payload = URLDecoder.decode(cmdParsed[2], "UTF-8");
+            int firstTab = cmdLine.indexOf('\t');
+            int secondTab = cmdLine.indexOf('\t', firstTab + 1);
+            if (firstTab == -1 || secondTab == -1) {
+                throw new RuntimeException("Unexpected command: " + cmdLine);
+            }
+            String cmdCodeStr = cmdLine.substring(0, firstTab);
+            String seqCodeStr = cmdLine.substring(firstTab + 1, secondTab);
+            int cmdCode = Integer.parseInt(cmdCodeStr);
+            int seqCode = Integer.parseInt(seqCodeStr);
+            String payload = decode(cmdLine.substring(secondTab + 1));
 
             // is there a response waiting
             AbstractDebuggerCommand cmd;
@@ -110,7 +126,7 @@ public class DebuggerReader implements Runnable {
 
             if (cmd == null) {
                 if (remote != null) {
-                    remote.processCommand(cmdParsed[0], cmdParsed[1], payload);
+                    remote.processCommand(cmdCodeStr, seqCodeStr, payload);
                 } else {
                     PydevDebugPlugin.log(IStatus.ERROR, "internal error, command received no target", null);
                 }
@@ -123,22 +139,31 @@ public class DebuggerReader implements Runnable {
         }
     }
 
+    /**
+     * @return the url-decoded payload (only goes through the URLDecoder if there's something to decode).
+     */
+    private static String decode(String payload) throws UnsupportedEncodingException {
+        if (payload.indexOf('%') == -1 && payload.indexOf('+') == -1) {
+            return payload;
+        }
+        return URLDecoder.decode(payload, "UTF-8");
+    }
+
     /**
      * keep reading until we finish (that should happen when an exception is thrown, or if it is set as
      * done from outside)
      * 
+     * Each line is dispatched as soon as it's available (we only block waiting for contents in the socket).
+     * 
      * @see java.lang.Runnable#run()
      */
     public void run() {
         while (!done) {
             try {
                 String cmdLine = readLine();
-                if (cmdLine != null && cmdLine.trim().length() > 0) {
+                if (cmdLine.length() > 0 && cmdLine.trim().length() > 0) {
                     processCommand(cmdLine);
                 }
-                synchronized (lock) {
-                    Thread.sleep(50);
-                }
             } catch (Exception e1) {
                 done = true;
                 //that's ok, it means that the client finished
@@ -161,19 +186,39 @@ public class DebuggerReader implements Runnable {
     /**
      * Implemented our own: with the BufferedReader, when the socket was closed, it still appeared stuck in the method.
      * 
+     * Reads the socket in chunks (into our buffer) and gets the lines from it.
+     * 
      * @return a line that was read from the debugger.
      * @throws IOException
      */
     private String readLine() throws IOException {
-        StringBuffer contents = new StringBuffer();
-        int i;
-        while ((i = in.read()) != -1) {
-            char c = (char) i;
-            if (c == '\n' || c == '\r') {
-                return contents.toString();
+        contents.setLength(0);
+        while (true) {
+            if (bufferPos >= bufferLen) {
+                bufferLen = in.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+                if (bufferLen == -1) {
+                    bufferLen = 0;
+                    throw new IOException("Done");
+                }
+            }
+            int start = bufferPos;
+            while (bufferPos < bufferLen) {
+                char c = buffer[bufferPos];
+                if (c == '\n' || c == '\r') {
+                    String ret;
+                    if (contents.length() == 0) {
+                        ret = new String(buffer, start, bufferPos - start);
+                    } else {
+                        contents.append(buffer, start, bufferPos - start);
+                        ret = contents.toString();
+                    }
+                    bufferPos++;
+                    return ret;
+                }
+                bufferPos++;
             }
-            contents.append(c);
+            contents.append(buffer, start, bufferPos - start);
         }
-        throw new IOException("Done");
     }
 }
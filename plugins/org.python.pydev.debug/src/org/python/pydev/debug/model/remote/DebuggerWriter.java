@@ -6,52 +6,57 @@
  */
 package org.python.pydev.debug.model.remote;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Writer writes debugger commands to the network. Use postCommand to put new
  * ones in queue.
+ * 
+ * The writer thread blocks until some command is posted and then writes all the commands available
+ * at that point (flushing only once for all of them).
  */
 public class DebuggerWriter implements Runnable {
 
+    /**
+     * The time we wait for a command before checking if we're done.
+     */
+    private static final int TIMEOUT_TO_CHECK_DONE_MILLIS = 500;
+
     /**
      * connection socket
      */
     private Socket socket;
 
     /**
-     * a list of RemoteDebuggerCommands
+     * a queue of RemoteDebuggerCommands
      */
-    private List<AbstractDebuggerCommand> cmdQueue = new ArrayList<AbstractDebuggerCommand>();
+    private final LinkedBlockingQueue<AbstractDebuggerCommand> cmdQueue = new LinkedBlockingQueue<AbstractDebuggerCommand>();
 
-    private OutputStreamWriter out;
+    private Writer out;
 
     /**
      * Volatile, as multiple threads may ask it to be 'done'
      */
     private volatile boolean done = false;
 
-    /**
-     * Lock object for sleeping.
-     */
-    private Object lock = new Object();
-
     public DebuggerWriter(Socket s) throws IOException {
         socket = s;
-        out = new OutputStreamWriter(s.getOutputStream());
+        out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()));
     }
 
     /**
      * Add command for processing
      */
     public void postCommand(AbstractDebuggerCommand cmd) {
-        synchronized (cmdQueue) {
-            cmdQueue.add(cmd);
-        }
+        cmdQueue.add(cmd);
     }
 
     public void done() {
@@ -62,23 +67,21 @@ public class DebuggerWriter implements Runnable {
      * Loops and writes commands to the output
      */
     public void run() {
+        List<AbstractDebuggerCommand> cmds = new ArrayList<AbstractDebuggerCommand>();
         while (!done) {
-            AbstractDebuggerCommand cmd = null;
-            synchronized (cmdQueue) {
-                if (cmdQueue.size() > 0) {
-                    cmd = (AbstractDebuggerCommand) cmdQueue.remove(0);
-                }
-            }
             try {
+                AbstractDebuggerCommand cmd = cmdQueue.poll(TIMEOUT_TO_CHECK_DONE_MILLIS, TimeUnit.MILLISECONDS);
                 if (cmd != null) {
-                    cmd.aboutToSend();
-                    out.write(cmd.getOutgoing());
-                    out.write("\n");
+                    cmds.add(cmd);
+                    cmdQueue.drainTo(cmds);
+                    for (AbstractDebuggerCommand c : cmds) {
+                        c.aboutToSend();
+                        out.write(c.getOutgoing());
+                        out.write("\n");
+                    }
+                    cmds.clear();
                     out.flush();
                 }
-                synchronized (lock) {
-                    Thread.sleep(100);
-                }
             } catch (InterruptedException e) {
                 done = true;
             } catch (IOException e1) {
@@ -70,6 +70,12 @@ public class PydevConsoleCommunication implements IScriptConsoleCommunication, X
      */
     private final ThreadStreamReader stdErrReader;
 
+    /**
+     * The maximum number of chars kept from the output of the process while it's not shown in the console (i.e.:
+     * output from other threads while no command is running -- only the last output is kept).
+     */
+    private static final int MAX_BUFFERED_OUTPUT = 2 * 1024 * 1024;
+
     /**
      * This is the server responsible for giving input to a raw_input() requested.
      */
@@ -84,8 +90,8 @@ public class PydevConsoleCommunication implements IScriptConsoleCommunication, X
      * @throws MalformedURLException
      */
     public PydevConsoleCommunication(int port, Process process, int clientPort) throws Exception {
-        stdOutReader = new ThreadStreamReader(process.getInputStream());
-        stdErrReader = new ThreadStreamReader(process.getErrorStream());
+        stdOutReader = new ThreadStreamReader(process.getInputStream(), true, null, MAX_BUFFERED_OUTPUT);
+        stdErrReader = new ThreadStreamReader(process.getErrorStream(), true, null, MAX_BUFFERED_OUTPUT);
         stdOutReader.start();
         stdErrReader.start();
 
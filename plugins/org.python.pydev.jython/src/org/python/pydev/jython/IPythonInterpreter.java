@@ -31,6 +31,13 @@ public interface IPythonInterpreter {
      */
     void exec(String exec);
 
+    /**
+     * Executes some code which was already compiled (i.e.: with Py.compile_flags)
+     * 
+     * @param code the code object that should be executed
+     */
+    void exec(PyObject code);
+
     /**
      * This method returns the variable that we want to get from the interpreter as a java object
      * 
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.python.pydev.core.log.Log;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+
+import com.aptana.shared_core.string.StringUtils;
+
+/**
+ * A process-wide cache with the asts of the contents parsed (so that the same contents parsed by the editor,
+ * the builders and the modules managers is only parsed once).
+ *
+ * The asts are keyed by the hash of the contents, the grammar version and whether the tree was generated. Only
+ * asts parsed without errors are kept and the cache is bounded by the estimated bytes retained by the asts (the
+ * least recently used asts are removed when it's full).
+ *
+ * Note: the asts gotten from the cache are shared, so, they must not be changed by clients.
+ */
+public final class AstCache {
+
+    /**
+     * Default for the maximum number of bytes (estimated) that the asts in the cache may retain.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * Rough estimate of the memory used by each node in the ast (including its position, specials and arrays).
+     */
+    private static final int ESTIMATED_BYTES_PER_NODE = 96;
+
+    /**
+     * Key for the contents parsed (2 independent 64 bit hashes of the contents are used, so, the chance of a
+     * collision is negligible).
+     */
+    public static final class Key {
+        private final long hash1;
+        private final long hash2;
+        private final int length;
+        private final int grammarVersion;
+        private final boolean generateTree;
+
+        private Key(long hash1, long hash2, int length, int grammarVersion, boolean generateTree) {
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.length = length;
+            this.grammarVersion = grammarVersion;
+            this.generateTree = generateTree;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash1 ^ (hash1 >>> 32)) + 31 * grammarVersion + (generateTree ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash1 == other.hash1 && hash2 == other.hash2 && length == other.length
+                    && grammarVersion == other.grammarVersion && generateTree == other.generateTree;
+        }
+    }
+
+    private static final class Entry {
+        final SimpleNode ast;
+        final long bytes;
+
+        Entry(SimpleNode ast, long bytes) {
+            this.ast = ast;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Entries in access order (synchronized with lock).
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Sum of the bytes of the entries (synchronized with lock).
+     */
+    private long retainedBytes;
+
+    private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static Key createKey(String contents, int grammarVersion, boolean generateTree) {
+        long hash1 = 0xcbf29ce484222325L;
+        long hash2 = 0;
+        int length = contents.length();
+        for (int i = 0; i < length; i++) {
+            char c = contents.charAt(i);
+            hash1 = (hash1 ^ c) * 0x100000001b3L; //FNV-1a
+            hash2 = 31 * hash2 + c;
+        }
+        return new Key(hash1, hash2, length, grammarVersion, generateTree);
+    }
+
+    /**
+     * @return the ast for the given key or null if it's not in the cache.
+     */
+    public SimpleNode get(Key key) {
+        Entry entry;
+        synchronized (lock) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.ast;
+    }
+
+    /**
+     * Adds an ast (which must've been parsed without errors and must not be changed afterwards) to the cache.
+     */
+    public void put(Key key, SimpleNode ast) {
+        long bytes = estimateBytes(ast);
+        long max = maxBytes;
+        if (bytes > max) {
+            return;
+        }
+        synchronized (lock) {
+            Entry old = entries.put(key, new Entry(ast, bytes));
+            if (old != null) {
+                retainedBytes -= old.bytes;
+            }
+            retainedBytes += bytes;
+            removeExceeding(max);
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+            retainedBytes = 0;
+        }
+    }
+
+    /**
+     * Sets the maximum number of bytes (estimated) that the asts in the cache may retain.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        synchronized (lock) {
+            removeExceeding(maxBytes);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the retained bytes are below the given max.
+     *
+     * Must be called with the lock held.
+     */
+    private void removeExceeding(long max) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (retainedBytes > max && it.hasNext()) {
+            retainedBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Visitor which counts the nodes in an ast.
+     */
+    private static final class NodesCounter extends VisitorBase {
+
+        int count;
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            count++;
+            return null;
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+    }
+
+    static long estimateBytes(SimpleNode ast) {
+        NodesCounter counter = new NodesCounter();
+        try {
+            ast.accept(counter);
+        } catch (Exception e) {
+            Log.log(e);
+        }
+        return (counter.count + 1) * (long) ESTIMATED_BYTES_PER_NODE;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of asts removed from the cache because it was full.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return hits / (hits + misses)
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        if (total == 0) {
+            return 0;
+        }
+        return h / (double) total;
+    }
+
+    /**
+     * @return the estimated number of bytes retained by the asts in the cache.
+     */
+    public long getRetainedBytes() {
+        synchronized (lock) {
+            return retainedBytes;
+        }
+    }
+
+    public int getSize() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.format("AstCache[entries: %s, retained bytes: %s, hits: %s, misses: %s, evictions: %s, "
+                + "hit rate: %s]", getSize(), getRetainedBytes(), getHits(), getMisses(), getEvictions(),
+                getHitRate());
+    }
+
+    private static final AstCache singleton = new AstCache();
+
+    public static AstCache getSingleton() {
+        return singleton;
+    }
+}
@@ -0,0 +1,521 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.SpecialStr;
+import org.python.pydev.parser.jython.ast.Call;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Import;
+import org.python.pydev.parser.jython.ast.ImportFrom;
+import org.python.pydev.parser.jython.ast.Lambda;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.TryExcept;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+import org.python.pydev.parser.jython.ast.aliasType;
+import org.python.pydev.parser.jython.ast.commentType;
+import org.python.pydev.parser.jython.ast.decoratorsType;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+/**
+ * Reparses only the top-level statements which contain the lines changed since a previous (successful) parse
+ * and splices the new statements into the previous module.
+ *
+ * The statements before and after the changed ones are reused. The previous module is never changed (it may
+ * already be in use by other clients), so, if lines were added or removed, the statements after the changed ones
+ * are copied with their lines fixed (and only the statements which didn't need to be fixed are shared).
+ *
+ * Whenever it's not possible to be sure that the result would be the same as a full parse (i.e.: the changed
+ * statements don't parse by themselves -- because the indentation structure or the string/parenthesis nesting
+ * changed -- or the changed lines don't start a top-level statement), null is returned and a full parse should
+ * be done.
+ */
+public final class IncrementalParser {
+
+    /**
+     * Keeps the lines changed in a document since the last parse.
+     *
+     * Lines are 0-based. The first and last lines are in the coordinates of the current document and the lines
+     * after the last line are the same lines of the parsed document shifted by the lines delta.
+     */
+    public static final class ChangedLines {
+
+        private int firstLine = -1;
+        private int lastLine = -1;
+        private int linesDelta;
+
+        /**
+         * @param oldFirstLine the first line of the replaced region (before the change).
+         * @param oldLastLine the last line of the replaced region (before the change).
+         * @param newLastLine the last line of the replaced region after the change (the first line is the same).
+         */
+        public void addChange(int oldFirstLine, int oldLastLine, int newLastLine) {
+            int delta = newLastLine - oldLastLine;
+            if (firstLine == -1) {
+                firstLine = oldFirstLine;
+                lastLine = newLastLine;
+            } else {
+                int mappedLastLine = lastLine > oldLastLine ? lastLine + delta : lastLine;
+                firstLine = Math.min(firstLine, oldFirstLine);
+                lastLine = Math.max(mappedLastLine, newLastLine);
+            }
+            linesDelta += delta;
+        }
+
+        public boolean hasChanges() {
+            return firstLine != -1;
+        }
+
+        public int getFirstLine() {
+            return firstLine;
+        }
+
+        public int getLastLine() {
+            return lastLine;
+        }
+
+        public int getLinesDelta() {
+            return linesDelta;
+        }
+
+        @Override
+        public String toString() {
+            return "ChangedLines[" + firstLine + " - " + lastLine + " delta: " + linesDelta + "]";
+        }
+    }
+
+    private IncrementalParser() {
+    }
+
+    /**
+     * @param previous the module from the last parse of the document (must've been parsed without errors).
+     * @param text the current contents of the document.
+     * @param changed the lines changed since the previous module was parsed.
+     * @param grammarVersion the grammar version (must be the same one used for the previous module).
+     * @return the new module or null if a full parse must be done.
+     */
+    public static Module reparse(Module previous, String text, ChangedLines changed, int grammarVersion) {
+        stmtType[] body = previous.body;
+        if (body == null || body.length == 0 || !changed.hasChanges() || hasSpecials(previous)) {
+            return null;
+        }
+        int numStmts = body.length;
+        int[] starts = new int[numStmts];
+        for (int i = 0; i < numStmts; i++) {
+            starts[i] = getStartLine(body[i]);
+            if (i > 0 && starts[i] <= starts[i - 1]) {
+                return null;
+            }
+        }
+
+        int[] lineStarts = computeLineStarts(text);
+        int numLines = lineStarts.length;
+        int delta = changed.getLinesDelta();
+        int firstChanged = changed.getFirstLine() + 1; //ast lines start at 1
+        int lastChangedInPrevious = changed.getLastLine() - delta + 1;
+
+        int first = findLastStartingAtOrBefore(starts, firstChanged);
+        int last = Math.max(first, findLastStartingAtOrBefore(starts, lastChangedInPrevious));
+
+        //the chunk must start at a statement in the first column (the changed lines may have made it a comment
+        //or indented it, in which case we go back to the previous statement).
+        int chunkStart;
+        while (true) {
+            chunkStart = first == 0 ? 0 : starts[first] - 1;
+            if (first == 0 || isCodeAtFirstColumn(text, lineStarts, chunkStart)) {
+                break;
+            }
+            first--;
+        }
+
+        //the chunk ends just before the first unchanged statement (which must still be in the first column).
+        //Comments are added to the statement before them only when there's some statement after them (otherwise
+        //they'd go to the module), so, if the chunk would end with a comment, the next statement is added to it.
+        int chunkEnd;
+        while (true) {
+            if (last + 1 < numStmts) {
+                chunkEnd = starts[last + 1] - 1 + delta;
+                if (chunkEnd <= chunkStart || chunkEnd >= numLines
+                        || !isCodeAtFirstColumn(text, lineStarts, chunkEnd)) {
+                    return null;
+                }
+                if (endsWithComment(text, lineStarts, chunkStart, chunkEnd)) {
+                    last++;
+                    continue;
+                }
+            } else {
+                chunkEnd = numLines;
+            }
+            break;
+        }
+        String chunk = text.substring(lineStarts[chunkStart], chunkEnd < numLines ? lineStarts[chunkEnd]
+                : text.length());
+        if (chunk.indexOf("__future__") != -1) {
+            return null;
+        }
+
+        //the future imports in the module change how things are parsed, so, add them before the chunk.
+        //(if the changed statements had some future import, the whole module must be reparsed).
+        String futureImports = getFutureImports(body, first);
+        if (!futureImports.equals(getFutureImports(body, last + 1))) {
+            return null;
+        }
+        int futureImportsLines = 0;
+        if (futureImports.length() > 0) {
+            futureImportsLines = countLines(futureImports);
+            chunk = futureImports + chunk;
+        }
+
+        Module chunkModule = parseChunk(chunk, grammarVersion);
+        if (chunkModule == null || hasSpecials(chunkModule) || chunkModule.body == null
+                || chunkModule.body.length < futureImportsLines) {
+            return null;
+        }
+
+        int newStmts = chunkModule.body.length - futureImportsLines;
+        int lineOffset = chunkStart - futureImportsLines;
+        if (lineOffset != 0) {
+            //the chunk was just parsed (so, it can be changed in-place).
+            for (int i = futureImportsLines; i < chunkModule.body.length; i++) {
+                shiftLines(chunkModule.body[i], lineOffset);
+            }
+        }
+
+        stmtType[] newBody = new stmtType[first + newStmts + (numStmts - last - 1)];
+        System.arraycopy(body, 0, newBody, 0, first);
+        System.arraycopy(chunkModule.body, futureImportsLines, newBody, first, newStmts);
+        if (delta != 0) {
+            for (int i = last + 1, j = first + newStmts; i < numStmts; i++, j++) {
+                newBody[j] = copyWithShiftedLines(body[i], delta);
+                if (newBody[j] == null) {
+                    return null;
+                }
+            }
+        } else {
+            System.arraycopy(body, last + 1, newBody, first + newStmts, numStmts - last - 1);
+        }
+
+        //the module position is given by the first token in the document.
+        Module positionFrom = first == 0 ? chunkModule : previous;
+        Module module = new Module(newBody);
+        module.beginLine = positionFrom.beginLine;
+        module.beginColumn = positionFrom.beginColumn;
+        return module;
+    }
+
+    private static Module parseChunk(String chunk, int grammarVersion) {
+        try {
+            IGrammar grammar = PyParser.createGrammar(true, grammarVersion, PyParser.createCharArrayToParse(chunk));
+            SimpleNode node = grammar.file_input();
+            if (grammar.getErrorOnParsing() != null || !(node instanceof Module)) {
+                return null;
+            }
+            return (Module) node;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static boolean hasSpecials(SimpleNode node) {
+        return (node.specialsBefore != null && node.specialsBefore.size() > 0)
+                || (node.specialsAfter != null && node.specialsAfter.size() > 0);
+    }
+
+    /**
+     * @return the line where the statement starts (considering its decorators).
+     */
+    private static int getStartLine(stmtType stmt) {
+        int line = stmt.beginLine;
+        decoratorsType[] decs = null;
+        if (stmt instanceof FunctionDef) {
+            decs = ((FunctionDef) stmt).decs;
+        } else if (stmt instanceof ClassDef) {
+            decs = ((ClassDef) stmt).decs;
+        }
+        if (decs != null) {
+            for (decoratorsType dec : decs) {
+                if (dec != null && dec.beginLine < line) {
+                    line = dec.beginLine;
+                }
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return the index of the last statement starting at or before the given line (or 0 if none starts before it).
+     */
+    private static int findLastStartingAtOrBefore(int[] starts, int line) {
+        int low = 0;
+        int high = starts.length - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= line) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the offsets where each line starts (a new line starts after \n, \r or \r\n).
+     */
+    static int[] computeLineStarts(String text) {
+        int len = text.length();
+        int[] lineStarts = new int[Math.max(16, len / 30)];
+        int count = 1; //lineStarts[0] = 0
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < len && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else if (c != '\n') {
+                continue;
+            }
+            if (count == lineStarts.length) {
+                int[] newLineStarts = new int[lineStarts.length * 2];
+                System.arraycopy(lineStarts, 0, newLineStarts, 0, count);
+                lineStarts = newLineStarts;
+            }
+            lineStarts[count++] = i + 1;
+        }
+        int[] ret = new int[count];
+        System.arraycopy(lineStarts, 0, ret, 0, count);
+        return ret;
+    }
+
+    private static int countLines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether the given line starts with code in the first column (i.e.: not whitespace nor a comment).
+     */
+    private static boolean isCodeAtFirstColumn(String text, int[] lineStarts, int line) {
+        int offset = lineStarts[line];
+        if (offset >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(offset);
+        return !Character.isWhitespace(c) && c != '#' && c != '\\';
+    }
+
+    /**
+     * @return whether the last non-blank line before the given end line is a comment.
+     */
+    private static boolean endsWithComment(String text, int[] lineStarts, int startLine, int endLine) {
+        for (int line = endLine - 1; line >= startLine; line--) {
+            int end = line + 1 < lineStarts.length ? lineStarts[line + 1] : text.length();
+            for (int i = lineStarts[line]; i < end; i++) {
+                char c = text.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    return c == '#';
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the future imports found in the statements before the given index (one per line).
+     */
+    private static String getFutureImports(stmtType[] body, int upTo) {
+        FastStringBuffer buf = null;
+        for (int i = 0; i < upTo; i++) {
+            if (body[i] instanceof ImportFrom) {
+                ImportFrom importFrom = (ImportFrom) body[i];
+                if (importFrom.module instanceof NameTok && "__future__".equals(((NameTok) importFrom.module).id)
+                        && importFrom.names != null) {
+                    for (aliasType alias : importFrom.names) {
+                        if (alias != null && alias.name instanceof NameTok) {
+                            if (buf == null) {
+                                buf = new FastStringBuffer();
+                            }
+                            buf.append("from __future__ import ").append(((NameTok) alias.name).id).append('\n');
+                        }
+                    }
+                }
+            }
+        }
+        return buf == null ? "" : buf.toString();
+    }
+
+    /**
+     * Shifts the lines of all the nodes (and their comments and special strings) in a statement in-place.
+     */
+    private static void shiftLines(stmtType stmt, int delta) {
+        for (SimpleNode node : NodesCollector.collect(stmt)) {
+            if (node.beginLine > 0) { //nodes without a position (i.e.: empty arguments) are kept at 0
+                node.beginLine += delta;
+            }
+            node.specialsBefore = shiftSpecials(node.specialsBefore, delta);
+            node.specialsAfter = shiftSpecials(node.specialsAfter, delta);
+        }
+    }
+
+    /**
+     * @return a copy of the statement with the lines of all the nodes (and their comments and special strings)
+     * shifted (the passed statement is not changed) or null if it wasn't possible to copy it.
+     */
+    private static stmtType copyWithShiftedLines(stmtType stmt, int delta) {
+        stmtType copy;
+        try {
+            copy = (stmtType) stmt.createCopy(false);
+        } catch (Throwable e) {
+            return null;
+        }
+        List<SimpleNode> nodes = NodesCollector.collect(stmt);
+        List<SimpleNode> copiedNodes = NodesCollector.collect(copy);
+        int size = nodes.size();
+        if (size != copiedNodes.size()) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            SimpleNode node = nodes.get(i);
+            SimpleNode copied = copiedNodes.get(i);
+            if (node.getClass() != copied.getClass()) {
+                return null;
+            }
+            copied.beginLine = node.beginLine > 0 ? node.beginLine + delta : node.beginLine;
+            copied.beginColumn = node.beginColumn;
+            copied.specialsBefore = shiftSpecials(node.specialsBefore, delta);
+            copied.specialsAfter = shiftSpecials(node.specialsAfter, delta);
+            if (copied instanceof ClassDef) {
+                //the copy doesn't keep the parent set by the tree builder for the definitions in the class body.
+                stmtType[] body = ((ClassDef) copied).body;
+                if (body != null) {
+                    for (stmtType b : body) {
+                        if (b instanceof ClassDef || b instanceof FunctionDef) {
+                            b.parent = copied;
+                        }
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return a new list with the specials (the comments and special strings are copied with their lines shifted).
+     */
+    private static List<Object> shiftSpecials(List<Object> specials, int delta) {
+        if (specials == null) {
+            return null;
+        }
+        int size = specials.size();
+        List<Object> ret = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++) {
+            Object o = specials.get(i);
+            if (o instanceof commentType) {
+                commentType comment = ((commentType) o).createCopy();
+                comment.beginLine += delta;
+                o = comment;
+            } else if (o instanceof SpecialStr) {
+                SpecialStr str = (SpecialStr) o;
+                o = new SpecialStr(str.str, str.beginLine + delta, str.beginCol);
+            }
+            ret.add(o);
+        }
+        return ret;
+    }
+
+    /**
+     * Collects all the nodes (in the order they're traversed) in a statement.
+     */
+    private static final class NodesCollector extends VisitorBase {
+
+        private final List<SimpleNode> nodes = new ArrayList<SimpleNode>();
+
+        static List<SimpleNode> collect(stmtType stmt) {
+            NodesCollector collector = new NodesCollector();
+            try {
+                stmt.accept(collector);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return collector.nodes;
+        }
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            addNode(node);
+
+            //the nodes below are traversed without being passed to the visitor (only their children are)
+            if (node instanceof FunctionDef) {
+                FunctionDef functionDef = (FunctionDef) node;
+                addNode(functionDef.args);
+                addNodes(functionDef.decs);
+                if (functionDef.decs != null) {
+                    for (decoratorsType dec : functionDef.decs) {
+                        if (dec != null) {
+                            addNodes(dec.keywords);
+                        }
+                    }
+                }
+            } else if (node instanceof ClassDef) {
+                ClassDef classDef = (ClassDef) node;
+                addNodes(classDef.keywords);
+                addNodes(classDef.decs);
+                if (classDef.decs != null) {
+                    for (decoratorsType dec : classDef.decs) {
+                        if (dec != null) {
+                            addNodes(dec.keywords);
+                        }
+                    }
+                }
+            } else if (node instanceof Call) {
+                addNodes(((Call) node).keywords);
+            } else if (node instanceof Lambda) {
+                addNode(((Lambda) node).args);
+            } else if (node instanceof Import) {
+                addNodes(((Import) node).names);
+            } else if (node instanceof ImportFrom) {
+                addNodes(((ImportFrom) node).names);
+            } else if (node instanceof TryExcept) {
+                addNodes(((TryExcept) node).handlers);
+            }
+            return null;
+        }
+
+        private void addNodes(SimpleNode[] nodes) {
+            if (nodes != null) {
+                for (SimpleNode node : nodes) {
+                    addNode(node);
+                }
+            }
+        }
+
+        private void addNode(SimpleNode node) {
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+    }
+}
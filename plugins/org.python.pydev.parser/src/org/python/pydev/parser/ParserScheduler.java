@@ -6,58 +6,71 @@
  */
 /*
  * Created on Sep 14, 2005
- * 
+ *
  * @author Fabio Zadrozny
  */
 package org.python.pydev.parser;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when the parser of an editor should parse: requests made while the user is changing the document are
+ * only passed to the ParserWorkersPool (which does the actual parse) after some time without new requests and
+ * forced requests are passed right away.
+ */
 public class ParserScheduler {
 
-    /**
-     * used to do parsings in a thread - is null when not doing parsings
-     */
-    public volatile ParsingThread parsingThread;
+    private final Object lock = new Object();
 
     /**
-     * indicates that currently nothing is happening
+     * The time when a parse should be requested (0 if no parse is waiting for the user to stop changing the
+     * document). Synchronized with lock.
      */
-    public static final int STATE_WAITING = 0;
+    private long deadline;
 
     /**
-     * indicates whether some parse later has been requested
+     * Whether the timer to check the deadline is scheduled. Synchronized with lock.
      */
-    public static final int STATE_PARSE_LATER = 1;
+    private boolean timerScheduled;
 
     /**
-     * indicates if a thread is currently waiting for an elapse cycle to end
+     * The arguments from the forced requests that'll be passed to the next parse. Synchronized with lock.
      */
-    public static final int STATE_WAITING_FOR_ELAPSE = 2;
+    private final List<Object> argsToReparse = new ArrayList<Object>();
 
-    /**
-     * indicates if a thread is currently doing a parse action
-     */
-    public static final int STATE_DOING_PARSE = 3;
-
-    /**
-     * initially we're waiting
-     */
-    volatile int state = STATE_WAITING;
+    private volatile PyParser parser;
 
-    /**
-     * this is the exact time a parse later was requested
-     */
-    private volatile long timeParseLaterRequested = 0;
+    private final ParserWorkersPool pool;
 
-    /**
-     * this is the exact time the last parse was requested
-     */
-    private volatile long timeLastParse = 0;
+    private final Runnable onTimer = new Runnable() {
 
-    private volatile PyParser parser;
+        public void run() {
+            synchronized (lock) {
+                timerScheduled = false;
+                if (deadline == 0 || parser == null) {
+                    return; //a forced parse was requested in the meanwhile (or we were disposed)
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    //new requests arrived while waiting
+                    scheduleTimer(remaining);
+                    return;
+                }
+                deadline = 0;
+            }
+            pool.schedule(ParserScheduler.this, ParserWorkersPool.PRIORITY_EDITOR);
+        }
+    };
 
     public ParserScheduler(PyParser parser) {
+        this(parser, ParserWorkersPool.getSingleton());
+    }
+
+    /*default*/ParserScheduler(PyParser parser, ParserWorkersPool pool) {
         super();
         this.parser = parser;
+        this.pool = pool;
     }
 
     public void parseNow() {
@@ -66,88 +79,97 @@ public class ParserScheduler {
 
     /**
      * The arguments passed in argsToReparse will be passed to the reparseDocument, and then on to fireParserChanged / fireParserError
-     * 
-     * @return false if we asked a forced reparse and it will not be scheduled because a reparse is already in action.
+     *
+     * @return true (kept for compatibility: a forced request is always scheduled -- if a parse is already running,
+     * a new parse is done after it).
      */
     public boolean parseNow(boolean force, Object... argsToReparse) {
         if (!force) {
-            if (state != STATE_WAITING_FOR_ELAPSE && state != STATE_DOING_PARSE) {
-                //waiting or parse later
-                state = STATE_WAITING_FOR_ELAPSE; // the parser will reset it later
-                timeLastParse = System.currentTimeMillis();
-                checkCreateAndStartParsingThread();
-            } else {
-                //another request... we keep waiting until the user stops adding requests
-                boolean created = checkCreateAndStartParsingThread();
-                if (!created) {
-                    parsingThread.okToGo = false;
-                }
-            }
+            //we keep waiting until the user stops adding requests
+            requestAfter(getElapseMillisBeforeAnalysis(), true);
         } else {
-            ParsingThread parserThreadLocal = parsingThread; //if it dies suddenly, we don't want to get it as null...
-            if (state == ParserScheduler.STATE_DOING_PARSE) {
-                //a parse is already in action
-                return false;
-            } else {
-                if (parserThreadLocal == null) {
-                    parserThreadLocal = new ParsingThread(this, argsToReparse);
-                    parsingThread = parserThreadLocal;
-                    parserThreadLocal.force = true;
-                    parserThreadLocal.setPriority(Thread.NORM_PRIORITY - 1); //parsing is lower than normal priority
-                    parserThreadLocal.start();
-                } else {
-                    //force it to run
-                    parserThreadLocal.force = true;
-                    parserThreadLocal.interrupt();
-                }
-            }
+            request(ParserWorkersPool.PRIORITY_EDITOR, argsToReparse);
         }
         return true;
     }
 
     /**
-     * @return whether we really created the thread (returns false if the thread already exists)
+     * Forces a parse which has a lower priority than the ones from the editors being changed (i.e.: the initial
+     * parse of an editor).
      */
-    private boolean checkCreateAndStartParsingThread() {
-        ParsingThread p = parsingThread;
-        if (p == null) {
-            p = new ParsingThread(this);
-            p.setPriority(Thread.MIN_PRIORITY); //parsing is low priority
-            p.start();
-            parsingThread = p;
-            return true;
-        }
-        return false;
+    public void parseInBackground() {
+        request(ParserWorkersPool.PRIORITY_BACKGROUND);
     }
 
     public void parseLater() {
-        if (state != STATE_WAITING_FOR_ELAPSE && state != STATE_PARSE_LATER) {
-            state = STATE_PARSE_LATER;
-            //ok, the time for this request is:
-            timeParseLaterRequested = System.currentTimeMillis();
-            Thread thread = new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        sleep(PyParserManager.getPyParserManager(null).getElapseMillisBeforeAnalysis());
-                    } catch (Exception e) {
-                        //that's ok
-                    }
-                    //ok, no parse happened while we were sleeping
-                    if (state == STATE_PARSE_LATER && timeLastParse < timeParseLaterRequested) {
-                        parseNow();
-                    }
+        //if some parse is already waiting, that's enough.
+        requestAfter(2 * getElapseMillisBeforeAnalysis(), false);
+    }
+
+    private void request(int priority, Object... args) {
+        synchronized (lock) {
+            if (parser == null) {
+                return;
+            }
+            for (Object arg : args) {
+                if (!argsToReparse.contains(arg)) {
+                    argsToReparse.add(arg);
                 }
-            };
-            thread.setName("ParserScheduler");
-            thread.start();
+            }
+            deadline = 0; //it covers the requests waiting
         }
+        pool.schedule(this, priority);
+    }
 
+    /**
+     * @param postpone if true and a parse is already waiting, it'll wait delay millis from now (otherwise, it keeps
+     * the time it was already waiting for).
+     */
+    private void requestAfter(long delay, boolean postpone) {
+        synchronized (lock) {
+            if (parser == null) {
+                return;
+            }
+            if (deadline == 0 || postpone) {
+                deadline = System.currentTimeMillis() + delay;
+            }
+            if (!timerScheduled) {
+                scheduleTimer(delay);
+            }
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void scheduleTimer(long delay) {
+        timerScheduled = true;
+        pool.runLater(onTimer, delay);
+    }
+
+    /*default*/long getElapseMillisBeforeAnalysis() {
+        try {
+            return PyParserManager.getPyParserManager(null).getElapseMillisBeforeAnalysis();
+        } catch (RuntimeException e) {
+            return 0; //the manager is not available (i.e.: in tests).
+        }
+    }
+
+    /**
+     * Called by the pool to do the parse.
+     */
+    /*default*/void runParse() {
+        Object[] args;
+        synchronized (lock) {
+            args = argsToReparse.toArray();
+            argsToReparse.clear();
+        }
+        reparseDocument(args);
     }
 
     /**
      * this should call back to the parser itself for doing a parse
-     * 
+     *
      * The argsToReparse will be passed to the IParserObserver2
      */
     public void reparseDocument(Object... argsToReparse) {
@@ -158,11 +180,12 @@ public class ParserScheduler {
     }
 
     public void dispose() {
-        ParsingThread p = this.parsingThread;
-        if (p != null) {
-            p.dispose();
+        synchronized (lock) {
+            this.parser = null;
+            deadline = 0;
+            argsToReparse.clear();
         }
-        this.parser = null;
+        pool.cancel(this);
     }
 
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.python.pydev.core.concurrency.KeyedPriorityExecutor;
+import org.python.pydev.core.concurrency.WorkersPool;
+import org.python.pydev.core.concurrency.WorkersPool.DaemonThreadFactory;
+
+import com.aptana.shared_core.string.StringUtils;
+
+/**
+ * Runs the parses requested by the parser schedulers of all the editors in a fixed number of worker threads (which
+ * caps the number of parses running concurrently) and provides the timer used by the schedulers to wait before
+ * requesting a parse.
+ *
+ * While a parse for a scheduler is waiting to run, a new request for it is coalesced with the one waiting and only
+ * one parse for a given scheduler runs at a time (a request for a scheduler whose parse is running only starts
+ * after the current parse finishes).
+ *
+ * Requests from the editor being changed have priority over the ones made in the background (i.e.: the initial
+ * parse of the editors opened).
+ *
+ * @see KeyedPriorityExecutor
+ */
+public final class ParserWorkersPool {
+
+    public static final int PRIORITY_EDITOR = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    /**
+     * Runs the parse of a scheduler.
+     */
+    private static final class ParseRunnable implements Runnable {
+        private final ParserScheduler scheduler;
+
+        ParseRunnable(ParserScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        public void run() {
+            scheduler.runParse();
+        }
+    }
+
+    private final KeyedPriorityExecutor<ParserScheduler, ParseRunnable> executor;
+
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param workers the maximum number of parses running at the same time.
+     */
+    public ParserWorkersPool(int workers) {
+        timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("PyDev: Parser Timer: "));
+        //the parses run with lower than normal priority
+        executor = new KeyedPriorityExecutor<ParserScheduler, ParseRunnable>("PyDev: Parser: ", workers, 2);
+    }
+
+    /**
+     * Runs the given runnable in the timer thread after the given delay (it should be fast: it must not parse).
+     */
+    public void runLater(Runnable runnable, long delayMillis) {
+        timer.schedule(runnable, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules a parse for the given scheduler (coalesced with a request for the same scheduler that's still
+     * waiting).
+     */
+    public void schedule(ParserScheduler scheduler, int priority) {
+        executor.schedule(scheduler, new ParseRunnable(scheduler), priority);
+    }
+
+    /**
+     * Removes the request waiting to run for the given scheduler (if any).
+     */
+    public void cancel(ParserScheduler scheduler) {
+        executor.cancel(scheduler);
+    }
+
+    /**
+     * @return the maximum number of parses running at the same time.
+     */
+    public int getWorkers() {
+        return executor.getWorkers();
+    }
+
+    /**
+     * @return the number of requests waiting to run.
+     */
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    /**
+     * @return the number of parses running.
+     */
+    public int getRunningCount() {
+        return executor.getRunningCount();
+    }
+
+    public long getParsesRun() {
+        return executor.getRequestsRun();
+    }
+
+    /**
+     * @return the number of requests that were coalesced with a request already waiting.
+     */
+    public long getParsesCoalesced() {
+        return executor.getRequestsCoalesced();
+    }
+
+    /**
+     * @return the average time (in millis) that requests waited before running.
+     */
+    public double getAverageQueueLatency() {
+        return executor.getAverageQueueLatency();
+    }
+
+    /**
+     * @return the maximum time (in millis) that a request waited before running.
+     */
+    public long getMaxQueueLatency() {
+        return executor.getMaxQueueLatency();
+    }
+
+    /**
+     * @return the average time (in millis) that it took to parse.
+     */
+    public double getAverageParseTime() {
+        return executor.getAverageRunTime();
+    }
+
+    /**
+     * @return the number of parses run per second since this pool was created.
+     */
+    public double getThroughput() {
+        return executor.getThroughput();
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.format("ParserWorkersPool[workers: %s, queued: %s, running: %s, run: %s, "
+                + "coalesced: %s, avg latency: %s, max latency: %s, avg parse time: %s]", getWorkers(),
+                getQueueDepth(), getRunningCount(), getParsesRun(), getParsesCoalesced(), getAverageQueueLatency(),
+                getMaxQueueLatency(), getAverageParseTime());
+    }
+
+    private static ParserWorkersPool singleton;
+
+    public synchronized static ParserWorkersPool getSingleton() {
+        if (singleton == null) {
+            //leave processors for the analysis and the ui.
+            singleton = new ParserWorkersPool(Math.max(1, WorkersPool.getNumberOfWorkers() / 2));
+        }
+        return singleton;
+    }
+}
@@ -46,6 +46,7 @@ import org.python.pydev.core.parser.IParserObserver;
 import org.python.pydev.core.parser.IParserObserver2;
 import org.python.pydev.core.parser.IParserObserver3;
 import org.python.pydev.core.parser.IPyParser;
+import org.python.pydev.parser.IncrementalParser.ChangedLines;
 import org.python.pydev.parser.fastparser.FastParser;
 import org.python.pydev.parser.grammar24.PythonGrammar24;
 import org.python.pydev.parser.grammar25.PythonGrammar25;
@@ -68,7 +69,7 @@ import com.aptana.shared_core.structure.Tuple;
  * PyParser uses org.python.parser to parse the document (lexical analysis) It
  * is attached to PyEdit (a view), and it listens to document changes On every
  * document change, the syntax tree is regenerated The reparsing of the document
- * is done on a ParsingThread
+ * is done in the ParserWorkersPool (see ParserScheduler)
  * 
  * Clients that need to know when new parse tree has been generated should
  * register as parseListeners.
@@ -92,6 +93,12 @@ public class PyParser implements IPyParser {
      */
     public static boolean USE_FAST_STREAM = true;
 
+    /**
+     * Defines whether the parser for an editor should reparse only the top-level statements changed since the
+     * last parse (when possible) or always reparse the whole document.
+     */
+    public static boolean USE_INCREMENTAL_REPARSE = true;
+
     /**
      * this is the document we should parse 
      */
@@ -137,6 +144,45 @@ public class PyParser implements IPyParser {
      */
     private volatile boolean disposed = false;
 
+    // Incremental reparse (all synchronized with incrementalLock) -----------------------------------------------
+
+    private final Object incrementalLock = new Object();
+
+    /**
+     * The lines changed in the document since the contents used in the last parse were gotten.
+     */
+    private ChangedLines changedLines = new ChangedLines();
+
+    /**
+     * Lines of the region being replaced (gotten before the change and used after it).
+     */
+    private int changeOldFirstLine = -1;
+    private int changeOldLastLine = -1;
+
+    /**
+     * Set if we weren't able to track some change (so, the next parse can't be incremental).
+     */
+    private boolean changesUnknown;
+
+    /**
+     * Number of changes started in the document (used to know if the document was changed while getting its contents).
+     */
+    private long changesStarted;
+
+    /**
+     * The module from the last parse without errors (which can be used as a base for the next parse).
+     */
+    private Module lastModule;
+    private int lastModuleGrammarVersion;
+
+    /**
+     * Incremented whenever the contents of the document are gotten for a parse (a parse only keeps its result
+     * as the base for the next parse if no other parse got the contents after it).
+     */
+    private long contentsSnapshot;
+
+    // End incremental reparse -----------------------------------------------------------------------------------
+
     public static String getGrammarVersionStr(int grammarVersion) {
         if (grammarVersion == IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_4) {
             return "grammar: Python 2.4";
@@ -183,6 +229,8 @@ public class PyParser implements IPyParser {
         documentListener = new IDocumentListener() {
 
             public void documentChanged(DocumentEvent event) {
+                onDocumentChanged(event);
+
                 if (useAnalysisOnlyOnDocSave) {
                     //if we're doing analysis only on doc change, the parser will not give any changes
                     //to the scheduler, so, we won't have any parse events to respond to
@@ -212,11 +260,47 @@ public class PyParser implements IPyParser {
             }
 
             public void documentAboutToBeChanged(DocumentEvent event) {
+                onDocumentAboutToBeChanged(event);
             }
         };
 
     }
 
+    /**
+     * Keeps the lines of the region that'll be replaced (the lines changed are only updated after the change).
+     */
+    private void onDocumentAboutToBeChanged(DocumentEvent event) {
+        synchronized (incrementalLock) {
+            changesStarted++;
+            try {
+                IDocument doc = event.getDocument();
+                changeOldFirstLine = doc.getLineOfOffset(event.getOffset());
+                changeOldLastLine = doc.getLineOfOffset(event.getOffset() + event.getLength());
+            } catch (BadLocationException e) {
+                changeOldFirstLine = -1;
+                changesUnknown = true;
+            }
+        }
+    }
+
+    private void onDocumentChanged(DocumentEvent event) {
+        synchronized (incrementalLock) {
+            if (changeOldFirstLine == -1) {
+                changesUnknown = true;
+                return;
+            }
+            try {
+                String text = event.getText();
+                int newLastLine = event.getDocument().getLineOfOffset(
+                        event.getOffset() + (text == null ? 0 : text.length()));
+                changedLines.addChange(changeOldFirstLine, changeOldLastLine, newLastLine);
+            } catch (BadLocationException e) {
+                changesUnknown = true;
+            }
+            changeOldFirstLine = -1;
+        }
+    }
+
     /**
      * Ok, create the parser for an editor
      * 
@@ -261,7 +345,7 @@ public class PyParser implements IPyParser {
     }
 
     /**
-     * @return false if we asked a reparse and it will not be scheduled because a reparse is already in action.
+     * @return true (a reparse requested while another reparse is running is done after it finishes).
      */
     public boolean forceReparse(Object... argsToReparse) {
         if (disposed) {
@@ -288,6 +372,13 @@ public class PyParser implements IPyParser {
 
         // Set up new listener
         this.document = doc;
+        synchronized (incrementalLock) {
+            changedLines = new ChangedLines();
+            changeOldFirstLine = -1;
+            changesUnknown = false;
+            lastModule = null;
+            contentsSnapshot++;
+        }
         if (doc == null) {
             Log.log("No document in PyParser::setDocument?");
             return;
@@ -296,8 +387,8 @@ public class PyParser implements IPyParser {
         doc.addDocumentListener(documentListener);
 
         if (addToScheduler) {
-            // Reparse document on the initial set (force it)
-            scheduler.parseNow(true);
+            // Reparse document on the initial set (force it -- with a lower priority than the editors being changed)
+            scheduler.parseInBackground();
         }
     }
 
@@ -426,7 +517,14 @@ public class PyParser implements IPyParser {
             version = IGrammarVersionProvider.LATEST_GRAMMAR_VERSION;
         }
         long documentTime = System.currentTimeMillis();
-        Tuple<SimpleNode, Throwable> obj = reparseDocument(new ParserInfo(document, version, true));
+        ParserInfo parserInfo = new ParserInfo(document, version, true);
+        Tuple<SimpleNode, Throwable> obj;
+        if (USE_INCREMENTAL_REPARSE && version != IPythonNature.GRAMMAR_PYTHON_VERSION_CYTHON) {
+            obj = reparseIncrementally(parserInfo);
+        } else {
+            parserInfo.useAstCache = true;
+            obj = reparseDocument(parserInfo);
+        }
 
         IFile original = null;
         IAdaptable adaptable = null;
@@ -489,6 +587,74 @@ public class PyParser implements IPyParser {
         return obj;
     }
 
+    /**
+     * Reparses only the top-level statements changed since the last parse (if the last parse had no errors and
+     * the changed statements can be parsed by themselves) or the whole document otherwise.
+     *
+     * Note that the statements after the changed ones are reused from the last ast (with their lines updated).
+     */
+    private Tuple<SimpleNode, Throwable> reparseIncrementally(ParserInfo info) {
+        String contents;
+        ChangedLines changes;
+        Module previous;
+        boolean contentsMatchChanges;
+        long snapshot;
+        long changesStartedBefore;
+        synchronized (incrementalLock) {
+            contentsMatchChanges = !changesUnknown && changeOldFirstLine == -1;
+            changes = changedLines;
+            previous = lastModuleGrammarVersion == info.grammarVersion ? lastModule : null;
+            changesStartedBefore = changesStarted;
+
+            changedLines = new ChangedLines();
+            changesUnknown = false;
+            lastModule = null;
+            snapshot = ++contentsSnapshot;
+        }
+
+        //the document isn't gotten with our lock held (the document may notify its listeners with its own lock
+        //held), so, if some change started in the meanwhile, we can't know whether it's in the contents.
+        contents = info.document.get();
+        synchronized (incrementalLock) {
+            if (changesStarted != changesStartedBefore) {
+                contentsMatchChanges = false;
+            }
+        }
+
+        Tuple<SimpleNode, Throwable> obj = null;
+        if (previous != null && contentsMatchChanges && changes.hasChanges()) {
+            Module module = IncrementalParser.reparse(previous, contents, changes, info.grammarVersion);
+            if (module != null) {
+                obj = new Tuple<SimpleNode, Throwable>(module, null);
+                notifySuccessfulParseListeners(obj, info);
+            }
+        }
+        boolean fromAstCache = false;
+        if (obj == null) {
+            //an ast from the ast cache is not kept as the base for the incremental reparse (the statements of
+            //the base are shared with the next module, so, only asts created by this parser are used as a base).
+            SimpleNode cached = AstCache.getSingleton().get(
+                    AstCache.createKey(contents, info.grammarVersion, info.generateTree));
+            if (cached != null) {
+                obj = new Tuple<SimpleNode, Throwable>(cached, null);
+                notifySuccessfulParseListeners(obj, info);
+                fromAstCache = true;
+            } else {
+                obj = reparseDocument(info, contents);
+            }
+        }
+
+        if (contentsMatchChanges && !fromAstCache && obj.o1 instanceof Module && obj.o2 == null) {
+            synchronized (incrementalLock) {
+                if (snapshot == contentsSnapshot && !changesUnknown) {
+                    lastModule = (Module) obj.o1;
+                    lastModuleGrammarVersion = info.grammarVersion;
+                }
+            }
+        }
+        return obj;
+    }
+
     /**
      * This function will remove the markers related to errors.
      * @param resource the file that should have the markers removed
@@ -532,6 +698,14 @@ public class PyParser implements IPyParser {
          */
         public final boolean generateTree;
 
+        /**
+         * Whether the ast may be gotten from (and added to) the shared ast cache. Only set it if the ast
+         * returned won't be changed.
+         * 
+         * @see AstCache
+         */
+        public boolean useAstCache;
+
         /**
          * @param grammarVersion: see IPythonNature.GRAMMAR_XXX constants
          */
@@ -582,13 +756,16 @@ public class PyParser implements IPyParser {
 
     /**
      * This list of callbacks is mostly used for testing, so that we can check what's been parsed.
+     *
+     * Note that the listeners are also notified when the ast is gotten from the AstCache or from an incremental
+     * reparse (i.e.: they're notified once for each successful reparse, regardless of how the ast was gotten).
      */
     public final static List<ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>>> successfulParseListeners = new ArrayList<ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>>>();
 
     /**
      * Create the char array to parse based on the initial document and our parser limitations.
      */
-    private static char[] createCharArrayToParse(String startDoc) {
+    static char[] createCharArrayToParse(String startDoc) {
         int length = startDoc.length();
         int skipAtStart = 0;
         if (startDoc.startsWith(FileUtils.BOM_UTF8)) {
@@ -614,7 +791,7 @@ public class PyParser implements IPyParser {
      * Actually creates the grammar.
      * @param generateTree whether we should generate the AST or not.
      */
-    private static IGrammar createGrammar(boolean generateTree, int grammarVersion, char[] charArray) {
+    static IGrammar createGrammar(boolean generateTree, int grammarVersion, char[] charArray) {
         IGrammar grammar;
         FastCharStream in = new FastCharStream(charArray);
         switch (grammarVersion) {
@@ -667,12 +844,29 @@ public class PyParser implements IPyParser {
             return createCythonAst(doc);
         }
 
+        return reparseDocument(info, info.document.get());
+    }
+
+    /**
+     * @param startDoc the contents of the document to be parsed.
+     */
+    private static Tuple<SimpleNode, Throwable> reparseDocument(ParserInfo info, String startDoc) {
         // create a stream with document's data
-        String startDoc = info.document.get();
         if (startDoc.trim().length() == 0) {
             //If empty, don't bother to parse!
             return new Tuple<SimpleNode, Throwable>(new Module(new stmtType[0]), null);
         }
+        AstCache.Key cacheKey = null;
+        if (info.useAstCache) {
+            cacheKey = AstCache.createKey(startDoc, info.grammarVersion, info.generateTree);
+            SimpleNode cached = AstCache.getSingleton().get(cacheKey);
+            if (cached != null) {
+                //the listeners are notified as if the document had been parsed (only successful parses are cached).
+                Tuple<SimpleNode, Throwable> returnVar = new Tuple<SimpleNode, Throwable>(cached, null);
+                notifySuccessfulParseListeners(returnVar, info);
+                return returnVar;
+            }
+        }
         char[] charArray = createCharArrayToParse(startDoc);
         startDoc = null; //it can be garbage-collected now.
 
@@ -684,16 +878,12 @@ public class PyParser implements IPyParser {
             returnVar.o1 = newRoot;
 
             //only notify successful parses
-            if (successfulParseListeners.size() > 0) {
-                Tuple3<SimpleNode, Throwable, ParserInfo> param = new Tuple3<SimpleNode, Throwable, ParserInfo>(
-                        returnVar.o1, returnVar.o2, info);
-
-                for (ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> callback : successfulParseListeners) {
-                    callback.call(param);
-                }
-            }
+            notifySuccessfulParseListeners(returnVar, info);
 
             returnVar.o2 = grammar.getErrorOnParsing();
+            if (cacheKey != null && newRoot != null && returnVar.o2 == null) {
+                AstCache.getSingleton().put(cacheKey, newRoot);
+            }
 
         } catch (Throwable e) {
             //ok, some error happened when trying the parse... let's go and clear the local info before doing
@@ -738,6 +928,17 @@ public class PyParser implements IPyParser {
         return returnVar;
     }
 
+    private static void notifySuccessfulParseListeners(Tuple<SimpleNode, Throwable> returnVar, ParserInfo info) {
+        if (successfulParseListeners.size() > 0) {
+            Tuple3<SimpleNode, Throwable, ParserInfo> param = new Tuple3<SimpleNode, Throwable, ParserInfo>(
+                    returnVar.o1, returnVar.o2, info);
+
+            for (ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> callback : successfulParseListeners) {
+                callback.call(param);
+            }
+        }
+    }
+
     public static Tuple<SimpleNode, Throwable> createCythonAst(IDocument doc) {
         List<stmtType> classesAndFunctions = FastParser.parseCython(doc);
         return new Tuple<SimpleNode, Throwable>(new Module(classesAndFunctions.toArray(new stmtType[classesAndFunctions
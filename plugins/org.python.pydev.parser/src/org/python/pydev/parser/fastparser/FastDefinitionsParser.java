@@ -318,7 +318,8 @@ public final class FastDefinitionsParser {
             currIndex += 6;
             col += 6;
 
-            startClass(getNextIdentifier(c), row, startClassCol);
+            String name = getNextIdentifier(c);
+            startClass(name, getBases(parsingUtils), row, startClassCol);
 
         } else if (c == 'd' && matchFunction()) {
             int startMethodCol = col;
@@ -465,15 +466,16 @@ public final class FastDefinitionsParser {
 
     /**
      * Start a new class scope with the given row and column.
+     * @param bases the bases of the class
      * @param startClassRow the row where the scope should start
      * @param startClassCol the column where the scope should start
      */
-    private void startClass(String name, int startClassRow, int startClassCol) {
+    private void startClass(String name, exprType[] bases, int startClassRow, int startClassCol) {
         if (startClassCol == 1) {
             endScopesInStack();
         }
         NameTok nameTok = new NameTok(name, NameTok.ClassName);
-        ClassDef classDef = new ClassDef(nameTok, null, null, null, null, null, null);
+        ClassDef classDef = new ClassDef(nameTok, bases, null, null, null, null, null);
 
         classDef.beginLine = startClassRow;
         classDef.beginColumn = startClassCol;
@@ -482,6 +484,92 @@ public final class FastDefinitionsParser {
         stackBody.push(new ArrayList<stmtType>(10));
     }
 
+    private static final exprType[] EMPTY_BASES = new exprType[0];
+
+    /**
+     * Buffer used to get the contents of the bases of a class.
+     */
+    private final FastStringBuffer basesBuffer = new FastStringBuffer();
+
+    /**
+     * Gets the bases for the class being defined (the current index must be just after the class name). The current
+     * index is not changed.
+     * 
+     * Only bases that are names or dotted names are gotten (calls, keyword arguments, etc. are skipped).
+     */
+    private exprType[] getBases(ParsingUtils parsingUtils) throws SyntaxErrorException {
+        int tempIndex = skipWhitespaces(currIndex);
+        if (tempIndex >= length || cs[tempIndex] != '(') {
+            return EMPTY_BASES;
+        }
+        basesBuffer.clear();
+        parsingUtils.eatPar(tempIndex, basesBuffer); //comments, literals and inner parenthesis are not added.
+        basesBuffer.append(',');
+
+        ArrayList<exprType> bases = null;
+        int start = 0;
+        int len = basesBuffer.length();
+        for (int i = 0; i < len; i++) {
+            char c = basesBuffer.charAt(i);
+            if (c == ',') {
+                exprType base = createBase(start, i);
+                if (base != null) {
+                    if (bases == null) {
+                        bases = new ArrayList<exprType>(2);
+                    }
+                    bases.add(base);
+                }
+                start = i + 1;
+            }
+        }
+        if (bases == null) {
+            return EMPTY_BASES;
+        }
+        return bases.toArray(new exprType[bases.size()]);
+    }
+
+    /**
+     * @return a Name or Attribute for the base in the given range of the basesBuffer (or null if it's not a
+     * name or dotted name).
+     */
+    private exprType createBase(int start, int end) {
+        //skip whitespaces and line continuations
+        while (start < end
+                && (Character.isWhitespace(basesBuffer.charAt(start)) || basesBuffer.charAt(start) == '\\')) {
+            start++;
+        }
+        while (end > start
+                && (Character.isWhitespace(basesBuffer.charAt(end - 1)) || basesBuffer.charAt(end - 1) == '\\')) {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        exprType base = null;
+        int partStart = start;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? basesBuffer.charAt(i) : '.';
+            if (c == '.') {
+                if (partStart == i) {
+                    return null;
+                }
+                String part = ObjectsPool.internLocal(interned, new String(basesBuffer.getInternalCharsArray(),
+                        partStart, i - partStart));
+                if (base == null) {
+                    base = new Name(part, Name.Load, false);
+                } else {
+                    base = new Attribute(base, new NameTok(part, NameTok.Attrib), Attribute.Load);
+                }
+                partStart = i + 1;
+
+            } else if (!Character.isJavaIdentifierPart(c)) {
+                return null;
+            }
+        }
+        return base;
+    }
+
     private void endScopesInStack() {
         while (stack.size() > 0) {
             endScope();
@@ -18,27 +18,27 @@ import com.aptana.shared_core.string.FastStringBuffer;
  * initial implementation was highly inefficient when working only with a string (actually, if it was small, there would be no noticeable
  * delays, but if it became big, then the improvement would be HUGE).
  * 
- * It keeps the same semantics for line and column stuff (and shares the previous approach of keeping a buffer for this info).
- * If we wanted we could optimize it for also taking less memory, but as there is usually not so many concurrent parses, this 
- * is probably not worth it -- and it would probably be a little slower)
+ * It keeps the same semantics for line and column stuff, but instead of keeping the line and column for each char (which
+ * would take 8 bytes for each char in the document), it only keeps the offsets where each line starts and computes the
+ * line and column when requested (which is usually for a position in the last line read, so, it's cheap).
  */
 
 public final class FastCharStream {
 
     public final char[] buffer;
 
-    public final int bufline[];
+    /**
+     * The offsets where each line starts (lineStarts[0] is the start of line 1). Only lines up to the last char read
+     * are here (lineStartsLen is the number of lines found so far).
+     */
+    private int lineStarts[];
 
-    public final int bufcolumn[];
+    private int lineStartsLen = 1;
 
     private boolean prevCharIsCR = false;
 
     private boolean prevCharIsLF = false;
 
-    private int column = 0;
-
-    private int line = 1;
-
     public int bufpos = -1;
 
     private int updatePos;
@@ -51,8 +51,7 @@ public final class FastCharStream {
 
     public FastCharStream(char cs[]) {
         this.buffer = cs;
-        this.bufline = new int[cs.length];
-        this.bufcolumn = new int[cs.length];
+        this.lineStarts = new int[Math.max(16, cs.length / 40)];
     }
 
     public int getCurrentPos() {
@@ -102,11 +101,9 @@ public final class FastCharStream {
                 updatePos++;
 
                 //start UpdateLineCol
-                column++;
-
                 if (prevCharIsLF) {
                     prevCharIsLF = false;
-                    line += (column = 1);
+                    addLineStart(bufpos);
 
                 } else if (prevCharIsCR) {
 
@@ -114,7 +111,7 @@ public final class FastCharStream {
                     if (r == '\n') {
                         prevCharIsLF = true;
                     } else {
-                        line += (column = 1);
+                        addLineStart(bufpos);
                     }
                 }
 
@@ -125,9 +122,6 @@ public final class FastCharStream {
                     prevCharIsLF = true;
 
                 }
-
-                bufline[bufpos] = line;
-                bufcolumn[bufpos] = column;
                 //end UpdateLineCol
             }
 
@@ -141,20 +135,63 @@ public final class FastCharStream {
         }
     }
 
+    private void addLineStart(int pos) {
+        if (lineStartsLen == lineStarts.length) {
+            int[] newLineStarts = new int[lineStarts.length * 2];
+            System.arraycopy(lineStarts, 0, newLineStarts, 0, lineStartsLen);
+            lineStarts = newLineStarts;
+        }
+        lineStarts[lineStartsLen++] = pos;
+    }
+
+    /**
+     * @return the line (1-based) of the char at the given position (which must have been already read).
+     */
+    private int getLine(int pos) {
+        int high = lineStartsLen - 1;
+        if (pos >= lineStarts[high]) {
+            return high + 1; //the usual case: a position in the last line read.
+        }
+        int low = 0;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * @return the column (1-based) of the char at the given position in the given line.
+     */
+    private int getColumn(int pos, int line) {
+        return pos - lineStarts[line - 1] + 1;
+    }
+
+    /**
+     * @return the number of bytes used to keep the line and column information (used for profiling).
+     */
+    /*default*/int getPositionInfoSizeInBytes() {
+        return lineStarts.length * 4;
+    }
+
     public final int getEndColumn() {
-        return bufcolumn[bufpos];
+        return getColumn(bufpos, getLine(bufpos));
     }
 
     public final int getEndLine() {
-        return bufline[bufpos];
+        return getLine(bufpos);
     }
 
     public final int getBeginColumn() {
-        return bufcolumn[tokenBegin];
+        return getColumn(tokenBegin, getLine(tokenBegin));
     }
 
     public final int getBeginLine() {
-        return bufline[tokenBegin];
+        return getLine(tokenBegin);
     }
 
     public final void backup(int amount) {
@@ -239,15 +276,18 @@ public final class FastCharStream {
     }
 
     public void setBeginEndCharsEqual(Token t) {
-        t.beginLine = t.endLine = bufline[tokenBegin];
-        t.beginColumn = t.endColumn = bufcolumn[tokenBegin];
+        int line = getLine(tokenBegin);
+        t.beginLine = t.endLine = line;
+        t.beginColumn = t.endColumn = getColumn(tokenBegin, line);
     }
 
     public void setBeginEndChars(Token t) {
-        t.beginLine = bufline[tokenBegin];
-        t.beginColumn = bufcolumn[tokenBegin];
-        t.endLine = bufline[bufpos];
-        t.endColumn = bufcolumn[bufpos];
+        int beginLine = getLine(tokenBegin);
+        t.beginLine = beginLine;
+        t.beginColumn = getColumn(tokenBegin, beginLine);
+        int endLine = getLine(bufpos);
+        t.endLine = endLine;
+        t.endColumn = getColumn(bufpos, endLine);
     }
 
 }
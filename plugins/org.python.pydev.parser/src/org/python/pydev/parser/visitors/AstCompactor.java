@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.visitors;
+
+import org.python.pydev.core.ObjectsPool;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.Num;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+/**
+ * Creates the compact version of an ast: the one kept by modules which are only used for code-completion and
+ * code-analysis (i.e.: the modules kept by the modules managers).
+ *
+ * The compact ast has no specials (comments and the tokens needed to pretty-print it, such as parenthesis and
+ * commas) and its identifiers are interned in the ObjectsPool (so, the names repeated among the modules in the
+ * pythonpath are shared).
+ *
+ * Clients that need the comments or pretty-print the ast must parse the contents again to get the full ast.
+ */
+public final class AstCompactor extends VisitorBase {
+
+    private AstCompactor() {
+    }
+
+    /**
+     * @param ast the ast to be compacted. It's not changed (asts may be shared -- i.e.: in the AstCache).
+     * @return a compact copy of the passed ast.
+     */
+    public static SimpleNode createCompactCopy(SimpleNode ast) {
+        if (ast == null) {
+            return null;
+        }
+        SimpleNode copy = ast.createCopy(false); //the copy doesn't have the specials
+        AstCompactor compactor = new AstCompactor();
+        synchronized (ObjectsPool.lock) {
+            try {
+                copy.accept(compactor);
+            } catch (Exception e) {
+                Log.log(e);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    protected Object unhandled_node(SimpleNode node) throws Exception {
+        node.specialsBefore = null;
+        node.specialsAfter = null;
+        return null;
+    }
+
+    @Override
+    public void traverse(SimpleNode node) throws Exception {
+        node.traverse(this);
+    }
+
+    @Override
+    public Object visitName(Name node) throws Exception {
+        node.id = ObjectsPool.internUnsynched(node.id);
+        return super.visitName(node);
+    }
+
+    @Override
+    public Object visitNameTok(NameTok node) throws Exception {
+        node.id = ObjectsPool.internUnsynched(node.id);
+        return super.visitNameTok(node);
+    }
+
+    @Override
+    public Object visitNum(Num node) throws Exception {
+        node.num = ObjectsPool.internUnsynched(node.num);
+        return super.visitNum(node);
+    }
+
+    @Override
+    public Object visitClassDef(ClassDef node) throws Exception {
+        //the copy doesn't keep the parent set by the tree builder for the definitions in the class body.
+        stmtType[] body = node.body;
+        if (body != null) {
+            for (stmtType b : body) {
+                if (b instanceof ClassDef || b instanceof FunctionDef) {
+                    if (b.parent == null) {
+                        b.parent = node;
+                    }
+                }
+            }
+        }
+        return super.visitClassDef(node);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.Tuple3;
+import org.python.pydev.parser.PyParser.ParserInfo;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.Pass;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+import com.aptana.shared_core.callbacks.ICallback;
+import com.aptana.shared_core.structure.Tuple;
+
+public class AstCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AstCacheTest.class);
+    }
+
+    private static final int VERSION = IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7;
+
+    private static Module createModule(int statements) {
+        stmtType[] body = new stmtType[statements];
+        for (int i = 0; i < statements; i++) {
+            body[i] = new Pass();
+        }
+        return new Module(body);
+    }
+
+    public void testKeys() throws Exception {
+        AstCache cache = new AstCache();
+        Module module = createModule(1);
+        cache.put(AstCache.createKey("pass", VERSION, true), module);
+
+        assertSame(module, cache.get(AstCache.createKey("pass", VERSION, true)));
+        assertNull(cache.get(AstCache.createKey("pass", VERSION, false)));
+        assertNull(cache.get(AstCache.createKey("pass", IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_3_0, true)));
+        assertNull(cache.get(AstCache.createKey("pass ", VERSION, true)));
+        assertNull(cache.get(AstCache.createKey("psas", VERSION, true)));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(0.2, cache.getHitRate(), 0.0001);
+        assertEquals(AstCache.estimateBytes(module), cache.getRetainedBytes());
+    }
+
+    public void testEviction() throws Exception {
+        AstCache cache = new AstCache();
+        long bytes = AstCache.estimateBytes(createModule(10));
+        cache.setMaxBytes(bytes * 3);
+
+        cache.put(AstCache.createKey("a", VERSION, true), createModule(10));
+        cache.put(AstCache.createKey("b", VERSION, true), createModule(10));
+        cache.put(AstCache.createKey("c", VERSION, true), createModule(10));
+        assertEquals(3, cache.getSize());
+
+        assertNotNull(cache.get(AstCache.createKey("a", VERSION, true))); //'b' is now the least recently used
+        cache.put(AstCache.createKey("d", VERSION, true), createModule(10));
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(AstCache.createKey("b", VERSION, true)));
+        assertNotNull(cache.get(AstCache.createKey("a", VERSION, true)));
+        assertEquals(bytes * 3, cache.getRetainedBytes());
+
+        //too big to be in the cache
+        cache.put(AstCache.createKey("e", VERSION, true), createModule(100));
+        assertNull(cache.get(AstCache.createKey("e", VERSION, true)));
+        assertEquals(3, cache.getSize());
+
+        cache.setMaxBytes(bytes);
+        assertEquals(1, cache.getSize());
+        assertEquals(bytes, cache.getRetainedBytes());
+    }
+
+    public void testParserUsesCache() throws Exception {
+        AstCache.getSingleton().clear();
+        String contents = "class A(object):\n    def m(self):\n        pass\n";
+        final List<SimpleNode> parsesDone = new ArrayList<SimpleNode>();
+        ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> listener = new ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>>() {
+
+            public Object call(Tuple3<SimpleNode, Throwable, ParserInfo> arg) {
+                parsesDone.add(arg.o1);
+                return null;
+            }
+        };
+        PyParser.successfulParseListeners.add(listener);
+        try {
+            ParserInfo info = new ParserInfo(new Document(contents), VERSION);
+            info.useAstCache = true;
+            Tuple<SimpleNode, Throwable> first = PyParser.reparseDocument(info);
+            assertNotNull(first.o1);
+            assertEquals(1, parsesDone.size());
+
+            //the listeners are also notified when the ast comes from the cache
+            info = new ParserInfo(new Document(contents), VERSION);
+            info.useAstCache = true;
+            assertSame(first.o1, PyParser.reparseDocument(info).o1);
+            assertEquals(2, parsesDone.size());
+            assertSame(first.o1, parsesDone.get(1));
+
+            //not using the cache
+            info = new ParserInfo(new Document(contents), VERSION);
+            assertNotSame(first.o1, PyParser.reparseDocument(info).o1);
+
+            //contents with errors are not kept in the cache
+            info = new ParserInfo(new Document("class A("), VERSION);
+            info.useAstCache = true;
+            Tuple<SimpleNode, Throwable> withError = PyParser.reparseDocument(info);
+            assertNotNull(withError.o2);
+            assertEquals(1, AstCache.getSingleton().getSize());
+        } finally {
+            PyParser.successfulParseListeners.remove(listener);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.parser.IncrementalParser.ChangedLines;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.SpecialStr;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.commentType;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+import com.aptana.shared_core.string.FastStringBuffer;
+
+public class IncrementalParserTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(IncrementalParserTest.class);
+    }
+
+    public static final String SAMPLE = "" +
+            "# comment at start\n" +
+            "from __future__ import print_function\n" +
+            "import os\n" +
+            "\n" +
+            "# comment before\n" +
+            "@decorator(1,\n" +
+            "    2)\n" +
+            "def func(a, b=(1,\n" +
+            "        2)):\n" +
+            "    '''doc\n" +
+            "    string'''\n" +
+            "    print(a, b) # print\n" +
+            "    # comment at end of func\n" +
+            "\n" +
+            "class A(object):\n" +
+            "\n" +
+            "    x = [\n" +
+            "        1, 2]\n" +
+            "\n" +
+            "    def m(self):\n" +
+            "        if self.x:\n" +
+            "            return 1\n" +
+            "        else:\n" +
+            "            return 2\n" +
+            "\n" +
+            "value = func(\n" +
+            "    1, 2)\n" +
+            "if value:\n" +
+            "    pass\n" +
+            "elif value is None:\n" +
+            "    pass\n" +
+            "else:\n" +
+            "    value = 3\n" +
+            "try:\n" +
+            "    import sys\n" +
+            "except:\n" +
+            "    sys = None\n" +
+            "# comment at end\n" +
+            "";
+
+    private int fullParses;
+
+    private int incrementalParses;
+
+    private int grammarVersion = IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7;
+
+    /**
+     * A document with the module from its last parse and the lines changed since then.
+     */
+    private class Doc {
+        String text;
+        Module module;
+        ChangedLines changed = new ChangedLines();
+
+        Doc(String text) {
+            this.text = text;
+            this.module = parseFull(text);
+            assertNotNull(module);
+        }
+
+        void replace(int offset, int length, String newText) {
+            int[] lineStarts = IncrementalParser.computeLineStarts(text);
+            int oldFirst = getLineOfOffset(lineStarts, offset);
+            int oldLast = getLineOfOffset(lineStarts, offset + length);
+            text = text.substring(0, offset) + newText + text.substring(offset + length);
+            int newLast = getLineOfOffset(IncrementalParser.computeLineStarts(text), offset + newText.length());
+            changed.addChange(oldFirst, oldLast, newLast);
+        }
+
+        /**
+         * Reparses the document checking that the incremental result is the same as the full parse.
+         */
+        void reparse() throws Exception {
+            Module expected = parseFull(text);
+            Module actual = module == null ? null : IncrementalParser.reparse(module, text, changed, grammarVersion);
+            if (actual == null) {
+                fullParses++;
+                actual = parseFull(text);
+            } else {
+                incrementalParses++;
+                assertEquals(dump(expected), dump(actual));
+            }
+            module = actual;
+            changed = new ChangedLines();
+        }
+    }
+
+    private static int getLineOfOffset(int[] lineStarts, int offset) {
+        int line = Arrays.binarySearch(lineStarts, offset);
+        return line >= 0 ? line : -line - 2;
+    }
+
+    private Module parseFull(String text) {
+        try {
+            IGrammar grammar = PyParser.createGrammar(true, grammarVersion, PyParser.createCharArrayToParse(text));
+            Module module = (Module) grammar.file_input();
+            if (grammar.getErrorOnParsing() != null) {
+                return null;
+            }
+            return module;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    public void testChangedLines() throws Exception {
+        ChangedLines changed = new ChangedLines();
+        changed.addChange(10, 10, 12); //added 2 lines at line 10
+        assertEquals(10, changed.getFirstLine());
+        assertEquals(12, changed.getLastLine());
+        assertEquals(2, changed.getLinesDelta());
+
+        changed.addChange(3, 5, 3); //removed 2 lines before: the previous change goes up
+        assertEquals(3, changed.getFirstLine());
+        assertEquals(10, changed.getLastLine());
+        assertEquals(0, changed.getLinesDelta());
+
+        changed.addChange(20, 20, 20); //change after
+        assertEquals(3, changed.getFirstLine());
+        assertEquals(20, changed.getLastLine());
+        assertEquals(0, changed.getLinesDelta());
+    }
+
+    public void testEditsInStatements() throws Exception {
+        Doc doc = new Doc(SAMPLE);
+
+        //change inside the function
+        int offset = doc.text.indexOf("print(a, b)");
+        doc.replace(offset, 0, "a = 10\n    ");
+        doc.reparse();
+        assertEquals(1, incrementalParses);
+
+        //add a new top-level statement
+        offset = doc.text.indexOf("class A");
+        doc.replace(offset, 0, "new_var = 1\n\n");
+        doc.reparse();
+
+        //remove lines in the class
+        offset = doc.text.indexOf("    x = [");
+        int end = doc.text.indexOf("    def m");
+        doc.replace(offset, end - offset, "");
+        doc.reparse();
+
+        //change the last statement
+        offset = doc.text.indexOf("sys = None");
+        doc.replace(offset, "sys = None".length(), "sys = 1\n    raise");
+        doc.reparse();
+
+        //change a comment
+        offset = doc.text.indexOf("# comment before");
+        doc.replace(offset, 0, "#another\n");
+        doc.reparse();
+
+        assertEquals(0, fullParses);
+        assertEquals(5, incrementalParses);
+    }
+
+    public void testPreviousModuleNotChanged() throws Exception {
+        Doc doc = new Doc(SAMPLE);
+        Module previous = doc.module;
+        String previousDump = dump(previous);
+        stmtType lastStmt = previous.body[previous.body.length - 1];
+        int lastStmtLine = lastStmt.beginLine;
+
+        //add lines in the function (so, the statements after it must have their lines changed)
+        int offset = doc.text.indexOf("print(a, b)");
+        doc.replace(offset, 0, "a = 10\n    b = 20\n    ");
+        doc.reparse();
+        assertEquals(1, incrementalParses);
+
+        assertEquals(previousDump, dump(previous));
+        assertEquals(lastStmtLine, lastStmt.beginLine);
+        assertEquals(lastStmtLine + 2, doc.module.body[doc.module.body.length - 1].beginLine);
+
+        //remove lines
+        previous = doc.module;
+        previousDump = dump(previous);
+        offset = doc.text.indexOf("    x = [");
+        int end = doc.text.indexOf("    def m");
+        doc.replace(offset, end - offset, "");
+        doc.reparse();
+        assertEquals(2, incrementalParses);
+        assertEquals(previousDump, dump(previous));
+    }
+
+    public void testCopiedClassesKeepParents() throws Exception {
+        Doc doc = new Doc("" +
+                "a = 1\n" +
+                "class A(object):\n" +
+                "    class B(object):\n" +
+                "        pass\n" +
+                "    def m(self):\n" +
+                "        pass\n" +
+                "");
+        ClassDef previousClass = getClassDef(doc.module);
+
+        //the lines of the class move: it's copied and the definitions in its body must point to the copy.
+        doc.replace(doc.text.indexOf("a = 1"), 0, "b = 2\n");
+        doc.reparse();
+        assertEquals(1, incrementalParses);
+        ClassDef classDef = getClassDef(doc.module);
+        assertNotSame(previousClass, classDef);
+        assertSame(classDef, classDef.body[0].parent);
+        assertSame(classDef, classDef.body[1].parent);
+        assertSame(previousClass, previousClass.body[1].parent);
+    }
+
+    private static ClassDef getClassDef(Module module) {
+        for (stmtType stmt : module.body) {
+            if (stmt instanceof ClassDef) {
+                return (ClassDef) stmt;
+            }
+        }
+        fail("Class not found.");
+        return null;
+    }
+
+    public void testIndentationStructureChanged() throws Exception {
+        Doc doc = new Doc(SAMPLE);
+
+        //indenting a top-level statement makes it part of the previous one
+        int offset = doc.text.indexOf("try:");
+        doc.replace(offset, 0, "    ");
+        doc.reparse();
+        assertNull(doc.module); //it's not valid code
+
+        doc.replace(offset, 4, "");
+        doc.reparse();
+        assertNotNull(doc.module);
+
+        //dedenting the last line of a function makes it a top-level statement
+        int statements = doc.module.body.length;
+        offset = doc.text.indexOf("    print(a, b)");
+        doc.replace(offset, 4, "");
+        doc.reparse();
+        assertEquals(statements + 1, doc.module.body.length);
+
+        doc.replace(offset, 0, "    ");
+        doc.reparse();
+        assertEquals(statements, doc.module.body.length);
+
+        //opening a string which goes on to the next statements
+        offset = doc.text.indexOf("value = func(");
+        doc.replace(offset, 0, "'''");
+        doc.reparse();
+        assertNull(doc.module);
+
+        doc.replace(doc.text.length(), 0, "'''\n");
+        doc.reparse();
+        assertNotNull(doc.module);
+    }
+
+    public void testParserReusesStatements() throws Exception {
+        PyParser.ACCEPT_NULL_INPUT_EDITOR = true;
+        try {
+            PyParser parser = new PyParser(new IGrammarVersionProvider() {
+
+                public int getGrammarVersion() {
+                    return grammarVersion;
+                }
+            });
+            Document doc = new Document(SAMPLE);
+            parser.setDocument(doc, false, null);
+            Module module = (Module) parser.reparseDocument().o1;
+            stmtType lastStmt = module.body[module.body.length - 1];
+
+            //the lines after the change don't move: the statement is shared.
+            doc.replace(doc.get().indexOf("print(a, b)"), 0, "a = 10; ");
+            module = (Module) parser.reparseDocument().o1;
+            assertSame(lastStmt, module.body[module.body.length - 1]);
+            assertEquals(dump(parseFull(doc.get())), dump(module));
+
+            //the lines after the change move: the statement is copied (the previous module is kept as is).
+            Module previous = module;
+            String previousDump = dump(previous);
+            doc.replace(doc.get().indexOf("print(a, b)"), 0, "a = 10\n    ");
+            module = (Module) parser.reparseDocument().o1;
+            assertNotSame(lastStmt, module.body[module.body.length - 1]);
+            assertEquals(dump(parseFull(doc.get())), dump(module));
+            assertEquals(previousDump, dump(previous));
+            lastStmt = module.body[module.body.length - 1];
+
+            //a change which makes the document invalid and another one fixing it.
+            doc.replace(doc.get().indexOf("class A"), 0, "(");
+            assertNotNull(parser.reparseDocument().o2);
+            doc.replace(doc.get().indexOf("(class A"), 1, "");
+            module = (Module) parser.reparseDocument().o1;
+            assertNotSame(lastStmt, module.body[module.body.length - 1]);
+            assertEquals(dump(parseFull(doc.get())), dump(module));
+
+            parser.dispose();
+        } finally {
+            PyParser.ACCEPT_NULL_INPUT_EDITOR = false;
+        }
+    }
+
+    public void testRandomEdits() throws Exception {
+        String[] lines = new String[] { "x = 1", "# comment", "", "print(x)", "def f():", "pass", "@dec", "else:",
+                "'''", "(", "x = [1,", "2]" };
+        String[] inserts = new String[] { "\n", "    ", "(", ")", "'''", "#", "\\\n", "a" };
+        Random random = new Random(1);
+        Doc doc = new Doc(SAMPLE);
+        for (int i = 0; i < 2000; i++) {
+            int edits = 1 + random.nextInt(3);
+            for (int j = 0; j < edits; j++) {
+                int[] lineStarts = IncrementalParser.computeLineStarts(doc.text);
+                int line = random.nextInt(lineStarts.length);
+                int offset = lineStarts[line];
+                int lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] : doc.text.length();
+                switch (random.nextInt(4)) {
+                    case 0: //add a line with the same indentation of the current line
+                        int indent = offset;
+                        while (indent < lineEnd && doc.text.charAt(indent) == ' ') {
+                            indent++;
+                        }
+                        doc.replace(offset, 0, doc.text.substring(offset, indent)
+                                + lines[random.nextInt(lines.length)] + "\n");
+                        break;
+                    case 1: //remove the line
+                        doc.replace(offset, lineEnd - offset, "");
+                        break;
+                    case 2: //change something in the line
+                        offset += random.nextInt(lineEnd - offset + 1);
+                        doc.replace(offset, 0, inserts[random.nextInt(inserts.length)]);
+                        break;
+                    default: //change something anywhere
+                        offset = random.nextInt(doc.text.length() + 1);
+                        int length = Math.min(random.nextInt(20), doc.text.length() - offset);
+                        doc.replace(offset, length, inserts[random.nextInt(inserts.length)]);
+                }
+            }
+            doc.reparse();
+            if (doc.module == null && random.nextInt(3) == 0) {
+                doc = new Doc(SAMPLE);
+            }
+        }
+        assertTrue(incrementalParses > 0);
+    }
+
+    /**
+     * @return a string with all the nodes in the ast (with their positions and special tokens).
+     */
+    public static String dump(SimpleNode node) throws Exception {
+        FastStringBuffer buf = new FastStringBuffer();
+        dump(node, buf, 0);
+        return buf.toString();
+    }
+
+    private static void dump(Object o, FastStringBuffer buf, int level) throws Exception {
+        if (o == null) {
+            buf.append("null\n");
+            return;
+        }
+        if (o instanceof Object[]) {
+            buf.append("[\n");
+            for (Object item : (Object[]) o) {
+                buf.appendN(' ', level + 2);
+                dump(item, buf, level + 2);
+            }
+            buf.appendN(' ', level).append("]\n");
+            return;
+        }
+        if (o instanceof int[]) {
+            buf.append(Arrays.toString((int[]) o)).append('\n');
+            return;
+        }
+        if (!(o instanceof SimpleNode)) {
+            buf.append(o.toString()).append('\n');
+            return;
+        }
+        SimpleNode node = (SimpleNode) o;
+        buf.append(node.getClass().getSimpleName()).append(" ").append(node.beginLine).append(":")
+                .append(node.beginColumn);
+        dumpSpecials("before", node.specialsBefore, buf);
+        dumpSpecials("after", node.specialsAfter, buf);
+        buf.append('\n');
+
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = node.getClass(); c != SimpleNode.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()) && Modifier.isPublic(f.getModifiers())) {
+                    fields.add(f);
+                }
+            }
+        }
+        java.util.Collections.sort(fields, new Comparator<Field>() {
+            public int compare(Field o1, Field o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        for (Field f : fields) {
+            buf.appendN(' ', level + 2).append(f.getName()).append(": ");
+            dump(f.get(node), buf, level + 2);
+        }
+    }
+
+    private static void dumpSpecials(String desc, List<Object> specials, FastStringBuffer buf) {
+        if (specials == null || specials.size() == 0) {
+            return;
+        }
+        buf.append(" ").append(desc).append("(");
+        for (Object o : specials) {
+            if (o instanceof commentType) {
+                commentType c = (commentType) o;
+                buf.append(c.id).append("@").append(c.beginLine).append(":").append(c.beginColumn);
+            } else if (o instanceof SpecialStr) {
+                SpecialStr s = (SpecialStr) o;
+                buf.append(s.str).append("@").append(s.beginLine).append(":").append(s.beginCol);
+            } else {
+                buf.append(o.toString());
+            }
+            buf.append(", ");
+        }
+        buf.append(")");
+    }
+}
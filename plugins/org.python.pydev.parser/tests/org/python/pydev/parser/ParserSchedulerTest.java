@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.IGrammarVersionProvider;
+
+public class ParserSchedulerTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ParserSchedulerTest.class);
+    }
+
+    private static final long ELAPSE = 100;
+
+    /**
+     * A scheduler which records the parses done (and may block in a parse until released).
+     */
+    private static class TestScheduler extends ParserScheduler {
+
+        final String name;
+        final List<String> parses;
+        final List<Object> argsReceived = new ArrayList<Object>();
+        boolean block;
+
+        TestScheduler(String name, ParserWorkersPool pool, List<String> parses) {
+            super(new PyParser((IGrammarVersionProvider) null), pool);
+            this.name = name;
+            this.parses = parses;
+        }
+
+        @Override
+        long getElapseMillisBeforeAnalysis() {
+            return ELAPSE;
+        }
+
+        @Override
+        public void reparseDocument(Object... argsToReparse) {
+            synchronized (parses) {
+                parses.add(name);
+                argsReceived.addAll(Arrays.asList(argsToReparse));
+                parses.notifyAll();
+                while (block) {
+                    try {
+                        parses.wait();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        }
+
+        void release() {
+            synchronized (parses) {
+                block = false;
+                parses.notifyAll();
+            }
+        }
+    }
+
+    private List<String> parses;
+    private ParserWorkersPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        parses = new ArrayList<String>();
+        pool = new ParserWorkersPool(1);
+    }
+
+    private void waitForParses(int expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        synchronized (parses) {
+            while (parses.size() < expected) {
+                long wait = timeout - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("Expected " + expected + " parses. Found: " + parses);
+                }
+                parses.wait(wait);
+            }
+        }
+    }
+
+    public void testDebounce() throws Exception {
+        TestScheduler scheduler = new TestScheduler("a", pool, parses);
+        long initial = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            scheduler.parseNow();
+            scheduler.parseLater();
+            synchronized (this) {
+                wait(ELAPSE / 4);
+            }
+        }
+        waitForParses(1);
+        //only parsed after ELAPSE millis without requests.
+        assertTrue(System.currentTimeMillis() - initial >= ELAPSE * 2);
+        synchronized (this) {
+            wait(ELAPSE * 3);
+        }
+        assertEquals(1, parses.size());
+        assertEquals(1, pool.getParsesRun());
+    }
+
+    public void testForcedAndPriorities() throws Exception {
+        TestScheduler blocker = new TestScheduler("blocker", pool, parses);
+        TestScheduler background = new TestScheduler("background", pool, parses);
+        TestScheduler editor = new TestScheduler("editor", pool, parses);
+        blocker.block = true;
+        blocker.parseNow(true);
+        waitForParses(1);
+
+        //with the only worker busy, the requests are queued.
+        background.parseInBackground();
+        editor.parseNow(true, "arg1");
+        editor.parseNow(true, "arg2", "arg1");
+        assertEquals(2, pool.getQueueDepth());
+        assertEquals(1, pool.getRunningCount());
+        assertEquals(1, pool.getParsesCoalesced());
+
+        //a request for the scheduler being parsed runs after the current parse.
+        blocker.parseNow(true, "again");
+        blocker.release();
+        waitForParses(4);
+        assertEquals(Arrays.asList("blocker", "editor", "blocker", "background"), parses);
+        assertEquals(Arrays.asList((Object) "arg1", "arg2"), editor.argsReceived);
+        assertEquals(Arrays.asList((Object) "again"), blocker.argsReceived);
+        assertEquals(0, pool.getQueueDepth());
+        assertTrue(pool.getMaxQueueLatency() >= 0);
+    }
+
+    public void testDispose() throws Exception {
+        TestScheduler scheduler = new TestScheduler("a", pool, parses);
+        scheduler.parseNow();
+        scheduler.dispose();
+        scheduler.parseNow(true);
+        synchronized (this) {
+            wait(ELAPSE * 3);
+        }
+        assertEquals(0, parses.size());
+    }
+}
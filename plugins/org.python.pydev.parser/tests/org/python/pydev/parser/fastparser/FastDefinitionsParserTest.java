@@ -153,6 +153,29 @@ public class FastDefinitionsParserTest extends TestCase {
         assertEquals("ATTRIBUTE", name.id);
     }
 
+    public void testClassBases() {
+        Module m = (Module) FastDefinitionsParser.parse("class Bar(Base, models.Model, #comment\n" +
+                "        metaclass=Meta, *args):\n" +
+                "    ATTRIBUTE = 10\n" +
+                "class Foo:\n" +
+                "    class Inner(Bar): pass\n" +
+                "");
+        assertEquals(2, m.body.length);
+        ClassDef classDef = ((ClassDef) m.body[0]);
+        assertEquals("Bar", ((NameTok) classDef.name).id);
+        assertEquals(2, classDef.bases.length);
+        assertEquals("Base", NodeUtils.getFullRepresentationString(classDef.bases[0]));
+        assertEquals("models.Model", NodeUtils.getFullRepresentationString(classDef.bases[1]));
+        assertEquals(1, classDef.body.length);
+
+        classDef = ((ClassDef) m.body[1]);
+        assertEquals(0, classDef.bases.length);
+        ClassDef inner = (ClassDef) classDef.body[0];
+        assertEquals("Inner", ((NameTok) inner.name).id);
+        assertEquals(1, inner.bases.length);
+        assertEquals("Bar", NodeUtils.getFullRepresentationString(inner.bases[0]));
+    }
+
     public void testMultipleAssignAttributes() {
         Module m = (Module) FastDefinitionsParser.parse("class Bar:\n" +
                 "    ATTRIBUTE1 = ATTRIBUTE2 = 10\n" +
@@ -43,6 +43,69 @@ public class ReaderCharStreamTest extends TestCase {
 
     }
 
+    public void testLinesAndColsWithMixedNewLines() throws Exception {
+        String s = "a\nbc\r\nd\r\ref\n\ng\rh";
+        char[] cs = s.toCharArray();
+
+        //Compute the expected lines/cols for each char with the same rules the stream must follow.
+        int[] lines = new int[cs.length];
+        int[] cols = new int[cs.length];
+        int line = 1;
+        int col = 0;
+        for (int i = 0; i < cs.length; i++) {
+            col++;
+            if (i > 0 && (cs[i - 1] == '\n' || (cs[i - 1] == '\r' && cs[i] != '\n'))) {
+                line++;
+                col = 1;
+            }
+            lines[i] = line;
+            cols[i] = col;
+        }
+
+        FastCharStream in = new FastCharStream(cs);
+        for (int i = 0; i < cs.length; i++) {
+            assertEquals(cs[i], in.readChar());
+            assertEquals("Line for: " + i, lines[i], in.getEndLine());
+            assertEquals("Col for: " + i, cols[i], in.getEndColumn());
+        }
+
+        //Going back must give the same results.
+        for (int i = cs.length - 1; i >= 0; i--) {
+            in.restorePos(i);
+            assertEquals("Line for: " + i, lines[i], in.getEndLine());
+            assertEquals("Col for: " + i, cols[i], in.getEndColumn());
+        }
+
+        in.restorePos(-1);
+        assertEquals('a', in.BeginToken());
+        in.restorePos(cs.length - 1);
+        Token t = new Token();
+        in.setBeginEndChars(t);
+        assertEquals(1, t.beginLine);
+        assertEquals(1, t.beginColumn);
+        assertEquals(lines[cs.length - 1], t.endLine);
+        assertEquals(cols[cs.length - 1], t.endColumn);
+    }
+
+    public void testPositionInfoSize() throws Exception {
+        FastStringBuffer buf = new FastStringBuffer();
+        for (int i = 0; i < 10000; i++) {
+            buf.append("    call_something(param1, param2)\n");
+        }
+        char[] cs = buf.toCharArray();
+        FastCharStream in = new FastCharStream(cs);
+        try {
+            while (true) {
+                in.readChar();
+            }
+        } catch (IOException e) {
+            //expected: finished
+        }
+        assertEquals(10000, in.getEndLine());
+        //Previously 2 int[] with the size of the buffer were used (8 bytes per char).
+        assertTrue(in.getPositionInfoSizeInBytes() < cs.length);
+    }
+
     private void checkCvsStream(FastCharStream in) throws IOException {
         assertEquals(10, in.BeginToken());
         in.backup(0);
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.profile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IPythonNature;
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.PyParser.ParserInfo;
+import org.python.pydev.parser.PyParserTestBase;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.visitors.AstCompactor;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.structure.Tuple;
+
+/**
+ * Measures the heap retained by the asts kept for the modules (full asts and the compact version created by the
+ * AstCompactor).
+ */
+public class AstCompactorHeapBenchmark extends PyParserTestBase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AstCompactorHeapBenchmark.class);
+    }
+
+    private List<String> getContents() {
+        List<String> contents = new ArrayList<String>();
+        File[] files = new File(TestDependent.TEST_PYDEV_PLUGIN_LOC + "pysrc").listFiles();
+        for (File f : files) {
+            if (f.getName().endsWith(".py")) {
+                contents.add(FileUtils.getFileContents(f));
+            }
+        }
+        return contents;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void testHeapPerModule() throws Exception {
+        List<String> contents = getContents();
+        List<SimpleNode> asts = new ArrayList<SimpleNode>();
+        long initial = usedMemory();
+        for (String s : contents) {
+            Tuple<SimpleNode, Throwable> parsed = PyParser.reparseDocument(new ParserInfo(new Document(s),
+                    IPythonNature.GRAMMAR_PYTHON_VERSION_2_7));
+            if (parsed.o1 != null && parsed.o2 == null) {
+                asts.add(parsed.o1);
+            }
+        }
+        assertTrue(asts.size() > 0);
+        long full = usedMemory() - initial;
+
+        for (int i = 0; i < asts.size(); i++) {
+            asts.set(i, AstCompactor.createCompactCopy(asts.get(i)));
+        }
+        long compact = usedMemory() - initial;
+
+        System.out.println("Modules: " + asts.size());
+        System.out.println("Full asts: " + full / asts.size() + " bytes per module");
+        System.out.println("Compact asts: " + compact / asts.size() + " bytes per module");
+        assertTrue(compact < full);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.visitors;
+
+import java.util.List;
+
+import org.python.pydev.parser.PyParserTestBase;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.visitors.scope.ASTEntry;
+import org.python.pydev.parser.visitors.scope.SequencialASTIteratorVisitor;
+
+public class AstCompactorTest extends PyParserTestBase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AstCompactorTest.class);
+    }
+
+    private static final String DOC = "" +
+            "#comment on module\n" +
+            "class Foo(object): #comment on class\n" +
+            "    '''docstring'''\n" +
+            "    def method(self, a=(1, 2)):\n" +
+            "        #comment on method\n" +
+            "        return (a, self)\n" +
+            "\n" +
+            "bar = Foo().method(10)\n" +
+            "#final comment\n";
+
+    private int countSpecials(SimpleNode ast) {
+        int specials = countSpecialsInNode(ast);
+        for (ASTEntry entry : SequencialASTIteratorVisitor.create(ast).getAll()) {
+            specials += countSpecialsInNode(entry.node);
+        }
+        return specials;
+    }
+
+    private int countSpecialsInNode(SimpleNode node) {
+        int specials = 0;
+        if (node.specialsBefore != null) {
+            specials += node.specialsBefore.size();
+        }
+        if (node.specialsAfter != null) {
+            specials += node.specialsAfter.size();
+        }
+        return specials;
+    }
+
+    public void testCompactCopy() throws Exception {
+        SimpleNode ast = parseLegalDocStr(DOC);
+        String initialRep = ast.toString();
+        int initialSpecials = countSpecials(ast);
+        assertTrue(initialSpecials > 0);
+
+        SimpleNode compact = AstCompactor.createCompactCopy(ast);
+        assertNotSame(ast, compact);
+        assertEquals(0, countSpecials(compact));
+        assertEquals(initialRep, compact.toString());
+
+        //the ast passed is not changed
+        assertEquals(initialSpecials, countSpecials(ast));
+        assertEquals(initialRep, ast.toString());
+
+        //the parent of the definitions in the class is kept
+        ClassDef classDef = (ClassDef) ((Module) compact).body[0];
+        FunctionDef method = (FunctionDef) classDef.body[1];
+        assertSame(classDef, method.parent);
+        assertEquals(4, method.beginLine);
+        assertEquals(5, method.beginColumn);
+    }
+
+    public void testIdentifiersShared() throws Exception {
+        SimpleNode compact1 = AstCompactor.createCompactCopy(parseLegalDocStr(DOC));
+        SimpleNode compact2 = AstCompactor.createCompactCopy(parseLegalDocStr(DOC));
+
+        List<ASTEntry> names1 = SequencialASTIteratorVisitor.create(compact1).getAsList(Name.class,
+                NameTok.class);
+        List<ASTEntry> names2 = SequencialASTIteratorVisitor.create(compact2).getAsList(Name.class,
+                NameTok.class);
+        assertEquals(names1.size(), names2.size());
+        assertTrue(names1.size() > 0);
+        for (int i = 0; i < names1.size(); i++) {
+            assertSame(NodeUtils.getRepresentationString(names1.get(i).node),
+                    NodeUtils.getRepresentationString(names2.get(i).node));
+        }
+    }
+
+    public void testNull() throws Exception {
+        assertNull(AstCompactor.createCompactCopy(null));
+    }
+}
@@ -55,6 +55,7 @@ for name, mod in sys.modules.items():
 
 import traceback
 import time
+import threading
 
 try:
     import StringIO
@@ -98,7 +99,20 @@ MSG_PYTHONPATH = '@@PYTHONPATH_END@@'
 MSG_CHANGE_PYTHONPATH = '@@CHANGE_PYTHONPATH:'
 MSG_SEARCH = '@@SEARCH'
 
-BUFFER_SIZE = 1024
+#Commands/responses of the framed protocol (each message is a frame with fields: request id, command, args).
+#The legacy protocol (@@...END@@) is still accepted: the message kind is detected by its first bytes.
+CMD_IMPORTS = 'IMPORTS'
+CMD_SEARCH = 'SEARCH'
+CMD_CHANGE_PYTHONPATH = 'CHANGE_PYTHONPATH'
+CMD_CHANGE_DIR = 'CHANGE_DIR'
+CMD_PYTHONPATH = 'PYTHONPATH'
+CMD_KILL = 'KILL'
+RESPONSE_PROCESSING = 'PROCESSING'
+RESPONSE_OK = 'OK'
+RESPONSE_COMPLETIONS = 'COMPLETIONS'
+RESPONSE_INVALID_REQUEST = 'INVALID_REQUEST'
+
+BUFFER_SIZE = 1024 * 16
 
 
 
@@ -129,6 +143,100 @@ def ChangePythonPath(pythonpath):
         if len(path) > 0:
             sys.path.append(path)
     
+def ToBytes(s):
+    '''
+    @return: the utf-8 bytes for the passed object (which may be bytes, unicode or any other object -- in which case
+    str() is used on it).
+    '''
+    if IS_PYTHON3K:
+        if isinstance(s, bytes):
+            return s
+        return str(s).encode('utf-8')
+
+    if IS_JYTHON:
+        try:
+            return s.encode('utf-8')
+        except AttributeError:
+            return str(s).encode('utf-8')
+
+    try:
+        if isinstance(s, unicode):
+            return s.encode('utf-8')
+    except NameError:
+        pass
+    return str(s)
+
+
+def BytesToStr(b):
+    if IS_PYTHON3K:
+        return b.decode('utf-8')
+    return b
+
+
+SEPARATOR = ToBytes(':')
+EMPTY = ToBytes('')
+
+def CreateFrame(fields):
+    '''
+    Creates a frame with the passed fields: each field is written as <length in bytes>:<utf-8 bytes> and the frame
+    is written with the same format (with the fields as its contents).
+    '''
+    parts = []
+    for f in fields:
+        b = ToBytes(f)
+        parts.append(ToBytes(len(b)))
+        parts.append(SEPARATOR)
+        parts.append(b)
+    body = EMPTY.join(parts)
+    return EMPTY.join([ToBytes(len(body)), SEPARATOR, body])
+
+
+def ParseFrameContents(body):
+    '''
+    @return: the fields (as strings) in the contents of a frame (created with CreateFrame).
+    '''
+    fields = []
+    i = 0
+    total = len(body)
+    while i < total:
+        j = body.index(SEPARATOR, i)
+        n = int(BytesToStr(body[i:j]))
+        fields.append(BytesToStr(body[j + 1:j + 1 + n]))
+        i = j + 1 + n
+    return fields
+
+
+class FramedKeepAliveThread(Thread):
+    '''
+    While some request is being processed, keeps on sending a processing message for it (so that the client knows
+    that we are still alive -- the client also considers it as activity for the requests queued after it, as the
+    requests are processed in the order they're received).
+    '''
+
+    def __init__(self, socket):
+        Thread.__init__(self)
+        self.socket = socket
+        self.setDaemon(True)
+        self.lock = threading.Lock()
+        self.currentRequestId = None
+
+    def send(self, msg):
+        '''
+        Sends the message (must be called with the lock held).
+        '''
+        self.socket.sendall(msg)
+
+    def run(self):
+        while 1:
+            time.sleep(0.5)
+            self.lock.acquire()
+            try:
+                if self.currentRequestId is not None:
+                    self.send(CreateFrame([self.currentRequestId, RESPONSE_PROCESSING, '']))
+            finally:
+                self.lock.release()
+
+
 class KeepAliveThread(Thread):
     def __init__(self, socket):
         Thread.__init__(self)
@@ -206,6 +314,18 @@ class Processor:
             compMsg.append(')')
         
         return '%s(%s)%s' % (MSG_COMPLETIONS, ''.join(compMsg), MSG_END)
+
+    def formatCompletionFields(self, defFile, completionsList):
+        '''
+        @return: the fields for the completions in the framed protocol: the file followed by each completion
+        (with the number of fields in the completion followed by the fields themselves).
+        '''
+        fields = [RESPONSE_COMPLETIONS, '%s' % (defFile,)]
+        for tup in completionsList:
+            fields.append(len(tup))
+            for f in tup:
+                fields.append(f)
+        return fields
     
 
 class T(Thread):
@@ -248,6 +368,185 @@ class T(Thread):
         return token, data.lstrip(token + '):')
 
     
+    def readMore(self, conn, minSize):
+        '''
+        Reads from the connection until the buffer has at least minSize bytes.
+        '''
+        while len(self.buffer) < minSize:
+            received = conn.recv(BUFFER_SIZE)
+            if len(received) == 0:
+                sys.exit(0) #ok, connection ended
+            self.buffer = self.buffer + received
+    
+    def readFrame(self, conn):
+        '''
+        @return: the fields of the next frame in the connection.
+        '''
+        while self.buffer.find(SEPARATOR) == -1:
+            self.readMore(conn, len(self.buffer) + 1)
+        i = self.buffer.index(SEPARATOR)
+        size = int(BytesToStr(self.buffer[:i]))
+        self.readMore(conn, i + 1 + size)
+        body = self.buffer[i + 1:i + 1 + size]
+        self.buffer = self.buffer[i + 1 + size:]
+        return ParseFrameContents(body)
+    
+    def processFramedMessage(self, conn, log):
+        '''
+        Processes a request in the framed protocol (the client may send many requests without waiting for the
+        responses: they're processed in order and each response has the id of its request).
+        '''
+        fields = self.readFrame(conn)
+        requestId = fields[0]
+        command = fields[1]
+        args = fields[2:]
+        
+        if command == CMD_KILL:
+            dbg(SERVER_NAME + ' kill message received', INFO1)
+            self.ended = True
+            sys.exit(0)
+        
+        keepAlive = self.framedKeepAlive
+        if keepAlive is None:
+            keepAlive = self.framedKeepAlive = FramedKeepAliveThread(self.socket)
+            keepAlive.start()
+        
+        keepAlive.lock.acquire()
+        try:
+            keepAlive.currentRequestId = requestId
+        finally:
+            keepAlive.lock.release()
+            
+        response = None
+        try:
+            try:
+                if command == CMD_IMPORTS:
+                    defFile, comps = _pydev_imports_tipper.GenerateTip(args[0], log)
+                    response = self.processor.formatCompletionFields(defFile, comps)
+                    
+                elif command == CMD_SEARCH:
+                    try:
+                        (f, line, col), foundAs = _pydev_imports_tipper.Search(args[0])
+                    except AttributeError:
+                        # The token is not in the module: not found (which is different from an error).
+                        response = self.processor.formatCompletionFields(None, [])
+                    else:
+                        response = self.processor.formatCompletionFields(f, [(line, col, foundAs)])
+                    
+                elif command == CMD_CHANGE_PYTHONPATH:
+                    ChangePythonPath(args[0])
+                    response = [RESPONSE_OK]
+                    
+                elif command == CMD_CHANGE_DIR:
+                    CompleteFromDir(args[0])
+                    response = [RESPONSE_OK]
+                    
+                elif command == CMD_PYTHONPATH:
+                    comps = []
+                    for p in _sys_path:
+                        comps.append((p, ' '))
+                    response = self.processor.formatCompletionFields(None, comps)
+                    
+                else:
+                    response = [RESPONSE_INVALID_REQUEST]
+                    
+            except SystemExit:
+                response = self.processor.formatCompletionFields(None, [('Exit:', 'SystemExit', '')])
+                raise
+            except:
+                dbg(SERVER_NAME + ' exception occurred', ERROR)
+                s = StringIO.StringIO()
+                traceback.print_exc(file=s)
+
+                err = s.getvalue()
+                dbg(SERVER_NAME + ' received error: ' + str(err), ERROR)
+                response = self.processor.formatCompletionFields(None, [('ERROR:', '%s\nLog:%s' % (err, log.GetContents()), '')])
+        finally:
+            log.Clear()
+            keepAlive.lock.acquire()
+            try:
+                keepAlive.currentRequestId = None
+                if response is not None:
+                    keepAlive.send(CreateFrame([requestId] + response))
+            finally:
+                keepAlive.lock.release()
+
+    def processLegacyMessage(self, conn, log):
+            returnMsg = ''
+            keepAliveThread = KeepAliveThread(self.socket)
+            
+            while self.buffer.find(ToBytes(MSG_END)) == -1:
+                self.readMore(conn, len(self.buffer) + 1)
+            data = BytesToStr(self.buffer)
+            self.buffer = EMPTY
+
+            try:
+                try:
+                    if data.find(MSG_KILL_SERVER) != -1:
+                        dbg(SERVER_NAME + ' kill message received', INFO1)
+                        #break if we received kill message.
+                        self.ended = True
+                        sys.exit(0)
+        
+                    dbg(SERVER_NAME + ' starting keep alive thread', INFO2)
+                    keepAliveThread.start()
+                    
+                    if data.find(MSG_PYTHONPATH) != -1:
+                        comps = []
+                        for p in _sys_path:
+                            comps.append((p, ' '))
+                        returnMsg = self.getCompletionsMessage(None, comps)
+
+                    else:
+                        data = data[:data.rfind(MSG_END)]
+                    
+                        if data.startswith(MSG_IMPORTS):
+                            data = data.replace(MSG_IMPORTS, '')
+                            data = unquote_plus(data)
+                            defFile, comps = _pydev_imports_tipper.GenerateTip(data, log)
+                            returnMsg = self.getCompletionsMessage(defFile, comps)
+    
+                        elif data.startswith(MSG_CHANGE_PYTHONPATH):
+                            data = data.replace(MSG_CHANGE_PYTHONPATH, '')
+                            data = unquote_plus(data)
+                            ChangePythonPath(data)
+                            returnMsg = MSG_OK
+    
+                        elif data.startswith(MSG_SEARCH):
+                            data = data.replace(MSG_SEARCH, '')
+                            data = unquote_plus(data)
+                            (f, line, col), foundAs = _pydev_imports_tipper.Search(data)
+                            returnMsg = self.getCompletionsMessage(f, [(line, col, foundAs)])
+                            
+                        elif data.startswith(MSG_CHANGE_DIR):
+                            data = data.replace(MSG_CHANGE_DIR, '')
+                            data = unquote_plus(data)
+                            CompleteFromDir(data)
+                            returnMsg = MSG_OK
+                            
+                        elif data.startswith(MSG_BIKE): 
+                            returnMsg = MSG_INVALID_REQUEST #No longer supported.
+                            
+                        else:
+                            returnMsg = MSG_INVALID_REQUEST
+                except SystemExit:
+                    returnMsg = self.getCompletionsMessage(None, [('Exit:', 'SystemExit', '')])
+                    keepAliveThread.lastMsg = returnMsg
+                    raise
+                except:
+                    dbg(SERVER_NAME + ' exception occurred', ERROR)
+                    s = StringIO.StringIO()
+                    traceback.print_exc(file=s)
+
+                    err = s.getvalue()
+                    dbg(SERVER_NAME + ' received error: ' + str(err), ERROR)
+                    returnMsg = self.getCompletionsMessage(None, [('ERROR:', '%s\nLog:%s' % (err, log.GetContents()), '')])
+                        
+                
+            finally:
+                log.Clear()
+                keepAliveThread.lastMsg = returnMsg
+
     def run(self):
         # Echo server program
         try:
@@ -279,87 +578,15 @@ class T(Thread):
             dbg(SERVER_NAME + ' Connected by ' + str(addr), INFO1)
             
             
+            self.buffer = EMPTY
+            self.framedKeepAlive = None
             while 1:
-                data = ''
-                returnMsg = ''
-                keepAliveThread = KeepAliveThread(self.socket)
-                
-                while data.find(MSG_END) == -1:
-                    received = conn.recv(BUFFER_SIZE)
-                    if len(received) == 0:
-                        sys.exit(0) #ok, connection ended
-                    if IS_PYTHON3K:
-                        data = data + received.decode('utf-8')
-                    else:
-                        data = data + received
-    
-                try:
-                    try:
-                        if data.find(MSG_KILL_SERVER) != -1:
-                            dbg(SERVER_NAME + ' kill message received', INFO1)
-                            #break if we received kill message.
-                            self.ended = True
-                            sys.exit(0)
-            
-                        dbg(SERVER_NAME + ' starting keep alive thread', INFO2)
-                        keepAliveThread.start()
-                        
-                        if data.find(MSG_PYTHONPATH) != -1:
-                            comps = []
-                            for p in _sys_path:
-                                comps.append((p, ' '))
-                            returnMsg = self.getCompletionsMessage(None, comps)
-    
-                        else:
-                            data = data[:data.rfind(MSG_END)]
-                        
-                            if data.startswith(MSG_IMPORTS):
-                                data = data.replace(MSG_IMPORTS, '')
-                                data = unquote_plus(data)
-                                defFile, comps = _pydev_imports_tipper.GenerateTip(data, log)
-                                returnMsg = self.getCompletionsMessage(defFile, comps)
-        
-                            elif data.startswith(MSG_CHANGE_PYTHONPATH):
-                                data = data.replace(MSG_CHANGE_PYTHONPATH, '')
-                                data = unquote_plus(data)
-                                ChangePythonPath(data)
-                                returnMsg = MSG_OK
-        
-                            elif data.startswith(MSG_SEARCH):
-                                data = data.replace(MSG_SEARCH, '')
-                                data = unquote_plus(data)
-                                (f, line, col), foundAs = _pydev_imports_tipper.Search(data)
-                                returnMsg = self.getCompletionsMessage(f, [(line, col, foundAs)])
-                                
-                            elif data.startswith(MSG_CHANGE_DIR):
-                                data = data.replace(MSG_CHANGE_DIR, '')
-                                data = unquote_plus(data)
-                                CompleteFromDir(data)
-                                returnMsg = MSG_OK
-                                
-                            elif data.startswith(MSG_BIKE): 
-                                returnMsg = MSG_INVALID_REQUEST #No longer supported.
-                                
-                            else:
-                                returnMsg = MSG_INVALID_REQUEST
-                    except SystemExit:
-                        returnMsg = self.getCompletionsMessage(None, [('Exit:', 'SystemExit', '')])
-                        keepAliveThread.lastMsg = returnMsg
-                        raise
-                    except:
-                        dbg(SERVER_NAME + ' exception occurred', ERROR)
-                        s = StringIO.StringIO()
-                        traceback.print_exc(file=s)
+                self.readMore(conn, 2)
+                if self.buffer[:2] == ToBytes('@@'):
+                    self.processLegacyMessage(conn, log)
+                else:
+                    self.processFramedMessage(conn, log)
     
-                        err = s.getvalue()
-                        dbg(SERVER_NAME + ' received error: ' + str(err), ERROR)
-                        returnMsg = self.getCompletionsMessage(None, [('ERROR:', '%s\nLog:%s' % (err, log.GetContents()), '')])
-                            
-                    
-                finally:
-                    log.Clear()
-                    keepAliveThread.lastMsg = returnMsg
-                
             conn.close()
             self.ended = True
             sys.exit(0) #connection broken
@@ -0,0 +1,312 @@
+'''
+Runs pylint for the files requested by PyDev in a long-lived process (so that the interpreter is started and pylint
+is imported only once instead of once for each file analyzed).
+
+Usage: python pydev_pylint_worker.py <location of lint.py>
+
+The requests are read from stdin and the responses are written to stdout (one line for each request/response, with
+the fields separated by tabs and escaped with backslashes, encoded as utf-8):
+
+    request:  lint <working dir> <pythonpath> <pylint arg 1> <pylint arg 2> ...
+    response: ok <pylint stdout> <pylint stderr>
+              error <traceback>
+
+The process finishes when its stdin is closed.
+
+The modules cached by pylint are kept between requests while their files and the path don't change (see
+AstCachesValidator).
+'''
+import os
+import sys
+import time
+import traceback
+
+IS_PY3K = sys.version_info[0] >= 3
+
+
+#=======================================================================================================================
+# Escape / Unescape
+#=======================================================================================================================
+def Escape(s):
+    return s.replace('\\', '\\\\').replace('\t', '\\t').replace('\n', '\\n').replace('\r', '\\r')
+
+
+_UNESCAPED = {'t': '\t', 'n': '\n', 'r': '\r'}
+
+def Unescape(s):
+    if '\\' not in s:
+        return s
+    ret = []
+    i = 0
+    size = len(s)
+    while i < size:
+        c = s[i]
+        if c == '\\' and i + 1 < size:
+            i += 1
+            c = _UNESCAPED.get(s[i], s[i])
+        ret.append(c)
+        i += 1
+    return ''.join(ret)
+
+
+#=======================================================================================================================
+# ToText
+#=======================================================================================================================
+def ToText(s):
+    if IS_PY3K:
+        if isinstance(s, bytes):
+            return s.decode('utf-8', 'replace')
+        return str(s)
+    if isinstance(s, unicode):
+        return s
+    return str(s).decode('utf-8', 'replace')
+
+
+#=======================================================================================================================
+# ToNative
+#=======================================================================================================================
+def ToNative(s):
+    '''
+    @param s: the text gotten in a request.
+    @return: the string to be passed to pylint (python 2 expects the file system encoding in paths).
+    '''
+    if IS_PY3K:
+        return s
+    return s.encode(sys.getfilesystemencoding() or 'utf-8')
+
+
+#=======================================================================================================================
+# Capture
+#=======================================================================================================================
+class Capture(object):
+    '''
+    Set as the sys.stdout/sys.stderr of the process: keeps what's written while a request is being processed (the
+    actual stdout is only used for the protocol).
+    '''
+
+    def __init__(self):
+        self.contents = None
+
+    def write(self, s):
+        if self.contents is not None:
+            self.contents.append(s)
+
+    def writelines(self, lines):
+        for line in lines:
+            self.write(line)
+
+    def flush(self):
+        pass
+
+    def isatty(self):
+        return False
+
+    def Start(self):
+        self.contents = []
+
+    def Stop(self):
+        contents = self.contents
+        self.contents = None
+        return ''.join([ToText(s) for s in contents])
+
+
+#=======================================================================================================================
+# LoadLint
+#=======================================================================================================================
+def LoadLint(location):
+    name = '__pydev_pylint_lint__'
+    try:
+        import importlib.util
+    except ImportError:
+        import imp
+        return imp.load_source(name, location)
+
+    spec = importlib.util.spec_from_file_location(name, location)
+    module = importlib.util.module_from_spec(spec)
+    sys.modules[name] = module
+    spec.loader.exec_module(module)
+    return module
+
+
+#=======================================================================================================================
+# GetAstManagers
+#=======================================================================================================================
+def GetAstManagers():
+    '''
+    @return: the managers which keep the modules analyzed by pylint (from astroid or logilab.astng, depending on the
+    pylint version).
+    '''
+    ret = []
+    for mod_name in ('astroid', 'logilab.astng'):
+        mod = sys.modules.get(mod_name)
+        manager = getattr(mod, 'MANAGER', None)
+        if manager is not None:
+            ret.append(manager)
+    return ret
+
+
+#=======================================================================================================================
+# GetStamp
+#=======================================================================================================================
+def GetStamp(filename):
+    try:
+        stat = os.stat(filename)
+    except OSError:
+        return None
+    return (stat.st_mtime, stat.st_size)
+
+
+#=======================================================================================================================
+# AstCachesValidator
+#=======================================================================================================================
+class AstCachesValidator(object):
+    '''
+    The modules analyzed are cached by pylint: the caches are cleared before a request if the path changed or if the
+    file of some cached module changed (or was removed) since it was cached.
+
+    Note: a new file which would shadow a module already cached is not detected (only the files of the cached modules
+    are checked).
+    '''
+
+    def __init__(self):
+        self.path = None
+        self.stamps = {}  # file -> (mtime, size) when cached (None if it may have changed while being analyzed)
+
+    def _IterCachedFiles(self):
+        for manager in GetAstManagers():
+            for attr in ('astroid_cache', 'astng_cache'):
+                cache = getattr(manager, attr, None)
+                if isinstance(cache, dict):
+                    for node in list(cache.values()):
+                        filename = getattr(node, 'file', None)
+                        if filename:
+                            yield filename
+
+    def _Changed(self, path):
+        if path != self.path:
+            return True
+        for filename in self._IterCachedFiles():
+            stamp = self.stamps.get(filename)
+            if stamp is None or stamp != GetStamp(filename):
+                return True
+        return False
+
+    def ClearIfChanged(self, path):
+        if not self._Changed(path):
+            return
+        for manager in GetAstManagers():
+            for attr in ('astroid_cache', 'astng_cache', '_mod_file_cache'):
+                cache = getattr(manager, attr, None)
+                if hasattr(cache, 'clear'):
+                    cache.clear()
+        self.path = list(path)
+        self.stamps.clear()
+
+    def OnAnalyzed(self, start_time):
+        '''
+        Keeps the stamps of the files cached in the last request (a file changed after the request started is kept
+        without a stamp, so that the caches are cleared in the next request).
+        '''
+        for filename in self._IterCachedFiles():
+            if filename not in self.stamps:
+                stamp = GetStamp(filename)
+                # The mtime may have a coarse granularity (up to 2 seconds in some file systems).
+                if stamp is not None and stamp[0] >= start_time - 2:
+                    stamp = None
+                self.stamps[filename] = stamp
+
+
+#=======================================================================================================================
+# RunPyLint
+#=======================================================================================================================
+def RunPyLint(lint, validator, out_capture, err_capture, base_path, script_dir, working_dir, pythonpath, args):
+    start_time = time.time()
+    os.chdir(working_dir)
+    # Same path we'd have when running lint.py as a script with the given PYTHONPATH.
+    path = [script_dir]
+    for p in pythonpath.split(os.pathsep):
+        if p:
+            path.append(p)
+    sys.path[:] = path + base_path
+    validator.ClearIfChanged(sys.path)
+
+    sys.stdout = out_capture
+    sys.stderr = err_capture
+    out_capture.Start()
+    err_capture.Start()
+    try:
+        try:
+            lint.Run(args)
+        except SystemExit:
+            pass  # pylint always exits when finished
+    finally:
+        out = out_capture.Stop()
+        err = err_capture.Stop()
+        validator.OnAnalyzed(start_time)
+    return out, err
+
+
+#=======================================================================================================================
+# main
+#=======================================================================================================================
+def main():
+    location = os.path.abspath(sys.argv[1])
+    script_dir = os.path.dirname(location)
+
+    # Anything written to the fd 1 (i.e.: by some C extension) must not get into the protocol.
+    protocol_out = os.fdopen(os.dup(1), 'wb')
+    null_fd = os.open(os.devnull, os.O_WRONLY)
+    os.dup2(null_fd, 1)
+    os.close(null_fd)
+    if IS_PY3K:
+        protocol_in = sys.stdin.buffer
+    else:
+        protocol_in = sys.stdin
+
+    # Set before importing pylint (which may keep a reference to sys.stdout).
+    out_capture = Capture()
+    err_capture = Capture()
+    sys.stdout = out_capture
+    sys.stderr = err_capture
+
+    # The entries from the PYTHONPATH used to start the process are given again in each request.
+    initial_pythonpath = [os.path.normcase(os.path.abspath(p))
+        for p in os.environ.get('PYTHONPATH', '').split(os.pathsep) if p]
+    base_path = [p for p in sys.path[1:] if os.path.normcase(os.path.abspath(p)) not in initial_pythonpath]
+
+    sys.path.insert(0, script_dir)
+    try:
+        lint = LoadLint(location)
+        load_error = None
+    except:
+        lint = None
+        load_error = 'Unable to load: %s\n%s' % (location, traceback.format_exc())
+    initial_dir = os.getcwd()
+    validator = AstCachesValidator()
+
+    while True:
+        line = protocol_in.readline()
+        if not line:
+            break  # stdin closed: PyDev is done with this process.
+
+        fields = [Unescape(f) for f in line.decode('utf-8').rstrip('\r\n').split('\t')]
+        try:
+            try:
+                if fields[0] != 'lint' or len(fields) < 3:
+                    raise AssertionError('Unexpected request: %s' % (line,))
+                if lint is None:
+                    raise ImportError(load_error)
+                out, err = RunPyLint(lint, validator, out_capture, err_capture, base_path, script_dir, fields[1],
+                    fields[2], [ToNative(f) for f in fields[3:]])
+                response = ['ok', out, err]
+            except:
+                response = ['error', ToText(traceback.format_exc())]
+        finally:
+            os.chdir(initial_dir)
+
+        protocol_out.write(('\t'.join([Escape(f) for f in response]) + '\n').encode('utf-8'))
+        protocol_out.flush()
+
+
+if __name__ == '__main__':
+    main()
@@ -18,6 +18,7 @@ if sys.platform.find('java') == -1:
         import inspect
         import pycompletionserver
         import socket
+        import time
         try:
             from urllib import quote_plus, unquote_plus
             def send(s, msg):
@@ -67,9 +68,17 @@ if sys.platform.find('java') == -1:
             t.start()
     
             sToWrite = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
-            sToWrite.connect((pycompletionserver.HOST, p1))
+            for i in range(50):
+                try:
+                    sToWrite.connect((pycompletionserver.HOST, p1))
+                    break
+                except socket.error:
+                    if i == 49:
+                        raise
+                    time.sleep(0.1) #the server may still not be listening
             
             sToRead = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+            sToRead.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
             sToRead.bind((pycompletionserver.HOST, p2))
             sToRead.listen(1) #socket to receive messages.
     
@@ -164,6 +173,71 @@ if sys.platform.find('java') == -1:
                 except:
                     pass
             
+        def readFrame(self, buf):
+            '''
+            Reads a frame of the framed protocol (skipping the processing messages).
+            
+            @param buf: a list with the bytes already read (and not consumed) in the socket.
+            @return: the fields of the frame read.
+            '''
+            while True:
+                data = buf[0]
+                while data.find(pycompletionserver.SEPARATOR) == -1 or \
+                    len(data) < data.index(pycompletionserver.SEPARATOR) + 1 + int(pycompletionserver.BytesToStr(data[:data.index(pycompletionserver.SEPARATOR)])):
+                    data = data + self.connToRead.recv(1024 * 4)
+                i = data.index(pycompletionserver.SEPARATOR)
+                size = int(pycompletionserver.BytesToStr(data[:i]))
+                buf[0] = data[i + 1 + size:]
+                fields = pycompletionserver.ParseFrameContents(data[i + 1:i + 1 + size])
+                if fields[1] != pycompletionserver.RESPONSE_PROCESSING:
+                    return fields
+        
+        def testFrames(self):
+            frame = pycompletionserver.CreateFrame(['1', 'IMPORTS', 'a:b\n', 10])
+            self.assertEqual(pycompletionserver.ToBytes('22:1:17:IMPORTS4:a:b\n2:10'), frame)
+            fields = pycompletionserver.ParseFrameContents(frame[3:])
+            self.assertEqual(['1', 'IMPORTS', 'a:b\n', '10'], fields)
+            
+        def testFramedMessages(self):
+            t, sToWrite, sToRead, self.connToRead, addr = self.createConnections(50006, 50007)
+            
+            try:
+                #Send all the requests at once: the responses must come in order with the id of the request.
+                msgs = [
+                    pycompletionserver.CreateFrame(['1', 'IMPORTS', 'math']),
+                    pycompletionserver.CreateFrame(['2', 'IMPORTS', '__builtin__.list' if not IS_PYTHON_3K else 'builtins.list']),
+                    pycompletionserver.CreateFrame(['3', 'SEARCH', 'inspect.ismodule']),
+                    pycompletionserver.CreateFrame(['4', 'UNKNOWN_COMMAND']),
+                ]
+                sToWrite.sendall(pycompletionserver.EMPTY.join(msgs))
+                
+                buf = [pycompletionserver.EMPTY]
+                fields = self.readFrame(buf)
+                self.assertEqual('1', fields[0])
+                self.assertEqual('COMPLETIONS', fields[1])
+                self.assertEqual('None', fields[2])
+                self.assert_('__doc__' in fields)
+                
+                fields = self.readFrame(buf)
+                self.assertEqual('2', fields[0])
+                self.assert_('sort' in fields, 'Could not find sort in: %s' % (fields,))
+                
+                fields = self.readFrame(buf)
+                self.assertEqual('3', fields[0])
+                self.assert_(fields[2].endswith('inspect.py'), fields)
+                self.assertEqual('3', fields[3]) #line, col, foundAs
+                
+                fields = self.readFrame(buf)
+                self.assertEqual(['4', 'INVALID_REQUEST'], fields)
+            finally:
+                try:
+                    sToWrite.sendall(pycompletionserver.CreateFrame(['5', 'KILL']))
+                    sToRead.close()
+                    sToWrite.close()
+                    self.connToRead.close()
+                except:
+                    pass
+            
         def sendKillMsg(self, socket):
             socket.send(pycompletionserver.MSG_KILL_SERVER)
 
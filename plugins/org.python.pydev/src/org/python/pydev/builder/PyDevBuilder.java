@@ -17,6 +17,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -26,6 +34,7 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.builder.pycremover.PycHandlerBuilderVisitor;
 import org.python.pydev.builder.pylint.PyLintVisitor;
@@ -36,6 +45,7 @@ import org.python.pydev.core.FileUtilsFileBuffer;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.IPythonPathNature;
 import org.python.pydev.core.callbacks.ICallback0;
+import org.python.pydev.core.concurrency.WorkersPool;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.revisited.PyCodeCompletionVisitor;
 import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
@@ -53,6 +63,18 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
 
     private static final boolean DEBUG = false;
 
+    /**
+     * If true, a full build will visit the resources in parallel with the visitors that are thread-safe
+     * (see: PyDevBuilderVisitor.isThreadSafe()).
+     */
+    public static boolean BUILD_IN_PARALLEL = true;
+
+    /**
+     * The minimum number of resources for which a parallel build is done (for less, the overhead of
+     * creating the threads isn't worth it).
+     */
+    public static int MIN_RESOURCES_TO_BUILD_IN_PARALLEL = 20;
+
     /**
      * 
      * @return a list of visitors for building the application.
@@ -147,6 +169,8 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
                     List<IFile> resourcesToParse = new ArrayList<IFile>();
 
                     List<PyDevBuilderVisitor> visitors = getVisitors();
+                    //sort by priority
+                    Collections.sort(visitors);
                     notifyVisitingWillStart(visitors, monitor, true, nature);
 
                     monitor.beginTask("Building...", (visitors.size() * 100) + 30);
@@ -252,6 +276,17 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
     public void buildResources(List<IFile> resourcesToParse, IProgressMonitor monitor,
             List<PyDevBuilderVisitor> visitors) {
 
+        if (BUILD_IN_PARALLEL && resourcesToParse.size() >= MIN_RESOURCES_TO_BUILD_IN_PARALLEL
+                && WorkersPool.getNumberOfWorkers() > 1) {
+            List<PyDevBuilderVisitor> workerVisitors = new ArrayList<PyDevBuilderVisitor>();
+            List<PyDevBuilderVisitor> otherVisitors = new ArrayList<PyDevBuilderVisitor>();
+            splitVisitorsForWorkers(visitors, workerVisitors, otherVisitors);
+            if (workerVisitors.size() > 0) {
+                buildResourcesInParallel(resourcesToParse, monitor, visitors.size(), workerVisitors, otherVisitors);
+                return;
+            }
+        }
+
         // we have 100 units here
         double inc = (visitors.size() * 100) / (double) resourcesToParse.size();
 
@@ -327,6 +362,280 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
         }
     }
 
+    /**
+     * The result of visiting a resource with the thread-safe visitors in a worker thread (which is later passed to
+     * the thread that started the build to be visited by the other visitors).
+     */
+    private static final class VisitedResource {
+
+        private final IFile resource;
+
+        /**
+         * null if the resource should not be visited by the other visitors (i.e.: not in the pythonpath).
+         */
+        private final HashMap<String, Object> memo;
+
+        private final ICallback0<IDocument> doc;
+
+        private VisitedResource(IFile resource, HashMap<String, Object> memo, ICallback0<IDocument> doc) {
+            this.resource = resource;
+            this.memo = memo;
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * Monitor passed to the visitors in the worker threads (the monitor of the build is only accessed in the
+     * thread that started the build).
+     */
+    private static final class WorkerProgressMonitor extends NullProgressMonitor {
+
+        private final AtomicBoolean cancelled;
+
+        private WorkerProgressMonitor(AtomicBoolean cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled.get();
+        }
+    }
+
+    /**
+     * Splits the visitors (sorted by priority) into the ones that may be run in the worker threads and the ones that
+     * must be run in the thread that started the build.
+     * 
+     * As for each resource the visitors in the workers are run before the others, a thread-safe visitor is only run
+     * in the workers if no visitor which is not thread-safe has a higher priority (visitors with the same priority
+     * have no order among them) -- so, the visitors are still run by priority.
+     */
+    /*default*/static void splitVisitorsForWorkers(List<PyDevBuilderVisitor> visitors,
+            List<PyDevBuilderVisitor> workerVisitors, List<PyDevBuilderVisitor> otherVisitors) {
+        PyDevBuilderVisitor firstNotThreadSafe = null;
+        for (PyDevBuilderVisitor visitor : visitors) {
+            if (visitor.isThreadSafe()
+                    && (firstNotThreadSafe == null || visitor.compareTo(firstNotThreadSafe) <= 0)) {
+                workerVisitors.add(visitor);
+            } else {
+                if (firstNotThreadSafe == null && !visitor.isThreadSafe()) {
+                    firstNotThreadSafe = visitor;
+                }
+                otherVisitors.add(visitor);
+            }
+        }
+    }
+
+    /**
+     * Visits the resources with the thread-safe visitors in a bounded pool of workers (each worker with its own
+     * copy of the visitors and a new memo for each resource) and with the other visitors in the current thread
+     * (which reuses the memo filled by the worker, so, the module parsed by a worker is not parsed again).
+     * 
+     * The passed monitor is only accessed in the current thread (which aggregates the progress of the workers).
+     * 
+     * @see #splitVisitorsForWorkers(List, List, List)
+     */
+    /*default*/void buildResourcesInParallel(final List<IFile> resourcesToParse, IProgressMonitor monitor,
+            int totalVisitors, final List<PyDevBuilderVisitor> threadSafeVisitors,
+            List<PyDevBuilderVisitor> otherVisitors) {
+
+        final int totalResources = resourcesToParse.size();
+        int nWorkers = Math.min(WorkersPool.getNumberOfWorkers(), totalResources);
+
+        //Bounded so that the memos (which hold the parsed modules) don't pile up if the other visitors are slower.
+        final BlockingQueue<VisitedResource> visited = new LinkedBlockingQueue<VisitedResource>(nWorkers * 4);
+        final AtomicInteger nextResource = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final AtomicBoolean loggedMisconfiguration = new AtomicBoolean(false);
+
+        //Not the shared WorkersPool: the visitors may use it themselves and wait for it while our workers are
+        //blocked waiting for this thread.
+        ExecutorService executor = new ThreadPoolExecutor(nWorkers, nWorkers, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkersPool.DaemonThreadFactory("PyDev Builder: "));
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(nWorkers);
+        try {
+            for (int w = 0; w < nWorkers; w++) {
+                final List<PyDevBuilderVisitor> workerVisitors = new ArrayList<PyDevBuilderVisitor>(
+                        threadSafeVisitors.size());
+                for (PyDevBuilderVisitor visitor : threadSafeVisitors) {
+                    workerVisitors.add(visitor.copyForWorker());
+                }
+
+                futures.add(executor.submit(new Runnable() {
+
+                    public void run() {
+                        WorkerProgressMonitor workerMonitor = new WorkerProgressMonitor(cancelled);
+                        int i;
+                        while (!cancelled.get() && (i = nextResource.getAndIncrement()) < totalResources) {
+                            IFile r = resourcesToParse.get(i);
+                            VisitedResource result;
+                            try {
+                                result = visitInWorker(r, workerVisitors, workerMonitor, loggedMisconfiguration);
+                            } catch (Throwable e) {
+                                Log.log(e);
+                                result = new VisitedResource(r, null, null);
+                            }
+                            try {
+                                while (!visited.offer(result, 200, TimeUnit.MILLISECONDS)) {
+                                    if (cancelled.get()) {
+                                        return;
+                                    }
+                                }
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                }));
+            }
+
+            // we have 100 units here
+            double inc = (totalVisitors * 100) / (double) totalResources;
+            double total = 0;
+            int i = 0;
+            FastStringBuffer bufferToCreateString = new FastStringBuffer();
+
+            while (i < totalResources) {
+                if (monitor.isCanceled()) {
+                    cancelled.set(true);
+                    break;
+                }
+                VisitedResource v;
+                try {
+                    v = visited.poll(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    cancelled.set(true);
+                    break;
+                }
+                if (v == null) {
+                    if (visited.isEmpty() && allDone(futures)) {
+                        break; //should not happen (all the resources are always added to the queue)
+                    }
+                    continue;
+                }
+                i += 1;
+                total += inc;
+
+                if (v.memo != null) {
+                    IResource r = v.resource;
+                    if (otherVisitors.size() == 0) {
+                        communicateProgress(monitor, totalResources, i, r, null, bufferToCreateString);
+                    } else {
+                        visitInCurrentThread(v, otherVisitors, monitor, totalResources, i, bufferToCreateString);
+                    }
+                }
+
+                if (total > 1) {
+                    monitor.worked((int) total);
+                    total -= (int) total;
+                }
+            }
+        } finally {
+            cancelled.set(true); //if we didn't finish, make sure that the workers stop.
+            executor.shutdown();
+        }
+    }
+
+    private static boolean allDone(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits a resource with the thread-safe visitors (called in a worker thread).
+     */
+    private VisitedResource visitInWorker(IFile r, List<PyDevBuilderVisitor> workerVisitors,
+            IProgressMonitor workerMonitor, AtomicBoolean loggedMisconfiguration) {
+        PythonPathHelper.markAsPyDevFileIfDetected(r);
+
+        IPythonNature nature = PythonNature.getPythonNature(r);
+        if (nature == null) {
+            return new VisitedResource(r, null, null);
+        }
+        if (!nature.startRequests()) {
+            return new VisitedResource(r, null, null);
+        }
+        try {
+            String moduleName;
+            try {
+                //we visit external because we must index them
+                moduleName = nature.resolveModuleOnlyInProjectSources(r, true);
+                if (moduleName == null) {
+                    return new VisitedResource(r, null, null); // we only analyze resources that are in the pythonpath
+                }
+            } catch (Exception e1) {
+                if (loggedMisconfiguration.compareAndSet(false, true)) {
+                    Log.log(e1); //No point in logging it over and over again.
+                }
+                return new VisitedResource(r, null, null);
+            }
+
+            //create new memo for each resource
+            HashMap<String, Object> memo = new HashMap<String, Object>();
+            memo.put(PyDevBuilderVisitor.IS_FULL_BUILD, true); //mark it as full build
+
+            ICallback0<IDocument> doc = FileUtilsFileBuffer.getDocOnCallbackFromResource(r);
+            memo.put(PyDevBuilderVisitor.DOCUMENT_TIME, System.currentTimeMillis());
+
+            PyDevBuilderVisitor.setModuleNameInCache(memo, r, moduleName);
+
+            for (Iterator<PyDevBuilderVisitor> it = workerVisitors.iterator(); it.hasNext()
+                    && workerMonitor.isCanceled() == false;) {
+                try {
+                    PyDevBuilderVisitor visitor = it.next();
+                    visitor.memo = memo; //setting the memo must be the first thing.
+
+                    //on a full build, all visits are as some add...
+                    visitor.visitAddedResource(r, doc, workerMonitor);
+                } catch (Exception e) {
+                    Log.log(e);
+                }
+            }
+            return new VisitedResource(r, memo, doc);
+        } finally {
+            nature.endRequests();
+        }
+    }
+
+    /**
+     * Visits a resource (already visited by the workers) with the visitors that are not run in the workers.
+     */
+    private void visitInCurrentThread(VisitedResource v, List<PyDevBuilderVisitor> otherVisitors,
+            IProgressMonitor monitor, int totalResources, int i, FastStringBuffer bufferToCreateString) {
+        IFile r = v.resource;
+        IPythonNature nature = PythonNature.getPythonNature(r);
+        if (nature == null) {
+            return;
+        }
+        if (!nature.startRequests()) {
+            return;
+        }
+        try {
+            for (Iterator<PyDevBuilderVisitor> it = otherVisitors.iterator(); it.hasNext()
+                    && monitor.isCanceled() == false;) {
+
+                try {
+                    PyDevBuilderVisitor visitor = it.next();
+                    visitor.memo = v.memo; //setting the memo must be the first thing.
+
+                    communicateProgress(monitor, totalResources, i, r, visitor, bufferToCreateString);
+
+                    //on a full build, all visits are as some add...
+                    visitor.visitAddedResource(r, v.doc, monitor);
+                } catch (Exception e) {
+                    Log.log(e);
+                }
+            }
+        } finally {
+            nature.endRequests();
+        }
+    }
+
     /**
      * Used so that we can communicate the progress to the user
      * 
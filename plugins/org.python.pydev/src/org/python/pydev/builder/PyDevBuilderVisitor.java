@@ -38,7 +38,7 @@ import org.python.pydev.plugin.nature.PythonNature;
  * 
  * @author Fabio Zadrozny
  */
-public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisitor> {
+public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisitor>, Cloneable {
 
     public static final int MAX_TO_VISIT_INFINITE = -1;
 
@@ -95,6 +95,35 @@ public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisi
         return PRIORITY_DEFAULT;
     }
 
+    /**
+     * Subclasses may override to return true if they can visit different resources at the same time in a full build.
+     * 
+     * In that case, each worker thread will get its own copy of the visitor (see: copyForWorker) -- so, the memo
+     * is not shared among threads -- and visitors which are not thread-safe are only run in the thread that
+     * started the build (after the thread-safe visitors have visited the same resource, so, a thread-safe visitor
+     * is also run in that thread if it has a lower priority than some visitor which is not thread-safe).
+     * 
+     * @return whether this visitor may visit different resources concurrently in a full build.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * @return a copy of this visitor to be used by a worker thread in a parallel full build (it's a shallow copy
+     * of the visitor, so, it keeps what was initialized in visitingWillStart, which is only called on the original
+     * visitor).
+     */
+    public PyDevBuilderVisitor copyForWorker() {
+        try {
+            PyDevBuilderVisitor copy = (PyDevBuilderVisitor) super.clone();
+            copy.memo = null;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); //Cannot happen (we implement Cloneable).
+        }
+    }
+
     /**
      * This field acts like a memory. 
      * 
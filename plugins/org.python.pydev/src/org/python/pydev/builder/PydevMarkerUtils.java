@@ -9,6 +9,7 @@
  */
 package org.python.pydev.builder;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -255,6 +256,188 @@ public class PydevMarkerUtils {
         }
     }
 
+    /**
+     * Same as replaceMarkers, but only changes what's different: the existing markers with the same attributes of a
+     * new marker are kept, only the new markers which don't match an existing marker are created and only the
+     * existing markers which don't match a new marker are removed (if there's nothing to be set and nothing to be
+     * removed, the workspace is not even locked).
+     * 
+     * @return the number of marker operations saved when compared to replacing all the markers.
+     * 
+     * @see #replaceMarkers(List, IResource, String, boolean, IProgressMonitor)
+     */
+    public static int updateMarkers(final List<MarkerInfo> lst, final IResource resource, final String markerType,
+            final boolean removeUserEditable, IProgressMonitor monitor) {
+        return updateMarkers(lst, resource, markerType, removeUserEditable, null, monitor);
+    }
+
+    /**
+     * Same as updateMarkers, but an existing marker which doesn't have the same attributes of a new marker may still
+     * be reused (by setting the new attributes in it) if both have the same key.
+     * 
+     * @param getMatchKey if not null, receives the attributes of a marker and returns the key used to match an
+     * existing marker with a new one (i.e.: type, message and line) -- the key must implement equals and hashCode.
+     * 
+     * @return the number of marker operations saved when compared to replacing all the markers.
+     */
+    public static int updateMarkers(final List<MarkerInfo> lst, final IResource resource, final String markerType,
+            final boolean removeUserEditable, final ICallback<Object, Map<String, Object>> getMatchKey,
+            IProgressMonitor monitor) {
+        try {
+            if (lst.size() == 0) {
+                if (!resource.exists() || getReplaceableMarkers(resource, markerType, removeUserEditable).length == 0) {
+                    return 0;
+                }
+            }
+        } catch (CoreException e) {
+            Log.log(e);
+        }
+
+        //existing, new, deleted, created, updated
+        final int[] counts = new int[5];
+        IWorkspaceRunnable r = new IWorkspaceRunnable() {
+
+            public void run(IProgressMonitor monitor) throws CoreException {
+                if (!resource.exists()) {
+                    return;
+                }
+                //the existing markers (grouped by their attributes)
+                Map<Map<String, Object>, List<IMarker>> existing = new HashMap<Map<String, Object>, List<IMarker>>();
+                for (IMarker marker : getReplaceableMarkers(resource, markerType, removeUserEditable)) {
+                    Map<String, Object> attributes = getAttributes(marker);
+                    List<IMarker> markers = existing.get(attributes);
+                    if (markers == null) {
+                        markers = new ArrayList<IMarker>(1);
+                        existing.put(attributes, markers);
+                    }
+                    markers.add(marker);
+                    counts[0]++;
+                }
+
+                List<Map<String, Object>> toCreate = new ArrayList<Map<String, Object>>();
+                for (MarkerInfo markerInfo : lst) {
+                    HashMap<String, Object> asMap;
+                    try {
+                        asMap = markerInfo.getAsMap();
+                    } catch (BadLocationException e) {
+                        continue;
+                    }
+                    if (asMap == null) {
+                        continue;
+                    }
+                    counts[1]++;
+                    List<IMarker> same = existing.get(asMap);
+                    if (same != null && same.size() > 0) {
+                        same.remove(same.size() - 1); //keep it
+                    } else {
+                        toCreate.add(asMap);
+                    }
+                }
+
+                //the markers which are still there (not kept as is)
+                List<IMarker> toDelete = new ArrayList<IMarker>();
+                if (getMatchKey != null && toCreate.size() > 0) {
+                    //reuse the markers with the same key (grouped by their key)
+                    Map<Object, List<IMarker>> existingByKey = new HashMap<Object, List<IMarker>>();
+                    for (Map.Entry<Map<String, Object>, List<IMarker>> entry : existing.entrySet()) {
+                        List<IMarker> markers = entry.getValue();
+                        if (markers.size() > 0) {
+                            Object key = getMatchKey.call(entry.getKey());
+                            List<IMarker> withKey = existingByKey.get(key);
+                            if (withKey == null) {
+                                withKey = new ArrayList<IMarker>(markers.size());
+                                existingByKey.put(key, withKey);
+                            }
+                            withKey.addAll(markers);
+                        }
+                    }
+
+                    List<Map<String, Object>> notMatched = new ArrayList<Map<String, Object>>();
+                    for (Map<String, Object> asMap : toCreate) {
+                        List<IMarker> withKey = existingByKey.get(getMatchKey.call(asMap));
+                        if (withKey != null && withKey.size() > 0) {
+                            IMarker marker = withKey.remove(withKey.size() - 1);
+                            try {
+                                marker.setAttributes(asMap);
+                                counts[4]++;
+                            } catch (Exception e) {
+                                //couldn't reuse it: delete it and create a new one instead
+                                Log.log(e);
+                                toDelete.add(marker);
+                                notMatched.add(asMap);
+                            }
+                        } else {
+                            notMatched.add(asMap);
+                        }
+                    }
+                    toCreate = notMatched;
+                    for (List<IMarker> markers : existingByKey.values()) {
+                        toDelete.addAll(markers);
+                    }
+                } else {
+                    for (List<IMarker> markers : existing.values()) {
+                        toDelete.addAll(markers);
+                    }
+                }
+
+                try {
+                    if (toDelete.size() > 0) {
+                        ResourcesPlugin.getWorkspace().deleteMarkers(toDelete.toArray(new IMarker[toDelete.size()]));
+                        counts[2] = toDelete.size();
+                    }
+                } catch (Exception e1) {
+                    Log.log(e1);
+                }
+
+                for (Map<String, Object> asMap : toCreate) {
+                    try {
+                        IMarker marker = resource.createMarker(markerType);
+                        marker.setAttributes(asMap);
+                        counts[3]++;
+                    } catch (Exception e) {
+                        Log.log(e);
+                    }
+                }
+            }
+        };
+        try {
+            resource.getWorkspace().run(r, ResourcesPlugin.getWorkspace().getRuleFactory().markerRule(resource),
+                    IWorkspace.AVOID_UPDATE, monitor);
+        } catch (Exception e) {
+            Log.log(e);
+        }
+        //replacing would delete all the existing and create all the new markers.
+        return (counts[0] + counts[1]) - (counts[2] + counts[3] + counts[4]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getAttributes(IMarker marker) throws CoreException {
+        Map<String, Object> attributes = marker.getAttributes();
+        if (attributes == null) {
+            return new HashMap<String, Object>();
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the markers of the given type which would be replaced in the given resource.
+     */
+    private static IMarker[] getReplaceableMarkers(IResource resource, String markerType, boolean removeUserEditable)
+            throws CoreException {
+        if (removeUserEditable) {
+            return resource.findMarkers(markerType, true, IResource.DEPTH_ZERO);
+        }
+        IMarker[] existingMarkers = resource.findMarkers(markerType, false, IResource.DEPTH_ZERO);
+        //we don't want to remove the user-editable markers, so, let's filter them out!
+        return ArrayUtils.filter(existingMarkers, new ICallback<Boolean, IMarker>() {
+
+            public Boolean call(IMarker marker) {
+                //if it's user-editable, it should not be included in the list
+                return !marker.getAttribute(IMarker.USER_EDITABLE, true); //default for user-editable is true.
+            }
+        }).toArray(new IMarker[0]);
+    }
+
     /**
      * @param original 
      * @param pydevCoverageMarker
@@ -97,6 +97,14 @@ public class PycHandlerBuilderVisitor extends PyDevBuilderVisitor {
         pycDeleteHandling = PyDevBuilderPrefPage.getPycDeleteHandling();
     }
 
+    /**
+     * The delete job is synchronized and pycDeleteHandling is only set in visitingWillStart.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void visitChangedResource(IResource resource, ICallback0<IDocument> document, IProgressMonitor monitor) {
         //Ignore: for pyc files we only care about their addition.
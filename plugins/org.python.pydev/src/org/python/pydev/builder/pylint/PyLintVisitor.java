@@ -35,6 +35,7 @@ import org.python.pydev.builder.PyDevBuilderVisitor;
 import org.python.pydev.builder.PydevMarkerUtils;
 import org.python.pydev.builder.PydevMarkerUtils.MarkerInfo;
 import org.python.pydev.consoles.MessageConsoles;
+import org.python.pydev.core.IInterpreterInfo;
 import org.python.pydev.core.IInterpreterManager;
 import org.python.pydev.core.MisconfigurationException;
 import org.python.pydev.core.PythonNatureWithoutProjectException;
@@ -44,6 +45,7 @@ import org.python.pydev.core.log.Log;
 import org.python.pydev.plugin.PydevPlugin;
 import org.python.pydev.plugin.nature.PythonNature;
 import org.python.pydev.runners.SimplePythonRunner;
+import org.python.pydev.runners.SimpleRunner;
 import org.python.pydev.ui.UIConstants;
 
 import com.aptana.shared_core.io.FileUtils;
@@ -62,6 +64,15 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
      */
     public static final String PYLINT_PROBLEM_MARKER = "org.python.pydev.pylintproblemmarker";
 
+    /**
+     * Whether pylint should be run in a long-lived process (see PyLintWorker) instead of starting a new process
+     * for each file.
+     */
+    public static boolean USE_PYLINT_WORKER = true;
+
+    /**
+     * Synchronized on the list itself.
+     */
     public static final List<PyLintThread> pyLintThreads = new ArrayList<PyLintThread>();
 
     private static Object lock = new Object();
@@ -90,9 +101,11 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
          * @return
          */
         private boolean canPassPyLint() {
-            if (pyLintThreads.size() < PyLintPrefPage.getMaxPyLintDelta()) {
-                pyLintThreads.add(this);
-                return true;
+            synchronized (pyLintThreads) {
+                if (pyLintThreads.size() < PyLintPrefPage.getMaxPyLintDelta()) {
+                    pyLintThreads.add(this);
+                    return true;
+                }
             }
             return false;
         }
@@ -143,7 +156,9 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
                 }.schedule();
             } finally {
                 try {
-                    pyLintThreads.remove(this);
+                    synchronized (pyLintThreads) {
+                        pyLintThreads.remove(this);
+                    }
                 } catch (Exception e) {
                     Log.log(e);
                 }
@@ -178,9 +193,10 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
          * @throws CoreException
          * @throws MisconfigurationException 
          * @throws PythonNatureWithoutProjectException 
+         * @throws InterruptedException 
          */
         private void passPyLint(IResource resource, IOConsoleOutputStream out, IDocument doc) throws CoreException,
-                MisconfigurationException, PythonNatureWithoutProjectException {
+                MisconfigurationException, PythonNatureWithoutProjectException, InterruptedException {
             File script = new File(PyLintPrefPage.getPyLintLocation());
             File arg = new File(location.toOSString());
 
@@ -208,9 +224,22 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
                 return;
             }
 
-            Tuple<String, String> outTup = new SimplePythonRunner().runAndGetOutputFromPythonScript(nature
-                    .getProjectInterpreter().getExecutableOrJar(), scriptToExe, paramsToExe, arg.getParentFile(),
-                    project);
+            Tuple<String, String> outTup;
+            if (USE_PYLINT_WORKER) {
+                IInterpreterInfo interpreter = nature.getProjectInterpreter();
+                String pythonpath = SimpleRunner.makePythonPathEnvString(nature, interpreter,
+                        nature.getRelatedInterpreterManager());
+                try {
+                    outTup = PyLintWorker.getWorker(nature, scriptToExe).lint(arg.getParentFile(), pythonpath,
+                            paramsToExe);
+                } catch (RuntimeException e) {
+                    Log.log(e);
+                    return;
+                }
+            } else {
+                outTup = new SimplePythonRunner().runAndGetOutputFromPythonScript(nature.getProjectInterpreter()
+                        .getExecutableOrJar(), scriptToExe, paramsToExe, arg.getParentFile(), project);
+            }
 
             write("PyLint: The stdout of the command line is: " + outTup.o1, out);
             write("PyLint: The stderr of the command line is: " + outTup.o2, out);
@@ -0,0 +1,519 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.eclipse.core.runtime.CoreException;
+import org.python.pydev.core.IInterpreterInfo;
+import org.python.pydev.core.MisconfigurationException;
+import org.python.pydev.core.PythonNatureWithoutProjectException;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.plugin.PydevPlugin;
+import org.python.pydev.plugin.nature.PythonNature;
+import org.python.pydev.runners.SimplePythonRunner;
+import org.python.pydev.runners.SimpleRunner;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.io.ThreadStreamReader;
+import com.aptana.shared_core.string.FastStringBuffer;
+import com.aptana.shared_core.structure.Tuple;
+
+/**
+ * A python process which runs pylint for many files (see pysrc/pydev_pylint_worker.py), so that starting the
+ * interpreter and importing pylint is done only once (and not for each file as when lint.py is run for each file).
+ *
+ * The requests are queued and a thread of the worker sends them in batches to the process. If the process dies
+ * while handling a batch, it's restarted and the requests without a response are sent again (a request is given
+ * up if the process dies MAX_ATTEMPTS times while handling it, so that a file which crashes pylint doesn't keep
+ * restarting it). If a request isn't answered in REQUEST_TIMEOUT_MILLIS, the process is killed, the request is given
+ * up and the process is restarted for the others.
+ *
+ * A process handles one request at a time, so, a few workers are kept for each interpreter and lint.py (see
+ * POOL_SIZE): the files are analyzed in parallel up to that number (at the cost of the memory of a process for each
+ * worker).
+ *
+ * @see PyLintVisitor#USE_PYLINT_WORKER
+ */
+public final class PyLintWorker {
+
+    public static final int MAX_ATTEMPTS = 2;
+
+    /**
+     * The maximum number of workers (and so, of processes running pylint at the same time) for an interpreter and
+     * lint.py location.
+     */
+    public static int POOL_SIZE = 2;
+
+    /**
+     * The time to wait for the response of a request before killing the process.
+     */
+    public static final long REQUEST_TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+    /**
+     * Requests sent at once to the process (kept small so that writing the requests doesn't block while the
+     * process is blocked writing the responses).
+     */
+    private static final int MAX_BATCH = 20;
+
+    /**
+     * The process is finished when no requests are received in this time.
+     */
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private static final class Request {
+        final String line;
+        int attempts;
+
+        //synchronized with lock
+        boolean done;
+        Tuple<String, String> output;
+        String error;
+
+        Request(String line) {
+            this.line = line;
+        }
+    }
+
+    private final String[] cmdLine;
+
+    private final String[] env;
+
+    private final long requestTimeoutMillis;
+
+    private final Object lock = new Object();
+
+    /**
+     * Requests waiting to be sent to the process (synchronized with lock).
+     */
+    private final LinkedList<Request> queue = new LinkedList<Request>();
+
+    /**
+     * The thread sending the requests (synchronized with lock). Finishes when idle.
+     */
+    private Thread thread;
+
+    /**
+     * The number of processes started so far (synchronized with lock).
+     */
+    private int processesStarted;
+
+    /**
+     * The number of requests queued or being handled (synchronized with lock).
+     */
+    private int pending;
+
+    // Only accessed in the worker thread ------------------------------------------------------------------
+    private Process process;
+    private Writer writer;
+    private BufferedReader reader;
+    private ThreadStreamReader stderrReader;
+    private ProcessWatchdog watchdog;
+
+    // End Only accessed in the worker thread --------------------------------------------------------------
+
+    /**
+     * @param cmdLine the command line to start pydev_pylint_worker.py
+     * @param env the environment for the process
+     */
+    public PyLintWorker(String[] cmdLine, String[] env) {
+        this(cmdLine, env, REQUEST_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param requestTimeoutMillis the time to wait for the response of a request before killing the process.
+     */
+    public PyLintWorker(String[] cmdLine, String[] env, long requestTimeoutMillis) {
+        this.cmdLine = cmdLine;
+        this.env = env;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * Kills the process if the request being handled isn't answered in time (executed in the timer thread).
+     */
+    private final class ProcessWatchdog extends TimerTask {
+        private final Process watchedProcess;
+
+        /**
+         * When the request being handled was started (0 if no request is being handled).
+         */
+        private volatile long requestStartMillis;
+
+        private volatile boolean timedOut;
+
+        private ProcessWatchdog(Process watchedProcess) {
+            this.watchedProcess = watchedProcess;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long start = requestStartMillis;
+                if (start != 0 && !timedOut && System.currentTimeMillis() - start > requestTimeoutMillis) {
+                    timedOut = true;
+                    watchedProcess.destroy(); //the worker thread gets the end of the stream.
+                }
+            } catch (Throwable e) {
+                Log.log(e); //the timer must not be stopped.
+            }
+        }
+    }
+
+    /**
+     * Used to check for the timeouts of all the workers.
+     */
+    private static Timer timer;
+
+    private static synchronized Timer getTimer() {
+        if (timer == null) {
+            timer = new Timer("PyLint worker timeout", true);
+        }
+        return timer;
+    }
+
+    /**
+     * Runs pylint with the given arguments (blocks until it finishes).
+     *
+     * @param workingDir the working dir to run pylint
+     * @param pythonpath the PYTHONPATH to be used (entries separated by the path separator)
+     * @return a tuple with the stdout and stderr of pylint
+     * @throws RuntimeException if pylint failed to run (i.e.: crashed or pylint could not be imported)
+     */
+    public Tuple<String, String> lint(File workingDir, String pythonpath, String[] args) throws InterruptedException {
+        FastStringBuffer buf = new FastStringBuffer(200);
+        buf.append("lint\t");
+        escape(buf, FileUtils.getFileAbsolutePath(workingDir));
+        buf.append('\t');
+        escape(buf, pythonpath);
+        for (String arg : args) {
+            buf.append('\t');
+            escape(buf, arg);
+        }
+        Request request = new Request(buf.toString());
+
+        synchronized (lock) {
+            queue.add(request);
+            pending++;
+            if (thread == null) {
+                thread = new Thread() {
+                    @Override
+                    public void run() {
+                        runRequests();
+                    }
+                };
+                thread.setName("PyLint worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+            while (!request.done) {
+                lock.wait();
+            }
+            if (request.error != null) {
+                throw new RuntimeException(request.error);
+            }
+            return request.output;
+        }
+    }
+
+    /**
+     * @return the number of processes started so far (i.e.: > 1 if the process had to be restarted).
+     */
+    public int getProcessesStarted() {
+        synchronized (lock) {
+            return processesStarted;
+        }
+    }
+
+    /**
+     * @return the number of requests queued or being handled.
+     */
+    public int getPending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Executed in the worker thread: sends the requests until there are no requests for IDLE_TIMEOUT_MILLIS.
+     */
+    private void runRequests() {
+        List<Request> batch = new ArrayList<Request>();
+        try {
+            while (true) {
+                batch.clear();
+                synchronized (lock) {
+                    long deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+                    while (queue.size() == 0) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            //destroyed with the lock held so that a new thread doesn't get the process.
+                            destroyProcess();
+                            thread = null;
+                            return;
+                        }
+                        lock.wait(wait);
+                    }
+                    while (queue.size() > 0 && batch.size() < MAX_BATCH) {
+                        batch.add(queue.removeFirst());
+                    }
+                }
+                runBatch(batch);
+            }
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            synchronized (lock) {
+                if (thread == Thread.currentThread()) {
+                    //finished due to some error: the pending requests won't be handled.
+                    destroyProcess();
+                    thread = null;
+                    batch.addAll(queue);
+                    queue.clear();
+                    for (Request request : batch) {
+                        if (!request.done) {
+                            finish(request, null, "PyLint ERROR: the pylint worker stopped.");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void runBatch(List<Request> batch) {
+        LinkedList<Request> remaining = new LinkedList<Request>(batch);
+        while (remaining.size() > 0) {
+            try {
+                startProcess();
+            } catch (Exception e) {
+                destroyProcess();
+                String msg = "PyLint ERROR: unable to start: " + SimpleRunner.getArgumentsAsStr(cmdLine) + "\n" + e;
+                for (Request request : remaining) {
+                    finish(request, null, msg);
+                }
+                return;
+            }
+
+            try {
+                //the requests are handled in order: the first starts now and each other when the previous is answered.
+                watchdog.requestStartMillis = System.currentTimeMillis();
+                for (Request request : remaining) {
+                    writer.write(request.line);
+                    writer.write('\n');
+                }
+                writer.flush();
+
+                while (remaining.size() > 0) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        throw new IOException("The pylint worker process finished unexpectedly.");
+                    }
+                    watchdog.requestStartMillis = System.currentTimeMillis();
+                    handleResponse(remaining.removeFirst(), line);
+                }
+                watchdog.requestStartMillis = 0;
+                stderrReader.getAndClearContents(); //only errors of the process itself should get there.
+
+            } catch (IOException e) {
+                boolean timedOut = watchdog.timedOut;
+                String stderr = stderrReader.getAndClearContents();
+                destroyProcess();
+                //the first one without a response is the one being handled when the process died.
+                Request request = remaining.getFirst();
+                if (timedOut) {
+                    remaining.removeFirst();
+                    finish(request, null, "PyLint ERROR: the pylint worker process was killed after not answering in "
+                            + requestTimeoutMillis + " millis.\n" + stderr);
+                } else {
+                    request.attempts++;
+                    if (request.attempts >= MAX_ATTEMPTS) {
+                        remaining.removeFirst();
+                        finish(request, null, "PyLint ERROR: the pylint worker process crashed.\n" + e + "\n"
+                                + stderr);
+                    }
+                }
+            }
+        }
+    }
+
+    private void startProcess() throws IOException {
+        if (process != null) {
+            return;
+        }
+        process = SimpleRunner.createProcess(cmdLine, env, null);
+        writer = new OutputStreamWriter(process.getOutputStream(), "utf-8");
+        reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "utf-8"));
+        stderrReader = new ThreadStreamReader(process.getErrorStream());
+        stderrReader.start();
+        watchdog = new ProcessWatchdog(process);
+        long period = Math.min(1000, requestTimeoutMillis);
+        getTimer().schedule(watchdog, period, period);
+        synchronized (lock) {
+            processesStarted++;
+        }
+    }
+
+    private void destroyProcess() {
+        if (process != null) {
+            try {
+                process.getOutputStream().close(); //the process finishes when its stdin is closed.
+            } catch (IOException e) {
+                //ignore
+            }
+            process.destroy();
+            watchdog.cancel();
+            process = null;
+            watchdog = null;
+            writer = null;
+            reader = null;
+            stderrReader = null;
+        }
+    }
+
+    private void handleResponse(Request request, String line) {
+        List<String> fields = parseFields(line);
+        String kind = fields.get(0);
+        if ("ok".equals(kind) && fields.size() == 3) {
+            finish(request, new Tuple<String, String>(fields.get(1), fields.get(2)), null);
+
+        } else if ("error".equals(kind) && fields.size() == 2) {
+            finish(request, null, "PyLint ERROR: \n" + fields.get(1));
+
+        } else {
+            finish(request, null, "PyLint ERROR: unexpected response from the pylint worker: " + line);
+        }
+    }
+
+    private void finish(Request request, Tuple<String, String> output, String error) {
+        synchronized (lock) {
+            request.output = output;
+            request.error = error;
+            request.done = true;
+            pending--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Escapes the string so that it can be sent as a field of the protocol (see pydev_pylint_worker.py).
+     */
+    /*default*/static void escape(FastStringBuffer buf, String s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return the (unescaped) fields of a line of the protocol.
+     */
+    /*default*/static List<String> parseFields(String line) {
+        List<String> fields = new ArrayList<String>();
+        FastStringBuffer buf = new FastStringBuffer(line.length());
+        int len = line.length();
+        for (int i = 0; i < len; i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(buf.toString());
+                buf.clear();
+
+            } else if (c == '\\' && i + 1 < len) {
+                i++;
+                c = line.charAt(i);
+                switch (c) {
+                    case 't':
+                        buf.append('\t');
+                        break;
+                    case 'n':
+                        buf.append('\n');
+                        break;
+                    case 'r':
+                        buf.append('\r');
+                        break;
+                    default:
+                        buf.append(c);
+                }
+            } else {
+                buf.append(c);
+            }
+        }
+        fields.add(buf.toString());
+        return fields;
+    }
+
+    /**
+     * Workers for the interpreter executable + pylint location (up to POOL_SIZE for each).
+     */
+    private static final Map<Tuple<String, String>, List<PyLintWorker>> workers = new HashMap<Tuple<String, String>, List<PyLintWorker>>();
+
+    /**
+     * @return the worker to run the given lint.py with the interpreter of the given nature (the one with less pending
+     * requests, a new one is created if all have pending requests and the pool isn't full).
+     */
+    public static PyLintWorker getWorker(PythonNature nature, String pyLintLocation) throws CoreException,
+            MisconfigurationException, PythonNatureWithoutProjectException {
+        IInterpreterInfo interpreter = nature.getProjectInterpreter();
+        String executable = interpreter.getExecutableOrJar();
+        Tuple<String, String> key = new Tuple<String, String>(executable, pyLintLocation);
+        synchronized (workers) {
+            List<PyLintWorker> pool = workers.get(key);
+            if (pool == null) {
+                pool = new ArrayList<PyLintWorker>(POOL_SIZE);
+                workers.put(key, pool);
+            }
+            PyLintWorker worker = null;
+            int workerPending = Integer.MAX_VALUE;
+            for (PyLintWorker w : pool) {
+                int p = w.getPending();
+                if (p < workerPending) {
+                    worker = w;
+                    workerPending = p;
+                }
+            }
+            if (worker == null || (workerPending > 0 && pool.size() < POOL_SIZE)) {
+                String script = FileUtils.getFileAbsolutePath(PydevPlugin
+                        .getScriptWithinPySrc("pydev_pylint_worker.py"));
+                String[] cmdLine = SimplePythonRunner.preparePythonCallParameters(executable, script,
+                        new String[] { pyLintLocation });
+                //The pythonpath is given in each request (this env is only used to start the process).
+                String[] env = SimpleRunner.getEnvironment(nature, interpreter, nature.getRelatedInterpreterManager());
+                worker = new PyLintWorker(cmdLine, env);
+                pool.add(worker);
+            }
+            return worker;
+        }
+    }
+}
@@ -28,6 +28,14 @@ import org.python.pydev.plugin.nature.PythonNature;
  */
 public class PySyntaxChecker extends PyDevBuilderVisitor {
 
+    /**
+     * Only parses the given resource and updates its markers (no shared state).
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void visitChangedResource(IResource resource, ICallback0<IDocument> document, IProgressMonitor monitor) {
         PythonNature nature = getPythonNature(resource);
@@ -11,6 +11,7 @@
  */
 package org.python.pydev.builder.todo;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -18,7 +19,9 @@ import java.util.Map;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.builder.PyDevBuilderVisitor;
@@ -29,6 +32,7 @@ import org.python.pydev.core.docutils.ParsingUtils;
 import org.python.pydev.core.docutils.SyntaxErrorException;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.logging.DebugSettings;
+import org.python.pydev.plugin.PydevPlugin;
 
 
 /**
@@ -36,6 +40,71 @@ import org.python.pydev.logging.DebugSettings;
  */
 public class PyTodoVisitor extends PyDevBuilderVisitor {
 
+    /**
+     * Only creates the todo markers for the given resource (no shared state).
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * The fingerprint of the contents (and todo tags) of a file and the number of markers created for it.
+     */
+    /*default*/static final class TodoFingerprint {
+        final long contentsHash;
+        final int markers;
+
+        TodoFingerprint(long contentsHash, int markers) {
+            this.contentsHash = contentsHash;
+            this.markers = markers;
+        }
+
+        /**
+         * @return the fingerprint represented by the given string (or null if it's not a valid representation).
+         */
+        static TodoFingerprint fromString(String str) {
+            if (str == null) {
+                return null;
+            }
+            int i = str.indexOf(':');
+            if (i <= 0) {
+                return null;
+            }
+            try {
+                long contentsHash = new BigInteger(str.substring(0, i), 16).longValue();
+                return new TodoFingerprint(contentsHash, Integer.parseInt(str.substring(i + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Long.toHexString(contentsHash) + ":" + markers;
+        }
+    }
+
+    /**
+     * The fingerprint for which the markers of a file were last set (so, unchanged files don't have their markers
+     * updated) is kept as a persistent property of the file: it's kept among sessions (as the markers) and it's
+     * removed along with the file.
+     */
+    private static QualifiedName todoFingerprint = null;
+
+    private static QualifiedName getTodoFingerprintQualifiedName() {
+        if (todoFingerprint == null) {
+            //we need to do this because the plugin ID may not be known on 'static' time
+            todoFingerprint = new QualifiedName(PydevPlugin.getPluginID(), "TODO_FINGERPRINT");
+        }
+        return todoFingerprint;
+    }
+
+    /**
+     * The matcher for the current todo tags (recreated when the tags change).
+     */
+    private static volatile TodoTagsMatcher matcher;
+
     /*
      * (non-Javadoc)
      * 
@@ -47,6 +116,7 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
             List<String> todoTags = PyTodoPrefPage.getTodoTags();
             try {
                 if (!isResourceInPythonpathProjectSources(resource, this.getPythonNature(resource), false)) {
+                    setFingerprint(resource, null);
                     PydevMarkerUtils.removeMarkers(resource, IMarker.TASK);
                     return;
                 }
@@ -56,9 +126,17 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
             }
 
             try {
-                PydevMarkerUtils.replaceMarkers(computeTodoMarkers(document.call(), todoTags), resource, IMarker.TASK,
-                        false, monitor);
-                //timer.printDiff("Total time to put markers: "+lst.size());
+                IDocument doc = document.call();
+                long contentsHash = computeFingerprint(doc.get(), todoTags);
+                TodoFingerprint fingerprint = getFingerprint(resource);
+                if (fingerprint != null && fingerprint.contentsHash == contentsHash
+                        && fingerprint.markers == countGeneratedMarkers(resource)) {
+                    return; //nothing changed since the markers were set.
+                }
+
+                List<MarkerInfo> markers = computeTodoMarkers(doc, todoTags);
+                PydevMarkerUtils.updateMarkers(markers, resource, IMarker.TASK, false, monitor);
+                setFingerprint(resource, new TodoFingerprint(contentsHash, markers.size()));
             } catch (Exception e) {
                 Log.log(e);
             }
@@ -66,6 +144,61 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
 
     }
 
+    private static TodoFingerprint getFingerprint(IResource resource) throws CoreException {
+        return TodoFingerprint.fromString(resource.getPersistentProperty(getTodoFingerprintQualifiedName()));
+    }
+
+    /**
+     * @param fingerprint the fingerprint for the markers just set in the resource (or null to remove it).
+     */
+    private static void setFingerprint(IResource resource, TodoFingerprint fingerprint) throws CoreException {
+        if (fingerprint == null && resource.getPersistentProperty(getTodoFingerprintQualifiedName()) == null) {
+            return;
+        }
+        resource.setPersistentProperty(getTodoFingerprintQualifiedName(),
+                fingerprint != null ? fingerprint.toString() : null);
+    }
+
+    /**
+     * @return the number of markers in the resource which were created by this visitor (i.e.: not user-editable).
+     */
+    private static int countGeneratedMarkers(IResource resource) throws CoreException {
+        int count = 0;
+        for (IMarker marker : resource.findMarkers(IMarker.TASK, false, IResource.DEPTH_ZERO)) {
+            if (!marker.getAttribute(IMarker.USER_EDITABLE, true)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a hash of the contents and the todo tags (FNV-1a).
+     */
+    /*default*/static long computeFingerprint(String contents, List<String> todoTags) {
+        long hash = 0xcbf29ce484222325L;
+        for (String tag : todoTags) {
+            for (int i = 0; i < tag.length(); i++) {
+                hash = (hash ^ tag.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ ' ') * 0x100000001b3L;
+        }
+        int len = contents.length();
+        for (int i = 0; i < len; i++) {
+            hash = (hash ^ contents.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static TodoTagsMatcher getMatcher(List<String> todoTags) {
+        TodoTagsMatcher m = matcher;
+        if (m == null || !m.getTags().equals(todoTags)) {
+            m = new TodoTagsMatcher(todoTags);
+            matcher = m;
+        }
+        return m;
+    }
+
     /**
      * Computes the TODO markers available for this document.
      * Considers only TODO flags in strings and comments.
@@ -74,9 +207,14 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
             throws BadLocationException {
         List<PydevMarkerUtils.MarkerInfo> lst = new ArrayList<PydevMarkerUtils.MarkerInfo>();
         if (todoTags.size() > 0) {
+            TodoTagsMatcher tagsMatcher = getMatcher(todoTags);
+            String contents = document.get();
+            int len = contents.length();
+            if (!tagsMatcher.matches(contents, 0, len)) {
+                return lst; //most files have no tags at all: no need to look for the comments and strings.
+            }
 
-            ParsingUtils utils = ParsingUtils.create(document);
-            int len = utils.len();
+            ParsingUtils utils = ParsingUtils.create(contents);
             try {
                 for (int i = 0; i < len; i++) {
                     char c = utils.charAt(i);
@@ -84,13 +222,13 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
                         case '\'':
                         case '\"':
                             int j = utils.eatLiterals(null, i);
-                            check(i, j, document, lst, todoTags);
+                            check(i, j, document, contents, tagsMatcher, lst);
                             i = j;
                             break;
 
                         case '#':
                             j = utils.eatComments(null, i);
-                            check(i, j, document, lst, todoTags);
+                            check(i, j, document, contents, tagsMatcher, lst);
                             i = j;
                             break;
                     }
@@ -111,42 +249,34 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
     /**
      * Checks a partition of a document for todo tags (filling lst with the markers to be created).
      */
-    private void check(int i, int j, IDocument document, List<MarkerInfo> lst, List<String> todoTags)
-            throws BadLocationException {
-        String tok = document.get(i, j - i);
-        int index;
+    private void check(int i, int j, IDocument document, String contents, TodoTagsMatcher matcher,
+            List<MarkerInfo> lst) throws BadLocationException {
+        j = Math.min(j, contents.length());
+        List<Integer> found = matcher.findAll(contents, i, j);
+        if (found.size() == 0) {
+            return;
+        }
         HashSet<Integer> lines = new HashSet<Integer>();
-        for (String element : todoTags) {
-
-            if (element.length() == 0) {
+        for (int absoluteStart : found) {
+            int line = document.getLineOfOffset(absoluteStart);
+            if (lines.contains(line)) {
+                //Only 1 TASK per line!
                 continue;
+            } else {
+                lines.add(line);
             }
-            int start = 0;
-            while ((index = tok.indexOf(element, start)) != -1) {
-
-                start = index + element.length();
-
-                int absoluteStart = i + index;
-                int line = document.getLineOfOffset(absoluteStart);
-                if (lines.contains(line)) {
-                    //Only 1 TASK per line!
-                    continue;
-                } else {
-                    lines.add(line);
-                }
 
-                String message = tok.substring(index).trim();
-                String markerType = IMarker.TASK;
-                int severity = IMarker.SEVERITY_WARNING;
-                boolean userEditable = false;
-                boolean isTransient = false;
-                int absoluteEnd = absoluteStart + message.length();
-                Map<String, Object> additionalInfo = null;
-
-                MarkerInfo markerInfo = new PydevMarkerUtils.MarkerInfo(document, message, markerType, severity,
-                        userEditable, isTransient, line, absoluteStart, absoluteEnd, additionalInfo);
-                lst.add(markerInfo);
-            }
+            String message = contents.substring(absoluteStart, j).trim();
+            String markerType = IMarker.TASK;
+            int severity = IMarker.SEVERITY_WARNING;
+            boolean userEditable = false;
+            boolean isTransient = false;
+            int absoluteEnd = absoluteStart + message.length();
+            Map<String, Object> additionalInfo = null;
+
+            MarkerInfo markerInfo = new PydevMarkerUtils.MarkerInfo(document, message, markerType, severity,
+                    userEditable, isTransient, line, absoluteStart, absoluteEnd, additionalInfo);
+            lst.add(markerInfo);
         }
     }
 
@@ -155,6 +285,7 @@ public class PyTodoVisitor extends PyDevBuilderVisitor {
      */
     @Override
     public void visitRemovedResource(IResource resource, ICallback0<IDocument> document, IProgressMonitor monitor) {
+        //the fingerprint is removed along with the resource.
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.todo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Finds all the todo tags in a text in a single pass (Aho-Corasick automaton built from the tags).
+ */
+public final class TodoTagsMatcher {
+
+    /**
+     * A state of the automaton.
+     */
+    private static final class State {
+
+        /**
+         * The chars which lead to a child (sorted) and the children for those chars.
+         */
+        char[] chars = new char[0];
+        State[] children = new State[0];
+
+        /**
+         * The state for the longest proper suffix of this state which is also a prefix of some tag.
+         */
+        State fail;
+
+        /**
+         * The lengths of the tags which end in this state (including the ones found through the fail links).
+         */
+        int[] matchLengths = new int[0];
+
+        State getChild(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        State addChild(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insertAt = -(i + 1);
+            State child = new State();
+
+            char[] newChars = new char[chars.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, insertAt);
+            newChars[insertAt] = c;
+            System.arraycopy(chars, insertAt, newChars, insertAt + 1, chars.length - insertAt);
+            chars = newChars;
+
+            State[] newChildren = new State[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newChildren[insertAt] = child;
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            children = newChildren;
+            return child;
+        }
+
+        void addMatchLengths(int[] lengths) {
+            int[] newLengths = new int[matchLengths.length + lengths.length];
+            System.arraycopy(matchLengths, 0, newLengths, 0, matchLengths.length);
+            System.arraycopy(lengths, 0, newLengths, matchLengths.length, lengths.length);
+            matchLengths = newLengths;
+        }
+    }
+
+    private final State root = new State();
+
+    private final List<String> tags;
+
+    public TodoTagsMatcher(List<String> tags) {
+        this.tags = new ArrayList<String>(tags);
+
+        for (String tag : tags) {
+            if (tag.length() == 0) {
+                continue;
+            }
+            State state = root;
+            for (int i = 0; i < tag.length(); i++) {
+                state = state.addChild(tag.charAt(i));
+            }
+            if (Arrays.binarySearch(state.matchLengths, tag.length()) < 0) {
+                state.addMatchLengths(new int[] { tag.length() });
+            }
+        }
+
+        //breadth-first to compute the fail links (the fail state is always in a previous level).
+        LinkedList<State> queue = new LinkedList<State>();
+        for (State child : root.children) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (queue.size() > 0) {
+            State state = queue.removeFirst();
+            for (int i = 0; i < state.chars.length; i++) {
+                char c = state.chars[i];
+                State child = state.children[i];
+
+                State fail = state.fail;
+                while (fail != root && fail.getChild(c) == null) {
+                    fail = fail.fail;
+                }
+                State next = fail.getChild(c);
+                child.fail = next != null ? next : root;
+                if (child.fail.matchLengths.length > 0) {
+                    child.addMatchLengths(child.fail.matchLengths);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return the tags used to create this matcher.
+     */
+    public List<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return whether some tag is found in the given range of the text.
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        State state = root;
+        for (int i = start; i < end; i++) {
+            state = next(state, text.charAt(i));
+            if (state.matchLengths.length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the offsets of the first char of all the tags found in the given range of the text (sorted).
+     */
+    public List<Integer> findAll(CharSequence text, int start, int end) {
+        List<Integer> found = null;
+        State state = root;
+        for (int i = start; i < end; i++) {
+            state = next(state, text.charAt(i));
+            int[] lengths = state.matchLengths;
+            for (int j = 0; j < lengths.length; j++) {
+                if (found == null) {
+                    found = new ArrayList<Integer>();
+                }
+                found.add(i + 1 - lengths[j]);
+            }
+        }
+        if (found == null) {
+            return new ArrayList<Integer>(0);
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    private State next(State state, char c) {
+        State next;
+        while ((next = state.getChild(c)) == null && state != root) {
+            state = state.fail;
+        }
+        return next != null ? next : root;
+    }
+}
@@ -18,6 +18,7 @@ import java.util.Set;
 import java.util.SortedMap;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.core.FullRepIterable;
@@ -403,8 +404,9 @@ public abstract class AbstractASTManager implements ICodeCompletionASTManager {
     public IToken[] getCompletionsForToken(IDocument doc, ICompletionState state) {
         IToken[] completionsForModule;
         try {
-            Tuple<SimpleNode, Throwable> obj = PyParser
-                    .reparseDocument(new PyParser.ParserInfo(doc, state.getNature()));
+            PyParser.ParserInfo info = new PyParser.ParserInfo(doc, state.getNature());
+            info.useAstCache = true;
+            Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
             SimpleNode n = obj.o1;
             IModule module = AbstractModule.createModule(n);
 
@@ -522,8 +524,22 @@ public abstract class AbstractASTManager implements ICodeCompletionASTManager {
                 searchSameLevelMods, lookForArgumentCompletion, state.getBuiltinsGotten(),
                 state.getLocalImportsGotten(), handleAsWildImport);
 
+        CompletionsCache completionsCache = CompletionsCache.getSingleton();
+        Object sharedKey = getSharedCacheKey(module, state, searchSameLevelMods, lookForArgumentCompletion,
+                handleAsWildImport);
+        if (sharedKey != null) {
+            IToken[] ret = completionsCache.get(sharedKey);
+            if (ret != null) {
+                state.add(key, ret);
+                return ret;
+            }
+        }
+
         IToken[] ret = (IToken[]) state.getObj(key);
         if (ret != null) {
+            //we can't know on which modules it depends (nor whether it was computed with a recursion), so, an
+            //entry being computed with it can't be shared.
+            completionsCache.markIncomplete();
             if (DEBUG_CACHE) {
                 System.out.println("Checking if cache is correct for: " + key);
                 IToken[] internal = internalGenerateGetCompletionsForModule(module, state, searchSameLevelMods,
@@ -537,14 +553,53 @@ public abstract class AbstractASTManager implements ICodeCompletionASTManager {
             return ret;
         }
 
-        IToken[] completionsForModule = internalGenerateGetCompletionsForModule(module, state, searchSameLevelMods,
-                lookForArgumentCompletion);
-        completionsForModule = filterForWildImport(module, handleAsWildImport, completionsForModule);
+        CompletionsCache.Computation computation = null;
+        if (sharedKey != null) {
+            computation = completionsCache.startComputation();
+        }
+        IToken[] completionsForModule = null;
+        try {
+            completionsForModule = internalGenerateGetCompletionsForModule(module, state, searchSameLevelMods,
+                    lookForArgumentCompletion);
+            completionsForModule = filterForWildImport(module, handleAsWildImport, completionsForModule);
+        } finally {
+            if (computation != null) {
+                completionsCache.finishComputation(computation, sharedKey, completionsForModule);
+            }
+        }
 
         state.add(key, completionsForModule);
         return completionsForModule;
     }
 
+    /**
+     * @return the key to get the completions from the cache shared among requests or null if they can't be shared
+     * (they can only be shared when they don't depend on the position in the module -- i.e.: line < 0). The
+     * module instance is part of the key, so, a rebuilt module never gets the completions of its previous version.
+     */
+    private Object getSharedCacheKey(IModule module, ICompletionState state, boolean searchSameLevelMods,
+            boolean lookForArgumentCompletion, boolean handleAsWildImport) {
+        if (!CompletionsCache.USE_COMPLETIONS_CACHE || state.getLine() >= 0 || !(module instanceof AbstractModule)) {
+            return null;
+        }
+        String act = state.getActivationToken();
+        if (act.indexOf('(') != -1) {
+            return null; //the state is changed when computing it
+        }
+        IPythonNature nature = state.getNature();
+        try {
+            if (nature == null || nature.getInterpreterType() != IPythonNature.INTERPRETER_TYPE_PYTHON) {
+                //Java classes (for jython) are not tracked by the modules managers.
+                return null;
+            }
+        } catch (CoreException e) {
+            return null;
+        }
+        return new TupleN(modulesManager, nature, ((AbstractModule) module).getModuleStamp(), module.getName(),
+                act, searchSameLevelMods, lookForArgumentCompletion, state.getBuiltinsGotten(),
+                state.getLocalImportsGotten(), handleAsWildImport, state.getLookingFor(), state.getIsInCalltip());
+    }
+
     /**
      * Filters the tokens according to the wild import rules:
      * - the tokens starting with '_' are removed 
@@ -745,6 +800,7 @@ public abstract class AbstractASTManager implements ICodeCompletionASTManager {
 
                     //ok, didn't find in assert isinstance... keep going
                     //if there was no assert for the class, get from extensions / local scope interface
+                    CompletionsCache.getSingleton().markIncomplete(); //the participants may use any information
                     tokens = CompletionParticipantsHelper.getCompletionsForMethodParameter(state, localScope).toArray(
                             EMPTY_ITOKEN_ARRAY);
                     if (tokens != null && tokens.length > 0) {
@@ -797,6 +853,7 @@ public abstract class AbstractASTManager implements ICodeCompletionASTManager {
         }
 
         if (useExtensions && localScope != null) {
+            CompletionsCache.getSingleton().markIncomplete(); //the participants may use any information
             assignCompletions.completions.addAll(CompletionParticipantsHelper.getCompletionsForTokenWithUndefinedType(
                     state, localScope));
         }
@@ -131,6 +131,10 @@ public final class CompletionState implements ICompletionState {
                 val.put(def, numberOfOccurences + 1);
             }
 
+            if (occuredMoreThanMax) {
+                //the completions being computed may be partial: don't keep them in the shared cache.
+                CompletionsCache.getSingleton().markIncomplete();
+            }
             return occuredMoreThanMax;
         }
     }
@@ -252,6 +256,7 @@ public final class CompletionState implements ICompletionState {
     public boolean checkFoudSameDefinition(int line, int col, IModule mod) {
         Tuple3<Integer, Integer, IModule> key = new Tuple3<Integer, Integer, IModule>(line, col, mod);
         if (foundSameDefinitionMemory.contains(key)) {
+            CompletionsCache.getSingleton().markIncomplete();
             return true;
         }
         foundSameDefinitionMemory.add(key);
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.python.pydev.core.IToken;
+
+import com.aptana.shared_core.string.StringUtils;
+
+/**
+ * A cache for the completions of modules which is shared among completion requests (the cache in the
+ * ICompletionState only lives while a single request is running).
+ *
+ * While an entry is computed, the names of the modules requested to the modules managers are recorded (see
+ * #addDependency and #addModulesListDependency) and the entry is removed when one of those modules (or a module
+ * listed) is added, removed or rebuilt (see #invalidate). Entries computed when a recursion was found (in which case
+ * the completions may be partial) or which used information that can't be tracked are not kept (see
+ * #markIncomplete).
+ */
+public final class CompletionsCache {
+
+    public static boolean USE_COMPLETIONS_CACHE = true;
+
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    /**
+     * Prefix for the dependencies on lists of modules (module names can't have it).
+     */
+    private static final String MODULES_LIST_PREFIX = "*";
+
+    private static final class Entry {
+        final IToken[] tokens;
+        final Set<String> dependencies;
+
+        Entry(IToken[] tokens, Set<String> dependencies) {
+            this.tokens = tokens;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * An entry being computed in some thread.
+     */
+    public static final class Computation {
+        private final Computation parent;
+        private final Set<String> dependencies = new HashSet<String>();
+        private boolean incomplete;
+
+        private Computation(Computation parent) {
+            this.parent = parent;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Key -> entry in access order (synchronized with lock).
+     */
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+    /**
+     * Module name -> keys of the entries that depend on it (synchronized with lock).
+     */
+    private final Map<String, Set<Object>> dependents = new HashMap<String, Set<Object>>();
+
+    /**
+     * The computations running in all the threads (synchronized with lock).
+     */
+    private final Set<Computation> computations = new HashSet<Computation>();
+
+    /**
+     * The innermost computation running in the current thread.
+     */
+    private final ThreadLocal<Computation> current = new ThreadLocal<Computation>();
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @return the completions for the given key or null if they're not available. If some entry is being computed
+     * in the current thread, it's marked as depending on the same modules of the entry returned.
+     */
+    public IToken[] get(Object key) {
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            Computation computation = current.get();
+            if (computation != null) {
+                computation.dependencies.addAll(entry.dependencies);
+            }
+            return entry.tokens;
+        }
+    }
+
+    /**
+     * Starts recording the modules used to compute an entry in the current thread (#finishComputation must be
+     * called afterwards in a finally block).
+     */
+    public Computation startComputation() {
+        Computation computation = new Computation(current.get());
+        synchronized (lock) {
+            computations.add(computation);
+        }
+        current.set(computation);
+        return computation;
+    }
+
+    /**
+     * Finishes a computation started with #startComputation, adding the completions found to the cache (if it
+     * wasn't invalidated in the meanwhile).
+     *
+     * @param tokens the completions computed (null if the computation failed).
+     */
+    public void finishComputation(Computation computation, Object key, IToken[] tokens) {
+        current.set(computation.parent);
+        synchronized (lock) {
+            computations.remove(computation);
+            if (computation.parent != null) {
+                //the entries being computed depend on whatever this one depends on.
+                computation.parent.dependencies.addAll(computation.dependencies);
+                computation.parent.incomplete |= computation.incomplete;
+            }
+            if (tokens == null || computation.incomplete || maxEntries <= 0) {
+                return;
+            }
+            Entry old = entries.put(key, new Entry(tokens, computation.dependencies));
+            if (old != null) {
+                removeDependents(key, old);
+            }
+            for (String dependency : computation.dependencies) {
+                Set<Object> keys = dependents.get(dependency);
+                if (keys == null) {
+                    keys = new HashSet<Object>();
+                    dependents.put(dependency, keys);
+                }
+                keys.add(key);
+            }
+            removeExceeding(maxEntries);
+        }
+    }
+
+    /**
+     * Marks that the entry being computed in the current thread (if any) depends on the module with the given
+     * name (which was requested, even if it wasn't found).
+     */
+    public void addDependency(String moduleName) {
+        Computation computation = current.get();
+        if (computation != null) {
+            synchronized (lock) {
+                computation.dependencies.add(moduleName);
+            }
+        }
+    }
+
+    /**
+     * Marks that the entry being computed in the current thread (if any) depends on the modules whose names start
+     * with the given string.
+     */
+    public void addModulesListDependency(String startingWith) {
+        int i = startingWith.lastIndexOf('.');
+        addDependency(MODULES_LIST_PREFIX + (i == -1 ? "" : startingWith.substring(0, i)));
+    }
+
+    /**
+     * Marks that the entry being computed in the current thread (if any) must not be kept (i.e.: a recursion was
+     * found and the completions may be partial or information from elsewhere was used).
+     */
+    public void markIncomplete() {
+        Computation computation = current.get();
+        if (computation != null) {
+            synchronized (lock) {
+                computation.incomplete = true;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries that depend on the given module or that listed it (and marks the computations running
+     * with such a dependency as incomplete).
+     */
+    public void invalidate(String moduleName) {
+        List<String> names = new ArrayList<String>();
+        names.add(moduleName);
+        if (moduleName.endsWith(".__init__")) {
+            //the package may be requested without the __init__
+            moduleName = moduleName.substring(0, moduleName.length() - 9);
+            names.add(moduleName);
+        }
+        //lists of modules are registered by the package (the part before the last dot of the list requested).
+        names.add(MODULES_LIST_PREFIX + moduleName);
+        for (int i = moduleName.lastIndexOf('.'); i != -1; i = moduleName.lastIndexOf('.', i - 1)) {
+            names.add(MODULES_LIST_PREFIX + moduleName.substring(0, i));
+        }
+        names.add(MODULES_LIST_PREFIX);
+
+        synchronized (lock) {
+            for (String name : names) {
+                Set<Object> keys = dependents.remove(name);
+                if (keys != null) {
+                    for (Object key : keys) {
+                        Entry entry = entries.remove(key);
+                        if (entry != null) {
+                            removeDependents(key, entry);
+                        }
+                    }
+                }
+                for (Computation computation : computations) {
+                    if (computation.dependencies.contains(name)) {
+                        computation.incomplete = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the entries (and marks all the computations running as incomplete).
+     */
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+            dependents.clear();
+            for (Computation computation : computations) {
+                computation.incomplete = true;
+            }
+        }
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        synchronized (lock) {
+            removeExceeding(maxEntries);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until we have at most the given number of entries.
+     *
+     * Must be called with the lock held.
+     */
+    private void removeExceeding(int max) {
+        Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > max && it.hasNext()) {
+            Map.Entry<Object, Entry> next = it.next();
+            it.remove();
+            removeDependents(next.getKey(), next.getValue());
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void removeDependents(Object key, Entry entry) {
+        for (String dependency : entry.dependencies) {
+            Set<Object> keys = dependents.get(dependency);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.size() == 0) {
+                    dependents.remove(dependency);
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        synchronized (lock) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (lock) {
+            return misses;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return StringUtils.format("CompletionsCache[entries: %s, hits: %s, misses: %s]", entries.size(), hits,
+                    misses);
+        }
+    }
+
+    private static final CompletionsCache singleton = new CompletionsCache();
+
+    public static CompletionsCache getSingleton() {
+        return singleton;
+    }
+}
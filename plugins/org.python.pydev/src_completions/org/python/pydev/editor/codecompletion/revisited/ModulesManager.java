@@ -175,6 +175,28 @@ public abstract class ModulesManager implements IModulesManager {
 
     protected static final ModulesManagerCache cache = new ModulesManagerCache();
 
+    /**
+     * Hits/misses/evictions of this manager in the modules cache.
+     */
+    final ModulesManagerCacheStats cacheStats = new ModulesManagerCacheStats();
+
+    public ModulesManagerCacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    /**
+     * Completions shared among requests (entries are removed when the modules they depend on are changed here).
+     */
+    protected static final CompletionsCache completionsCache = CompletionsCache.getSingleton();
+
+    /**
+     * Sets the maximum weight of the modules kept in memory for all the managers (the weight of a source module
+     * is the number of nodes in its ast).
+     */
+    public static void setCacheMaxWeight(long maxWeight) {
+        cache.setMaxWeight(maxWeight);
+    }
+
     /**
      * Helper for using the pythonpath. Also persisted.
      */
@@ -498,6 +520,7 @@ public abstract class ModulesManager implements IModulesManager {
             this.modulesKeys.clear();
             this.modulesKeys.putAll(keys);
         }
+        completionsCache.clear();
 
     }
 
@@ -620,6 +643,7 @@ public abstract class ModulesManager implements IModulesManager {
             this.modulesKeys.remove(key);
             ModulesManager.cache.remove(key, this);
         }
+        completionsCache.invalidate(key.name);
     }
 
     /**
@@ -659,6 +683,7 @@ public abstract class ModulesManager implements IModulesManager {
             this.modulesKeys.put(key, key);
             ModulesManager.cache.add(key, n, this);
         }
+        completionsCache.invalidate(key.name);
     }
 
     /**
@@ -679,6 +704,7 @@ public abstract class ModulesManager implements IModulesManager {
     }
 
     public SortedMap<ModulesKey, ModulesKey> getAllDirectModulesStartingWith(String strStartingWith) {
+        completionsCache.addModulesListDependency(strStartingWith);
         if (strStartingWith.length() == 0) {
             synchronized (modulesKeysLock) {
                 //we don't want it to be backed up by the same set (because it may be changed, so, we may get
@@ -740,6 +766,7 @@ public abstract class ModulesManager implements IModulesManager {
             }
             nextHandle += 1; //Note: don't care about stack overflow!
             map.put(nextHandle, module);
+            completionsCache.invalidate(moduleName);
             return nextHandle;
         }
 
@@ -754,6 +781,7 @@ public abstract class ModulesManager implements IModulesManager {
                     if (stack.size() == 0) {
                         temporaryModules.remove(moduleName);
                     }
+                    completionsCache.invalidate(moduleName);
                 }
             } catch (Throwable e) {
                 Log.log(e);
@@ -772,6 +800,7 @@ public abstract class ModulesManager implements IModulesManager {
      * @return the module represented by this name
      */
     protected IModule getModule(boolean acceptCompiledModule, String name, IPythonNature nature, boolean dontSearchInit) {
+        completionsCache.addDependency(name);
         synchronized (lockTemporaryModules) {
             SortedMap<Integer, IModule> map = temporaryModules.get(name);
             if (map != null && map.size() > 0) {
@@ -851,6 +880,9 @@ public abstract class ModulesManager implements IModulesManager {
                                             this.getNature(), false);
                                     SourceModule zipModule = (SourceModule) n;
                                     zipModule.zipFilePath = emptyModuleForZip.pathInZip;
+                                    if (SourceModule.COMPACT_ASTS) {
+                                        zipModule.compactAst();
+                                    }
                                     n = decorateModule(n, nature);
                                 } catch (Exception exc1) {
                                     Log.log(exc1);
@@ -864,6 +896,10 @@ public abstract class ModulesManager implements IModulesManager {
                                 //NOTE: The nature (and so the grammar to be used) must be defined by this modules
                                 //manager (and not by the initial caller)!!
                                 n = AbstractModule.createModule(name, e.f, this.getNature(), true);
+                                if (SourceModule.COMPACT_ASTS && n instanceof SourceModule) {
+                                    //only used for code-completion and code-analysis: no need to keep the comments
+                                    ((SourceModule) n).compactAst();
+                                }
                                 n = decorateModule(n, nature);
                             } catch (IOException exc) {
                                 keyForCacheAccess.name = name;
@@ -927,14 +963,21 @@ public abstract class ModulesManager implements IModulesManager {
         if (n instanceof SourceModule && "django.db.models.base".equals(n.getName())) {
             SourceModule sourceModule = (SourceModule) n;
             SimpleNode ast = sourceModule.getAst();
-            for (SimpleNode node : ((Module) ast).body) {
+            if (!(ast instanceof Module)) {
+                return n;
+            }
+            stmtType[] body = ((Module) ast).body;
+            for (int j = 0; j < body.length; j++) {
+                SimpleNode node = body[j];
                 if (node instanceof ClassDef && "Model".equals(NodeUtils.getRepresentationString(node))) {
                     Object[][] metaclassAttrs = new Object[][] {
                             { "objects", NodeUtils.makeAttribute("django.db.models.manager.Manager()") },
                             { "DoesNotExist", new Name("Exception", Name.Load, false) },
                             { "MultipleObjectsReturned", new Name("Exception", Name.Load, false) }, };
 
-                    ClassDef classDef = (ClassDef) node;
+                    //The ast may be shared (from the ast cache or with the editor), so, the decorations are added
+                    //to a copy of the class (in a new module ast) and not to the ast we got.
+                    ClassDef classDef = ((ClassDef) node).createCopy();
                     stmtType[] newBody = new stmtType[classDef.body.length + metaclassAttrs.length];
                     System.arraycopy(classDef.body, 0, newBody, metaclassAttrs.length, classDef.body.length);
 
@@ -952,7 +995,13 @@ public abstract class ModulesManager implements IModulesManager {
                     }
 
                     classDef.body = newBody;
-                    break;
+
+                    stmtType[] newModuleBody = body.clone();
+                    newModuleBody[j] = classDef;
+                    Module newAst = new Module(newModuleBody);
+                    newAst.beginLine = ast.beginLine;
+                    newAst.beginColumn = ast.beginColumn;
+                    return sourceModule.createCopyWithAst(newAst);
                 }
             }
         }
@@ -984,6 +1033,7 @@ public abstract class ModulesManager implements IModulesManager {
      */
     public static void clearCache() {
         ModulesManager.cache.clear();
+        completionsCache.clear();
     }
 
     /** 
@@ -6,46 +6,147 @@
  */
 package org.python.pydev.editor.codecompletion.revisited;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.revisited.modules.AbstractModule;
-
-import com.aptana.shared_core.cache.LRUCache;
-import com.aptana.shared_core.structure.Tuple;
+import org.python.pydev.editor.codecompletion.revisited.modules.CompiledModule;
+import org.python.pydev.editor.codecompletion.revisited.modules.SourceModule;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.VisitorBase;
 
 /**
- * This is a 'global' cache implementation, that can have at most n objects in
- * the memory at any time.
+ * This is a 'global' cache implementation (shared by all the managers), which is bounded by the estimated
+ * size of the modules in it (the number of nodes in the ast for source modules).
+ *
+ * The cache is split in shards (by the module name), so, different modules may be added concurrently and
+ * getting a module that's already in the cache doesn't need any lock. Each shard evicts the modules that
+ * were least recently used when it goes above its part of the max weight.
  */
 final class ModulesManagerCache {
+
     /**
-     * Defines the maximum amount of modules that can be in the memory at any time (for all the managers)
+     * Default for the maximum weight of the modules that can be in the memory at any time (for all the managers).
      */
-    private static final int MAX_NUMBER_OF_MODULES = 400;
+    public static final int DEFAULT_MAX_WEIGHT = 1000000;
+
+    private static final int NUMBER_OF_SHARDS = 16;
 
     /**
-     * The access to the cache is synchronized
+     * An entry in the cache. Entries for the same module name in different managers are chained (and the chain
+     * is never changed in-place, so, it can be read without any lock).
      */
-    private LRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule> internalCache;
-    private final Object lock = new Object();
+    private static final class Entry {
+        final ModulesKey key;
+        final ModulesManager manager;
+        final AbstractModule module;
+        final int weight;
+        final Entry next;
+        volatile long lastAccess;
+
+        Entry(ModulesKey key, ModulesManager manager, AbstractModule module, int weight, Entry next, long lastAccess) {
+            this.key = key;
+            this.manager = manager;
+            this.module = module;
+            this.weight = weight;
+            this.next = next;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Shard {
+        final ConcurrentHashMap<ModulesKey, Entry> map = new ConcurrentHashMap<ModulesKey, Entry>();
+
+        /**
+         * Used to know which entries were least recently accessed.
+         */
+        final AtomicLong clock = new AtomicLong();
+
+        /**
+         * Lock for changing the map (reads don't need it).
+         */
+        final Object lock = new Object();
+
+        /**
+         * Sum of the weights in this shard (synchronized with lock).
+         */
+        long weight;
+    }
+
+    private static final Comparator<Entry> LEAST_RECENTLY_USED_FIRST = new Comparator<Entry>() {
+
+        public int compare(Entry o1, Entry o2) {
+            long a1 = o1.lastAccess;
+            long a2 = o2.lastAccess;
+            return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+        }
+    };
+
+    private final Shard[] shards;
+
+    private volatile long maxWeightPerShard;
 
     ModulesManagerCache() {
-        internalCache = new LRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule>(MAX_NUMBER_OF_MODULES);
+        shards = new Shard[NUMBER_OF_SHARDS];
+        for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        setMaxWeight(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Sets the maximum weight of the modules kept in memory (the modules above it are only removed in the
+     * next addition to the cache).
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeightPerShard = Math.max(1, maxWeight / NUMBER_OF_SHARDS);
+    }
+
+    private Shard getShard(ModulesKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % NUMBER_OF_SHARDS];
+    }
+
+    private static Entry find(Entry entry, ModulesManager modulesManager) {
+        while (entry != null && entry.manager != modulesManager) {
+            entry = entry.next;
+        }
+        return entry;
     }
 
     /**
      * Overridden so that if we do not find the key, we have the chance to create it.
      */
     public AbstractModule getObj(ModulesKey key, ModulesManager modulesManager) {
+        Shard shard = getShard(key);
+        Entry entry = find(shard.map.get(key), modulesManager);
+        if (entry != null) {
+            entry.lastAccess = shard.clock.incrementAndGet();
+            modulesManager.cacheStats.onHit();
+            return entry.module;
+        }
+        modulesManager.cacheStats.onMiss();
+
+        //not there: create an empty module if the key is in the manager (with the keys lock so that a
+        //concurrent removal doesn't leave the module in the cache).
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-
-            synchronized (lock) {
-                AbstractModule obj = internalCache.getObj(keyTuple);
-                if (obj == null && modulesManager.modulesKeys.containsKey(key)) {
-                    key = modulesManager.modulesKeys.get(key); //get the 'real' key
-                    obj = AbstractModule.createEmptyModule(key);
-                    internalCache.add(keyTuple, obj);
+            ModulesKey realKey = modulesManager.modulesKeys.get(key); //get the 'real' key
+            if (realKey == null) {
+                return null;
+            }
+            synchronized (shard.lock) {
+                entry = find(shard.map.get(realKey), modulesManager);
+                if (entry != null) {
+                    return entry.module; //added by some other thread in the meanwhile
                 }
+                AbstractModule obj = AbstractModule.createEmptyModule(realKey);
+                put(shard, realKey, modulesManager, obj, 1);
                 return obj;
             }
         }
@@ -53,25 +154,142 @@ final class ModulesManagerCache {
 
     public void remove(ModulesKey key, ModulesManager modulesManager) {
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-            synchronized (lock) {
-                internalCache.remove(keyTuple);
+            Shard shard = getShard(key);
+            synchronized (shard.lock) {
+                Entry head = shard.map.get(key);
+                if (find(head, modulesManager) != null) {
+                    setChain(shard, key, removeFromChain(shard, head, modulesManager));
+                }
             }
         }
     }
 
     public void add(ModulesKey key, AbstractModule n, ModulesManager modulesManager) {
+        int weight = estimateWeight(n);
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-            synchronized (lock) {
-                internalCache.add(keyTuple, n);
+            Shard shard = getShard(key);
+            synchronized (shard.lock) {
+                put(shard, key, modulesManager, n, weight);
             }
         }
     }
 
     public void clear() {
-        synchronized (lock) {
-            internalCache.clear();
+        for (Shard shard : shards) {
+            synchronized (shard.lock) {
+                shard.map.clear();
+                shard.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * Must be called with the shard lock held.
+     */
+    private void put(Shard shard, ModulesKey key, ModulesManager modulesManager, AbstractModule module, int weight) {
+        Entry others = removeFromChain(shard, shard.map.get(key), modulesManager);
+        shard.map.put(key, new Entry(key, modulesManager, module, weight, others, shard.clock.incrementAndGet()));
+        shard.weight += weight;
+
+        long maxWeight = maxWeightPerShard;
+        if (shard.weight > maxWeight) {
+            evict(shard, maxWeight - (maxWeight / 4));
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the weight of the shard is below the given weight (it goes
+     * a bit below the max weight so that we don't have to do it on each addition).
+     *
+     * Must be called with the shard lock held.
+     */
+    private void evict(Shard shard, long targetWeight) {
+        ArrayList<Entry> entries = new ArrayList<Entry>(shard.map.size());
+        for (Entry head : shard.map.values()) {
+            for (Entry e = head; e != null; e = e.next) {
+                entries.add(e);
+            }
+        }
+        Collections.sort(entries, LEAST_RECENTLY_USED_FIRST);
+
+        //the last one is always kept (it's the one just added if nothing was accessed in the meanwhile).
+        for (int i = 0; i < entries.size() - 1 && shard.weight > targetWeight; i++) {
+            Entry e = entries.get(i);
+            Entry head = shard.map.get(e.key);
+            if (find(head, e.manager) == e) {
+                setChain(shard, e.key, removeFromChain(shard, head, e.manager));
+                e.manager.cacheStats.onEviction();
+            }
+        }
+    }
+
+    /**
+     * @return a chain without the entry for the given manager (the weight of the removed entry is discounted
+     * from the shard).
+     */
+    private static Entry removeFromChain(Shard shard, Entry head, ModulesManager modulesManager) {
+        if (head == null) {
+            return null;
+        }
+        if (head.manager == modulesManager) {
+            shard.weight -= head.weight;
+            return head.next;
+        }
+        Entry rest = removeFromChain(shard, head.next, modulesManager);
+        if (rest == head.next) {
+            return head;
+        }
+        return new Entry(head.key, head.manager, head.module, head.weight, rest, head.lastAccess);
+    }
+
+    private static void setChain(Shard shard, ModulesKey key, Entry head) {
+        if (head == null) {
+            shard.map.remove(key);
+        } else {
+            shard.map.put(key, head);
+        }
+    }
+
+    /**
+     * Visitor which counts the nodes in an ast.
+     */
+    private static final class NodesCounter extends VisitorBase {
+
+        int count;
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            count++;
+            return null;
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+    }
+
+    /**
+     * @return the estimated size of the module (the number of nodes in the ast for source modules and the
+     * number of tokens for compiled modules).
+     */
+    static int estimateWeight(AbstractModule module) {
+        int weight = 1;
+        try {
+            if (module instanceof SourceModule) {
+                SimpleNode ast = ((SourceModule) module).getAst();
+                if (ast != null) {
+                    NodesCounter counter = new NodesCounter();
+                    ast.accept(counter);
+                    weight += counter.count;
+                }
+
+            } else if (module instanceof CompiledModule) {
+                weight += module.getGlobalTokens().length;
+            }
+        } catch (Exception e) {
+            Log.log(e);
         }
+        return weight;
     }
-}
\ No newline at end of file
+}
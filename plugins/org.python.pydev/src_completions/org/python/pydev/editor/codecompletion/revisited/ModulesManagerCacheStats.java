@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the number of hits/misses/evictions in the modules cache for a given modules manager.
+ */
+public final class ModulesManagerCacheStats {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    void onHit() {
+        hits.incrementAndGet();
+    }
+
+    void onMiss() {
+        misses.incrementAndGet();
+    }
+
+    void onEviction() {
+        evictions.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of modules removed from the cache because it was full.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return hits / (hits + misses)
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        if (total == 0) {
+            return 0;
+        }
+        return h / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return com.aptana.shared_core.string.StringUtils.format(
+                "ModulesManagerCacheStats[hits: %s, misses: %s, evictions: %s, hit rate: %s]", getHits(),
+                getMisses(), getEvictions(), getHitRate());
+    }
+}
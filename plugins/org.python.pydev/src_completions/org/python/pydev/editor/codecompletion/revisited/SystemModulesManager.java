@@ -179,6 +179,7 @@ public final class SystemModulesManager extends ModulesManagerWithBuild implemen
     private transient Map<File, Long> predefinedFilesNotParsedToTimestamp;
 
     public AbstractModule getBuiltinModule(String name, boolean dontSearchInit) {
+        completionsCache.addDependency(name);
         AbstractModule n = null;
 
         //check for supported builtins these don't have files associated.
@@ -237,8 +238,9 @@ public final class SystemModulesManager extends ModulesManagerWithBuild implemen
                             return IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_3_0; // Always Python 3.0 here
                         }
                     };
-                    Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(new PyParser.ParserInfo(doc, provider,
-                            name, predefinedModule));
+                    PyParser.ParserInfo info = new PyParser.ParserInfo(doc, provider, name, predefinedModule);
+                    info.useAstCache = true;
+                    Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
                     if (obj.o2 != null) {
                         if (lastModified == null) {
                             lastModified = predefinedModule.lastModified();
@@ -393,6 +395,7 @@ public final class SystemModulesManager extends ModulesManagerWithBuild implemen
             modulesKeys.clear();
             modulesKeys.putAll(keysFound);
         }
+        completionsCache.clear();
         this.save();
     }
 
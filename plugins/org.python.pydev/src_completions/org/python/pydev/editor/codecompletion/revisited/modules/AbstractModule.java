@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.core.FileUtilsFileBuffer;
@@ -243,6 +244,17 @@ public abstract class AbstractModule implements IModule {
      */
     protected String name;
 
+    private static final AtomicLong lastModuleStamp = new AtomicLong();
+
+    /**
+     * Identifies this instance (when a module is rebuilt a new instance is created, so, it has a new stamp).
+     */
+    private final long moduleStamp = lastModuleStamp.incrementAndGet();
+
+    public long getModuleStamp() {
+        return moduleStamp;
+    }
+
     /** 
      * @see org.python.pydev.core.IModule#getName()
      */
@@ -291,12 +303,15 @@ public abstract class AbstractModule implements IModule {
 
         if (f != null) {
             if (!checkForPath || PythonPathHelper.isValidSourceFile(f.getName())) {
-                Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(new PyParser.ParserInfo(doc, nature, name,
-                        f));
+                PyParser.ParserInfo info = new PyParser.ParserInfo(doc, nature, name, f);
+                info.useAstCache = true;
+                Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
                 return new SourceModule(name, f, obj.o1, obj.o2);
             }
         } else {
-            Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(new PyParser.ParserInfo(doc, nature, name, f));
+            PyParser.ParserInfo info = new PyParser.ParserInfo(doc, nature, name, f);
+            info.useAstCache = true;
+            Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
             return new SourceModule(name, f, obj.o1, obj.o2);
         }
         return null;
@@ -0,0 +1,427 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited.modules;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.pydev.core.IInterpreterInfo;
+import org.python.pydev.core.log.Log;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.string.FastStringBuffer;
+import com.aptana.shared_core.string.StringUtils;
+import com.aptana.shared_core.structure.Tuple;
+
+/**
+ * Keeps on disk the information the shell gave for compiled modules (the completions for the module and its
+ * tokens and the definitions found), so that after a restart (or after the shells are restarted) the compiled
+ * modules don't need a shell to get that information again.
+ *
+ * There's one cache for each interpreter (executable and version) and pythonpath (as the shell answers with the
+ * modules found in the pythonpath it's given) and it's kept at the user home (so, it's shared among workspaces).
+ * Each module is saved in its own file, which is only read when the module is first requested and is discarded if
+ * the stamp (modification time and size) of the file backing the module (the .so/.pyd, or the interpreter
+ * executable for builtin modules) is different from the one when the info was saved.
+ */
+public final class CompiledModuleInfoCache {
+
+    public static boolean USE_PERSISTED_INFO = true;
+
+    private static final String VERSION_HEADER = "v3";
+
+    private static final String ENCODING = "utf-8";
+
+    /**
+     * Where the caches are kept (by default: ~/.pydev/compiled_modules). May be set in tests.
+     */
+    /*default*/static File location;
+
+    private static final Map<String, CompiledModuleInfoCache> caches = new HashMap<String, CompiledModuleInfoCache>();
+
+    /**
+     * The shell info for a given module.
+     */
+    public static final class ModuleInfo {
+
+        private final String moduleName;
+
+        /**
+         * The file for the module as reported by the shell (may be null if still unknown or "None" for builtins).
+         */
+        private String file;
+
+        /**
+         * The stamp of the file backing the module (only persisted if != null).
+         */
+        private String stamp;
+
+        /**
+         * Completions requested -> (file, completions)
+         */
+        private final Map<String, Tuple<String, List<String[]>>> completions = new HashMap<String, Tuple<String, List<String[]>>>();
+
+        /**
+         * Token -> definition found by the shell (null if it was not found).
+         */
+        private final Map<String, Tuple<String[], int[]>> definitions = new HashMap<String, Tuple<String[], int[]>>();
+
+        private ModuleInfo(String moduleName) {
+            this.moduleName = moduleName;
+        }
+    }
+
+    private final File directory;
+
+    private final String executable;
+
+    private final String version;
+
+    /**
+     * The pythonpath given to the shell (entries separated by the path separator).
+     */
+    private final String pythonpath;
+
+    /**
+     * Module name -> info (only the modules already requested are here).
+     */
+    private final Map<String, ModuleInfo> modules = new HashMap<String, ModuleInfo>();
+
+    /*default*/CompiledModuleInfoCache(File directory, String executable, String version, String pythonpath) {
+        this.directory = directory;
+        this.executable = executable;
+        this.version = version;
+        this.pythonpath = pythonpath;
+    }
+
+    /**
+     * @param pythonpath the pythonpath given to the shell to get the info.
+     * @return the cache for the given interpreter and pythonpath or null if the info shouldn't be persisted.
+     */
+    public static CompiledModuleInfoCache getCache(IInterpreterInfo info, List<String> pythonpath) {
+        if (!USE_PERSISTED_INFO || info == null || pythonpath == null) {
+            return null;
+        }
+        String executable = info.getExecutableOrJar();
+        String version = info.getVersion();
+        if (executable == null || version == null) {
+            return null;
+        }
+        String path = StringUtils.join(File.pathSeparator, pythonpath);
+        String key = executable + "\n" + version + "\n" + path;
+        synchronized (caches) {
+            CompiledModuleInfoCache cache = caches.get(key);
+            if (cache == null) {
+                File baseDir = location;
+                if (baseDir == null) {
+                    baseDir = new File(new File(System.getProperty("user.home"), ".pydev"), "compiled_modules");
+                }
+                cache = new CompiledModuleInfoCache(new File(baseDir, StringUtils.md5(key)), executable, version,
+                        path);
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return the completions the shell gave for the given request (or null if not available).
+     */
+    public Tuple<String, List<String[]>> getCompletions(String moduleName, String request) {
+        synchronized (modules) {
+            return getModuleInfo(moduleName).completions.get(request);
+        }
+    }
+
+    /**
+     * Keeps the completions the shell gave for the given request (when the request is the module itself, the
+     * file reported is used to know whether the info is still valid later on).
+     */
+    public void putCompletions(String moduleName, String request, Tuple<String, List<String[]>> completions) {
+        synchronized (modules) {
+            ModuleInfo info = getModuleInfo(moduleName);
+            if (request.equals(moduleName)) {
+                info.file = completions.o1;
+                info.stamp = getStamp(info.file);
+            }
+            info.completions.put(request, completions);
+            save(info);
+        }
+    }
+
+    /**
+     * @return whether a definition for the given token is available (note that the definition itself may be
+     * null if the shell wasn't able to find it).
+     */
+    public boolean hasDefinition(String moduleName, String token) {
+        synchronized (modules) {
+            return getModuleInfo(moduleName).definitions.containsKey(token);
+        }
+    }
+
+    public Tuple<String[], int[]> getDefinition(String moduleName, String token) {
+        synchronized (modules) {
+            return getModuleInfo(moduleName).definitions.get(token);
+        }
+    }
+
+    public void putDefinition(String moduleName, String token, Tuple<String[], int[]> definition) {
+        synchronized (modules) {
+            ModuleInfo info = getModuleInfo(moduleName);
+            info.definitions.put(token, definition);
+            save(info);
+        }
+    }
+
+    /**
+     * Removes the info of all the modules of this interpreter (in memory and on disk).
+     */
+    public void clear() {
+        synchronized (modules) {
+            modules.clear();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the stamp (modification time and size) of the file backing the module with the given file (the
+     * interpreter executable is used for builtins) or null if it doesn't exist.
+     */
+    private String getStamp(String moduleFile) {
+        File f = null;
+        if (moduleFile != null && !moduleFile.equals("None")) {
+            f = new File(moduleFile);
+            if (moduleFile.toLowerCase().endsWith(".pyc")) {
+                File source = new File(moduleFile.substring(0, moduleFile.length() - 1));
+                if (source.exists()) {
+                    f = source;
+                }
+            }
+        } else {
+            f = new File(executable);
+        }
+        if (!f.exists()) {
+            return null;
+        }
+        return f.lastModified() + ":" + f.length();
+    }
+
+    private File getFileForModule(String moduleName) {
+        return new File(directory, moduleName + "_" + StringUtils.md5(moduleName).substring(0, 4) + ".txt");
+    }
+
+    /**
+     * Must be called synchronized on modules.
+     */
+    private ModuleInfo getModuleInfo(String moduleName) {
+        ModuleInfo info = modules.get(moduleName);
+        if (info == null) {
+            info = load(moduleName);
+            if (info == null) {
+                info = new ModuleInfo(moduleName);
+            }
+            modules.put(moduleName, info);
+        }
+        return info;
+    }
+
+    /**
+     * @return the info saved for the module or null if there's no valid info saved.
+     */
+    private ModuleInfo load(String moduleName) {
+        File file = getFileForModule(moduleName);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String contents = (String) FileUtils.getFileContentsCustom(file, ENCODING, String.class);
+            ModuleInfo info = fromString(moduleName, contents);
+            if (info != null && info.stamp.equals(getStamp(info.file))) {
+                return info;
+            }
+        } catch (Exception e) {
+            Log.log("Error loading compiled module info from: " + file, e);
+        }
+        //invalid or changed: it'll be gotten from the shell again.
+        file.delete();
+        return null;
+    }
+
+    private void save(ModuleInfo info) {
+        if (info.stamp == null) {
+            return; //we still don't know which file backs the module (or it doesn't exist): keep it only in memory.
+        }
+        try {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            File file = getFileForModule(info.moduleName);
+            File temp = new File(directory, file.getName() + ".tmp");
+            FileUtils.writeBytesToFile(toString(info).getBytes(ENCODING), temp);
+            //other workspaces may be reading it: only replace it when the new contents are completely written.
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (UnsupportedEncodingException e) {
+            Log.log(e);
+        }
+    }
+
+    /*default*/String toString(ModuleInfo info) {
+        FastStringBuffer buf = new FastStringBuffer(1024);
+        buf.append(VERSION_HEADER).append('\n');
+        appendLine(buf, executable, version, pythonpath, info.moduleName, info.file, info.stamp);
+
+        for (Map.Entry<String, Tuple<String, List<String[]>>> entry : info.completions.entrySet()) {
+            List<String[]> comps = entry.getValue().o2;
+            appendLine(buf, "C", entry.getKey(), entry.getValue().o1, String.valueOf(comps.size()));
+            for (String[] comp : comps) {
+                appendLine(buf, comp);
+            }
+        }
+
+        for (Map.Entry<String, Tuple<String[], int[]>> entry : info.definitions.entrySet()) {
+            Tuple<String[], int[]> def = entry.getValue();
+            if (def == null) {
+                appendLine(buf, "N", entry.getKey());
+            } else {
+                appendLine(buf, "D", entry.getKey(), def.o1[0], def.o1[1], String.valueOf(def.o2[0]),
+                        String.valueOf(def.o2[1]));
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the info in the contents or null if it's not for the interpreter and pythonpath of this cache.
+     */
+    /*default*/ModuleInfo fromString(String moduleName, String contents) {
+        String[] lines = contents.split("\n", -1);
+        if (lines.length < 2 || !lines[0].equals(VERSION_HEADER)) {
+            return null;
+        }
+        String[] header = splitLine(lines[1]);
+        if (header.length != 6 || !executable.equals(header[0]) || !version.equals(header[1])
+                || !pythonpath.equals(header[2]) || !moduleName.equals(header[3]) || header[5] == null) {
+            return null;
+        }
+        ModuleInfo info = new ModuleInfo(moduleName);
+        info.file = header[4];
+        info.stamp = header[5];
+
+        int i = 2;
+        while (i < lines.length && lines[i].length() > 0) {
+            String[] line = splitLine(lines[i]);
+            i++;
+            if (line[0].equals("C")) {
+                int size = Integer.parseInt(line[3]);
+                List<String[]> comps = new ArrayList<String[]>(size);
+                for (int j = 0; j < size; j++, i++) {
+                    comps.add(splitLine(lines[i]));
+                }
+                info.completions.put(line[1], new Tuple<String, List<String[]>>(line[2], comps));
+
+            } else if (line[0].equals("D")) {
+                info.definitions.put(line[1], new Tuple<String[], int[]>(new String[] { line[2], line[3] },
+                        new int[] { Integer.parseInt(line[4]), Integer.parseInt(line[5]) }));
+
+            } else if (line[0].equals("N")) {
+                info.definitions.put(line[1], null);
+
+            } else {
+                return null;
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Appends the parts separated by tabs (null parts are written as \0 and tabs, new lines and backslashes
+     * inside the parts are escaped).
+     */
+    private static void appendLine(FastStringBuffer buf, String... parts) {
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                buf.append('\t');
+            }
+            String part = parts[i];
+            if (part == null) {
+                buf.append("\\0");
+                continue;
+            }
+            int len = part.length();
+            for (int j = 0; j < len; j++) {
+                char c = part.charAt(j);
+                switch (c) {
+                    case '\\':
+                        buf.append("\\\\");
+                        break;
+                    case '\t':
+                        buf.append("\\t");
+                        break;
+                    case '\n':
+                        buf.append("\\n");
+                        break;
+                    case '\r':
+                        buf.append("\\r");
+                        break;
+                    default:
+                        buf.append(c);
+                }
+            }
+        }
+        buf.append('\n');
+    }
+
+    private static String[] splitLine(String line) {
+        List<String> parts = new ArrayList<String>();
+        FastStringBuffer buf = new FastStringBuffer(line.length());
+        boolean isNull = false;
+        int len = line.length();
+        for (int i = 0; i < len; i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                parts.add(isNull ? null : buf.toString());
+                buf.clear();
+                isNull = false;
+
+            } else if (c == '\\' && i + 1 < len) {
+                i++;
+                switch (line.charAt(i)) {
+                    case 't':
+                        buf.append('\t');
+                        break;
+                    case 'n':
+                        buf.append('\n');
+                        break;
+                    case 'r':
+                        buf.append('\r');
+                        break;
+                    case '0':
+                        isNull = true;
+                        break;
+                    default:
+                        buf.append(line.charAt(i));
+                }
+            } else {
+                buf.append(c);
+            }
+        }
+        parts.add(isNull ? null : buf.toString());
+        return parts.toArray(new String[parts.size()]);
+    }
+}
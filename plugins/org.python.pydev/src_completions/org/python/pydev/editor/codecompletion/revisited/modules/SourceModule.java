@@ -22,16 +22,20 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.eclipse.jface.text.IDocument;
+import org.python.pydev.core.FileUtilsFileBuffer;
 import org.python.pydev.core.FullRepIterable;
 import org.python.pydev.core.ICodeCompletionASTManager;
 import org.python.pydev.core.ICompletionCache;
 import org.python.pydev.core.ICompletionState;
 import org.python.pydev.core.IDefinition;
+import org.python.pydev.core.IGrammarVersionProvider;
 import org.python.pydev.core.ILocalScope;
 import org.python.pydev.core.IModule;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.ISourceModule;
 import org.python.pydev.core.IToken;
+import org.python.pydev.core.MisconfigurationException;
 import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.ModulesKeyForZip;
 import org.python.pydev.core.Tuple3;
@@ -42,6 +46,7 @@ import org.python.pydev.core.structure.CompletionRecursionException;
 import org.python.pydev.core.structure.FastStack;
 import org.python.pydev.editor.codecompletion.revisited.AbstractToken;
 import org.python.pydev.editor.codecompletion.revisited.CompletionState;
+import org.python.pydev.editor.codecompletion.revisited.CompletionsCache;
 import org.python.pydev.editor.codecompletion.revisited.ConcreteToken;
 import org.python.pydev.editor.codecompletion.revisited.javaintegration.AbstractJavaClassModule;
 import org.python.pydev.editor.codecompletion.revisited.visitors.AssignDefinition;
@@ -62,6 +67,7 @@ import org.python.pydev.parser.jython.ast.ImportFrom;
 import org.python.pydev.parser.jython.ast.Module;
 import org.python.pydev.parser.jython.ast.Name;
 import org.python.pydev.parser.jython.ast.Str;
+import org.python.pydev.parser.visitors.AstCompactor;
 import org.python.pydev.parser.visitors.NodeUtils;
 import org.python.pydev.ui.filetypes.FileTypesPreferencesPage;
 
@@ -91,11 +97,22 @@ public class SourceModule extends AbstractModule implements ISourceModule {
 
     public static boolean TESTING = false;
 
+    /**
+     * Whether the modules kept by the modules managers should keep the compact version of their asts (without
+     * comments and with the identifiers interned).
+     */
+    public static boolean COMPACT_ASTS = true;
+
     /**
      * This is the abstract syntax tree based on the jython parser output.
      */
     private SimpleNode ast;
 
+    /**
+     * Whether the ast is the compact version (see AstCompactor). The full ast may be gotten through getFullAst.
+     */
+    private volatile boolean compactAst;
+
     /**
      * File that originated the syntax tree.
      */
@@ -768,6 +785,7 @@ public class SourceModule extends AbstractModule implements ISourceModule {
                         //see: http://sourceforge.net/tracker/?func=detail&aid=2992629&group_id=85796&atid=577329
                         int dotsFound = StringUtils.count(checkFor, '.');
                         if (dotsFound > 15) {
+                            CompletionsCache.getSingleton().markIncomplete();
                             throw new CompletionRecursionException("Trying to go to deep to find definition.\n"
                                     + "We probably started entering a recursion.\n" + "Module: "
                                     + definition.module.getName() + "\n" + "Token: " + checkFor);
@@ -1119,6 +1137,68 @@ public class SourceModule extends AbstractModule implements ISourceModule {
         return ast;
     }
 
+    /**
+     * @return whether the ast kept by this module is the compact version (without comments).
+     */
+    public boolean isCompactAst() {
+        return compactAst;
+    }
+
+    /**
+     * Replaces the ast kept by this module by its compact version (the module must not have been used yet, as
+     * the caches of the tokens are cleared).
+     */
+    public synchronized void compactAst() {
+        if (!compactAst && ast != null) {
+            ast = AstCompactor.createCompactCopy(ast);
+            tokensCache.clear();
+            globalModelVisitorCache = null;
+            scopeVisitorCache.clear();
+            findDefinitionVisitorCache.clear();
+            compactAst = true;
+        }
+    }
+
+    /**
+     * @return a new module (with the same name, file and time of the file) which keeps the given ast (used when
+     * the ast must be changed, as the ast kept by this module may be shared).
+     */
+    public SourceModule createCopyWithAst(SimpleNode newAst) {
+        SourceModule ret = new SourceModule(name, file, newAst, parseError);
+        ret.lastModified = lastModified;
+        ret.zipFilePath = zipFilePath;
+        ret.compactAst = compactAst;
+        return ret;
+    }
+
+    /**
+     * @return this module if it keeps the full ast or a new module with the full ast (with the comments) if the
+     * ast kept is the compact version (in which case the contents are parsed again).
+     */
+    public SourceModule getFullModule(IGrammarVersionProvider grammarVersionProvider)
+            throws MisconfigurationException {
+        if (!compactAst || file == null) {
+            return this;
+        }
+        IDocument doc;
+        try {
+            if (zipFilePath != null) {
+                doc = FileUtilsFileBuffer.getDocFromZip(file, zipFilePath);
+            } else {
+                doc = FileUtilsFileBuffer.getDocFromFile(file);
+            }
+        } catch (Exception e) {
+            Log.log(e);
+            return this;
+        }
+        SourceModule fullModule = createModuleFromDoc(name, file, doc, grammarVersionProvider, false);
+        if (fullModule == null || fullModule.ast == null) {
+            return this;
+        }
+        fullModule.zipFilePath = zipFilePath;
+        return fullModule;
+    }
+
     /**
      * @return the line that ends a given scope (or -1 if not found)
      */
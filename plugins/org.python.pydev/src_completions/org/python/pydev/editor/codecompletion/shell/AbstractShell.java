@@ -9,20 +9,18 @@
  */
 package org.python.pydev.editor.codecompletion.shell;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -37,6 +35,7 @@ import org.python.pydev.core.PythonNatureWithoutProjectException;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.PyCodeCompletionPreferencesPage;
 import org.python.pydev.editor.codecompletion.revisited.ModulesManager;
+import org.python.pydev.editor.codecompletion.shell.ShellResponsesReader.ShellRequest;
 import org.python.pydev.logging.DebugSettings;
 import org.python.pydev.plugin.PydevPlugin;
 
@@ -48,14 +47,15 @@ import com.aptana.shared_core.structure.Tuple;
  * This is the shell that 'talks' to the python / jython process (it is intended to be subclassed so that
  * we know how to deal with each). 
  * 
- * Its methods are synched to prevent concurrent access.
+ * The requests are sent as frames tagged with a request id (see: ShellProtocol) and the responses are read by
+ * a dedicated thread (see: ShellResponsesReader), so, many threads may have requests in-flight in the same shell
+ * (the server processes them in the order they're received). Only starting/stopping the shell is synched.
  * 
  * @author fabioz
  *
  */
 public abstract class AbstractShell {
 
-    public static final int BUFFER_SIZE = 1024;
     public static final int OTHERS_SHELL = 2;
     public static final int COMPLETION_SHELL = 1;
     protected static final int DEFAULT_SLEEP_BETWEEN_ATTEMPTS = 1000; //1sec, so we can make the number of attempts be shown as elapsed in secs
@@ -76,16 +76,26 @@ public abstract class AbstractShell {
      */
     private boolean isConnected = false;
 
-    private boolean isInRead = false;
-    private boolean isInWrite = false;
     private boolean isInRestart = false;
     private IInterpreterInfo shellInterpreter;
     private int shellMillis;
 
     /**
-     * Lock to know if there is someone already using this shell for some operation
+     * Time without any frame from the server until we consider that it's not responsive (while processing some
+     * request, the server keeps on sending a message saying that it's still processing it, which also counts as
+     * activity for the requests queued after it).
      */
-    private boolean isInOperation = false;
+    private static final int TIMEOUT_WITHOUT_ACTIVITY_MILLIS = 10000;
+
+    /**
+     * Reads the responses for the current connection (null if not connected).
+     */
+    private volatile ShellResponsesReader responsesReader;
+
+    /**
+     * Lock so that requests written from different threads are not interleaved.
+     */
+    private final Object writeLock = new Object();
 
     private static void dbg(String string, int priority) {
         if (priority <= DEBUG_SHELL) {
@@ -96,11 +106,6 @@ public abstract class AbstractShell {
         }
     }
 
-    /**
-     * the encoding used to encode messages
-     */
-    private static final String ENCODING_UTF_8 = "UTF-8";
-
     /**
      * Reference to 'global python shells'
      * 
@@ -485,8 +490,11 @@ public abstract class AbstractShell {
                             try {
                                 dbg("serverSocket.accept()! ", 1);
                                 socketToRead = serverSocket.accept();
-                                dbg("socketToRead.setSoTimeout(5000) ", 1);
-                                socketToRead.setSoTimeout(5000); //let's give it a higher timeout, as we're already half - connected
+                                //No timeout: the responses reader just blocks until a response arrives (the
+                                //timeout is checked for each request).
+                                socketToRead.setSoTimeout(0);
+                                responsesReader = new ShellResponsesReader(socketToRead.getInputStream());
+                                responsesReader.start();
                                 connected = true;
                                 dbg("connected! ", 1);
                             } catch (SocketTimeoutException e) {
@@ -575,176 +583,16 @@ public abstract class AbstractShell {
         }
     }
 
-    public synchronized void clearSocket() throws IOException {
-        long maxTime = System.currentTimeMillis() + (1000 * 50); //50 secs timeout
-
-        while (System.currentTimeMillis() < maxTime) { //clear until we get no message and timeout is not elapsed
-            byte[] b = new byte[AbstractShell.BUFFER_SIZE];
-            if (this.socketToRead != null) {
-                this.socketToRead.getInputStream().read(b);
-
-                String s = new String(b);
-                s = s.replaceAll((char) 0 + "", ""); //python sends this char as payload.
-                if (s.length() == 0) {
-                    return;
-                }
-            } else {
-                //if we have no socket, simply return (nothing to clear)
-                return;
-            }
-        }
-    }
-
-    /**
-     * @param operation
-     * @return
-     * @throws IOException
-     */
-    public synchronized String read(IProgressMonitor monitor) throws IOException {
-        if (finishedForGood) {
-            throw new RuntimeException(
-                    "Shells are already finished for good, so, it is an invalid state to try to read from it.");
-        }
-        if (inStart) {
-            throw new RuntimeException(
-                    "The shell is still not completely started, so, it is an invalid state to try to read from it..");
-        }
-        if (!isConnected) {
-            throw new RuntimeException(
-                    "The shell is still not connected, so, it is an invalid state to try to read from it..");
-        }
-        if (isInRead) {
-            throw new RuntimeException(
-                    "The shell is already in read mode, so, it is an invalid state to try to read from it..");
-        }
-        if (isInWrite) {
-            throw new RuntimeException(
-                    "The shell is already in write mode, so, it is an invalid state to try to read from it..");
-        }
-
-        isInRead = true;
-
-        try {
-            StringBuffer str = new StringBuffer();
-            int j = 0;
-            while (j < 200) {
-                byte[] b = new byte[AbstractShell.BUFFER_SIZE];
-
-                this.socketToRead.getInputStream().read(b);
-
-                String s = new String(b);
-
-                //processing without any status to present to the user
-                if (s.indexOf("@@PROCESSING_END@@") != -1) { //each time we get a processing message, reset j to 0.
-                    s = s.replaceAll("@@PROCESSING_END@@", "");
-                    j = 0;
-                    communicateWork("Processing...", monitor);
-                }
-
-                //processing with some kind of status
-                if (s.indexOf("@@PROCESSING:") != -1) { //each time we get a processing message, reset j to 0.
-                    s = s.replaceAll("@@PROCESSING:", "");
-                    s = s.replaceAll("END@@", "");
-                    j = 0;
-                    s = URLDecoder.decode(s, ENCODING_UTF_8);
-                    if (s.trim().equals("") == false) {
-                        communicateWork("Processing: " + s, monitor);
-                    } else {
-                        communicateWork("Processing...", monitor);
-                    }
-                    s = "";
-                }
-
-                s = s.replaceAll((char) 0 + "", ""); //python sends this char as payload.
-                str.append(s);
-
-                if (str.indexOf("END@@") != -1) {
-                    break;
-                } else {
-
-                    if (s.length() == 0) { //only raise if nothing was received.
-                        j++;
-                    } else {
-                        j = 0; //we are receiving, even though that may take a long time if the namespace is really polluted...
-                    }
-                    sleepALittle(10);
-                }
-
-            }
-
-            String ret = str.toString().replaceFirst("@@COMPLETIONS", "");
-            //remove END@@
-            try {
-                if (ret.indexOf("END@@") != -1) {
-                    ret = ret.substring(0, ret.indexOf("END@@"));
-                    return ret;
-                } else {
-                    throw new RuntimeException("Couldn't find END@@ on received string.");
-                }
-            } catch (RuntimeException e) {
-                if (ret.length() > 500) {
-                    ret = ret.substring(0, 499) + "...(continued)...";//if the string gets too big, it can crash Eclipse...
-                }
-                Log.log(IStatus.ERROR, ("ERROR WITH STRING:" + ret), e);
-                return "";
-            }
-        } finally {
-            isInRead = false;
-        }
-    }
-
-    /**
-     * @return s string with the contents read.
-     * @throws IOException
-     */
-    protected synchronized String read() throws IOException {
-        String r = read(null);
-        //System.out.println("RETURNING:"+URLDecoder.decode(URLDecoder.decode(r,ENCODING_UTF_8),ENCODING_UTF_8));
-        return r;
-    }
-
     /**
-     * @param str
      * @throws IOException
      */
-    public synchronized void write(String str) throws IOException {
-        if (finishedForGood) {
-            throw new RuntimeException(
-                    "Shells are already finished for good, so, it is an invalid state to try to write to it.");
-        }
-        if (inStart) {
-            throw new RuntimeException(
-                    "The shell is still not completely started, so, it is an invalid state to try to write to it.");
-        }
-        if (!isConnected) {
-            throw new RuntimeException(
-                    "The shell is still not connected, so, it is an invalid state to try to write to it.");
-        }
-        if (isInRead) {
-            throw new RuntimeException(
-                    "The shell is already in read mode, so, it is an invalid state to try to write to it.");
-        }
-        if (isInWrite) {
-            throw new RuntimeException(
-                    "The shell is already in write mode, so, it is an invalid state to try to write to it.");
-        }
-
-        isInWrite = true;
-
-        //dbg("WRITING:"+str);
-        try {
-            OutputStream outputStream = this.socketToWrite.getOutputStream();
-            outputStream.write(str.getBytes());
-            outputStream.flush();
-        } finally {
-            isInWrite = false;
+    private synchronized void closeConn() throws IOException {
+        ShellResponsesReader reader = responsesReader;
+        responsesReader = null;
+        if (reader != null) {
+            reader.close(new IOException("Completion shell closed."));
         }
-    }
 
-    /**
-     * @throws IOException
-     */
-    private synchronized void closeConn() throws IOException {
         //let's not send a message... just close the sockets and kill it
         //        try {
         //            write("@@KILL_SERVER_END@@");
@@ -780,6 +628,11 @@ public abstract class AbstractShell {
      * connections correctly (intended for shutdowns)
      */
     public synchronized void shutdown() {
+        ShellResponsesReader reader = responsesReader;
+        responsesReader = null;
+        if (reader != null) {
+            reader.close(new IOException("Completion shell shutdown."));
+        }
         socketToRead = null;
         socketToWrite = null;
         serverSocket = null;
@@ -813,83 +666,162 @@ public abstract class AbstractShell {
      * @return list with tuples: new String[]{token, description}
      * @throws CoreException
      */
-    public synchronized Tuple<String, List<String[]>> getImportCompletions(String str, List<String> pythonpath)
+    public Tuple<String, List<String[]>> getImportCompletions(String str, List<String> pythonpath)
             throws CoreException {
-        while (isInOperation) {
-            sleepALittle(25);
-        }
-        isInOperation = true;
-        try {
-            internalChangePythonPath(pythonpath);
-
-            try {
-                str = URLEncoder.encode(str, ENCODING_UTF_8);
-                return this.getTheCompletions("@@IMPORTS:" + str + "\nEND@@");
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        } finally {
-            isInOperation = false;
-        }
+        return getTheCompletions(pythonpath, ShellProtocol.CMD_IMPORTS, str);
     }
 
     /**
      * @param pythonpath
      * @throws CoreException
      */
-    public synchronized void changePythonPath(List<String> pythonpath) throws CoreException {
-        while (isInOperation) {
-            sleepALittle(25);
-        }
-        isInOperation = true;
-        try {
-            internalChangePythonPath(pythonpath);
-        } finally {
-            isInOperation = false;
-        }
+    public void changePythonPath(List<String> pythonpath) throws CoreException {
+        getTheCompletions(pythonpath);
     }
 
     /**
-     * @param pythonpath
+     * @return the request to change the pythonpath of the server.
      */
-    private void internalChangePythonPath(List<String> pythonpath) {
-        if (finishedForGood) {
-            throw new RuntimeException(
-                    "Shells are already finished for good, so, it is an invalid state to try to change its dir.");
-        }
+    private String[] createChangePythonPathRequest(List<String> pythonpath) {
         StringBuffer buffer = new StringBuffer();
         for (Iterator<String> iter = pythonpath.iterator(); iter.hasNext();) {
             String path = iter.next();
             buffer.append(path);
             buffer.append("|");
         }
-        try {
-            getTheCompletions("@@CHANGE_PYTHONPATH:" + URLEncoder.encode(buffer.toString(), ENCODING_UTF_8) + "\nEND@@");
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return new String[] { ShellProtocol.CMD_CHANGE_PYTHONPATH, buffer.toString() };
     }
 
-    protected synchronized Tuple<String, List<String[]>> getTheCompletions(String str) throws CoreException {
+    /**
+     * Sends a request to change the pythonpath followed by the passed request (if any) and waits for the response.
+     * 
+     * @param request the command to be sent followed by its arguments (may be empty to only change the pythonpath).
+     * @return the completions received in the response.
+     */
+    protected Tuple<String, List<String[]>> getTheCompletions(List<String> pythonpath, String... request)
+            throws CoreException {
+        ShellResponsesReader reader = null;
+        ShellRequest[] sent = null;
         try {
-            this.write(str);
+            Socket socket;
+            synchronized (this) {
+                checkValidStateToSend();
+                reader = responsesReader;
+                socket = socketToWrite;
+            }
+            if (reader == null || socket == null) {
+                throw new IOException("The shell is not connected.");
+            }
 
-            return getCompletions();
-        } catch (NullPointerException e) {
-            //still not started...
-            restartShell();
-            return getInvalidCompletion();
+            List<String[]> requests = new ArrayList<String[]>(2);
+            requests.add(createChangePythonPathRequest(pythonpath));
+            if (request.length > 0) {
+                requests.add(request);
+            }
+            sent = sendRequests(reader, socket, requests);
+
+            List<String> response = null;
+            for (ShellRequest shellRequest : sent) {
+                response = waitForResponse(reader, shellRequest);
+            }
+            return parseCompletions(response);
 
         } catch (Exception e) {
             if (DebugSettings.DEBUG_CODE_COMPLETION) {
                 Log.log(IStatus.ERROR, "ERROR getting completions.", e);
             }
+            if (sent != null) {
+                for (ShellRequest shellRequest : sent) {
+                    reader.removeRequest(shellRequest);
+                }
+            }
 
-            restartShell();
+            restartShell(reader);
             return getInvalidCompletion();
         }
     }
 
+    private void checkValidStateToSend() {
+        if (finishedForGood) {
+            throw new RuntimeException(
+                    "Shells are already finished for good, so, it is an invalid state to try to write to it.");
+        }
+        if (inStart) {
+            throw new RuntimeException(
+                    "The shell is still not completely started, so, it is an invalid state to try to write to it.");
+        }
+        if (!isConnected) {
+            throw new RuntimeException(
+                    "The shell is still not connected, so, it is an invalid state to try to write to it.");
+        }
+    }
+
+    /**
+     * Sends the passed requests (each one with the command followed by its arguments) in a single write, so, they're
+     * not interleaved with requests from other threads (i.e.: a change in the pythonpath is always followed by the
+     * request which needs it).
+     */
+    private ShellRequest[] sendRequests(ShellResponsesReader reader, Socket socket, List<String[]> requests)
+            throws IOException {
+        ShellRequest[] ret = new ShellRequest[requests.size()];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        synchronized (writeLock) {
+            for (int i = 0; i < ret.length; i++) {
+                String[] request = requests.get(i);
+                ShellRequest shellRequest = reader.createRequest();
+                ret[i] = shellRequest;
+
+                String[] fields = new String[request.length + 1];
+                fields[0] = Integer.toString(shellRequest.id);
+                System.arraycopy(request, 0, fields, 1, request.length);
+                ShellProtocol.writeFrame(out, fields);
+            }
+            try {
+                OutputStream outputStream = socket.getOutputStream();
+                out.writeTo(outputStream);
+                outputStream.flush();
+            } catch (IOException e) {
+                for (ShellRequest shellRequest : ret) {
+                    reader.removeRequest(shellRequest);
+                }
+                throw e;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the response for the given request (the fields after the request id).
+     * @throws IOException if the connection is closed or if the server stops responding.
+     */
+    private List<String> waitForResponse(ShellResponsesReader reader, ShellRequest request) throws IOException {
+        while (true) {
+            boolean progressed = request.await(200);
+            List<String> response = request.getResponse();
+            if (response != null) {
+                return response;
+            }
+            if (finishedForGood) {
+                throw new IOException("Shells are already finished for good.");
+            }
+            if (!progressed && request.getMillisWithoutActivity() > TIMEOUT_WITHOUT_ACTIVITY_MILLIS
+                    && reader.getMillisWithoutFrames() > TIMEOUT_WITHOUT_ACTIVITY_MILLIS) {
+                throw new IOException("Timeout waiting for the response of the completion shell.");
+            }
+        }
+    }
+
+    /**
+     * Restarts the shell if the passed reader is still the one being used (if it isn't, some other thread
+     * already restarted it).
+     */
+    private synchronized void restartShell(ShellResponsesReader failedReader) throws CoreException {
+        if (failedReader != null && failedReader != responsesReader) {
+            return;
+        }
+        restartShell();
+    }
+
     /**
      * @throws CoreException
      * 
@@ -921,63 +853,67 @@ public abstract class AbstractShell {
     }
 
     /**
-     * @return
+     * @return the completions returned when the shell failed to answer (or answered with an error): its file is
+     * null (see isValidResponse).
      */
-    protected synchronized Tuple<String, List<String[]>> getInvalidCompletion() {
+    protected Tuple<String, List<String[]>> getInvalidCompletion() {
         List<String[]> l = new ArrayList<String[]>();
         return new Tuple<String, List<String[]>>(null, l);
     }
 
     /**
-     * @throws IOException
+     * @return whether the given completions were actually answered by the shell (as opposed to the ones returned
+     * when the shell failed or answered with an error, which must not be kept, as another request may succeed).
+     * Note that a valid response may have no completions (i.e.: nothing was found).
      */
-    protected synchronized Tuple<String, List<String[]>> getCompletions() throws IOException {
-        ArrayList<String[]> list = new ArrayList<String[]>();
-        String read = this.read();
-        String string = read.replaceAll("\\(", "").replaceAll("\\)", "");
-        StringTokenizer tokenizer = new StringTokenizer(string, ",");
-
-        //the first token is always the file for the module (no matter what)
-        String file = "";
-        if (tokenizer.hasMoreTokens()) {
-            file = URLDecoder.decode(tokenizer.nextToken(), ENCODING_UTF_8);
-            while (tokenizer.hasMoreTokens()) {
-                String token = URLDecoder.decode(tokenizer.nextToken(), ENCODING_UTF_8);
-                if (!tokenizer.hasMoreTokens()) {
-                    return new Tuple<String, List<String[]>>(file, list);
-                }
-                String description = URLDecoder.decode(tokenizer.nextToken(), ENCODING_UTF_8);
-
-                String args = "";
-                if (tokenizer.hasMoreTokens()) {
-                    args = URLDecoder.decode(tokenizer.nextToken(), ENCODING_UTF_8);
-                }
-
-                String type = TYPE_UNKNOWN_STR;
-                if (tokenizer.hasMoreTokens()) {
-                    type = URLDecoder.decode(tokenizer.nextToken(), ENCODING_UTF_8);
-                }
-
-                //dbg(token);
-                //dbg(description);
+    public static boolean isValidResponse(Tuple<String, List<String[]>> completions) {
+        return completions != null && completions.o1 != null;
+    }
 
-                if (!token.equals("ERROR:")) {
-                    list.add(new String[] { token, description, args, type });
-                } else {
-                    if (DebugSettings.DEBUG_CODE_COMPLETION) {
-                        Log.addLogLevel();
-                        try {
-                            Log.toLogFile("Code completion shell error:", AbstractShell.class);
-                            Log.toLogFile(token, AbstractShell.class);
-                            Log.toLogFile(description, AbstractShell.class);
-                            Log.toLogFile(args, AbstractShell.class);
-                            Log.toLogFile(type, AbstractShell.class);
-                        } finally {
-                            Log.remLogLevel();
-                        }
+    /**
+     * @param response the fields of a response: for completions, the first field is the file for the module and
+     * it's followed by each completion (the number of fields in the completion followed by the fields).
+     * 
+     * @return the file and the completions (each completion is: token, description, args, type) or the invalid
+     * completion if the shell answered with an error.
+     */
+    private Tuple<String, List<String[]>> parseCompletions(List<String> response) {
+        if (response == null || response.size() < 2 || !ShellProtocol.RESPONSE_COMPLETIONS.equals(response.get(0))) {
+            return getInvalidCompletion();
+        }
+        ArrayList<String[]> list = new ArrayList<String[]>();
+        String file = response.get(1);
+        int size = response.size();
+        int i = 2;
+        while (i < size) {
+            int n = Integer.parseInt(response.get(i));
+            i++;
+            if (n < 2 || i + n > size) {
+                i += n;
+                continue; //we need at least the token and the description
+            }
+            String token = response.get(i);
+            String description = response.get(i + 1);
+            String args = n > 2 ? response.get(i + 2) : "";
+            String type = n > 3 ? response.get(i + 3) : TYPE_UNKNOWN_STR;
+            i += n;
+
+            if (!token.equals("ERROR:")) {
+                list.add(new String[] { token, description, args, type });
+            } else {
+                if (DebugSettings.DEBUG_CODE_COMPLETION) {
+                    Log.addLogLevel();
+                    try {
+                        Log.toLogFile("Code completion shell error:", AbstractShell.class);
+                        Log.toLogFile(token, AbstractShell.class);
+                        Log.toLogFile(description, AbstractShell.class);
+                        Log.toLogFile(args, AbstractShell.class);
+                        Log.toLogFile(type, AbstractShell.class);
+                    } finally {
+                        Log.remLogLevel();
                     }
                 }
-
+                return getInvalidCompletion();
             }
         }
         return new Tuple<String, List<String[]>>(file, list);
@@ -987,41 +923,38 @@ public abstract class AbstractShell {
      * @param moduleName the name of the module where the token is defined
      * @param token the token we are looking for
      * @return the file where the token was defined, its line and its column (or null if it was not found)
+     * @throws RuntimeException if the shell failed to answer (or answered with an error).
      */
-    public synchronized Tuple<String[], int[]> getLineCol(String moduleName, String token, List<String> pythonpath) {
-        while (isInOperation) {
-            sleepALittle(25);
+    public Tuple<String[], int[]> getLineCol(String moduleName, String token, List<String> pythonpath) {
+        String str = moduleName + "." + token;
+        Tuple<String, List<String[]>> theCompletions;
+        try {
+            theCompletions = this.getTheCompletions(pythonpath, ShellProtocol.CMD_SEARCH, str);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        if (!isValidResponse(theCompletions)) {
+            throw new RuntimeException("Unable to get the definition of: " + str);
         }
-        isInOperation = true;
         try {
-            String str = moduleName + "." + token;
-            internalChangePythonPath(pythonpath);
-
-            try {
-                str = URLEncoder.encode(str, ENCODING_UTF_8);
-                Tuple<String, List<String[]>> theCompletions = this.getTheCompletions("@@SEARCH" + str + "\nEND@@");
-
-                List<String[]> def = theCompletions.o2;
-                if (def.size() == 0) {
-                    return null;
-                }
+            List<String[]> def = theCompletions.o2;
+            if (def.size() == 0) {
+                return null;
+            }
 
-                String[] comps = def.get(0);
-                if (comps.length == 0) {
-                    return null;
-                }
+            String[] comps = def.get(0);
+            if (comps.length == 0) {
+                return null;
+            }
 
-                int line = Integer.parseInt(comps[0]);
-                int col = Integer.parseInt(comps[1]);
+            int line = Integer.parseInt(comps[0]);
+            int col = Integer.parseInt(comps[1]);
 
-                String foundAs = comps[2];
-                return new Tuple<String[], int[]>(new String[] { theCompletions.o1, foundAs }, new int[] { line, col });
+            String foundAs = comps[2];
+            return new Tuple<String[], int[]>(new String[] { theCompletions.o1, foundAs }, new int[] { line, col });
 
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        } finally {
-            isInOperation = false;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes/decodes the messages exchanged with the completion server (pycompletionserver.py).
+ *
+ * Each message is a frame with a list of fields: the first field is the request id and the second the command
+ * (or the kind of the response). Each field is written as <length in bytes>:<utf-8 bytes> and the frame is written
+ * in the same way (with the encoded fields as its contents), so, no escaping is needed.
+ */
+public final class ShellProtocol {
+
+    public static final String CMD_IMPORTS = "IMPORTS";
+    public static final String CMD_SEARCH = "SEARCH";
+    public static final String CMD_CHANGE_PYTHONPATH = "CHANGE_PYTHONPATH";
+    public static final String CMD_KILL = "KILL";
+
+    public static final String RESPONSE_PROCESSING = "PROCESSING";
+    public static final String RESPONSE_OK = "OK";
+    public static final String RESPONSE_COMPLETIONS = "COMPLETIONS";
+
+    private static final String ENCODING_UTF_8 = "UTF-8";
+
+    /**
+     * Maximum size accepted for a frame (so that a corrupted stream doesn't make us allocate a huge array).
+     */
+    private static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    private ShellProtocol() {
+    }
+
+    /**
+     * Writes a frame with the given fields to the passed stream.
+     */
+    public static void writeFrame(ByteArrayOutputStream out, String... fields) {
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            for (String field : fields) {
+                writeWithLength(contents, field.getBytes(ENCODING_UTF_8));
+            }
+            writeWithLength(out, contents.toByteArray());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); //UTF-8 is always available.
+        }
+    }
+
+    private static void writeWithLength(ByteArrayOutputStream out, byte[] bytes) {
+        byte[] len = Integer.toString(bytes.length).getBytes();
+        out.write(len, 0, len.length);
+        out.write(':');
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the fields of the next frame in the stream or null if the stream has no more contents.
+     * @throws IOException if the stream ends in the middle of a frame or the frame is not valid.
+     */
+    public static List<String> readFrame(InputStream in) throws IOException {
+        int size = readLength(in, true);
+        if (size == -1) {
+            return null;
+        }
+        if (size > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame size: " + size);
+        }
+        byte[] contents = new byte[size];
+        int read = 0;
+        while (read < size) {
+            int r = in.read(contents, read, size - read);
+            if (r == -1) {
+                throw new EOFException("Stream ended in the middle of a frame.");
+            }
+            read += r;
+        }
+        return parseFrameContents(contents);
+    }
+
+    /**
+     * @return the fields in the contents of a frame.
+     */
+    public static List<String> parseFrameContents(byte[] contents) throws IOException {
+        List<String> fields = new ArrayList<String>();
+        int i = 0;
+        while (i < contents.length) {
+            int len = 0;
+            int start = i;
+            while (i < contents.length && contents[i] != ':') {
+                int digit = contents[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IOException("Invalid field length in frame.");
+                }
+                len = len * 10 + digit;
+                i++;
+            }
+            if (i == start || i == contents.length || i + 1 + len > contents.length) {
+                throw new IOException("Invalid field in frame.");
+            }
+            i++; //skip the ':'
+            fields.add(new String(contents, i, len, ENCODING_UTF_8));
+            i += len;
+        }
+        return fields;
+    }
+
+    /**
+     * Reads a length (a number followed by ':').
+     *
+     * @return the length read or -1 if the stream ended before anything was read (and acceptEnd is true).
+     */
+    private static int readLength(InputStream in, boolean acceptEnd) throws IOException {
+        int len = 0;
+        int digits = 0;
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                if (digits == 0 && acceptEnd) {
+                    return -1;
+                }
+                throw new EOFException("Stream ended in the middle of a frame.");
+            }
+            if (c == ':') {
+                if (digits == 0) {
+                    throw new IOException("Invalid frame length.");
+                }
+                return len;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || digits > 9) {
+                throw new IOException("Invalid frame length.");
+            }
+            len = len * 10 + digit;
+            digits++;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.pydev.core.log.Log;
+
+/**
+ * Thread that reads the responses from the completion server and gives them to the requests waiting for them
+ * (which are identified by the request id in the response), so, many requests may be in-flight at the same time.
+ *
+ * There's one reader for each connection: when the connection is closed, all the requests still waiting for a
+ * response are finished with an error.
+ */
+public final class ShellResponsesReader extends Thread {
+
+    /**
+     * A request sent to the server which is waiting for a response.
+     */
+    public static final class ShellRequest {
+
+        public final int id;
+
+        private List<String> response;
+
+        private IOException error;
+
+        private long lastActivity = System.currentTimeMillis();
+
+        private boolean progressed;
+
+        private ShellRequest(int id) {
+            this.id = id;
+        }
+
+        private synchronized void onProgress() {
+            lastActivity = System.currentTimeMillis();
+            progressed = true;
+            this.notifyAll();
+        }
+
+        private synchronized void onResponse(List<String> response) {
+            this.response = response;
+            this.notifyAll();
+        }
+
+        private synchronized void onError(IOException error) {
+            if (this.response == null && this.error == null) {
+                this.error = error;
+                this.notifyAll();
+            }
+        }
+
+        /**
+         * Waits for some change in the request (or for the timeout to elapse).
+         *
+         * @return true if the server notified that it's still processing this request since the last call.
+         */
+        public synchronized boolean await(long millis) {
+            if (response == null && error == null && !progressed) {
+                try {
+                    this.wait(millis);
+                } catch (InterruptedException e) {
+                    //ignore
+                }
+            }
+            boolean ret = progressed;
+            progressed = false;
+            return ret;
+        }
+
+        /**
+         * @return the fields of the response (without the request id) or null if it still didn't arrive.
+         * @throws IOException if the connection was closed before the response arrived.
+         */
+        public synchronized List<String> getResponse() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            return response;
+        }
+
+        /**
+         * @return the time elapsed since the request was created or since the last progress notification.
+         */
+        public synchronized long getMillisWithoutActivity() {
+            return System.currentTimeMillis() - lastActivity;
+        }
+    }
+
+    private final InputStream in;
+
+    private final Object lock = new Object();
+
+    /**
+     * Requests waiting for a response (synchronized with lock).
+     */
+    private final Map<Integer, ShellRequest> pending = new HashMap<Integer, ShellRequest>();
+
+    private int nextId = 0;
+
+    /**
+     * The time when the last frame was received (or when the reader was created).
+     */
+    private volatile long lastFrameMillis = System.currentTimeMillis();
+
+    /**
+     * Set when the connection is closed (synchronized with lock).
+     */
+    private IOException closedError;
+
+    public ShellResponsesReader(InputStream in) {
+        super("PyDev: Completion Shell Reader");
+        this.in = new BufferedInputStream(in);
+        setDaemon(true);
+    }
+
+    /**
+     * Creates a new request that'll wait for a response from the server (must be called before the request is
+     * actually sent).
+     */
+    public ShellRequest createRequest() {
+        synchronized (lock) {
+            ShellRequest request = new ShellRequest(++nextId);
+            if (closedError != null) {
+                request.onError(closedError);
+            } else {
+                pending.put(request.id, request);
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Stops waiting for the response of the given request (i.e.: it timed out or it couldn't be sent).
+     */
+    public void removeRequest(ShellRequest request) {
+        synchronized (lock) {
+            pending.remove(request.id);
+        }
+    }
+
+    /**
+     * @return the time elapsed since the last frame (for any request) was received. As the server processes the
+     * requests in the order it receives them, a request waiting for others to be processed is not notified of
+     * any progress, so, this is also used to know whether the server is still responsive.
+     */
+    public long getMillisWithoutFrames() {
+        return System.currentTimeMillis() - lastFrameMillis;
+    }
+
+    /**
+     * @return whether the connection this reader uses was already closed.
+     */
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closedError != null;
+        }
+    }
+
+    @Override
+    public void run() {
+        IOException error = null;
+        try {
+            List<String> frame;
+            while ((frame = ShellProtocol.readFrame(in)) != null) {
+                lastFrameMillis = System.currentTimeMillis();
+                if (frame.size() < 2) {
+                    Log.log("Invalid response from completion shell: " + frame);
+                    continue;
+                }
+                int id;
+                try {
+                    id = Integer.parseInt(frame.get(0));
+                } catch (NumberFormatException e) {
+                    Log.log("Invalid request id from completion shell: " + frame);
+                    continue;
+                }
+                ShellRequest request;
+                if (ShellProtocol.RESPONSE_PROCESSING.equals(frame.get(1))) {
+                    synchronized (lock) {
+                        request = pending.get(id);
+                    }
+                    if (request != null) {
+                        request.onProgress();
+                    }
+                } else {
+                    synchronized (lock) {
+                        request = pending.remove(id);
+                    }
+                    if (request != null) {
+                        request.onResponse(new ArrayList<String>(frame.subList(1, frame.size())));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            if (error == null) {
+                error = new IOException("Connection with the completion shell closed.");
+            }
+            close(error);
+        }
+    }
+
+    /**
+     * Marks this reader as closed, finishing all the requests still waiting for a response with the given error.
+     */
+    public void close(IOException error) {
+        List<ShellRequest> toFinish;
+        synchronized (lock) {
+            if (closedError == null) {
+                closedError = error;
+            }
+            toFinish = new ArrayList<ShellRequest>(pending.values());
+            pending.clear();
+        }
+        for (ShellRequest request : toFinish) {
+            request.onError(error);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.IDocument;
+import org.python.pydev.core.callbacks.ICallback0;
+import org.python.pydev.core.resource_stubs.FileMock;
+import org.python.pydev.core.resource_stubs.FolderMock;
+import org.python.pydev.core.resource_stubs.ProjectMock;
+import org.python.pydev.plugin.nature.PythonNature;
+
+public class PyDevBuilderTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PyDevBuilderTest.class);
+    }
+
+    /**
+     * A nature which resolves the module name from the file name (without needing an interpreter).
+     */
+    private static class PythonNatureMock extends PythonNature {
+
+        @Override
+        public boolean startRequests() {
+            return true;
+        }
+
+        @Override
+        public void endRequests() {
+        }
+
+        @Override
+        public String resolveModuleOnlyInProjectSources(IResource file, boolean addExternal) {
+            String name = file.getName();
+            return name.endsWith(".py") ? name.substring(0, name.length() - 3) : null;
+        }
+    }
+
+    /**
+     * A visit done by a VisitorMock.
+     */
+    private static final class Visit {
+        final String visitor;
+        final String resource;
+        final Thread thread;
+        final boolean visitedByHigherPriority;
+
+        Visit(String visitor, String resource, Thread thread, boolean visitedByHigherPriority) {
+            this.visitor = visitor;
+            this.resource = resource;
+            this.thread = thread;
+            this.visitedByHigherPriority = visitedByHigherPriority;
+        }
+    }
+
+    /**
+     * Records its visits (the copies for the workers share the list of visits). Each visitor marks the memo of the
+     * resource, so that it's possible to check that the visitors with higher priority already visited it.
+     */
+    private static class VisitorMock extends PyDevBuilderVisitor {
+
+        final String name;
+        final int priority;
+        final boolean threadSafe;
+        final List<Visit> visits;
+        final String checkVisitedBy;
+
+        VisitorMock(String name, int priority, boolean threadSafe, List<Visit> visits, String checkVisitedBy) {
+            this.name = name;
+            this.priority = priority;
+            this.threadSafe = threadSafe;
+            this.visits = visits;
+            this.checkVisitedBy = checkVisitedBy;
+        }
+
+        @Override
+        protected int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+
+        @Override
+        public void visitChangedResource(IResource resource, ICallback0<IDocument> document,
+                IProgressMonitor monitor) {
+            boolean visitedByHigherPriority = checkVisitedBy == null || memo.containsKey(checkVisitedBy);
+            memo.put(name, true);
+            synchronized (visits) {
+                visits.add(new Visit(name, resource.getName(), Thread.currentThread(), visitedByHigherPriority));
+            }
+        }
+
+        @Override
+        public void visitRemovedResource(IResource resource, ICallback0<IDocument> document,
+                IProgressMonitor monitor) {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Visit> visits = new ArrayList<Visit>();
+
+    private List<IFile> createResources(int count) {
+        ProjectMock project = new ProjectMock();
+        project.setNature(new PythonNatureMock());
+        FolderMock folder = new FolderMock("folder");
+        project.addMember(folder);
+
+        List<IFile> resources = new ArrayList<IFile>();
+        for (int i = 0; i < count; i++) {
+            FileMock file = new FileMock("mod" + i + ".py");
+            folder.addMember(file);
+            resources.add(file);
+        }
+        FileMock notInPythonpath = new FileMock("not_in_pythonpath");
+        folder.addMember(notInPythonpath);
+        resources.add(notInPythonpath);
+        return resources;
+    }
+
+    private List<Visit> getVisits(String visitor) {
+        List<Visit> ret = new ArrayList<Visit>();
+        synchronized (visits) {
+            for (Visit visit : visits) {
+                if (visit.visitor.equals(visitor)) {
+                    ret.add(visit);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private Set<String> getResources(List<Visit> visits) {
+        Set<String> ret = new HashSet<String>();
+        for (Visit visit : visits) {
+            ret.add(visit.resource);
+        }
+        return ret;
+    }
+
+    public void testSplitVisitorsForWorkers() throws Exception {
+        VisitorMock safe1 = new VisitorMock("safe1", 1, true, visits, null);
+        VisitorMock notSafe3 = new VisitorMock("notSafe3", 3, false, visits, null);
+        VisitorMock safe3 = new VisitorMock("safe3", 3, true, visits, null);
+        VisitorMock safe5 = new VisitorMock("safe5", 5, true, visits, null);
+        VisitorMock notSafe5 = new VisitorMock("notSafe5", 5, false, visits, null);
+
+        List<PyDevBuilderVisitor> workerVisitors = new ArrayList<PyDevBuilderVisitor>();
+        List<PyDevBuilderVisitor> otherVisitors = new ArrayList<PyDevBuilderVisitor>();
+        PyDevBuilder.splitVisitorsForWorkers(Arrays.asList((PyDevBuilderVisitor) safe1, notSafe3, safe3, safe5,
+                notSafe5), workerVisitors, otherVisitors);
+
+        //a thread-safe visitor with a lower priority than a visitor that's not thread-safe must run after it (so,
+        //it's not run in the workers).
+        assertEquals(Arrays.asList((PyDevBuilderVisitor) safe1, safe3), workerVisitors);
+        assertEquals(Arrays.asList((PyDevBuilderVisitor) notSafe3, safe5, notSafe5), otherVisitors);
+
+        //all thread-safe
+        workerVisitors.clear();
+        otherVisitors.clear();
+        PyDevBuilder.splitVisitorsForWorkers(Arrays.asList((PyDevBuilderVisitor) safe1, safe5), workerVisitors,
+                otherVisitors);
+        assertEquals(Arrays.asList((PyDevBuilderVisitor) safe1, safe5), workerVisitors);
+        assertEquals(0, otherVisitors.size());
+
+        //the first is not thread-safe
+        workerVisitors.clear();
+        otherVisitors.clear();
+        PyDevBuilder.splitVisitorsForWorkers(Arrays.asList((PyDevBuilderVisitor) notSafe3, safe5), workerVisitors,
+                otherVisitors);
+        assertEquals(0, workerVisitors.size());
+        assertEquals(Arrays.asList((PyDevBuilderVisitor) notSafe3, safe5), otherVisitors);
+    }
+
+    public void testBuildResourcesInParallel() throws Exception {
+        List<IFile> resources = createResources(50);
+        VisitorMock safe = new VisitorMock("safe", 1, true, visits, null);
+        VisitorMock notSafe = new VisitorMock("notSafe", 5, false, visits, "safe");
+
+        new PyDevBuilder().buildResourcesInParallel(resources, new NullProgressMonitor(), 2,
+                Arrays.asList((PyDevBuilderVisitor) safe), Arrays.asList((PyDevBuilderVisitor) notSafe));
+
+        List<Visit> safeVisits = getVisits("safe");
+        List<Visit> notSafeVisits = getVisits("notSafe");
+        assertEquals(50, safeVisits.size());
+        assertEquals(50, notSafeVisits.size());
+        assertEquals(50, getResources(safeVisits).size());
+        assertEquals(50, getResources(notSafeVisits).size());
+        assertFalse(getResources(safeVisits).contains("not_in_pythonpath"));
+
+        Thread current = Thread.currentThread();
+        for (Visit visit : safeVisits) {
+            assertNotSame(current, visit.thread);
+        }
+        for (Visit visit : notSafeVisits) {
+            //the visitor that's not thread-safe runs in the thread that started the build, after the visitor with
+            //a higher priority (and with the memo filled by it).
+            assertSame(current, visit.thread);
+            assertTrue(visit.visitedByHigherPriority);
+        }
+    }
+
+    public void testPriorityOrdering() throws Exception {
+        boolean original = PyDevBuilder.BUILD_IN_PARALLEL;
+        PyDevBuilder.BUILD_IN_PARALLEL = true;
+        try {
+            //the thread-safe visitor has a lower priority than the one that's not thread-safe: all visits are done
+            //in the current thread, by priority.
+            List<IFile> resources = createResources(PyDevBuilder.MIN_RESOURCES_TO_BUILD_IN_PARALLEL);
+            VisitorMock notSafe = new VisitorMock("notSafe", 1, false, visits, null);
+            VisitorMock safe = new VisitorMock("safe", 5, true, visits, "notSafe");
+            new PyDevBuilder().buildResources(resources, new NullProgressMonitor(),
+                    Arrays.asList((PyDevBuilderVisitor) notSafe, safe));
+
+            Thread current = Thread.currentThread();
+            synchronized (visits) {
+                assertEquals(PyDevBuilder.MIN_RESOURCES_TO_BUILD_IN_PARALLEL * 2, visits.size());
+                for (int i = 0; i < visits.size(); i++) {
+                    Visit visit = visits.get(i);
+                    assertEquals(i % 2 == 0 ? "notSafe" : "safe", visit.visitor);
+                    assertSame(current, visit.thread);
+                    assertTrue(visit.visitedByHigherPriority);
+                }
+            }
+        } finally {
+            PyDevBuilder.BUILD_IN_PARALLEL = original;
+        }
+    }
+
+    public void testCancel() throws Exception {
+        final int total = 500;
+        List<IFile> resources = createResources(total);
+        VisitorMock safe = new VisitorMock("safe", 1, true, visits, null);
+        VisitorMock notSafe = new VisitorMock("notSafe", 5, false, visits, "safe");
+        IProgressMonitor monitor = new NullProgressMonitor() {
+            @Override
+            public boolean isCanceled() {
+                return getVisits("notSafe").size() >= 5;
+            }
+        };
+
+        new PyDevBuilder().buildResourcesInParallel(resources, monitor, 2, Arrays.asList((PyDevBuilderVisitor) safe),
+                Arrays.asList((PyDevBuilderVisitor) notSafe));
+        assertEquals(5, getVisits("notSafe").size());
+
+        //the workers stop soon after the cancel (they can only get ahead of the current thread up to the size of
+        //the queue of visited resources).
+        synchronized (this) {
+            wait(500);
+        }
+        int safeVisits = getVisits("safe").size();
+        assertTrue("Visits: " + safeVisits, safeVisits < total);
+        synchronized (this) {
+            wait(300);
+        }
+        assertEquals(safeVisits, getVisits("safe").size());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.runners.SimplePythonRunner;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.structure.Tuple;
+
+/**
+ * Compares the time to run pylint in a set of files starting a process for each file (as done when
+ * PyLintVisitor.USE_PYLINT_WORKER is false) and with the PyLintWorker.
+ *
+ * Requires pylint installed in TestDependent.PYTHON_SITE_PACKAGES (otherwise nothing is measured).
+ */
+public class PyLintWorkerBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PyLintWorkerBenchmark.class);
+    }
+
+    private static final int FILES = 30;
+
+    private File baseDir;
+    private File lint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = FileUtils.getTempFileAt(new File(System.getProperty("java.io.tmpdir")), "pylint_benchmark");
+        baseDir.mkdirs();
+        for (int i = 0; i < FILES; i++) {
+            FileUtils.writeStrToFile("import os\n" +
+                    "class Class" + i + "(object):\n" +
+                    "    def method(self, a):\n" +
+                    "        unused = 10\n" +
+                    "        return os.path.join(a, 'b')\n", new File(baseDir, "mod" + i + ".py"));
+        }
+        lint = new File(TestDependent.PYTHON_SITE_PACKAGES, "pylint/lint.py");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectoryTree(baseDir);
+        super.tearDown();
+    }
+
+    private String[] getArgs(int i) {
+        return new String[] { "--include-ids=y", new File(baseDir, "mod" + i + ".py").getAbsolutePath() };
+    }
+
+    public void testPerFileAndWorker() throws Exception {
+        if (!lint.exists()) {
+            System.out.println("Not run: pylint not found at: " + lint);
+            return;
+        }
+        String lintLocation = lint.getAbsolutePath();
+
+        long initial = System.currentTimeMillis();
+        for (int i = 0; i < FILES; i++) {
+            String[] cmdLine = SimplePythonRunner.preparePythonCallParameters(TestDependent.PYTHON_EXE,
+                    lintLocation, getArgs(i));
+            String output = new SimplePythonRunner().runAndGetOutput(cmdLine, baseDir, null, null, "utf-8").o1;
+            assertTrue(output, output.indexOf("W0612") != -1); //unused variable
+        }
+        long perFile = System.currentTimeMillis() - initial;
+
+        String script = TestDependent.TEST_PYDEV_PLUGIN_LOC + "pysrc/pydev_pylint_worker.py";
+        PyLintWorker worker = new PyLintWorker(SimplePythonRunner.preparePythonCallParameters(
+                TestDependent.PYTHON_EXE, script, new String[] { lintLocation }), null);
+        initial = System.currentTimeMillis();
+        for (int i = 0; i < FILES; i++) {
+            Tuple<String, String> output = worker.lint(baseDir, "", getArgs(i));
+            assertTrue(output.o1, output.o1.indexOf("W0612") != -1);
+        }
+        long withWorker = System.currentTimeMillis() - initial;
+
+        System.out.println("Files: " + FILES);
+        System.out.println("Process per file: " + perFile + " millis (" + (perFile / FILES) + " per file)");
+        System.out.println("Worker: " + withWorker + " millis (" + (withWorker / FILES) + " per file)");
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.runners.SimplePythonRunner;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.string.FastStringBuffer;
+import com.aptana.shared_core.structure.Tuple;
+
+public class PyLintWorkerTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PyLintWorkerTest.class);
+    }
+
+    /**
+     * A fake lint.py (prints the arguments received and crashes or hangs the process when requested).
+     */
+    private static final String LINT = "" +
+            "import os\n" +
+            "import sys\n" +
+            "import time\n" +
+            "def Run(args):\n" +
+            "    if args[-1] == 'crash':\n" +
+            "        os._exit(1)\n" +
+            "    if args[-1] == 'hang':\n" +
+            "        time.sleep(60)\n" +
+            "    print('W0611:  1: ' + ' '.join(args) + ' ' + os.path.basename(os.getcwd()))\n" +
+            "    sys.stderr.write('on stderr\\n')\n" +
+            "    sys.exit(1)\n";
+
+    private File baseDir;
+    private String[] cmdLine;
+    private PyLintWorker worker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = FileUtils.getTempFileAt(new File(System.getProperty("java.io.tmpdir")), "pylint_worker_test");
+        baseDir.mkdirs();
+        File lint = new File(baseDir, "lint.py");
+        FileUtils.writeStrToFile(LINT, lint);
+
+        String script = TestDependent.TEST_PYDEV_PLUGIN_LOC + "pysrc/pydev_pylint_worker.py";
+        cmdLine = SimplePythonRunner.preparePythonCallParameters(TestDependent.PYTHON_EXE, script,
+                new String[] { lint.getAbsolutePath() });
+        worker = new PyLintWorker(cmdLine, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectoryTree(baseDir);
+        super.tearDown();
+    }
+
+    public void testFields() throws Exception {
+        String[] fields = new String[] { "lint", "", "a\tb\\n\r\nc\\", "\u00e1" };
+        FastStringBuffer buf = new FastStringBuffer();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                buf.append('\t');
+            }
+            PyLintWorker.escape(buf, fields[i]);
+        }
+        assertEquals("lint\t\ta\\tb\\\\n\\r\\nc\\\\\t\u00e1", buf.toString());
+
+        List<String> parsed = PyLintWorker.parseFields(buf.toString());
+        assertEquals(fields.length, parsed.size());
+        for (int i = 0; i < fields.length; i++) {
+            assertEquals(fields[i], parsed.get(i));
+        }
+    }
+
+    public void testLint() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Tuple<String, String> output = worker.lint(baseDir, "", new String[] { "--include-ids=y", "mod" + i
+                    + ".py" });
+            assertEquals("W0611:  1: --include-ids=y mod" + i + ".py " + baseDir.getName() + "\n", output.o1);
+            assertEquals("on stderr\n", output.o2);
+        }
+        assertEquals(1, worker.getProcessesStarted());
+    }
+
+    public void testRestartOnCrash() throws Exception {
+        assertEquals("W0611:  1: a " + baseDir.getName() + "\n", worker.lint(baseDir, "", new String[] { "a" }).o1);
+        try {
+            worker.lint(baseDir, "", new String[] { "crash" });
+            fail("Expected the crash to be reported.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("crashed") != -1);
+        }
+        assertEquals(PyLintWorker.MAX_ATTEMPTS, worker.getProcessesStarted()); //the crash happened in all the attempts
+
+        //a new process is started for the next request.
+        assertEquals("W0611:  1: b " + baseDir.getName() + "\n", worker.lint(baseDir, "", new String[] { "b" }).o1);
+        assertEquals(PyLintWorker.MAX_ATTEMPTS + 1, worker.getProcessesStarted());
+    }
+
+    public void testTimeout() throws Exception {
+        worker = new PyLintWorker(cmdLine, null, 1000);
+        long start = System.currentTimeMillis();
+        try {
+            worker.lint(baseDir, "", new String[] { "hang" });
+            fail("Expected the timeout to be reported.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("killed") != -1);
+        }
+        assertTrue(System.currentTimeMillis() - start < 30 * 1000);
+        assertEquals(1, worker.getProcessesStarted()); //not retried
+
+        //a new process is started for the next request.
+        assertEquals("W0611:  1: b " + baseDir.getName() + "\n", worker.lint(baseDir, "", new String[] { "b" }).o1);
+        assertEquals(2, worker.getProcessesStarted());
+        assertEquals(0, worker.getPending());
+    }
+}
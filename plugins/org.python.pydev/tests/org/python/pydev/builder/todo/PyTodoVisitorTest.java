@@ -7,8 +7,10 @@
 package org.python.pydev.builder.todo;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.eclipse.jface.text.Document;
+import org.python.pydev.builder.PydevMarkerUtils.MarkerInfo;
 
 import junit.framework.TestCase;
 
@@ -47,4 +49,42 @@ public class PyTodoVisitorTest extends TestCase {
         document = new Document("#TODO\nTODO");
         assertEquals(1, todoVisitor.computeTodoMarkers(document, Arrays.asList("TODO")).size());
     }
+
+    public void testTodoMatchingWithManyTags() throws Exception {
+        PyTodoVisitor todoVisitor = new PyTodoVisitor();
+        Document document = new Document("#FIXME: TODO\n'''a\nXXX b'''\nTODO = 'TODO'");
+        List<MarkerInfo> markers = todoVisitor.computeTodoMarkers(document, Arrays.asList("TODO", "FIXME", "XXX"));
+        assertEquals(3, markers.size());
+        assertEquals("FIXME: TODO", markers.get(0).message);
+        assertEquals(0, markers.get(0).lineStart);
+        assertEquals("XXX b''", markers.get(1).message); //the last quote is not a part of the partition
+        assertEquals(2, markers.get(1).lineStart);
+        assertEquals("TODO", markers.get(2).message);
+        assertEquals(3, markers.get(2).lineStart);
+    }
+
+    public void testFingerprint() throws Exception {
+        List<String> tags = Arrays.asList("TODO");
+        long fingerprint = PyTodoVisitor.computeFingerprint("#TODO", tags);
+        assertEquals(fingerprint, PyTodoVisitor.computeFingerprint("#TODO", tags));
+        assertTrue(fingerprint != PyTodoVisitor.computeFingerprint("#TODO ", tags));
+        assertTrue(fingerprint != PyTodoVisitor.computeFingerprint("#TODO", Arrays.asList("TODO", "XXX")));
+    }
+
+    public void testFingerprintAsString() throws Exception {
+        long hash = PyTodoVisitor.computeFingerprint("#TODO", Arrays.asList("TODO"));
+        String str = new PyTodoVisitor.TodoFingerprint(hash, 3).toString();
+        PyTodoVisitor.TodoFingerprint fingerprint = PyTodoVisitor.TodoFingerprint.fromString(str);
+        assertEquals(hash, fingerprint.contentsHash);
+        assertEquals(3, fingerprint.markers);
+
+        fingerprint = PyTodoVisitor.TodoFingerprint.fromString(new PyTodoVisitor.TodoFingerprint(-1, 0).toString());
+        assertEquals(-1, fingerprint.contentsHash);
+        assertEquals(0, fingerprint.markers);
+
+        assertNull(PyTodoVisitor.TodoFingerprint.fromString(null));
+        assertNull(PyTodoVisitor.TodoFingerprint.fromString(""));
+        assertNull(PyTodoVisitor.TodoFingerprint.fromString("ab:"));
+        assertNull(PyTodoVisitor.TodoFingerprint.fromString("xy:1"));
+    }
 }
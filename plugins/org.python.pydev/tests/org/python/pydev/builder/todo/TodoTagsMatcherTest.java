@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.todo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TodoTagsMatcherTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TodoTagsMatcherTest.class);
+    }
+
+    /**
+     * @return the offsets of the tags in the text found with indexOf (for comparison).
+     */
+    private List<Integer> findWithIndexOf(String text, List<String> tags) {
+        List<Integer> found = new ArrayList<Integer>();
+        for (int i = 0; i < text.length(); i++) {
+            for (String tag : tags) {
+                if (tag.length() > 0 && text.startsWith(tag, i)) {
+                    found.add(i);
+                }
+            }
+        }
+        return found;
+    }
+
+    public void testFindAll() throws Exception {
+        List<String> tags = Arrays.asList("TODO", "FIXME", "XXX", "TODO:", "DO", "", "TODO");
+        TodoTagsMatcher matcher = new TodoTagsMatcher(tags);
+
+        String[] texts = new String[] { "", "TODO", "TOD", "TODOTODO", "XXXX", "# FIXME: TODO: DO it",
+                "TTODO:XXXFIXM FIXME", "abc" };
+        for (String text : texts) {
+            List<Integer> expected = findWithIndexOf(text, Arrays.asList("TODO", "FIXME", "XXX", "TODO:", "DO"));
+            assertEquals(text, expected, matcher.findAll(text, 0, text.length()));
+            assertEquals(text, expected.size() > 0, matcher.matches(text, 0, text.length()));
+        }
+    }
+
+    public void testRange() throws Exception {
+        TodoTagsMatcher matcher = new TodoTagsMatcher(Arrays.asList("TODO"));
+        String text = "TODO a TODO";
+        assertEquals(Arrays.asList(7), matcher.findAll(text, 1, text.length()));
+        assertFalse(matcher.matches(text, 1, 10));
+        assertTrue(matcher.matches(text, 7, 11));
+    }
+
+    public void testNoTags() throws Exception {
+        TodoTagsMatcher matcher = new TodoTagsMatcher(new ArrayList<String>());
+        assertFalse(matcher.matches("TODO", 0, 4));
+        assertEquals(0, matcher.findAll("TODO", 0, 4).size());
+    }
+}
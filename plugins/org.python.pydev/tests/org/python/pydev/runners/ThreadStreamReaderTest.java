@@ -9,6 +9,7 @@ package org.python.pydev.runners;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
+import com.aptana.shared_core.callbacks.ICallback;
 import com.aptana.shared_core.io.ThreadStreamReader;
 import com.aptana.shared_core.string.FastStringBuffer;
 
@@ -51,6 +52,52 @@ public class ThreadStreamReaderTest extends TestCase {
 
     }
 
+    private void waitFinished(ThreadStreamReader reader) throws InterruptedException {
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+    }
+
+    public void testBoundedBuffer() throws Exception {
+        FastStringBuffer buf = new FastStringBuffer();
+        for (int i = 0; i < 10000; i++) {
+            buf.append(i % 10);
+        }
+        ThreadStreamReader reader = new ThreadStreamReader(new ByteArrayInputStream(buf.getBytes()), true, null,
+                100);
+        reader.start();
+        waitFinished(reader);
+
+        //only the last contents are kept
+        String expected = buf.toString().substring(9900);
+        assertEquals(expected, reader.getContents());
+        assertEquals(9900, reader.getDiscardedChars());
+        assertEquals(expected, reader.getAndClearContents());
+        assertEquals("", reader.getContents());
+    }
+
+    public void testListenerAndEncoding() throws Exception {
+        //multi-byte chars split among the chunks read
+        FastStringBuffer buf = new FastStringBuffer();
+        buf.appendN("a\u00e1\u00e9\u4e2d", 5000);
+        final String expected = buf.toString();
+
+        final FastStringBuffer received = new FastStringBuffer();
+        ThreadStreamReader reader = new ThreadStreamReader(new ByteArrayInputStream(expected.getBytes("utf-8")),
+                true, "utf-8");
+        reader.addListener(new ICallback<Object, String>() {
+
+            public Object call(String arg) {
+                received.append(arg);
+                return null;
+            }
+        });
+        reader.start();
+        waitFinished(reader);
+
+        assertEquals(expected, received.toString());
+        assertEquals("", reader.getContents()); //pushed to the listener (not kept in the buffer)
+    }
+
     private void waitABit() {
         synchronized (this) {
             try {
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.IToken;
+
+public class CompletionsCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompletionsCacheTest.class);
+    }
+
+    private CompletionsCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new CompletionsCache();
+    }
+
+    /**
+     * Computes an entry which depends on the given modules.
+     */
+    private IToken[] compute(Object key, String... modules) {
+        IToken[] tokens = new IToken[0];
+        CompletionsCache.Computation computation = cache.startComputation();
+        try {
+            for (String mod : modules) {
+                cache.addDependency(mod);
+            }
+        } finally {
+            cache.finishComputation(computation, key, tokens);
+        }
+        return tokens;
+    }
+
+    public void testInvalidateDependencies() throws Exception {
+        IToken[] tokens = compute("os.path", "os", "os.path");
+        IToken[] tokens2 = compute("sys", "sys");
+        IToken[] tokens3 = compute("pkg", "pkg.__init__");
+        assertSame(tokens, cache.get("os.path"));
+        assertSame(tokens2, cache.get("sys"));
+        assertEquals(3, cache.getSize());
+
+        cache.invalidate("os.path");
+        assertNull(cache.get("os.path"));
+        assertSame(tokens2, cache.get("sys"));
+
+        //a change in a module inside a package doesn't change the package
+        cache.invalidate("pkg.mod");
+        assertSame(tokens3, cache.get("pkg"));
+
+        //but a change in its __init__ does
+        cache.invalidate("pkg.__init__");
+        assertNull(cache.get("pkg"));
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testModulesListDependencies() throws Exception {
+        IToken[] tokens = new IToken[0];
+        CompletionsCache.Computation computation = cache.startComputation();
+        cache.addModulesListDependency("pkg.sub.");
+        cache.finishComputation(computation, "key", tokens);
+        assertSame(tokens, cache.get("key"));
+
+        cache.invalidate("pkg.other");
+        assertSame(tokens, cache.get("key"));
+
+        cache.invalidate("pkg.sub.mod.__init__");
+        assertNull(cache.get("key"));
+    }
+
+    public void testNestedComputations() throws Exception {
+        IToken[] inner = new IToken[0];
+        IToken[] outer = new IToken[0];
+        CompletionsCache.Computation computation = cache.startComputation();
+        cache.addDependency("a");
+        CompletionsCache.Computation innerComputation = cache.startComputation();
+        cache.addDependency("b");
+        cache.finishComputation(innerComputation, "inner", inner);
+        cache.finishComputation(computation, "outer", outer);
+
+        //the outer depends on the modules of the inner
+        cache.invalidate("b");
+        assertNull(cache.get("inner"));
+        assertNull(cache.get("outer"));
+
+        //getting an entry from the cache also adds its dependencies
+        compute("inner", "b");
+        computation = cache.startComputation();
+        assertNotNull(cache.get("inner"));
+        cache.finishComputation(computation, "outer", outer);
+        cache.invalidate("b");
+        assertNull(cache.get("outer"));
+    }
+
+    public void testIncompleteNotKept() throws Exception {
+        CompletionsCache.Computation computation = cache.startComputation();
+        CompletionsCache.Computation innerComputation = cache.startComputation();
+        cache.markIncomplete();
+        cache.finishComputation(innerComputation, "inner", new IToken[0]);
+        cache.finishComputation(computation, "outer", new IToken[0]);
+        assertNull(cache.get("inner"));
+        assertNull(cache.get("outer"));
+
+        //a failed computation is not kept either
+        computation = cache.startComputation();
+        cache.finishComputation(computation, "failed", null);
+        assertNull(cache.get("failed"));
+        assertEquals(0, cache.getSize());
+
+        //marking incomplete without a computation is a no-op
+        cache.markIncomplete();
+        compute("key", "mod");
+        assertNotNull(cache.get("key"));
+    }
+
+    public void testInvalidatedWhileComputing() throws Exception {
+        CompletionsCache.Computation computation = cache.startComputation();
+        cache.addDependency("mod");
+        cache.invalidate("mod"); //i.e.: changed in another thread
+        cache.finishComputation(computation, "key", new IToken[0]);
+        assertNull(cache.get("key"));
+
+        computation = cache.startComputation();
+        cache.addDependency("mod");
+        cache.invalidate("other");
+        cache.finishComputation(computation, "key", new IToken[0]);
+        assertNotNull(cache.get("key"));
+    }
+
+    public void testEviction() throws Exception {
+        cache.setMaxEntries(2);
+        compute("a", "mod_a");
+        compute("b", "mod_b");
+        assertNotNull(cache.get("a")); //'b' is now the least recently used
+        compute("c", "mod_c");
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+    }
+}
@@ -21,6 +21,7 @@ import org.python.pydev.editor.codecompletion.revisited.ModulesManager;
 import org.python.pydev.editor.codecompletion.revisited.ProjectModulesManager;
 import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
 import org.python.pydev.editor.codecompletion.revisited.SystemModulesManager;
+import org.python.pydev.editor.codecompletion.revisited.modules.AbstractModule;
 
 import com.aptana.shared_core.io.FileUtils;
 
@@ -176,4 +177,36 @@ public class ModulesManagerTest extends CodeCompletionTestsBase {
         assertEquals(kz.zipModulePath, "E");
 
     }
+
+    public void testModulesCache() throws Exception {
+        SystemModulesManager manager = new SystemModulesManager(null);
+        SystemModulesManager manager2 = new SystemModulesManager(null);
+        for (int i = 0; i < 100; i++) {
+            manager.addModule(new ModulesKey("mod" + i, new File("mod" + i + ".py")));
+        }
+        ModulesManagerCache cache = new ModulesManagerCache();
+        long hits = manager.getCacheStats().getHits();
+        long misses = manager.getCacheStats().getMisses();
+
+        AbstractModule m = cache.getObj(new ModulesKey("mod0", null), manager);
+        assertNotNull(m);
+        assertSame(m, cache.getObj(new ModulesKey("mod0", null), manager));
+        assertNull(cache.getObj(new ModulesKey("mod0", null), manager2));
+        assertNull(cache.getObj(new ModulesKey("unexistent", null), manager));
+        assertEquals(hits + 1, manager.getCacheStats().getHits());
+        assertEquals(misses + 2, manager.getCacheStats().getMisses());
+
+        cache.remove(new ModulesKey("mod0", null), manager);
+        AbstractModule m2 = cache.getObj(new ModulesKey("mod0", null), manager);
+        assertNotNull(m2);
+        assertNotSame(m, m2);
+
+        //each shard may only have 2 modules now
+        long evictions = manager.getCacheStats().getEvictions();
+        cache.setMaxWeight(32);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(cache.getObj(new ModulesKey("mod" + i, null), manager));
+        }
+        assertTrue(manager.getCacheStats().getEvictions() > evictions);
+    }
 }
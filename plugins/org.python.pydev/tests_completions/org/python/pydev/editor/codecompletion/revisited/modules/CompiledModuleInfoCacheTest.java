@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited.modules;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.aptana.shared_core.io.FileUtils;
+import com.aptana.shared_core.structure.Tuple;
+
+public class CompiledModuleInfoCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompiledModuleInfoCacheTest.class);
+    }
+
+    private File baseDir;
+    private File moduleFile;
+    private File executable;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = FileUtils.getTempFileAt(new File(System.getProperty("java.io.tmpdir")), "compiled_info_test");
+        baseDir.mkdirs();
+        moduleFile = new File(baseDir, "mod.so");
+        FileUtils.writeStrToFile("binary", moduleFile);
+        executable = new File(baseDir, "python");
+        FileUtils.writeStrToFile("exe", executable);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectoryTree(baseDir);
+        super.tearDown();
+    }
+
+    private CompiledModuleInfoCache createCache() {
+        return new CompiledModuleInfoCache(new File(baseDir, "cache"), executable.toString(), "2.7", "/lib");
+    }
+
+    private static Tuple<String, List<String[]>> createCompletions(String file, String... tokens) {
+        List<String[]> comps = new ArrayList<String[]>();
+        for (String tok : tokens) {
+            comps.add(new String[] { tok, "doc for\n\t" + tok + "\\n", "(a, b)", "2" });
+        }
+        return new Tuple<String, List<String[]>>(file, comps);
+    }
+
+    private static void assertCompletionsEqual(Tuple<String, List<String[]>> expected,
+            Tuple<String, List<String[]>> found) {
+        assertNotNull(found);
+        assertEquals(expected.o1, found.o1);
+        assertEquals(expected.o2.size(), found.o2.size());
+        for (int i = 0; i < expected.o2.size(); i++) {
+            String[] exp = expected.o2.get(i);
+            String[] f = found.o2.get(i);
+            assertEquals(exp.length, f.length);
+            for (int j = 0; j < exp.length; j++) {
+                assertEquals(exp[j], f[j]);
+            }
+        }
+    }
+
+    public void testPersistAndReload() throws Exception {
+        CompiledModuleInfoCache cache = createCache();
+        Tuple<String, List<String[]>> modComps = createCompletions(moduleFile.toString(), "func", "Class");
+        Tuple<String, List<String[]>> classComps = createCompletions(null, "method");
+        cache.putCompletions("mod", "mod", modComps);
+        cache.putCompletions("mod", "mod.Class", classComps);
+        cache.putDefinition("mod", "func", new Tuple<String[], int[]>(new String[] { "None", "" },
+                new int[] { 10, 2 }));
+        cache.putDefinition("mod", "unknown", null);
+
+        //a new cache (i.e.: after a restart) gets it from the disk
+        cache = createCache();
+        assertCompletionsEqual(modComps, cache.getCompletions("mod", "mod"));
+        assertCompletionsEqual(classComps, cache.getCompletions("mod", "mod.Class"));
+        assertNull(cache.getCompletions("mod", "mod.func"));
+        assertTrue(cache.hasDefinition("mod", "func"));
+        assertEquals(10, cache.getDefinition("mod", "func").o2[0]);
+        assertEquals("None", cache.getDefinition("mod", "func").o1[0]);
+        assertTrue(cache.hasDefinition("mod", "unknown"));
+        assertNull(cache.getDefinition("mod", "unknown"));
+        assertFalse(cache.hasDefinition("mod", "other"));
+
+        //another interpreter version does not use it
+        CompiledModuleInfoCache other = new CompiledModuleInfoCache(new File(baseDir, "cache"),
+                executable.toString(), "3.2", "/lib");
+        assertNull(other.getCompletions("mod", "mod"));
+
+        //nor another pythonpath
+        other = new CompiledModuleInfoCache(new File(baseDir, "cache"), executable.toString(), "2.7", "/lib2");
+        assertNull(other.getCompletions("mod", "mod"));
+    }
+
+    public void testInvalidatedWhenModuleChanges() throws Exception {
+        CompiledModuleInfoCache cache = createCache();
+        cache.putCompletions("mod", "mod", createCompletions(moduleFile.toString(), "func"));
+        cache.putCompletions("builtin_mod", "builtin_mod", createCompletions("None", "func"));
+
+        assertTrue(moduleFile.setLastModified(moduleFile.lastModified() - 10000));
+        cache = createCache();
+        assertNull(cache.getCompletions("mod", "mod"));
+        assertNotNull(cache.getCompletions("builtin_mod", "builtin_mod"));
+
+        //a change in the size is also noticed (even if the modification time is the same)
+        cache.putCompletions("mod", "mod", createCompletions(moduleFile.toString(), "func"));
+        long lastModified = moduleFile.lastModified();
+        FileUtils.writeStrToFile("binary changed", moduleFile);
+        assertTrue(moduleFile.setLastModified(lastModified));
+        cache = createCache();
+        assertNull(cache.getCompletions("mod", "mod"));
+
+        //builtins are invalidated when the interpreter changes
+        assertTrue(executable.setLastModified(executable.lastModified() - 10000));
+        cache = createCache();
+        assertNull(cache.getCompletions("builtin_mod", "builtin_mod"));
+    }
+
+    public void testNotPersistedWhileFileIsUnknown() throws Exception {
+        CompiledModuleInfoCache cache = createCache();
+        Tuple<String, List<String[]>> comps = createCompletions(null, "method");
+        cache.putCompletions("mod", "mod.Class", comps);
+        assertCompletionsEqual(comps, cache.getCompletions("mod", "mod.Class"));
+
+        cache = createCache();
+        assertNull(cache.getCompletions("mod", "mod.Class"));
+    }
+}
@@ -22,6 +22,8 @@ import org.python.pydev.core.TestDependent;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.editor.codecompletion.revisited.CodeCompletionTestsBase;
 
+import com.aptana.shared_core.structure.Tuple;
+
 /**
  * These tests should run, however the directory where the tests are run must be correct.
  * 
@@ -96,9 +98,22 @@ public class PythonShellTest extends CodeCompletionTestsBase {
     }
 
     public void testErrorOnCompletions() throws IOException, CoreException {
-        List<String[]> list = shell.getImportCompletions("dfjslkfjds\n\n", getPythonpath()).o2;
-        assertEquals(0, list.size());
-        //don't show completion errors!
+        Tuple<String, List<String[]>> completions = shell.getImportCompletions("dfjslkfjds\n\n", getPythonpath());
+        assertEquals(0, completions.o2.size());
+        //don't show completion errors (and don't let them be kept as if they were an actual answer)!
+        assertFalse(AbstractShell.isValidResponse(completions));
+        assertTrue(AbstractShell.isValidResponse(shell.getImportCompletions("math", getPythonpath())));
+    }
+
+    public void testLineColNotFound() throws Exception {
+        assertNotNull(shell.getLineCol("os", "path", getPythonpath()));
+        assertNull(shell.getLineCol("os", "dfjslkfjds", getPythonpath()));
+        try {
+            shell.getLineCol("dfjslkfjds", "path", getPythonpath());
+            fail("Expected the error to be reported.");
+        } catch (RuntimeException e) {
+            //expected: a module which can't be imported is an error (and not something which wasn't found).
+        }
     }
 
     /**
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.editor.codecompletion.shell.ShellResponsesReader.ShellRequest;
+
+public class ShellProtocolTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ShellProtocolTest.class);
+    }
+
+    public void testFrames() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShellProtocol.writeFrame(out, "1", ShellProtocol.CMD_IMPORTS, "a:b");
+        ShellProtocol.writeFrame(out, "2", ShellProtocol.CMD_CHANGE_PYTHONPATH, "");
+        assertEquals("17:1:17:IMPORTS3:a:b25:1:217:CHANGE_PYTHONPATH0:", new String(out.toByteArray(), "UTF-8"));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(Arrays.asList("1", "IMPORTS", "a:b"), ShellProtocol.readFrame(in));
+        assertEquals(Arrays.asList("2", "CHANGE_PYTHONPATH", ""), ShellProtocol.readFrame(in));
+        assertNull(ShellProtocol.readFrame(in));
+    }
+
+    public void testMultiByteChars() throws Exception {
+        String str = "a\u00e7\u00e3o|\u4e2d\n%+@@";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShellProtocol.writeFrame(out, "3", str);
+
+        List<String> frame = ShellProtocol.readFrame(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(Arrays.asList("3", str), frame);
+    }
+
+    public void testTruncatedStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShellProtocol.writeFrame(out, "1", ShellProtocol.CMD_IMPORTS, "os");
+        byte[] bytes = out.toByteArray();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        try {
+            ShellProtocol.readFrame(new ByteArrayInputStream(truncated));
+            fail("Expected EOFException");
+        } catch (EOFException e) {
+            //expected
+        }
+
+        try {
+            ShellProtocol.readFrame(new ByteArrayInputStream("1x:".getBytes()));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    public void testResponsesReader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //responses arriving in a different order (and a request which'll never get a response).
+        ShellProtocol.writeFrame(out, "2", ShellProtocol.RESPONSE_PROCESSING, "");
+        ShellProtocol.writeFrame(out, "2", ShellProtocol.RESPONSE_OK);
+        ShellProtocol.writeFrame(out, "1", ShellProtocol.RESPONSE_COMPLETIONS, "file", "2", "tok", "desc");
+
+        ShellResponsesReader reader = new ShellResponsesReader(new ByteArrayInputStream(out.toByteArray()));
+        ShellRequest r1 = reader.createRequest();
+        ShellRequest r2 = reader.createRequest();
+        ShellRequest r3 = reader.createRequest();
+        reader.start();
+        reader.join(5000);
+
+        assertEquals(Arrays.asList(ShellProtocol.RESPONSE_COMPLETIONS, "file", "2", "tok", "desc"), r1.getResponse());
+        assertEquals(Arrays.asList(ShellProtocol.RESPONSE_OK), r2.getResponse());
+        try {
+            r3.getResponse();
+            fail("Expected IOException as the connection was closed before the response arrived.");
+        } catch (IOException e) {
+            //expected
+        }
+        assertTrue(reader.isClosed());
+        try {
+            reader.createRequest().getResponse();
+            fail("Expected IOException as the reader is already closed.");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    public void testActivityAndRemovedRequests() throws Exception {
+        PipedOutputStream pipeOut = new PipedOutputStream();
+        ShellResponsesReader reader = new ShellResponsesReader(new PipedInputStream(pipeOut));
+        ShellRequest r1 = reader.createRequest();
+        ShellRequest r2 = reader.createRequest();
+        reader.start();
+
+        Thread.sleep(300);
+        assertTrue(reader.getMillisWithoutFrames() >= 300);
+
+        //a progress for the request being processed is activity for the connection (r2 is queued after it).
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShellProtocol.writeFrame(out, "1", ShellProtocol.RESPONSE_PROCESSING, "");
+        out.writeTo(pipeOut);
+        pipeOut.flush();
+        assertTrue(r1.await(5000));
+        assertTrue(reader.getMillisWithoutFrames() < 300);
+        assertFalse(r2.await(10));
+
+        //a removed request (i.e.: timed out) doesn't get the response nor the error when the connection is closed.
+        reader.removeRequest(r2);
+        out = new ByteArrayOutputStream();
+        ShellProtocol.writeFrame(out, "2", ShellProtocol.RESPONSE_OK);
+        out.writeTo(pipeOut);
+        pipeOut.close();
+        reader.join(5000);
+
+        assertTrue(reader.isClosed());
+        assertNull(r2.getResponse());
+        try {
+            r1.getResponse();
+            fail("Expected IOException as the connection was closed before the response arrived.");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+}